@@ -0,0 +1,70 @@
+package com.robindevilliers.vending;
+
+import static java.util.Arrays.asList;
+
+import com.robindevilliers.vending.model.CoinCassette;
+import com.robindevilliers.vending.model.Denomination;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.List;
+
+@State(Scope.Thread)
+public class CoinCalculatorBenchmark {
+
+    @Param({"5", "35", "95", "440"})
+    public int changeRequired;
+
+    //full cassettes pay greedily, low ones force the calculator to look for another mix of coins.
+    @Param({"FULL", "LOW"})
+    public String cassetteState;
+
+    private CoinCalculator coinCalculator;
+
+    private Cassettes cassettes;
+
+    @Setup
+    public void setup() {
+        this.coinCalculator = new CoinCalculator(asList(
+                new Denomination("DOLLAR", 100),
+                new Denomination("DIME", 10),
+                new Denomination("NICKEL", 5),
+                new Denomination("QUARTER", 25)
+        ));
+
+        final boolean full = this.cassetteState.equals("FULL");
+
+        //the cassettes never run down, so that every invocation plans the same payout.
+        this.cassettes = new HeapCassettes(asList(
+                new CoinCassette("DOLLAR", full ? 1000 : 1),
+                new CoinCassette("QUARTER", full ? 1000 : 1),
+                new CoinCassette("DIME", full ? 1000 : 40),
+                new CoinCassette("NICKEL", full ? 1000 : 1)
+        )) {
+            @Override
+            public boolean ejectCoins(List<String> coins) {
+                return true;
+            }
+        };
+    }
+
+    @Benchmark
+    public List<String> calculateChange() throws InsufficientChangeException {
+        return this.coinCalculator.calculateChange(this.changeRequired, this.cassettes);
+    }
+
+    //drops the cached table first, which is the cost paid after the cassettes are serviced.
+    @Benchmark
+    public List<String> calculateChangeUncached() throws InsufficientChangeException {
+        this.cassettes.setChangeTable(null);
+        return this.coinCalculator.calculateChange(this.changeRequired, this.cassettes);
+    }
+
+    @Benchmark
+    public boolean canMakeChange() {
+        return this.coinCalculator.canMakeChange(this.changeRequired, this.cassettes);
+    }
+}
@@ -0,0 +1,48 @@
+package com.robindevilliers.vending;
+
+import static java.util.Arrays.asList;
+
+import com.robindevilliers.vending.model.Denomination;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+@State(Scope.Thread)
+public class CoinPurseBenchmark {
+
+    private static final String[] DENOMINATIONS = {"DOLLAR", "QUARTER", "DIME", "NICKEL"};
+
+    @Param({"1", "100", "10000"})
+    public int purseSize;
+
+    private CoinCalculator coinCalculator;
+
+    private CoinPurse coinPurse;
+
+    @Setup
+    public void setup() {
+        this.coinCalculator = new CoinCalculator(asList(
+                new Denomination("DOLLAR", 100),
+                new Denomination("DIME", 10),
+                new Denomination("NICKEL", 5),
+                new Denomination("QUARTER", 25)
+        ));
+
+        this.coinPurse = new CoinPurse(this.coinCalculator);
+        for (int i = 0; i < this.purseSize; i++) {
+            this.coinPurse.addCoin(DENOMINATIONS[i % DENOMINATIONS.length]);
+        }
+    }
+
+    @Benchmark
+    public int calculateTotal() {
+        return this.coinCalculator.calculateTotal(this.coinPurse);
+    }
+
+    @Benchmark
+    public int getTotal() {
+        return this.coinPurse.getTotal();
+    }
+}
@@ -0,0 +1,49 @@
+package com.robindevilliers.vending;
+
+import static java.util.Arrays.asList;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.util.Collections;
+import java.util.List;
+
+//measures what publishing adds to the vend path, with and without a subscriber reading alongside.
+@State(Scope.Benchmark)
+public class EventStreamBenchmark {
+
+    private static final List<String> CHANGE = asList("QUARTER", "DIME");
+
+    @Param({"0", "1"})
+    public int subscribers;
+
+    private EventStream eventStream;
+
+    private EventSubscription subscription;
+
+    @Setup
+    public void setup() {
+        this.eventStream = new EventStream(64 * 1024);
+
+        if (this.subscribers > 0) {
+            this.subscription = this.eventStream.subscribe("benchmark", event -> {
+            });
+        }
+    }
+
+    @TearDown
+    public void tearDown() {
+        if (this.subscription != null) {
+            this.subscription.close();
+        }
+    }
+
+    @Benchmark
+    public void publishItemVended() {
+        this.eventStream.itemVended(1, "A", CHANGE, Collections.emptyList());
+    }
+}
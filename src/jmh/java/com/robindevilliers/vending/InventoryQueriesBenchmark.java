@@ -0,0 +1,84 @@
+package com.robindevilliers.vending;
+
+import static java.util.Arrays.asList;
+
+import com.robindevilliers.vending.model.CoinCassette;
+import com.robindevilliers.vending.model.Denomination;
+import com.robindevilliers.vending.model.ItemBucket;
+import com.robindevilliers.vending.model.MachineConfig;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Map;
+
+//measures fleet queries over a hundred thousand machines, scanned and read from the low stock index.
+@State(Scope.Benchmark)
+public class InventoryQueriesBenchmark {
+
+    private static final int MACHINES = 100000;
+
+    private Path file;
+
+    private InventoryStore store;
+
+    private InventoryQueries queries;
+
+    private LowStockIndex index;
+
+    @Setup
+    public void setup() throws IOException {
+        this.file = Files.createTempFile("inventory", ".bin");
+        Files.delete(this.file);
+
+        this.store = new InventoryStore(this.file, MACHINES, asList("A", "B", "C"), asList("DOLLAR", "QUARTER", "DIME", "NICKEL"));
+
+        for (int machine = 0; machine < MACHINES; machine++) {
+            this.store.load(machine, new MachineConfig("M" + machine,
+                    asList(new Denomination("DOLLAR", 100)),
+                    asList(new ItemBucket("A", 65, 0, machine % 20), new ItemBucket("B", 100, 0, 20), new ItemBucket("C", 150, 0, 20)),
+                    asList(new CoinCassette("DOLLAR", 0, 10), new CoinCassette("QUARTER", 0, machine % 7),
+                            new CoinCassette("DIME", 0, machine % 5), new CoinCassette("NICKEL", 0, 10))));
+        }
+
+        this.queries = new InventoryQueries(this.store, new CoinCalculator(new ArrayList<>(asList(
+                new Denomination("DOLLAR", 100),
+                new Denomination("QUARTER", 25),
+                new Denomination("DIME", 10),
+                new Denomination("NICKEL", 5)
+        ))));
+        this.index = new LowStockIndex(this.store, 3);
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        this.store.close();
+        Files.delete(this.file);
+    }
+
+    @Benchmark
+    public int[] findMachinesBelow() {
+        return this.queries.findMachinesBelow("A", 3);
+    }
+
+    @Benchmark
+    public Map<String, Long> getTotalFloat() {
+        return this.queries.getTotalFloat();
+    }
+
+    @Benchmark
+    public int[] findMachinesUnableToMakeChange() {
+        return this.queries.findMachinesUnableToMakeChange(35);
+    }
+
+    @Benchmark
+    public int[] findLowStockFromIndex() {
+        return this.index.findMachines("A");
+    }
+}
@@ -0,0 +1,60 @@
+package com.robindevilliers.vending;
+
+import com.robindevilliers.vending.model.ItemBucket;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.ArrayList;
+
+@State(Scope.Thread)
+public class ItemBucketsBenchmark {
+
+    @Param({"10", "100", "1000"})
+    public int slots;
+
+    private ItemBuckets itemBuckets;
+
+    private String[] itemIds;
+
+    private String[] lines;
+
+    private int next;
+
+    @Setup
+    public void setup() {
+        this.itemBuckets = new HeapItemBuckets(new ArrayList<>());
+        this.itemIds = new String[this.slots];
+        this.lines = new String[this.slots];
+
+        for (int i = 0; i < this.slots; i++) {
+            this.itemIds[i] = "SLOT" + i;
+            this.lines[i] = "GET-SLOT" + i;
+            this.itemBuckets.add(new ItemBucket(this.itemIds[i], 50 + i, 20));
+        }
+    }
+
+    private int nextSlot() {
+        this.next = this.next + 7 < this.slots ? this.next + 7 : (this.next + 7) % this.slots;
+        return this.next;
+    }
+
+    @Benchmark
+    public int lookupPurchase() {
+        final String itemId = this.itemIds[nextSlot()];
+
+        if (this.itemBuckets.isValidItemId(itemId) && this.itemBuckets.hasItem(itemId)) {
+            return this.itemBuckets.getPriceForItem(itemId);
+        }
+        return -1;
+    }
+
+    @Benchmark
+    public String findItemId() {
+        final String line = this.lines[nextSlot()];
+
+        return this.itemBuckets.findItemId(line, 4, line.length());
+    }
+}
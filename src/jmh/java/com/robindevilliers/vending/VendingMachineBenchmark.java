@@ -0,0 +1,89 @@
+package com.robindevilliers.vending;
+
+import static java.util.Arrays.asList;
+
+import com.robindevilliers.vending.model.CoinCassette;
+import com.robindevilliers.vending.model.Denomination;
+import com.robindevilliers.vending.model.ItemBucket;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+
+@State(Scope.Thread)
+public class VendingMachineBenchmark {
+
+    private static final int BATCH_SIZE = 1000;
+
+    //each line leaves the machine as it found it, apart from the stock and change used by a purchase.
+    @Param({"PUT-DOLLAR, GET-A", "PUT-QUARTER, PUT-QUARTER, PUT-DIME, PUT-NICKEL, GET-A", "PUT-QUARTER, PUT-DIME, COIN-RETURN", "GET-D, PUT-Q"})
+    public String line;
+
+    private VendingMachine vendingMachine;
+
+    private CharBuffer charBuffer;
+
+    private ByteBuffer batch;
+
+    private final StringBuilder out = new StringBuilder();
+
+    @Setup
+    public void setup() {
+        final ItemBuckets itemBuckets = new HeapItemBuckets(new ArrayList<>());
+        itemBuckets.add(new ItemBucket("A", 65, Integer.MAX_VALUE));
+        itemBuckets.add(new ItemBucket("B", 100, Integer.MAX_VALUE));
+        itemBuckets.add(new ItemBucket("C", 150, Integer.MAX_VALUE));
+
+        final Cassettes cassettes = new HeapCassettes(new ArrayList<>());
+        cassettes.add(new CoinCassette("NICKEL", Integer.MAX_VALUE));
+        cassettes.add(new CoinCassette("DIME", Integer.MAX_VALUE));
+        cassettes.add(new CoinCassette("QUARTER", Integer.MAX_VALUE));
+        cassettes.add(new CoinCassette("DOLLAR", Integer.MAX_VALUE));
+
+        final CoinCalculator coinCalculator = new CoinCalculator(asList(
+                new Denomination("DOLLAR", 100),
+                new Denomination("DIME", 10),
+                new Denomination("NICKEL", 5),
+                new Denomination("QUARTER", 25)
+        ));
+
+        this.vendingMachine = new VendingMachine(coinCalculator, itemBuckets, cassettes, new CoinPurse(coinCalculator));
+
+        this.charBuffer = CharBuffer.wrap(this.line);
+
+        final StringBuilder lines = new StringBuilder();
+        for (int i = 0; i < BATCH_SIZE; i++) {
+            lines.append(this.line).append('\n');
+        }
+        this.batch = ByteBuffer.wrap(lines.toString().getBytes(StandardCharsets.US_ASCII));
+    }
+
+    @Benchmark
+    public String processString() {
+        return this.vendingMachine.process(this.line);
+    }
+
+    @Benchmark
+    public StringBuilder processCharSequence() throws IOException {
+        this.out.setLength(0);
+        this.vendingMachine.process(this.charBuffer, this.out);
+        return this.out;
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(BATCH_SIZE)
+    public StringBuilder processBatch() throws IOException {
+        this.out.setLength(0);
+        this.batch.rewind();
+        this.vendingMachine.processAll(this.batch, this.out);
+        return this.out;
+    }
+}
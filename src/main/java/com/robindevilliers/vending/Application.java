@@ -5,35 +5,153 @@ import static java.util.Arrays.asList;
 import com.robindevilliers.vending.model.CoinCassette;
 import com.robindevilliers.vending.model.Denomination;
 import com.robindevilliers.vending.model.ItemBucket;
+import com.robindevilliers.vending.model.MachineConfig;
 
 import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.FileWriter;
 import java.io.IOException;
 import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.file.Paths;
 import java.util.ArrayList;
 
 public class Application {
     public static void main(String[] args) throws IOException {
 
-        final CoinCalculator coinCalculator = new CoinCalculator(asList(
-                new Denomination("DOLLAR", 100),
-                new Denomination("DIME", 10),
-                new Denomination("NICKEL", 5),
-                new Denomination("QUARTER", 25)
-        ));
+        //a machine is set up from the catalog when one is given, and otherwise with the standard coins and slots.
+        final String catalogFile = System.getProperty("vending.catalog");
+        final String machineId = System.getProperty("vending.machine", "default");
 
-        final ItemBuckets itemBuckets = new ItemBuckets(new ArrayList<>());
-        itemBuckets.add(new ItemBucket("A", 65, 20));
-        itemBuckets.add(new ItemBucket("B", 100, 20));
-        itemBuckets.add(new ItemBucket("C", 150, 20));
+        //a node of a sharded fleet serves its machines over TCP, with the migration server on the next port for a shard router.
+        //The first node is started with the catalog, and nodes that join later are given their share of it by the router.
+        if (System.getProperty("vending.node.port") != null) {
+            final int port = Integer.getInteger("vending.node.port");
 
-        final Cassettes cassettes = new Cassettes(new ArrayList<>());
+            final Fleet fleet = new Fleet();
+            if (catalogFile != null) {
+                fleet.load(Catalog.open(Paths.get(catalogFile)));
+            }
 
-        cassettes.add(new CoinCassette("NICKEL", 100));
-        cassettes.add(new CoinCassette("DIME", 100));
-        cassettes.add(new CoinCassette("QUARTER", 100));
-        cassettes.add(new CoinCassette("DOLLAR", 100));
+            final MigrationServer migrationServer = new MigrationServer(fleet, new InetSocketAddress(InetAddress.getLoopbackAddress(), port + 1));
+            migrationServer.start();
 
-        final VendingMachine vendingMachine = new VendingMachine(coinCalculator, itemBuckets, cassettes, new CoinPurse());
+            new CommandServer(fleet, new InetSocketAddress(InetAddress.getLoopbackAddress(), port)).run();
+            return;
+        }
+
+        final CoinCalculator coinCalculator;
+        final ItemBuckets itemBuckets;
+        final Cassettes cassettes;
+
+        if (catalogFile != null) {
+            final MachineConfig config = Catalog.open(Paths.get(catalogFile)).get(machineId);
+
+            coinCalculator = new CoinCalculator(config.getDenominations());
+            itemBuckets = new HeapItemBuckets(config.getItems());
+            cassettes = new HeapCassettes(config.getCassettes());
+        } else {
+            coinCalculator = new CoinCalculator(asList(
+                    new Denomination("DOLLAR", 100),
+                    new Denomination("DIME", 10),
+                    new Denomination("NICKEL", 5),
+                    new Denomination("QUARTER", 25)
+            ));
+
+            itemBuckets = new HeapItemBuckets(new ArrayList<>());
+            itemBuckets.add(new ItemBucket("A", 65, 20));
+            itemBuckets.add(new ItemBucket("B", 100, 20));
+            itemBuckets.add(new ItemBucket("C", 150, 20));
+
+            cassettes = new HeapCassettes(new ArrayList<>());
+
+            cassettes.add(new CoinCassette("NICKEL", 100));
+            cassettes.add(new CoinCassette("DIME", 100));
+            cassettes.add(new CoinCassette("QUARTER", 100));
+            cassettes.add(new CoinCassette("DOLLAR", 100));
+        }
+
+        cassettes.setRecycling(Boolean.getBoolean("vending.recycling"));
+
+        final CoinPurse coinPurse = new CoinPurse(coinCalculator);
+
+        final Sessions sessions = new Sessions(coinCalculator, System::currentTimeMillis, 5 * 60 * 1000);
+
+        final VendingMachine vendingMachine = new VendingMachine(coinCalculator, itemBuckets, cassettes, coinPurse, sessions);
+
+        //a standby follows its primary over the loopback interface until the primary goes away, and then carries on in its place.
+        final boolean standby = System.getProperty("vending.follow.port") != null;
+        if (standby) {
+            final ReplicationStandby replicationStandby = new ReplicationStandby(itemBuckets, cassettes, coinPurse, sessions,
+                    new InetSocketAddress(InetAddress.getLoopbackAddress(), Integer.getInteger("vending.follow.port")));
+            try {
+                replicationStandby.followPrimary();
+            } catch (IOException e) {
+                //the primary has failed, which is when the standby takes over.
+            }
+            replicationStandby.promote();
+        }
+
+        //state is only kept across restarts when a journal directory is given.
+        if (args.length > 0) {
+            final Journal journal = new Journal(Paths.get(args[0]), 64 * 1024 * 1024, 1, itemBuckets, cassettes, coinPurse, sessions);
+            //a promoted standby already holds the latest state, so its journal starts again from that rather than its own past.
+            if (standby) {
+                journal.snapshot();
+            } else {
+                journal.recover();
+            }
+            vendingMachine.addListener(journal);
+        }
+
+        //every change is shipped to a standby, and a line is only answered once the standby has it.
+        if (System.getProperty("vending.standby.port") != null) {
+            final ReplicationPrimary replicationPrimary = new ReplicationPrimary(itemBuckets, cassettes, coinPurse, sessions, 1, 1000);
+            replicationPrimary.connect(new InetSocketAddress(InetAddress.getLoopbackAddress(), Integer.getInteger("vending.standby.port")));
+            vendingMachine.addListener(replicationPrimary);
+        }
+
+        //the audit log is written by its own thread from the event stream, so it never slows down a purchase.
+        EventSubscription auditLog = null;
+        if (args.length > 1) {
+            final EventStream eventStream = new EventStream(64 * 1024);
+            auditLog = eventStream.subscribe("audit-log", new AuditLog(new BufferedWriter(new FileWriter(args[1], true))));
+            vendingMachine.addListener(eventStream);
+        }
+
+        //changes to the catalog file are applied to the running machine, between commands.
+        if (catalogFile != null) {
+            final CatalogWatcher catalogWatcher = new CatalogWatcher(Paths.get(catalogFile), catalog -> {
+                synchronized (vendingMachine) {
+                    vendingMachine.configure(catalog.get(machineId));
+                }
+            });
+            catalogWatcher.start();
+        }
+
+        final Metrics metrics = new Metrics(itemBuckets, cassettes);
+        if (auditLog != null) {
+            metrics.addSubscription("audit-log", auditLog);
+        }
+        metrics.register(machineId);
+        vendingMachine.addListener(metrics);
+
+        //the scrape endpoint only listens on the loopback interface, for a local collector to poll.
+        if (System.getProperty("vending.metrics.port") != null) {
+            final MetricsEndpoint metricsEndpoint = new MetricsEndpoint(
+                    new InetSocketAddress(InetAddress.getLoopbackAddress(), Integer.getInteger("vending.metrics.port")));
+            metricsEndpoint.add(machineId, metrics);
+            metricsEndpoint.start();
+        }
+
+        //when commands are piped in, such as when a transaction log is replayed, they are processed as one batch without prompts.
+        //The batch takes the machine's lock a chunk at a time, so catalog reloads still get in between.
+        if (System.console() == null) {
+            vendingMachine.processAll(new InputStreamReader(System.in), new BufferedWriter(new OutputStreamWriter(System.out)));
+            return;
+        }
 
         final BufferedReader buffer = new BufferedReader(new InputStreamReader(System.in));
 
@@ -41,9 +159,11 @@ public class Application {
             System.out.print("> ");
 
             final String line = buffer.readLine();
-            final String response = vendingMachine.process(line);
             System.out.print("-> ");
-            System.out.println(response);
+            synchronized (vendingMachine) {
+                vendingMachine.process(line, System.out);
+            }
+            System.out.println();
         }
     }
 }
@@ -0,0 +1,46 @@
+package com.robindevilliers.vending;
+
+import com.robindevilliers.vending.model.MachineEvent;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.function.Consumer;
+
+//Writes one line per event, in the form "<sequence> <timestamp> <type> <session> <detail>".
+public class AuditLog implements Consumer<MachineEvent> {
+
+    private final Writer writer;
+
+    private final StringBuilder line = new StringBuilder();
+
+    public AuditLog(Writer writer) {
+        this.writer = writer;
+    }
+
+    @Override
+    public void accept(MachineEvent event) {
+        this.line.setLength(0);
+        this.line.append(event.getSequence())
+                .append(' ').append(event.getTimestamp())
+                .append(' ').append(event.getType())
+                .append(' ').append(event.getSessionId());
+
+        if (event.getDenomination() != null) {
+            this.line.append(' ').append(event.getDenomination());
+        }
+        if (event.getItemId() != null) {
+            this.line.append(' ').append(event.getItemId());
+        }
+        for (String coin : event.getCoins()) {
+            this.line.append(' ').append(coin);
+        }
+        this.line.append('\n');
+
+        try {
+            this.writer.append(this.line);
+            this.writer.flush();
+        } catch (IOException e) {
+            throw new SystemException("Unable to write audit log.", e);
+        }
+    }
+}
@@ -3,37 +3,75 @@ package com.robindevilliers.vending;
 import com.robindevilliers.vending.model.CoinCassette;
 
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
 
-public class Cassettes {
+//The coin cassettes of one machine. HeapCassettes keeps them as objects on the heap, and an InventoryStore keeps them in the
+//columns of a mapped file. What is kept here does not depend on where the coins are, and every coin operation is left to both.
+public abstract class Cassettes {
 
-    private final List<CoinCassette> cassettes;
+    //counts the changes that can add coins. Ejecting coins does not count, as it can only make change harder to give.
+    //Returning coins does, because a change table may have been built while they were out.
+    private final AtomicLong version = new AtomicLong();
 
-    public Cassettes(List<CoinCassette> cassettes) {
-        this.cassettes = cassettes;
+    //the last change table worked out for these cassettes, kept here so that every machine has its own.
+    private volatile ChangeTable changeTable;
+
+    //when set, the coins paid for a purchase go into the cassettes, up to their capacity, rather than straight to the safe.
+    private volatile boolean recycling;
+
+    public abstract void add(CoinCassette coinCassette);
+
+    public abstract List<CoinCassette> getCassettes();
+
+    public abstract void reset();
+
+    //changes the capacity of each listed cassette, which takes effect at the next service.
+    public abstract void configure(List<CoinCassette> definitions);
+
+    //tops each listed cassette up to the number of coins planned for it, as far as its capacity allows.
+    public abstract void refill(Map<String, Integer> quantities);
+
+    //takes up to the listed number of coins out of each cassette.
+    public abstract void unload(Map<String, Integer> counts);
+
+    //sets each listed cassette to the number of coins it held when a snapshot was taken. Denominations without a cassette are skipped.
+    public abstract void restore(Map<String, Integer> quantities);
+
+    //returns how many of the coins fitted.
+    public abstract int creditCoins(String denomination, int count);
+
+    public abstract void ejectCoin(String denomination);
+
+    //either every coin is taken or none are.
+    public abstract boolean ejectCoins(List<String> coins);
+
+    public abstract void returnCoins(List<String> coins);
+
+    public abstract int getCoinCount(String id);
+
+    public boolean isRecycling() {
+        return this.recycling;
     }
 
-    public void add(CoinCassette coinCassette) {
-        this.cassettes.add(coinCassette);
+    public void setRecycling(boolean recycling) {
+        this.recycling = recycling;
     }
 
-    public void reset() {
-        this.cassettes.forEach(cassette -> cassette.setQuantity(100));
+    public long getVersion() {
+        return this.version.get();
     }
 
-    public void ejectCoin(String denomination) {
-        final CoinCassette coinCassette = this.cassettes.stream()
-                .filter(cassette -> cassette.getId().equals(denomination))
-                .findAny()
-                .orElseThrow(() -> new SystemException("Coin denomination not found."));
+    //called by an implementation after every change that can add coins.
+    protected void incrementVersion() {
+        this.version.incrementAndGet();
+    }
 
-        coinCassette.setQuantity(coinCassette.getQuantity() - 1);
+    public ChangeTable getChangeTable() {
+        return this.changeTable;
     }
 
-    public int getCoinCount(String id) {
-        return this.cassettes.stream()
-                .filter(cassette -> cassette.getId().equals(id))
-                .map(CoinCassette::getQuantity)
-                .findAny()
-                .orElse(0);
+    public void setChangeTable(ChangeTable changeTable) {
+        this.changeTable = changeTable;
     }
 }
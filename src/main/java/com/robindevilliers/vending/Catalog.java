@@ -0,0 +1,312 @@
+package com.robindevilliers.vending;
+
+import static java.nio.file.StandardCopyOption.ATOMIC_MOVE;
+import static java.nio.file.StandardCopyOption.REPLACE_EXISTING;
+import static java.nio.file.StandardOpenOption.CREATE;
+import static java.nio.file.StandardOpenOption.READ;
+import static java.nio.file.StandardOpenOption.WRITE;
+
+import com.robindevilliers.vending.model.CoinCassette;
+import com.robindevilliers.vending.model.Denomination;
+import com.robindevilliers.vending.model.ItemBucket;
+import com.robindevilliers.vending.model.MachineConfig;
+
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.Reader;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+//The machine configs for a fleet: the coins each machine takes, its slots and prices, and how much each slot and cassette holds.
+//
+//A catalog is written by hand as text, one definition per line:
+//
+//    machine M1
+//    denomination DOLLAR 100
+//    item A 65 20
+//    cassette DOLLAR 100
+//
+//and can be compiled to a binary form that is memory mapped rather than read. The binary form is [magic][version][strings][index][records],
+//where every id is written once to the string table and referred to by its position, the index holds the string and record offset of
+//each machine, and each record is decoded only when its machine is asked for. Opening a catalog of a hundred thousand machines therefore
+//reads little more than their ids.
+public class Catalog {
+
+    private static final int MAGIC = 0x56434154;
+
+    private static final int VERSION = 1;
+
+    private final ByteBuffer buffer;
+
+    private final String[] strings;
+
+    private final Map<String, Integer> offsets;
+
+    private Catalog(ByteBuffer buffer) {
+        this.buffer = buffer;
+
+        if (buffer.getInt(0) != MAGIC || buffer.getInt(4) != VERSION) {
+            throw new SystemException("Invalid catalog.");
+        }
+
+        int position = 8;
+
+        this.strings = new String[buffer.getInt(position)];
+        position += 4;
+        for (int i = 0; i < this.strings.length; i++) {
+            final int length = buffer.getShort(position);
+            final char[] chars = new char[length];
+            for (int j = 0; j < length; j++) {
+                chars[j] = buffer.getChar(position + 2 + j * 2);
+            }
+            this.strings[i] = new String(chars);
+            position += 2 + length * 2;
+        }
+
+        final int machineCount = buffer.getInt(position);
+        position += 4;
+
+        this.offsets = new LinkedHashMap<>(Math.max(16, machineCount * 2));
+        for (int i = 0; i < machineCount; i++) {
+            this.offsets.put(this.strings[buffer.getInt(position)], buffer.getInt(position + 4));
+            position += 8;
+        }
+    }
+
+    //a binary catalog is mapped, and anything else is read as text.
+    public static Catalog open(Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, READ)) {
+            final ByteBuffer header = ByteBuffer.allocate(4);
+            channel.read(header, 0);
+
+            if (header.position() == 4 && header.getInt(0) == MAGIC) {
+                return new Catalog(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+            }
+        }
+
+        try (Reader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+            return of(parse(reader));
+        }
+    }
+
+    public static Catalog of(Collection<MachineConfig> configs) {
+        final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try {
+            write(configs, bytes);
+        } catch (IOException e) {
+            throw new SystemException("Unable to write catalog.", e);
+        }
+        return new Catalog(ByteBuffer.wrap(bytes.toByteArray()));
+    }
+
+    public int size() {
+        return this.offsets.size();
+    }
+
+    public Set<String> getMachineIds() {
+        return Collections.unmodifiableSet(this.offsets.keySet());
+    }
+
+    public boolean contains(String machineId) {
+        return this.offsets.containsKey(machineId);
+    }
+
+    public MachineConfig get(String machineId) {
+        final Integer offset = this.offsets.get(machineId);
+
+        if (offset == null) {
+            throw new SystemException("Machine not found.");
+        }
+
+        //only absolute reads are used, so that any number of threads can decode from the one buffer.
+        int position = offset;
+
+        final List<Denomination> denominations = new ArrayList<>();
+        final int denominationCount = this.buffer.getShort(position);
+        position += 2;
+        for (int i = 0; i < denominationCount; i++) {
+            denominations.add(new Denomination(this.strings[this.buffer.getInt(position)], this.buffer.getInt(position + 4)));
+            position += 8;
+        }
+
+        final List<ItemBucket> items = new ArrayList<>();
+        final int itemCount = this.buffer.getShort(position);
+        position += 2;
+        for (int i = 0; i < itemCount; i++) {
+            final int capacity = this.buffer.getInt(position + 8);
+            items.add(new ItemBucket(this.strings[this.buffer.getInt(position)], this.buffer.getInt(position + 4), capacity, capacity));
+            position += 12;
+        }
+
+        final List<CoinCassette> cassettes = new ArrayList<>();
+        final int cassetteCount = this.buffer.getShort(position);
+        position += 2;
+        for (int i = 0; i < cassetteCount; i++) {
+            final int capacity = this.buffer.getInt(position + 4);
+            cassettes.add(new CoinCassette(this.strings[this.buffer.getInt(position)], capacity, capacity));
+            position += 8;
+        }
+
+        return new MachineConfig(machineId, denominations, items, cassettes);
+    }
+
+    public static List<MachineConfig> parse(Reader reader) throws IOException {
+        final BufferedReader lines = new BufferedReader(reader);
+        final List<MachineConfig> configs = new ArrayList<>();
+
+        String machineId = null;
+        List<Denomination> denominations = null;
+        List<ItemBucket> items = null;
+        List<CoinCassette> cassettes = null;
+
+        int lineNumber = 0;
+        String line;
+        while ((line = lines.readLine()) != null) {
+            lineNumber++;
+
+            final String trimmed = line.trim();
+            if (trimmed.isEmpty() || trimmed.startsWith("#")) {
+                continue;
+            }
+
+            final String[] fields = trimmed.split("\\s+");
+
+            try {
+                if (fields[0].equals("machine") && fields.length == 2) {
+                    if (machineId != null) {
+                        configs.add(new MachineConfig(machineId, denominations, items, cassettes));
+                    }
+                    machineId = fields[1];
+                    denominations = new ArrayList<>();
+                    items = new ArrayList<>();
+                    cassettes = new ArrayList<>();
+                } else if (machineId == null) {
+                    throw new SystemException("Catalog entry before the first machine on line " + lineNumber + ".");
+                } else if (fields[0].equals("denomination") && fields.length == 3) {
+                    denominations.add(new Denomination(fields[1].toUpperCase(), positive(fields[2])));
+                } else if (fields[0].equals("item") && fields.length == 4) {
+                    final int capacity = positive(fields[3]);
+                    items.add(new ItemBucket(fields[1].toUpperCase(), positive(fields[2]), capacity, capacity));
+                } else if (fields[0].equals("cassette") && fields.length == 3) {
+                    final String denomination = fields[1].toUpperCase();
+                    if (denominations.stream().noneMatch(d -> d.getId().equals(denomination))) {
+                        throw new SystemException("Cassette for an unknown denomination on line " + lineNumber + ".");
+                    }
+                    final int capacity = positive(fields[2]);
+                    cassettes.add(new CoinCassette(denomination, capacity, capacity));
+                } else {
+                    throw new SystemException("Invalid catalog entry on line " + lineNumber + ".");
+                }
+            } catch (NumberFormatException e) {
+                throw new SystemException("Invalid number on line " + lineNumber + ".", e);
+            }
+        }
+
+        if (machineId != null) {
+            configs.add(new MachineConfig(machineId, denominations, items, cassettes));
+        }
+        return configs;
+    }
+
+    private static int positive(String field) {
+        final int value = Integer.parseInt(field);
+
+        if (value <= 0) {
+            throw new NumberFormatException(field);
+        }
+        return value;
+    }
+
+    //the file is written to one side and moved into place, so that a watcher never opens it half written and a mapping of
+    //the previous file stays valid for as long as it is in use.
+    public static void write(Collection<MachineConfig> configs, Path file) throws IOException {
+        final Path temporaryFile = file.resolveSibling(file.getFileName() + ".tmp");
+
+        try (FileChannel channel = FileChannel.open(temporaryFile, CREATE, WRITE)) {
+            channel.truncate(0);
+            write(configs, Channels.newOutputStream(channel));
+            channel.force(true);
+        }
+
+        Files.move(temporaryFile, file, REPLACE_EXISTING, ATOMIC_MOVE);
+    }
+
+    private static void write(Collection<MachineConfig> configs, OutputStream stream) throws IOException {
+        final Map<String, Integer> stringIndex = new LinkedHashMap<>();
+        for (MachineConfig config : configs) {
+            intern(stringIndex, config.getMachineId());
+            config.getDenominations().forEach(denomination -> intern(stringIndex, denomination.getId()));
+            config.getItems().forEach(item -> intern(stringIndex, item.getId()));
+            config.getCassettes().forEach(cassette -> intern(stringIndex, cassette.getId()));
+        }
+
+        final DataOutputStream out = new DataOutputStream(new BufferedOutputStream(stream));
+
+        out.writeInt(MAGIC);
+        out.writeInt(VERSION);
+
+        int position = 12;
+        out.writeInt(stringIndex.size());
+        for (String value : stringIndex.keySet()) {
+            out.writeShort(value.length());
+            out.writeChars(value);
+            position += 2 + value.length() * 2;
+        }
+
+        out.writeInt(configs.size());
+        position += 4 + configs.size() * 8;
+
+        final Map<String, Integer> recordOffsets = new HashMap<>();
+        for (MachineConfig config : configs) {
+            if (recordOffsets.put(config.getMachineId(), position) != null) {
+                throw new SystemException("Machine already registered.");
+            }
+            out.writeInt(stringIndex.get(config.getMachineId()));
+            out.writeInt(position);
+            position += 6 + config.getDenominations().size() * 8 + config.getItems().size() * 12 + config.getCassettes().size() * 8;
+        }
+
+        for (MachineConfig config : configs) {
+            out.writeShort(config.getDenominations().size());
+            for (Denomination denomination : config.getDenominations()) {
+                out.writeInt(stringIndex.get(denomination.getId()));
+                out.writeInt(denomination.getAmount());
+            }
+
+            out.writeShort(config.getItems().size());
+            for (ItemBucket item : config.getItems()) {
+                out.writeInt(stringIndex.get(item.getId()));
+                out.writeInt(item.getPrice());
+                out.writeInt(item.getCapacity());
+            }
+
+            out.writeShort(config.getCassettes().size());
+            for (CoinCassette cassette : config.getCassettes()) {
+                out.writeInt(stringIndex.get(cassette.getId()));
+                out.writeInt(cassette.getCapacity());
+            }
+        }
+
+        out.flush();
+    }
+
+    private static void intern(Map<String, Integer> stringIndex, String value) {
+        stringIndex.putIfAbsent(value, stringIndex.size());
+    }
+}
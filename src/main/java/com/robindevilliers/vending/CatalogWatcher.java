@@ -0,0 +1,100 @@
+package com.robindevilliers.vending;
+
+import static java.nio.file.StandardWatchEventKinds.ENTRY_CREATE;
+import static java.nio.file.StandardWatchEventKinds.ENTRY_MODIFY;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.file.FileSystems;
+import java.nio.file.Path;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+//Opens a catalog again whenever its file is replaced or changed, and hands the new catalog on. A catalog should be replaced by
+//moving a new file into place, as Catalog.write does. A file that cannot be read is skipped, and the previous catalog stays in use.
+public class CatalogWatcher implements Runnable, Closeable {
+
+    private final Path file;
+
+    private final Consumer<Catalog> listener;
+
+    private final WatchService watchService;
+
+    private volatile boolean running = true;
+
+    private volatile int reloads;
+
+    private volatile int failures;
+
+    public CatalogWatcher(Path file, Consumer<Catalog> listener) throws IOException {
+        this.file = file.toAbsolutePath();
+        this.listener = listener;
+        this.watchService = FileSystems.getDefault().newWatchService();
+        this.file.getParent().register(this.watchService, ENTRY_CREATE, ENTRY_MODIFY);
+    }
+
+    public void start() {
+        final Thread thread = new Thread(this, "catalog-watcher");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    public int getReloads() {
+        return this.reloads;
+    }
+
+    public int getFailures() {
+        return this.failures;
+    }
+
+    @Override
+    public void run() {
+        try {
+            while (this.running) {
+                final WatchKey key = this.watchService.poll(100, TimeUnit.MILLISECONDS);
+
+                if (key == null) {
+                    continue;
+                }
+
+                boolean changed = false;
+                for (WatchEvent<?> event : key.pollEvents()) {
+                    if (this.file.getFileName().equals(event.context())) {
+                        changed = true;
+                    }
+                }
+                key.reset();
+
+                //several events for one change are taken together, so the file is only opened once for them.
+                if (changed) {
+                    reload();
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            try {
+                this.watchService.close();
+            } catch (IOException e) {
+                //the watcher is stopping anyway.
+            }
+        }
+    }
+
+    private void reload() {
+        try {
+            this.listener.accept(Catalog.open(this.file));
+            this.reloads++;
+        } catch (IOException | RuntimeException e) {
+            this.failures++;
+        }
+    }
+
+    @Override
+    public void close() {
+        this.running = false;
+    }
+}
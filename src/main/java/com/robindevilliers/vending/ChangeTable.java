@@ -0,0 +1,103 @@
+package com.robindevilliers.vending;
+
+import java.util.Arrays;
+
+public class ChangeTable {
+
+    private static final int UNPAYABLE = Integer.MAX_VALUE;
+
+    private final int[] amounts;
+
+    private final int maxAmount;
+
+    //the cassettes version that the available coins were counted at.
+    private final long version;
+
+    //fewest coins needed for each amount using every denomination.
+    private final int[] coinCounts;
+
+    //taken[i][amount] is how many coins of denomination i the best payout of amount uses, given denominations i and smaller.
+    private final int[][] taken;
+
+    //amounts must be ordered from greatest to smallest, with available holding the number of coins for each.
+    public ChangeTable(int[] amounts, int[] available, int maxAmount) {
+        this(amounts, available, maxAmount, 0);
+    }
+
+    public ChangeTable(int[] amounts, int[] available, int maxAmount, long version) {
+        this.amounts = amounts;
+        this.maxAmount = maxAmount;
+        this.version = version;
+        this.taken = new int[amounts.length][maxAmount + 1];
+
+        int[] previous = new int[maxAmount + 1];
+        int[] current = new int[maxAmount + 1];
+
+        Arrays.fill(previous, UNPAYABLE);
+        previous[0] = 0;
+
+        //denominations are added smallest first, so that reading the table back starts with the largest coin.
+        for (int i = amounts.length - 1; i >= 0; i--) {
+            final int amount = amounts[i];
+            final int[] takenForDenomination = this.taken[i];
+
+            for (int total = 0; total <= maxAmount; total++) {
+                int best = UNPAYABLE;
+                int bestCount = 0;
+
+                //counting down means that ties are settled in favour of the larger coin.
+                for (int count = Math.min(available[i], total / amount); count >= 0; count--) {
+                    final int rest = previous[total - count * amount];
+
+                    if (rest != UNPAYABLE && rest + count < best) {
+                        best = rest + count;
+                        bestCount = count;
+                    }
+                }
+
+                current[total] = best;
+                takenForDenomination[total] = bestCount;
+            }
+
+            final int[] swap = previous;
+            previous = current;
+            current = swap;
+        }
+
+        this.coinCounts = previous;
+    }
+
+    public int getMaxAmount() {
+        return this.maxAmount;
+    }
+
+    public long getVersion() {
+        return this.version;
+    }
+
+    public boolean canPay(int amount) {
+        return amount >= 0 && amount <= this.maxAmount && this.coinCounts[amount] != UNPAYABLE;
+    }
+
+    public int getCoinCount(int amount) {
+        if (!canPay(amount)) {
+            throw new SystemException("Amount cannot be paid.");
+        }
+        return this.coinCounts[amount];
+    }
+
+    //returns the number of coins to take of each denomination, in the same order as the amounts given to the constructor.
+    public int[] getPayout(int amount) {
+        if (!canPay(amount)) {
+            throw new SystemException("Amount cannot be paid.");
+        }
+
+        final int[] payout = new int[this.amounts.length];
+
+        for (int i = 0; i < this.amounts.length; i++) {
+            payout[i] = this.taken[i][amount];
+            amount = amount - payout[i] * this.amounts[i];
+        }
+        return payout;
+    }
+}
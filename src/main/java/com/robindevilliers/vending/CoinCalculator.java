@@ -1,69 +1,282 @@
 package com.robindevilliers.vending;
 
 import com.robindevilliers.vending.model.Denomination;
+import com.robindevilliers.vending.model.ItemBucket;
 
-import java.util.ArrayDeque;
 import java.util.ArrayList;
 import java.util.Comparator;
+import java.util.HashMap;
 import java.util.List;
-import java.util.Queue;
-import java.util.stream.IntStream;
+import java.util.Map;
 
 public class CoinCalculator {
 
-    private final List<Denomination> denominations;
+    private static final int MAX_CYCLE = 1 << 16;
+
+    //these are ordered from greatest to smallest, matching the sorted denominations.
+    private final String[] ids;
+
+    private final int[] amounts;
+
+    private final IdTable idTable = new IdTable();
+
+    //each denomination is interned to its position in ids, so that coin purses can count coins in an array.
+    private final Map<String, Integer> ordinals = new HashMap<>();
+
+    //reachableTotals[total] is true when some mix of coins adds up to exactly that total. It grows as larger prices are asked about.
+    private volatile boolean[] reachableTotals = new boolean[]{true};
+
+    //the least common multiple of the denominations, kept small enough to search, which is as far past the change owed as a
+    //customer adding coins needs to be followed.
+    private final int cycle;
 
     public CoinCalculator(List<Denomination> denominations) {
-        this.denominations = denominations;
         denominations.sort(Comparator.comparingInt(Denomination::getAmount).reversed());
+
+        this.ids = new String[denominations.size()];
+        this.amounts = new int[denominations.size()];
+
+        for (int i = 0; i < denominations.size(); i++) {
+            this.ids[i] = denominations.get(i).getId();
+            this.amounts[i] = denominations.get(i).getAmount();
+            this.idTable.add(this.ids[i]);
+            this.ordinals.putIfAbsent(this.ids[i], i);
+        }
+
+        long cycle = 1;
+        for (int i = 0; i < this.amounts.length && cycle < MAX_CYCLE; i++) {
+            cycle = cycle / gcd(cycle, this.amounts[i]) * this.amounts[i];
+        }
+        this.cycle = (int) Math.min(cycle, MAX_CYCLE);
+    }
+
+    private static long gcd(long a, long b) {
+        return b == 0 ? a : gcd(b, a % b);
     }
 
     public boolean hasDenomination(String id) {
-        return this.denominations.stream().anyMatch(denomination -> denomination.getId().equals(id));
+        return this.ordinals.containsKey(id);
+    }
+
+    public int getDenominationCount() {
+        return this.ids.length;
+    }
+
+    //returns -1 when the id is not a known denomination.
+    public int getOrdinal(String id) {
+        final Integer ordinal = this.ordinals.get(id);
+        return ordinal == null ? -1 : ordinal;
+    }
+
+    public String getId(int ordinal) {
+        return this.ids[ordinal];
+    }
+
+    public int getAmount(int ordinal) {
+        return this.amounts[ordinal];
+    }
+
+    public String findDenomination(CharSequence line, int start, int end) {
+        return this.idTable.find(line, start, end);
     }
 
     public int calculateTotal(CoinPurse coinPurse) {
-        return coinPurse.getCounts()
-                .entrySet()
-                .stream()
-                .mapToInt(entry ->
-                        this.denominations.stream()
-                                .filter(denomination -> denomination.getId().equals(entry.getKey()))
-                                .map(Denomination::getAmount)
-                                .findAny()
-                                .orElseThrow(() -> new SystemException("Invalid denomination in coin purse."))
-                                * entry.getValue())
-                .sum();
+        int total = 0;
+        for (int i = 0; i < this.amounts.length; i++) {
+            total += coinPurse.getCount(i) * this.amounts[i];
+        }
+        return total;
+    }
+
+    //checks that change can be given without taking any coins, so that a purchase can be turned down before anything is reserved.
+    public boolean canMakeChange(int changeRequired, Cassettes cassettes) {
+        if (changeRequired == 0) {
+            return true;
+        }
+
+        final ChangeTable changeTable = getChangeTable(changeRequired, cassettes, false);
+
+        if (!changeTable.canPay(changeRequired)) {
+            return false;
+        }
+
+        if (isInStock(changeTable.getPayout(changeRequired), cassettes)) {
+            return true;
+        }
+        return getChangeTable(changeRequired, cassettes, true).canPay(changeRequired);
+    }
+
+    //an item price is exact change only when a customer who stops at the first coin that covers it could be owed change we cannot pay.
+    public boolean isExactChangeOnly(int price, Cassettes cassettes) {
+        if (this.amounts.length == 0) {
+            return false;
+        }
+
+        final boolean[] reachableTotals = getReachableTotals(price);
+
+        //the change owed is always less than the last coin, so only totals within one coin of the price need checking.
+        for (int total = Math.max(0, price - this.amounts[0] + 1); total < price; total++) {
+            if (!reachableTotals[total]) {
+                continue;
+            }
+
+            for (int i = 0; i < this.amounts.length; i++) {
+                final int changeRequired = total + this.amounts[i] - price;
+
+                if (changeRequired > 0 && !canMakeChange(changeRequired, cassettes)) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    //true when adding the coin would leave funds that cover every item in stock, and no balance the customer could go on to
+    //reach by adding more coins would let change be paid for any of them. Only then is the coin of no use to the customer.
+    public boolean wouldStrandFunds(CoinPurse coinPurse, String denomination, ItemBuckets itemBuckets, Cassettes cassettes) {
+        final int funds = coinPurse.getTotal() + this.amounts[getOrdinal(denomination)];
+
+        boolean inStock = false;
+
+        final List<ItemBucket> buckets = itemBuckets.getBuckets();
+        for (int i = 0; i < buckets.size(); i++) {
+            final ItemBucket bucket = buckets.get(i);
+
+            if (bucket.getQuantity() <= 0) {
+                continue;
+            }
+
+            if (bucket.getPrice() > funds || canMakeChange(funds - bucket.getPrice(), cassettes)) {
+                return false;
+            }
+            inStock = true;
+        }
+
+        if (!inStock) {
+            return false;
+        }
+
+        //no change can be more than the cassettes hold, and the balances a customer can reach repeat the change they could be
+        //owed every cycle, so only one cycle past what is owed now is worth trying.
+        long cassetteTotal = 0;
+        for (int i = 0; i < this.ids.length; i++) {
+            cassetteTotal += (long) cassettes.getCoinCount(this.ids[i]) * this.amounts[i];
+        }
+
+        int maxChange = 0;
+        for (int i = 0; i < buckets.size(); i++) {
+            final ItemBucket bucket = buckets.get(i);
+
+            if (bucket.getQuantity() > 0) {
+                maxChange = (int) Math.max(maxChange, Math.min(funds - bucket.getPrice() + this.cycle, cassetteTotal));
+            }
+        }
+
+        final ChangeTable changeTable = getChangeTable(maxChange, cassettes, false);
+        final boolean[] reachableTotals = getReachableTotals(this.cycle);
+
+        for (int i = 0; i < buckets.size(); i++) {
+            final ItemBucket bucket = buckets.get(i);
+            final int owed = funds - bucket.getPrice();
+
+            if (bucket.getQuantity() <= 0) {
+                continue;
+            }
+
+            final int lastChange = (int) Math.min(owed + this.cycle, cassetteTotal);
+            for (int change = owed + 1; change <= lastChange; change++) {
+                if (reachableTotals[change - owed] && changeTable.canPay(change) && canMakeChange(change, cassettes)) {
+                    return false;
+                }
+            }
+        }
+        return true;
     }
 
     public List<String> calculateChange(int changeRequired, Cassettes cassettes) throws InsufficientChangeException {
-        final List<String> coins = new ArrayList<>();
+        if (changeRequired == 0) {
+            return new ArrayList<>();
+        }
 
-        final Queue<Denomination> denominations = new ArrayDeque<>(this.denominations);
+        boolean rebuild = false;
 
-        while (changeRequired != 0) {
-            final Denomination denomination = denominations.poll(); //these denominations should be ordered from greatest to smallest.
+        while (true) {
+            //greedy selection can get stuck with low cassettes, so we look for the payout with the fewest coins instead.
+            final ChangeTable changeTable = getChangeTable(changeRequired, cassettes, rebuild);
 
-            if (denomination == null) {
+            if (!changeTable.canPay(changeRequired)) {
                 throw new InsufficientChangeException();
             }
 
-            final int coinsWanted = changeRequired / denomination.getAmount();
+            final int[] payout = changeTable.getPayout(changeRequired);
+            final List<String> coins = new ArrayList<>();
 
-            final int coinsAvailable = cassettes.getCoinCount(denomination.getId());
+            for (int i = 0; i < payout.length; i++) {
+                for (int j = 0; j < payout[i]; j++) {
+                    coins.add(this.ids[i]);
+                }
+            }
 
-            final int coinsToTake = Math.min(coinsAvailable, coinsWanted);
+            //we only eject coins here after we are sure that we have sufficient change.
+            if (cassettes.ejectCoins(coins)) {
+                return coins;
+            }
 
-            changeRequired = changeRequired - (coinsToTake * denomination.getAmount());
+            //the cassettes have run low since the table was built, so we count the coins again.
+            rebuild = true;
+        }
+    }
+
+    //a table stays valid while coins are only ejected: a payout that is still in stock is still the one with the fewest coins,
+    //and an amount that could not be paid still cannot. Only a change of version, which can add coins, forces a rebuild.
+    //A rebuild covers what is asked for, or at least the largest coin, and not what an earlier table covered, so that one
+    //large question does not make every later rebuild as large.
+    private ChangeTable getChangeTable(int changeRequired, Cassettes cassettes, boolean rebuild) {
+        final long version = cassettes.getVersion();
+        final ChangeTable cached = cassettes.getChangeTable();
 
-            IntStream.range(0,coinsToTake).forEach((i) -> coins.add(denomination.getId()));
+        if (!rebuild && cached != null && cached.getVersion() == version && cached.getMaxAmount() >= changeRequired) {
+            return cached;
         }
 
-        //we only eject coins here after we are sure that we have sufficient change.
-        coins.forEach(cassettes::ejectCoin);
+        final int maxAmount = this.amounts.length == 0 ? changeRequired : Math.max(changeRequired, this.amounts[0]);
 
-        return coins;
+        final int[] available = new int[this.ids.length];
+        for (int i = 0; i < this.ids.length; i++) {
+            available[i] = cassettes.getCoinCount(this.ids[i]);
+        }
+
+        final ChangeTable changeTable = new ChangeTable(this.amounts, available, maxAmount, version);
+        cassettes.setChangeTable(changeTable);
+        return changeTable;
     }
 
+    private boolean[] getReachableTotals(int maxTotal) {
+        final boolean[] cached = this.reachableTotals;
 
+        if (cached.length > maxTotal) {
+            return cached;
+        }
+
+        final boolean[] reachableTotals = new boolean[maxTotal + 1];
+        reachableTotals[0] = true;
+
+        for (int total = 1; total <= maxTotal; total++) {
+            for (int i = 0; i < this.amounts.length && !reachableTotals[total]; i++) {
+                reachableTotals[total] = this.amounts[i] <= total && reachableTotals[total - this.amounts[i]];
+            }
+        }
+
+        this.reachableTotals = reachableTotals;
+        return reachableTotals;
+    }
+
+    private boolean isInStock(int[] payout, Cassettes cassettes) {
+        for (int i = 0; i < payout.length; i++) {
+            if (payout[i] > cassettes.getCoinCount(this.ids[i])) {
+                return false;
+            }
+        }
+        return true;
+    }
 }
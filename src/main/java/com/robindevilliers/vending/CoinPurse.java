@@ -1,31 +1,108 @@
 package com.robindevilliers.vending;
 
+import java.util.Arrays;
 import java.util.Collections;
-import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
-import java.util.stream.IntStream;
 
 public class CoinPurse {
 
-    private Map<String, Integer> coins = new HashMap<>();
+    private final CoinCalculator coinCalculator;
+
+    //indexed by the denomination ordinals of the coin calculator.
+    private final int[] counts;
+
+    private int total;
+
+    public CoinPurse(CoinCalculator coinCalculator) {
+        this.coinCalculator = coinCalculator;
+        this.counts = new int[coinCalculator.getDenominationCount()];
+    }
 
     public void addCoin(String denomination) {
-        coins.put(denomination, coins.getOrDefault(denomination, 0) + 1);
+        final int ordinal = this.coinCalculator.getOrdinal(denomination);
+
+        if (ordinal < 0) {
+            throw new SystemException("Invalid denomination in coin purse.");
+        }
+        addCoin(ordinal);
+    }
+
+    public void addCoin(int ordinal) {
+        this.counts[ordinal]++;
+        this.total += this.coinCalculator.getAmount(ordinal);
+    }
+
+    public int getCount(int ordinal) {
+        return this.counts[ordinal];
+    }
+
+    public int getCount(String denomination) {
+        final int ordinal = this.coinCalculator.getOrdinal(denomination);
+        return ordinal < 0 ? 0 : this.counts[ordinal];
     }
 
+    //the total is kept up to date as coins go in and come out, so that reading the balance never walks the purse.
+    public int getTotal() {
+        return this.total;
+    }
+
+    //compares the running total with a full recount of the coins.
+    public void checkTotal() {
+        if (this.total != this.coinCalculator.calculateTotal(this)) {
+            throw new SystemException("Coin purse total does not match its coins.");
+        }
+    }
+
+    //coins are handed back largest first.
     public void refund(List<String> responses) {
+        for (int i = 0; i < this.counts.length; i++) {
+            for (int j = 0; j < this.counts[i]; j++) {
+                responses.add(this.coinCalculator.getId(i));
+            }
+        }
 
-        coins.forEach((denomination, coinCount) -> {
-            IntStream.range(0, coinCount).forEach(i -> responses.add(denomination));
-        });
+        //the refunded coins have been handed back, so they are no longer credit towards a purchase.
+        dropPaymentIntoSafe();
     }
 
+    //this builds a map on every call, so it is meant for reporting rather than the vending path.
     public Map<String, Integer> getCounts() {
-        return Collections.unmodifiableMap(this.coins);
+        final Map<String, Integer> coins = new LinkedHashMap<>();
+
+        for (int i = 0; i < this.counts.length; i++) {
+            if (this.counts[i] > 0) {
+                coins.put(this.coinCalculator.getId(i), this.counts[i]);
+            }
+        }
+        return Collections.unmodifiableMap(coins);
+    }
+
+    //in recycling mode the payment tops up the cassettes, so that it can be given out as change to later customers.
+    //Each coin that went into a cassette is added to the credited list.
+    public int dropPaymentIntoCassettes(Cassettes cassettes, List<String> credited) {
+        int creditedCount = 0;
+
+        for (int i = 0; i < this.counts.length; i++) {
+            if (this.counts[i] > 0) {
+                final String denomination = this.coinCalculator.getId(i);
+                final int count = cassettes.creditCoins(denomination, this.counts[i]);
+
+                for (int j = 0; j < count; j++) {
+                    credited.add(denomination);
+                }
+                creditedCount += count;
+            }
+        }
+
+        //whatever did not fit overflows into the safe.
+        dropPaymentIntoSafe();
+        return creditedCount;
     }
 
     public void dropPaymentIntoSafe() {
-        this.coins = new HashMap<>();
+        Arrays.fill(this.counts, 0);
+        this.total = 0;
     }
 }
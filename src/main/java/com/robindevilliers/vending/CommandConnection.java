@@ -0,0 +1,57 @@
+package com.robindevilliers.vending;
+
+import java.nio.ByteBuffer;
+import java.nio.channels.SocketChannel;
+import java.util.HashMap;
+import java.util.Map;
+
+public class CommandConnection {
+
+    private final SocketChannel channel;
+
+    private final ByteBuffer readBuffer = ByteBuffer.allocate(4096);
+
+    private final StringBuilder line = new StringBuilder();
+
+    private final StringBuilder responses = new StringBuilder();
+
+    private ByteBuffer writeBuffer = ByteBuffer.allocate(4096);
+
+    //each connection is a separate customer, so it gets its own session on every machine it talks to.
+    private final Map<String, Long> sessions = new HashMap<>();
+
+    public CommandConnection(SocketChannel channel) {
+        this.channel = channel;
+    }
+
+    public SocketChannel getChannel() {
+        return this.channel;
+    }
+
+    public ByteBuffer getReadBuffer() {
+        return this.readBuffer;
+    }
+
+    public StringBuilder getLine() {
+        return this.line;
+    }
+
+    public StringBuilder getResponses() {
+        return this.responses;
+    }
+
+    public Map<String, Long> getSessions() {
+        return this.sessions;
+    }
+
+    //the write buffer is left in write mode, holding any bytes that the socket has not taken yet.
+    public ByteBuffer getWriteBuffer(int required) {
+        if (this.writeBuffer.remaining() < required) {
+            final ByteBuffer larger = ByteBuffer.allocate(Math.max(this.writeBuffer.capacity() * 2, this.writeBuffer.position() + required));
+            this.writeBuffer.flip();
+            larger.put(this.writeBuffer);
+            this.writeBuffer = larger;
+        }
+        return this.writeBuffer;
+    }
+}
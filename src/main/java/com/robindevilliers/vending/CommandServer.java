@@ -0,0 +1,283 @@
+package com.robindevilliers.vending;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+//Accepts the command line protocol over TCP, one line per request in the form "<machineId> <command>,<command>...".
+//A single selector thread does all of the work, as processing a line takes far less time than the network round trip. Sweeping
+//every machine for expired sessions does not, so that is left to a thread of its own.
+//Clients may pipeline requests; responses come back one line each, in the order the requests were sent.
+public class CommandServer implements Runnable, Closeable {
+
+    private static final int MAX_LINE_LENGTH = 64 * 1024;
+
+    //once this much output is waiting for a slow client, its requests are no longer read until it catches up.
+    private static final int HIGH_WATER_MARK = 256 * 1024;
+
+    //how often sessions that customers have walked away from are closed and their coins handed back.
+    private static final long EXPIRY_INTERVAL_MILLIS = 1000;
+
+    private final Fleet fleet;
+
+    private final Selector selector;
+
+    private final ServerSocketChannel serverChannel;
+
+    private final ScheduledExecutorService expiry = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        final Thread thread = new Thread(runnable, "session-expiry");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private volatile boolean running = true;
+
+    public CommandServer(Fleet fleet, InetSocketAddress address) throws IOException {
+        this.fleet = fleet;
+        this.selector = Selector.open();
+        this.serverChannel = ServerSocketChannel.open();
+        this.serverChannel.configureBlocking(false);
+        this.serverChannel.bind(address, 1024);
+        this.serverChannel.register(this.selector, SelectionKey.OP_ACCEPT);
+    }
+
+    public int getPort() throws IOException {
+        return ((InetSocketAddress) this.serverChannel.getLocalAddress()).getPort();
+    }
+
+    @Override
+    public void run() {
+        this.expiry.scheduleWithFixedDelay(this::expireSessions, EXPIRY_INTERVAL_MILLIS, EXPIRY_INTERVAL_MILLIS, TimeUnit.MILLISECONDS);
+
+        try {
+            while (this.running) {
+                this.selector.select();
+
+                final Iterator<SelectionKey> keys = this.selector.selectedKeys().iterator();
+                while (keys.hasNext()) {
+                    final SelectionKey key = keys.next();
+                    keys.remove();
+
+                    try {
+                        if (key.isValid() && key.isAcceptable()) {
+                            accept();
+                        }
+                        if (key.isValid() && key.isReadable()) {
+                            read(key);
+                        }
+                        if (key.isValid() && key.isWritable()) {
+                            write(key);
+                        }
+                    } catch (IOException | RuntimeException e) {
+                        //whatever goes wrong with one connection only drops that connection, and the loop carries on for the rest.
+                        disconnect(key);
+                    }
+                }
+            }
+        } catch (IOException e) {
+            throw new SystemException("Command server failed.", e);
+        } finally {
+            shutdown();
+        }
+    }
+
+    private void expireSessions() {
+        try {
+            this.fleet.expireSessions();
+        } catch (RuntimeException e) {
+            //the sweep is tried again at the next interval, as an exception would stop the executor running it again.
+        }
+    }
+
+    @Override
+    public void close() {
+        this.running = false;
+        this.selector.wakeup();
+    }
+
+    private void accept() throws IOException {
+        final SocketChannel channel = this.serverChannel.accept();
+
+        if (channel != null) {
+            channel.configureBlocking(false);
+            channel.setOption(StandardSocketOptions.TCP_NODELAY, true);
+            channel.register(this.selector, SelectionKey.OP_READ, new CommandConnection(channel));
+        }
+    }
+
+    private void read(SelectionKey key) throws IOException {
+        final CommandConnection connection = (CommandConnection) key.attachment();
+        final ByteBuffer readBuffer = connection.getReadBuffer();
+
+        if (connection.getChannel().read(readBuffer) == -1) {
+            disconnect(key);
+            return;
+        }
+
+        readBuffer.flip();
+        final StringBuilder line = connection.getLine();
+
+        while (readBuffer.hasRemaining()) {
+            final char c = (char) (readBuffer.get() & 0xff);
+
+            if (c == '\n') {
+                processLine(connection);
+                line.setLength(0);
+            } else if (c != '\r') {
+                line.append(c);
+            }
+
+            if (line.length() > MAX_LINE_LENGTH) {
+                disconnect(key);
+                return;
+            }
+        }
+        readBuffer.clear();
+
+        flush(key, connection);
+    }
+
+    private void processLine(CommandConnection connection) throws IOException {
+        final StringBuilder line = connection.getLine();
+        final StringBuilder responses = connection.getResponses();
+
+        final int separator = line.indexOf(" ");
+
+        if (separator < 0) {
+            responses.append("INVALID-COMMAND\n");
+            return;
+        }
+
+        final String machineId = line.substring(0, separator);
+
+        if (!this.fleet.isValidMachineId(machineId)) {
+            responses.append("INVALID-MACHINE\n");
+            return;
+        }
+
+        line.delete(0, separator + 1);
+
+        final int start = responses.length();
+
+        try {
+            process(connection, machineId, line, responses);
+        } catch (SystemException e) {
+            //the session may have expired, in which case the line is tried once more on a new one, or the machine may have been
+            //moved to another node since it was checked.
+            connection.getSessions().remove(machineId);
+            responses.setLength(start);
+
+            if (!this.fleet.isValidMachineId(machineId)) {
+                responses.append("INVALID-MACHINE");
+            } else if (!retry(connection, machineId, line, responses)) {
+                responses.append("SYSTEM-ERROR");
+            }
+        }
+        responses.append('\n');
+    }
+
+    private void process(CommandConnection connection, String machineId, CharSequence line, StringBuilder responses) throws IOException {
+        final Map<String, Long> sessions = connection.getSessions();
+
+        Long sessionId = sessions.get(machineId);
+        if (sessionId == null) {
+            sessionId = this.fleet.openSession(machineId);
+            sessions.put(machineId, sessionId);
+        }
+
+        this.fleet.process(machineId, sessionId, line, responses);
+    }
+
+    private boolean retry(CommandConnection connection, String machineId, CharSequence line, StringBuilder responses) throws IOException {
+        final int start = responses.length();
+
+        try {
+            process(connection, machineId, line, responses);
+            return true;
+        } catch (SystemException e) {
+            connection.getSessions().remove(machineId);
+            responses.setLength(start);
+            return false;
+        }
+    }
+
+    private void write(SelectionKey key) throws IOException {
+        flush(key, (CommandConnection) key.attachment());
+    }
+
+    private void flush(SelectionKey key, CommandConnection connection) throws IOException {
+        final StringBuilder responses = connection.getResponses();
+        final ByteBuffer writeBuffer = connection.getWriteBuffer(responses.length());
+
+        for (int i = 0; i < responses.length(); i++) {
+            writeBuffer.put((byte) responses.charAt(i));
+        }
+        responses.setLength(0);
+
+        writeBuffer.flip();
+        connection.getChannel().write(writeBuffer);
+        final int pending = writeBuffer.remaining();
+        writeBuffer.compact();
+
+        if (pending == 0) {
+            key.interestOps(SelectionKey.OP_READ);
+        } else if (pending > HIGH_WATER_MARK) {
+            key.interestOps(SelectionKey.OP_WRITE);
+        } else {
+            key.interestOps(SelectionKey.OP_READ | SelectionKey.OP_WRITE);
+        }
+    }
+
+    private void disconnect(SelectionKey key) {
+        key.cancel();
+
+        final Object attachment = key.attachment();
+        if (!(attachment instanceof CommandConnection)) {
+            return;
+        }
+
+        final CommandConnection connection = (CommandConnection) attachment;
+
+        //anything still in a purse is refunded when the customer goes away.
+        for (Map.Entry<String, Long> session : connection.getSessions().entrySet()) {
+            try {
+                this.fleet.closeSession(session.getKey(), session.getValue());
+            } catch (SystemException e) {
+                //the session has already expired and been refunded.
+            }
+        }
+        connection.getSessions().clear();
+
+        try {
+            connection.getChannel().close();
+        } catch (IOException e) {
+            //the connection is being dropped anyway.
+        }
+    }
+
+    private void shutdown() {
+        this.expiry.shutdown();
+
+        for (SelectionKey key : this.selector.keys()) {
+            disconnect(key);
+        }
+
+        try {
+            this.serverChannel.close();
+            this.selector.close();
+        } catch (IOException e) {
+            throw new SystemException("Unable to stop command server.", e);
+        }
+    }
+}
@@ -0,0 +1,97 @@
+package com.robindevilliers.vending;
+
+import static com.robindevilliers.vending.model.MachineEvent.Type.CHANGE_PAID;
+import static com.robindevilliers.vending.model.MachineEvent.Type.COINS_REFUNDED;
+import static com.robindevilliers.vending.model.MachineEvent.Type.COIN_ACCEPTED;
+import static com.robindevilliers.vending.model.MachineEvent.Type.COIN_REJECTED;
+import static com.robindevilliers.vending.model.MachineEvent.Type.ITEM_VENDED;
+import static com.robindevilliers.vending.model.MachineEvent.Type.SERVICED;
+
+import com.robindevilliers.vending.model.MachineEvent;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.function.Consumer;
+
+//Publishes machine events into a fixed ring that subscribers read on their own threads.
+//Publishing claims a sequence and stores the event, and never waits for a subscriber. A subscriber that falls more than
+//a ring behind skips ahead and counts what it missed, so a slow subscriber can never hold up a purchase.
+public class EventStream implements MachineListener {
+
+    private final AtomicReferenceArray<MachineEvent> ring;
+
+    private final int mask;
+
+    private final AtomicLong nextSequence = new AtomicLong();
+
+    //the capacity must be a power of two.
+    public EventStream(int capacity) {
+        if (Integer.bitCount(capacity) != 1) {
+            throw new SystemException("Event stream capacity must be a power of two.");
+        }
+        this.ring = new AtomicReferenceArray<>(capacity);
+        this.mask = capacity - 1;
+    }
+
+    public int getCapacity() {
+        return this.ring.length();
+    }
+
+    //the number of events published so far, which is also the sequence of the next one.
+    public long getPublished() {
+        return this.nextSequence.get();
+    }
+
+    public EventSubscription subscribe(String name, Consumer<MachineEvent> subscriber) {
+        final EventSubscription subscription = new EventSubscription(this, subscriber, getPublished());
+
+        final Thread thread = new Thread(subscription, name);
+        thread.setDaemon(true);
+        thread.start();
+
+        return subscription;
+    }
+
+    MachineEvent get(long sequence) {
+        return this.ring.get((int) sequence & this.mask);
+    }
+
+    @Override
+    public void coinAccepted(long sessionId, String denomination) {
+        publish(COIN_ACCEPTED, sessionId, denomination, null, Collections.emptyList());
+    }
+
+    @Override
+    public void coinRejected(long sessionId, String denomination) {
+        publish(COIN_REJECTED, sessionId, denomination, null, Collections.emptyList());
+    }
+
+    @Override
+    public void coinsRefunded(long sessionId, List<String> coins) {
+        publish(COINS_REFUNDED, sessionId, null, null, Collections.unmodifiableList(coins));
+    }
+
+    @Override
+    public void itemVended(long sessionId, String itemId, List<String> change, List<String> credited) {
+        publish(ITEM_VENDED, sessionId, null, itemId, Collections.emptyList());
+
+        if (!change.isEmpty()) {
+            publish(CHANGE_PAID, sessionId, null, itemId, Collections.unmodifiableList(change));
+        }
+    }
+
+    @Override
+    public void serviced() {
+        publish(SERVICED, 0, null, null, Collections.emptyList());
+    }
+
+    private void publish(MachineEvent.Type type, long sessionId, String denomination, String itemId, List<String> coins) {
+        final long sequence = this.nextSequence.getAndIncrement();
+
+        //an ordered store is enough, as subscribers check the sequence of whatever event they find in the slot.
+        this.ring.lazySet((int) sequence & this.mask,
+                new MachineEvent(sequence, System.currentTimeMillis(), type, sessionId, denomination, itemId, coins));
+    }
+}
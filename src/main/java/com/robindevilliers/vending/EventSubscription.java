@@ -0,0 +1,103 @@
+package com.robindevilliers.vending;
+
+import com.robindevilliers.vending.model.MachineEvent;
+
+import java.io.Closeable;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.Consumer;
+
+//Reads an EventStream in order on its own thread. When it falls a whole ring behind, the events it missed are counted as lost,
+//and events that the subscriber throws on are counted as failed.
+public class EventSubscription implements Runnable, Closeable {
+
+    private static final long IDLE_NANOS = TimeUnit.MICROSECONDS.toNanos(100);
+
+    private final EventStream eventStream;
+
+    private final Consumer<MachineEvent> subscriber;
+
+    private volatile long cursor;
+
+    private volatile long lost;
+
+    private volatile long failed;
+
+    private volatile boolean running = true;
+
+    private volatile Thread thread;
+
+    public EventSubscription(EventStream eventStream, Consumer<MachineEvent> subscriber, long cursor) {
+        this.eventStream = eventStream;
+        this.subscriber = subscriber;
+        this.cursor = cursor;
+    }
+
+    //the sequence of the next event to be delivered.
+    public long getCursor() {
+        return this.cursor;
+    }
+
+    public long getLost() {
+        return this.lost;
+    }
+
+    public long getFailed() {
+        return this.failed;
+    }
+
+    @Override
+    public void run() {
+        this.thread = Thread.currentThread();
+
+        while (this.running) {
+            if (!poll()) {
+                LockSupport.parkNanos(this, IDLE_NANOS);
+            }
+        }
+    }
+
+    //delivers the next event if there is one, and returns false when there is nothing new to read.
+    public boolean poll() {
+        long cursor = this.cursor;
+
+        final long oldest = this.eventStream.getPublished() - this.eventStream.getCapacity();
+        if (cursor < oldest) {
+            this.lost += oldest - cursor;
+            cursor = oldest;
+            this.cursor = cursor;
+        }
+
+        final MachineEvent event = this.eventStream.get(cursor);
+
+        //the sequence has been claimed but the event is not stored yet, or nothing has been published.
+        if (event == null || event.getSequence() < cursor) {
+            return false;
+        }
+
+        //the publisher has lapped us between the check above and reading the slot.
+        if (event.getSequence() > cursor) {
+            return true;
+        }
+
+        this.cursor = cursor + 1;
+
+        try {
+            this.subscriber.accept(event);
+        } catch (RuntimeException e) {
+            //one bad event must not stop the subscriber from seeing the rest, but a subscriber that keeps failing has to show.
+            this.failed++;
+        }
+        return true;
+    }
+
+    @Override
+    public void close() {
+        this.running = false;
+
+        final Thread thread = this.thread;
+        if (thread != null) {
+            LockSupport.unpark(thread);
+        }
+    }
+}
@@ -0,0 +1,288 @@
+package com.robindevilliers.vending;
+
+import com.robindevilliers.vending.model.CoinCassette;
+import com.robindevilliers.vending.model.Denomination;
+import com.robindevilliers.vending.model.ItemBucket;
+import com.robindevilliers.vending.model.MachineConfig;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Collectors;
+
+public class Fleet {
+
+    private final Map<String, VendingMachine> machines;
+
+    //machines that are being moved to or from another fleet. They are kept, but are not listed and are turned away as if they
+    //were missing, until they are released or removed.
+    private final Set<String> held = ConcurrentHashMap.newKeySet();
+
+    private final Map<List<String>, CoinCalculator> coinCalculators = new ConcurrentHashMap<>();
+
+    public Fleet() {
+        this(16);
+    }
+
+    public Fleet(int expectedMachines) {
+        this.machines = new ConcurrentHashMap<>(expectedMachines);
+    }
+
+    public void add(String machineId, VendingMachine vendingMachine) {
+        if (this.machines.putIfAbsent(machineId, vendingMachine) != null) {
+            throw new SystemException("Machine already registered.");
+        }
+    }
+
+    //adds a machine for each config that is new, filled to capacity, and configures the machines that are already running.
+    //Machines that have gone from the catalog are left running, as they may still hold customers' coins.
+    public void load(Catalog catalog) {
+        catalog.getMachineIds().parallelStream().forEach(machineId -> {
+            final MachineConfig config = catalog.get(machineId);
+            final VendingMachine vendingMachine = this.machines.get(machineId);
+
+            if (vendingMachine == null) {
+                add(machineId, createMachine(config));
+            } else {
+                synchronized (vendingMachine) {
+                    vendingMachine.configure(config);
+                }
+            }
+        });
+    }
+
+    private VendingMachine createMachine(MachineConfig config) {
+        final CoinCalculator coinCalculator = getCoinCalculator(config.getDenominations());
+
+        return new VendingMachine(coinCalculator,
+                new HeapItemBuckets(config.getItems()),
+                new HeapCassettes(config.getCassettes()),
+                new CoinPurse(coinCalculator));
+    }
+
+    //holds the machine and writes its definition and everything in it but its customers' sessions, so that another fleet can
+    //carry on with it. The machine stays here until it is removed, or released if the move does not go ahead.
+    //Returns false, and writes nothing, while a customer's session holds coins, as those coins can only go back to the
+    //customer's own connection here and would otherwise be lost with the session.
+    public synchronized boolean writeMachine(String machineId, DataOutputStream out) throws IOException {
+        final VendingMachine vendingMachine = this.machines.get(machineId);
+
+        if (vendingMachine == null) {
+            throw new SystemException("Machine not found.");
+        }
+
+        synchronized (vendingMachine) {
+            if (vendingMachine.hasSessionCoins()) {
+                return false;
+            }
+            this.held.add(machineId);
+
+            final MachineConfig config = vendingMachine.getConfig(machineId);
+            out.writeUTF(machineId);
+
+            final List<Denomination> denominations = config.getDenominations();
+            out.writeInt(denominations.size());
+            for (Denomination denomination : denominations) {
+                out.writeUTF(denomination.getId());
+                out.writeInt(denomination.getAmount());
+            }
+
+            final List<ItemBucket> items = config.getItems();
+            out.writeInt(items.size());
+            for (ItemBucket item : items) {
+                out.writeUTF(item.getId());
+                out.writeInt(item.getPrice());
+                out.writeInt(item.getCapacity());
+            }
+
+            final List<CoinCassette> cassettes = config.getCassettes();
+            out.writeInt(cassettes.size());
+            for (CoinCassette cassette : cassettes) {
+                out.writeUTF(cassette.getId());
+                out.writeInt(cassette.getCapacity());
+            }
+
+            out.writeBoolean(vendingMachine.isRecycling());
+
+            //the session ids go with the machine, so that if it comes back it never hands out one that a connection here still holds.
+            final MachineState state = vendingMachine.getState();
+            state.writeSnapshot(out, false);
+            out.writeLong(state.getNextSessionId());
+            return true;
+        }
+    }
+
+    //a calculator holds nothing of any one machine's, so every machine that takes the same coins shares one, whatever order
+    //its catalog lists them in.
+    private CoinCalculator getCoinCalculator(List<Denomination> denominations) {
+        final List<String> key = new ArrayList<>(denominations.size());
+        for (Denomination denomination : denominations) {
+            key.add(denomination.getId() + "=" + denomination.getAmount());
+        }
+        Collections.sort(key);
+
+        return this.coinCalculators.computeIfAbsent(key, k -> new CoinCalculator(new ArrayList<>(denominations)));
+    }
+
+    //adds a machine written by writeMachine, held until it is released, and returns its id. A held copy left behind by a move
+    //that did not finish is replaced, but a machine that is in use is not.
+    public synchronized String readMachine(DataInputStream in) throws IOException {
+        final String machineId = in.readUTF();
+
+        final List<Denomination> denominations = new ArrayList<>();
+        final int denominationCount = in.readInt();
+        for (int i = 0; i < denominationCount; i++) {
+            denominations.add(new Denomination(in.readUTF(), in.readInt()));
+        }
+
+        final List<ItemBucket> items = new ArrayList<>();
+        final int itemCount = in.readInt();
+        for (int i = 0; i < itemCount; i++) {
+            final String id = in.readUTF();
+            final int price = in.readInt();
+            items.add(new ItemBucket(id, price, 0, in.readInt()));
+        }
+
+        final List<CoinCassette> cassettes = new ArrayList<>();
+        final int cassetteCount = in.readInt();
+        for (int i = 0; i < cassetteCount; i++) {
+            final String id = in.readUTF();
+            cassettes.add(new CoinCassette(id, 0, in.readInt()));
+        }
+
+        final VendingMachine vendingMachine = createMachine(new MachineConfig(machineId, denominations, items, cassettes));
+        vendingMachine.setRecycling(in.readBoolean());
+        final MachineState state = vendingMachine.getState();
+        state.readSnapshot(in);
+        state.skipSessionIds(in.readLong());
+
+        final VendingMachine existing = this.machines.get(machineId);
+
+        if (existing != null) {
+            if (!this.held.contains(machineId)) {
+                throw new SystemException("Machine already registered.");
+            }
+
+            synchronized (existing) {
+                existing.closeSessions();
+            }
+        }
+
+        this.held.add(machineId);
+        this.machines.put(machineId, vendingMachine);
+        return machineId;
+    }
+
+    //lets a held machine be used again, either where it has been moved to or where it was when the move was called off.
+    public synchronized void releaseMachine(String machineId) {
+        if (!this.machines.containsKey(machineId)) {
+            throw new SystemException("Machine not found.");
+        }
+        this.held.remove(machineId);
+    }
+
+    //takes the machine out of the fleet once it has been moved. Its customers' sessions are closed, and are empty, as a machine
+    //is only written out while no session holds coins and a held machine takes none.
+    public synchronized void removeMachine(String machineId) {
+        final VendingMachine vendingMachine = getMachine(machineId);
+
+        synchronized (vendingMachine) {
+            this.machines.remove(machineId);
+            this.held.remove(machineId);
+
+            vendingMachine.closeSessions();
+        }
+    }
+
+    public Set<String> getMachineIds() {
+        final Set<String> machineIds = new TreeSet<>(this.machines.keySet());
+        machineIds.removeAll(this.held);
+        return machineIds;
+    }
+
+    public boolean isValidMachineId(String machineId) {
+        return this.machines.containsKey(machineId) && !this.held.contains(machineId);
+    }
+
+    public int size() {
+        return getMachineIds().size();
+    }
+
+    private VendingMachine getMachine(String machineId) {
+        final VendingMachine vendingMachine = this.machines.get(machineId);
+
+        if (vendingMachine == null) {
+            throw new SystemException("Machine not found.");
+        }
+        return vendingMachine;
+    }
+
+    //called holding the machine's lock, to turn away a call against a machine that is being moved, or that was waiting while it went.
+    private void checkMachine(String machineId, VendingMachine vendingMachine) {
+        if (this.machines.get(machineId) != vendingMachine || this.held.contains(machineId)) {
+            throw new SystemException("Machine not found.");
+        }
+    }
+
+    //a single machine is not thread safe, so calls against the same machine are serialised on the machine.
+    public String process(String machineId, String line) {
+        final VendingMachine vendingMachine = getMachine(machineId);
+
+        synchronized (vendingMachine) {
+            checkMachine(machineId, vendingMachine);
+            return vendingMachine.process(line);
+        }
+    }
+
+    public long openSession(String machineId) {
+        final VendingMachine vendingMachine = getMachine(machineId);
+
+        synchronized (vendingMachine) {
+            checkMachine(machineId, vendingMachine);
+            return vendingMachine.openSession();
+        }
+    }
+
+    public void process(String machineId, long sessionId, CharSequence line, Appendable out) throws IOException {
+        final VendingMachine vendingMachine = getMachine(machineId);
+
+        synchronized (vendingMachine) {
+            checkMachine(machineId, vendingMachine);
+            vendingMachine.process(sessionId, line, out);
+        }
+    }
+
+    public String closeSession(String machineId, long sessionId) {
+        final VendingMachine vendingMachine = getMachine(machineId);
+
+        synchronized (vendingMachine) {
+            checkMachine(machineId, vendingMachine);
+            return vendingMachine.closeSession(sessionId);
+        }
+    }
+
+    //closes every session that has timed out on any machine, handing back its coins, and returns how many were closed.
+    public int expireSessions() {
+        return this.machines.values()
+                .parallelStream()
+                .mapToInt(vendingMachine -> {
+                    synchronized (vendingMachine) {
+                        return vendingMachine.expireSessions().size();
+                    }
+                })
+                .sum();
+    }
+
+    public Map<String, String> processAll(Map<String, String> linesByMachineId) {
+        return linesByMachineId.entrySet()
+                .parallelStream()
+                .collect(Collectors.toConcurrentMap(Map.Entry::getKey, entry -> process(entry.getKey(), entry.getValue())));
+    }
+}
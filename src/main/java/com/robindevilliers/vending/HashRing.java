@@ -0,0 +1,132 @@
+package com.robindevilliers.vending;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.TreeSet;
+
+//Assigns machine ids to nodes by consistent hashing, so that a node joining or leaving only moves the machines it gains or loses.
+//
+//Each node is placed at many points around a ring of 64 bit hashes, which evens out how many machines each one gets, and a
+//machine belongs to the first point at or after its own hash. A ring never changes: adding or removing a node gives a new
+//one, so lookups can be made from any thread with a binary search and no locking.
+public class HashRing {
+
+    public static final int DEFAULT_POINTS_PER_NODE = 128;
+
+    private final int pointsPerNode;
+
+    private final List<String> nodes;
+
+    //the points in ascending order, and the node that owns each one.
+    private final long[] points;
+
+    private final String[] owners;
+
+    public HashRing() {
+        this(DEFAULT_POINTS_PER_NODE);
+    }
+
+    public HashRing(int pointsPerNode) {
+        this(pointsPerNode, new ArrayList<>());
+    }
+
+    private HashRing(int pointsPerNode, List<String> nodes) {
+        this.pointsPerNode = pointsPerNode;
+        this.nodes = Collections.unmodifiableList(nodes);
+
+        //nodes are placed in id order, so that where two points collide every ring with the same nodes agrees on the owner.
+        final TreeMap<Long, String> ring = new TreeMap<>();
+        for (String node : new TreeSet<>(nodes)) {
+            for (int i = 0; i < pointsPerNode; i++) {
+                ring.putIfAbsent(hash(node + "#" + i), node);
+            }
+        }
+
+        this.points = new long[ring.size()];
+        this.owners = new String[ring.size()];
+
+        int i = 0;
+        for (Map.Entry<Long, String> point : ring.entrySet()) {
+            this.points[i] = point.getKey();
+            this.owners[i] = point.getValue();
+            i++;
+        }
+    }
+
+    public HashRing withNode(String node) {
+        if (this.nodes.contains(node)) {
+            throw new SystemException("Node already registered.");
+        }
+
+        final List<String> nodes = new ArrayList<>(this.nodes);
+        nodes.add(node);
+        return new HashRing(this.pointsPerNode, nodes);
+    }
+
+    public HashRing withoutNode(String node) {
+        if (!this.nodes.contains(node)) {
+            throw new SystemException("Node not found.");
+        }
+
+        final List<String> nodes = new ArrayList<>(this.nodes);
+        nodes.remove(node);
+        return new HashRing(this.pointsPerNode, nodes);
+    }
+
+    public List<String> getNodes() {
+        return this.nodes;
+    }
+
+    public boolean isEmpty() {
+        return this.points.length == 0;
+    }
+
+    //returns null when the ring has no nodes.
+    public String getNode(String machineId) {
+        if (this.points.length == 0) {
+            return null;
+        }
+
+        int index = binarySearch(hash(machineId));
+        if (index == this.points.length) {
+            index = 0;
+        }
+        return this.owners[index];
+    }
+
+    //the index of the first point at or after the hash, or the number of points when there is none.
+    private int binarySearch(long hash) {
+        int low = 0;
+        int high = this.points.length;
+
+        while (low < high) {
+            final int middle = (low + high) >>> 1;
+
+            if (this.points[middle] < hash) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+        return low;
+    }
+
+    //FNV-1a over the characters, finished with the murmur3 mix, as ids that differ only at the end must still land far apart.
+    static long hash(String value) {
+        long hash = 0xcbf29ce484222325L;
+        for (int i = 0; i < value.length(); i++) {
+            hash ^= value.charAt(i);
+            hash *= 0x100000001b3L;
+        }
+
+        hash ^= hash >>> 33;
+        hash *= 0xff51afd7ed558ccdL;
+        hash ^= hash >>> 33;
+        hash *= 0xc4ceb9fe1a85ec53L;
+        hash ^= hash >>> 33;
+        return hash;
+    }
+}
@@ -0,0 +1,149 @@
+package com.robindevilliers.vending;
+
+import com.robindevilliers.vending.model.CoinCassette;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+//Keeps a machine's coins in cassettes on the heap, one object per denomination.
+public class HeapCassettes extends Cassettes {
+
+    private final List<CoinCassette> cassettes;
+
+    private final Map<String, CoinCassette> index;
+
+    public HeapCassettes(List<CoinCassette> cassettes) {
+        this.cassettes = cassettes;
+        this.index = new HashMap<>(Math.max(16, cassettes.size() * 2));
+        cassettes.forEach(this::index);
+    }
+
+    @Override
+    public void add(CoinCassette coinCassette) {
+        this.cassettes.add(coinCassette);
+        index(coinCassette);
+        incrementVersion();
+    }
+
+    private void index(CoinCassette coinCassette) {
+        this.index.putIfAbsent(coinCassette.getId(), coinCassette);
+    }
+
+    @Override
+    public List<CoinCassette> getCassettes() {
+        return Collections.unmodifiableList(this.cassettes);
+    }
+
+    @Override
+    public void reset() {
+        this.cassettes.forEach(cassette -> cassette.setQuantity(cassette.getCapacity()));
+        incrementVersion();
+    }
+
+    //changes the capacity of each listed cassette, which takes effect at the next service. The coins a machine takes cannot change while it runs.
+    @Override
+    public void configure(List<CoinCassette> definitions) {
+        for (CoinCassette definition : definitions) {
+            getCassette(definition.getId()).setCapacity(definition.getCapacity());
+        }
+    }
+
+    //tops each listed cassette up to the number of coins planned for it, as far as its capacity allows. Coins are never taken out
+    //here, and cassettes that are not listed are left as they are.
+    @Override
+    public void refill(Map<String, Integer> quantities) {
+        quantities.forEach((denomination, quantity) -> {
+            final CoinCassette coinCassette = getCassette(denomination);
+            final int missing = Math.min(quantity, coinCassette.getCapacity()) - coinCassette.getQuantity();
+
+            if (missing > 0) {
+                coinCassette.add(missing);
+            }
+        });
+        incrementVersion();
+    }
+
+    //takes up to the listed number of coins out of each cassette, for float that a plan sends to the safe.
+    @Override
+    public void unload(Map<String, Integer> counts) {
+        counts.forEach((denomination, count) -> {
+            final CoinCassette coinCassette = getCassette(denomination);
+            coinCassette.tryRemove(Math.min(count, coinCassette.getQuantity()));
+        });
+    }
+
+    //sets each listed cassette to the number of coins it held when a snapshot was taken. Denominations without a cassette are skipped.
+    @Override
+    public void restore(Map<String, Integer> quantities) {
+        quantities.forEach((denomination, quantity) -> {
+            final CoinCassette coinCassette = this.index.get(denomination);
+
+            if (coinCassette != null) {
+                coinCassette.setQuantity(quantity);
+            }
+        });
+        incrementVersion();
+    }
+
+    //returns how many of the coins fitted. The rest, and any coin without a cassette, are left for the safe.
+    @Override
+    public int creditCoins(String denomination, int count) {
+        final CoinCassette coinCassette = this.index.get(denomination);
+
+        if (coinCassette == null) {
+            return 0;
+        }
+
+        final int credited = coinCassette.tryAdd(count);
+        if (credited > 0) {
+            incrementVersion();
+        }
+        return credited;
+    }
+
+    private CoinCassette getCassette(String denomination) {
+        final CoinCassette coinCassette = this.index.get(denomination);
+
+        if (coinCassette == null) {
+            throw new SystemException("Coin denomination not found.");
+        }
+        return coinCassette;
+    }
+
+    @Override
+    public void ejectCoin(String denomination) {
+        if (!getCassette(denomination).tryRemove(1)) {
+            throw new SystemException("Coin cassette empty.");
+        }
+    }
+
+    //either every coin is taken or none are, so that two purchases can never pay out the same coins.
+    @Override
+    public boolean ejectCoins(List<String> coins) {
+        for (int i = 0; i < coins.size(); i++) {
+            if (!getCassette(coins.get(i)).tryRemove(1)) {
+                returnCoins(coins.subList(0, i));
+                return false;
+            }
+        }
+        return true;
+    }
+
+    //puts back coins that were ejected for a purchase that did not go ahead.
+    @Override
+    public void returnCoins(List<String> coins) {
+        for (int i = 0; i < coins.size(); i++) {
+            getCassette(coins.get(i)).add(1);
+        }
+        incrementVersion();
+    }
+
+    @Override
+    public int getCoinCount(String id) {
+        final CoinCassette coinCassette = this.index.get(id);
+
+        return coinCassette == null ? 0 : coinCassette.getQuantity();
+    }
+}
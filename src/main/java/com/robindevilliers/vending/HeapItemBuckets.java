@@ -0,0 +1,139 @@
+package com.robindevilliers.vending;
+
+import com.robindevilliers.vending.model.ItemBucket;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+//Keeps a machine's slots as buckets on the heap, one object per slot.
+public class HeapItemBuckets implements ItemBuckets {
+
+    //these are replaced as a whole when the machine is configured again, so that readers on other threads see one planogram or the other.
+    private volatile List<ItemBucket> buckets;
+
+    private volatile Map<String, ItemBucket> index;
+
+    private volatile IdTable idTable;
+
+    public HeapItemBuckets(List<ItemBucket> buckets) {
+        this.buckets = buckets;
+        this.index = new HashMap<>(Math.max(16, buckets.size() * 2));
+        this.idTable = new IdTable();
+        buckets.forEach(this::index);
+    }
+
+    @Override
+    public void add(ItemBucket itemBucket) {
+        this.buckets.add(itemBucket);
+        index(itemBucket);
+    }
+
+    private void index(ItemBucket itemBucket) {
+        //the first bucket added for an id wins, which is what the old linear scan returned.
+        this.index.putIfAbsent(itemBucket.getId(), itemBucket);
+        this.idTable.add(itemBucket.getId());
+    }
+
+    private ItemBucket getBucket(String itemId) {
+        final ItemBucket itemBucket = this.index.get(itemId);
+
+        if (itemBucket == null) {
+            throw new SystemException("ItemId not found.");
+        }
+        return itemBucket;
+    }
+
+    @Override
+    public List<ItemBucket> getBuckets() {
+        return Collections.unmodifiableList(this.buckets);
+    }
+
+    @Override
+    public boolean isValidItemId(String id){
+        return this.index.containsKey(id);
+    }
+
+    @Override
+    public String findItemId(CharSequence line, int start, int end) {
+        return this.idTable.find(line, start, end);
+    }
+
+    //This is called by the service call.  It only resets the item quantities.  Item definitions come from the catalog, through configure.
+    @Override
+    public void reset() {
+        this.buckets.forEach(bucket-> bucket.setQuantity(bucket.getCapacity()));
+    }
+
+    //replaces the item definitions. A slot that is kept is changed in place, so its stock stays there until the next service,
+    //and new slots start empty.
+    @Override
+    public void configure(List<ItemBucket> definitions) {
+        final List<ItemBucket> buckets = new ArrayList<>(definitions.size());
+        final Map<String, ItemBucket> index = new HashMap<>(Math.max(16, definitions.size() * 2));
+        final IdTable idTable = new IdTable();
+
+        for (ItemBucket definition : definitions) {
+            ItemBucket itemBucket = this.index.get(definition.getId());
+
+            if (itemBucket == null) {
+                itemBucket = new ItemBucket(definition.getId(), definition.getPrice(), 0, definition.getCapacity());
+            } else {
+                itemBucket.setPrice(definition.getPrice());
+                itemBucket.setCapacity(definition.getCapacity());
+            }
+
+            buckets.add(itemBucket);
+            index.putIfAbsent(itemBucket.getId(), itemBucket);
+            idTable.add(itemBucket.getId());
+        }
+
+        this.buckets = buckets;
+        this.index = index;
+        this.idTable = idTable;
+    }
+
+    //tops each listed slot up to the quantity planned for it, as far as its capacity allows. Stock is never taken out here, and
+    //slots that are not listed are left as they are.
+    @Override
+    public void refill(Map<String, Integer> quantities) {
+        quantities.forEach((itemId, quantity) -> {
+            final ItemBucket itemBucket = getBucket(itemId);
+            final int missing = Math.min(quantity, itemBucket.getCapacity()) - itemBucket.getQuantity();
+
+            if (missing > 0) {
+                itemBucket.add(missing);
+            }
+        });
+    }
+
+    @Override
+    public int getPriceForItem(String itemId) {
+        return getBucket(itemId).getPrice();
+    }
+
+    @Override
+    public void ejectItem(String itemId) {
+        if (!getBucket(itemId).tryRemove(1)) {
+            throw new SystemException("Item out of stock.");
+        }
+    }
+
+    //takes one item out of stock, unless another purchase has taken the last one first.
+    @Override
+    public boolean reserveItem(String itemId) {
+        return getBucket(itemId).tryRemove(1);
+    }
+
+    @Override
+    public void releaseItem(String itemId) {
+        getBucket(itemId).add(1);
+    }
+
+    @Override
+    public boolean hasItem(String itemId) {
+        return getBucket(itemId).getQuantity() > 0;
+    }
+}
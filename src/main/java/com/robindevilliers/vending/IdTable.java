@@ -0,0 +1,77 @@
+package com.robindevilliers.vending;
+
+//An open addressed set of ids that can be searched with a region of a command line, so that no String is created for the lookup.
+public class IdTable {
+
+    private String[] ids = new String[16];
+
+    private int size;
+
+    public void add(String id) {
+        if ((this.size + 1) * 2 > this.ids.length) {
+            resize();
+        }
+
+        int slot = id.hashCode() & (this.ids.length - 1);
+
+        while (this.ids[slot] != null) {
+            if (this.ids[slot].equals(id)) {
+                return;
+            }
+            slot = (slot + 1) & (this.ids.length - 1);
+        }
+
+        this.ids[slot] = id;
+        this.size++;
+    }
+
+    //the region is upper cased as it is read, in the same way that commands are upper cased before they are processed.
+    public String find(CharSequence line, int start, int end) {
+        int hash = 0;
+        for (int i = start; i < end; i++) {
+            hash = 31 * hash + Character.toUpperCase(line.charAt(i));
+        }
+
+        int slot = hash & (this.ids.length - 1);
+
+        while (this.ids[slot] != null) {
+            final String id = this.ids[slot];
+
+            if (id.hashCode() == hash && matches(line, start, end, id)) {
+                return id;
+            }
+            slot = (slot + 1) & (this.ids.length - 1);
+        }
+        return null;
+    }
+
+    public static boolean matches(CharSequence line, int start, int end, String expected) {
+        if (end - start != expected.length()) {
+            return false;
+        }
+
+        for (int i = start; i < end; i++) {
+            if (Character.toUpperCase(line.charAt(i)) != expected.charAt(i - start)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    public static boolean startsWith(CharSequence line, int start, int end, String prefix) {
+        return end - start >= prefix.length() && matches(line, start, start + prefix.length(), prefix);
+    }
+
+    private void resize() {
+        final String[] previous = this.ids;
+
+        this.ids = new String[previous.length * 2];
+        this.size = 0;
+
+        for (String id : previous) {
+            if (id != null) {
+                add(id);
+            }
+        }
+    }
+}
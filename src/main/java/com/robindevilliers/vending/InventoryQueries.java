@@ -0,0 +1,102 @@
+package com.robindevilliers.vending;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.stream.IntStream;
+
+//Answers questions about the whole fleet in an inventory store by scanning its columns in parallel.
+//
+//Nothing is locked: each cell is read once as it is, so an answer reflects vending as it was while the scan went past, and
+//vending is never held up by a query.
+public class InventoryQueries {
+
+    private final InventoryStore store;
+
+    //the amount of each denomination of the store, by the store's denomination ordinals.
+    private final int[] amounts;
+
+    //the store's denomination ordinals from greatest amount to smallest, which is the order a change table wants them in.
+    private final int[] ordinalsByAmount;
+
+    public InventoryQueries(InventoryStore store, CoinCalculator coinCalculator) {
+        this.store = store;
+        this.amounts = new int[store.getDenominationCount()];
+
+        for (int i = 0; i < this.amounts.length; i++) {
+            final int ordinal = coinCalculator.getOrdinal(store.getDenominationId(i));
+
+            if (ordinal < 0) {
+                throw new SystemException("Coin denomination not found.");
+            }
+            this.amounts[i] = coinCalculator.getAmount(ordinal);
+        }
+
+        this.ordinalsByAmount = IntStream.range(0, this.amounts.length)
+                .boxed()
+                .sorted((a, b) -> Integer.compare(this.amounts[b], this.amounts[a]))
+                .mapToInt(Integer::intValue)
+                .toArray();
+    }
+
+    //returns the machines, in order, whose stock of the slot is below the threshold.
+    public int[] findMachinesBelow(String slotId, int threshold) {
+        final int slot = getSlot(slotId);
+
+        return IntStream.range(0, this.store.getMachineCount())
+                .parallel()
+                .filter(machine -> this.store.getItemQuantity(machine, slot) < threshold)
+                .toArray();
+    }
+
+    public long getTotalStock(String slotId) {
+        final int slot = getSlot(slotId);
+
+        return IntStream.range(0, this.store.getMachineCount())
+                .parallel()
+                .mapToLong(machine -> this.store.getItemQuantity(machine, slot))
+                .sum();
+    }
+
+    //the number of coins of each denomination held across the fleet.
+    public Map<String, Long> getTotalFloat() {
+        final Map<String, Long> totals = new LinkedHashMap<>();
+
+        for (int denomination = 0; denomination < this.store.getDenominationCount(); denomination++) {
+            final int column = denomination;
+
+            totals.put(this.store.getDenominationId(denomination), IntStream.range(0, this.store.getMachineCount())
+                    .parallel()
+                    .mapToLong(machine -> this.store.getCoinQuantity(machine, column))
+                    .sum());
+        }
+        return totals;
+    }
+
+    //returns the machines, in order, that cannot pay out the amount from the coins in their cassettes.
+    public int[] findMachinesUnableToMakeChange(int amount) {
+        return IntStream.range(0, this.store.getMachineCount())
+                .parallel()
+                .filter(machine -> !canMakeChange(machine, amount))
+                .toArray();
+    }
+
+    private boolean canMakeChange(int machine, int amount) {
+        final int[] amounts = new int[this.ordinalsByAmount.length];
+        final int[] available = new int[this.ordinalsByAmount.length];
+
+        for (int i = 0; i < this.ordinalsByAmount.length; i++) {
+            amounts[i] = this.amounts[this.ordinalsByAmount[i]];
+            available[i] = this.store.getCoinQuantity(machine, this.ordinalsByAmount[i]);
+        }
+        return new ChangeTable(amounts, available, amount).canPay(amount);
+    }
+
+    private int getSlot(String slotId) {
+        final int slot = this.store.getSlotOrdinal(slotId);
+
+        if (slot < 0) {
+            throw new SystemException("ItemId not found.");
+        }
+        return slot;
+    }
+}
@@ -0,0 +1,739 @@
+package com.robindevilliers.vending;
+
+import static java.nio.file.StandardOpenOption.CREATE;
+import static java.nio.file.StandardOpenOption.READ;
+import static java.nio.file.StandardOpenOption.WRITE;
+
+import com.robindevilliers.vending.model.CoinCassette;
+import com.robindevilliers.vending.model.ItemBucket;
+import com.robindevilliers.vending.model.MachineConfig;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+//Keeps the stock, prices and capacities of a whole fleet in a memory mapped file, rather than in an object per slot on the heap.
+//
+//Every machine in a store has the same slots and denominations, which are written once to the header. After the header come
+//five columns of ints, indexed by machine and then by slot or denomination ordinal:
+//
+//    [item prices][item capacities][item quantities][coin capacities][coin quantities]
+//
+//so that a scan of one figure across the fleet reads one run of memory. The file is the state: a store that is opened again
+//after a restart carries on with the stock it had.
+//
+//Slots and denominations are worked on by ordinal, straight on the columns. The ItemBuckets and Cassettes made for a machine
+//hold nothing but its row number and go to the columns for every call, and bucket and cassette objects are only made when
+//something asks for the list of them.
+public class InventoryStore implements Closeable {
+
+    private static final int MAGIC = 0x56494e56;
+
+    private static final int VERSION = 1;
+
+    private static final int LOCK_STRIPES = 64;
+
+    private final FileChannel channel;
+
+    private final MappedByteBuffer buffer;
+
+    private final int machineCount;
+
+    private final String[] slotIds;
+
+    private final String[] denominationIds;
+
+    private final boolean created;
+
+    private final int itemPrices;
+
+    private final int itemCapacities;
+
+    private final int itemQuantities;
+
+    private final int coinCapacities;
+
+    private final int coinQuantities;
+
+    //the ordinals of the slots and denominations by id, and the slot ids for looking up regions of a command line. These
+    //are the same for every machine, so one copy serves the whole store.
+    private final Map<String, Integer> slotOrdinals = new HashMap<>();
+
+    private final Map<String, Integer> denominationOrdinals = new HashMap<>();
+
+    private final IdTable slotTable = new IdTable();
+
+    //a mapped buffer has no compare and set, so changes to a machine's rows are made under one of these locks, chosen by machine.
+    private final Object[] locks = new Object[LOCK_STRIPES];
+
+    public InventoryStore(Path file, int machineCount, List<String> slotIds, List<String> denominationIds) throws IOException {
+        this.machineCount = machineCount;
+        this.slotIds = slotIds.toArray(new String[0]);
+        this.denominationIds = denominationIds.toArray(new String[0]);
+
+        for (int i = 0; i < this.slotIds.length; i++) {
+            this.slotOrdinals.putIfAbsent(this.slotIds[i], i);
+            this.slotTable.add(this.slotIds[i]);
+        }
+        for (int i = 0; i < this.denominationIds.length; i++) {
+            this.denominationOrdinals.putIfAbsent(this.denominationIds[i], i);
+        }
+        for (int i = 0; i < LOCK_STRIPES; i++) {
+            this.locks[i] = new Object();
+        }
+
+        int headerSize = 20;
+        for (String id : slotIds) {
+            headerSize += 2 + id.length() * 2;
+        }
+        for (String id : denominationIds) {
+            headerSize += 2 + id.length() * 2;
+        }
+        headerSize = (headerSize + 7) & ~7;
+
+        //a mapped buffer is indexed by int, so the columns are laid out in long and a fleet that does not fit is refused.
+        final long itemColumn = (long) machineCount * this.slotIds.length * 4;
+        final long coinColumn = (long) machineCount * this.denominationIds.length * 4;
+        final long size = headerSize + itemColumn * 3 + coinColumn * 2;
+
+        if (machineCount < 0 || size > Integer.MAX_VALUE) {
+            throw new SystemException("Inventory store too large.");
+        }
+
+        this.itemPrices = headerSize;
+        this.itemCapacities = (int) (this.itemPrices + itemColumn);
+        this.itemQuantities = (int) (this.itemCapacities + itemColumn);
+        this.coinCapacities = (int) (this.itemQuantities + itemColumn);
+        this.coinQuantities = (int) (this.coinCapacities + coinColumn);
+
+        this.created = !Files.exists(file) || Files.size(file) == 0;
+        this.channel = FileChannel.open(file, CREATE, READ, WRITE);
+        this.buffer = this.channel.map(FileChannel.MapMode.READ_WRITE, 0, size);
+
+        if (this.created) {
+            writeHeader();
+        } else {
+            checkHeader(size);
+        }
+    }
+
+    private void writeHeader() {
+        this.buffer.putInt(0, MAGIC);
+        this.buffer.putInt(4, VERSION);
+        this.buffer.putInt(8, this.machineCount);
+        this.buffer.putInt(12, this.slotIds.length);
+        this.buffer.putInt(16, this.denominationIds.length);
+
+        int position = 20;
+        for (String id : this.slotIds) {
+            position = putString(position, id);
+        }
+        for (String id : this.denominationIds) {
+            position = putString(position, id);
+        }
+    }
+
+    //the layout is worked out from the arguments, so a file written for a different fleet is refused rather than misread.
+    private void checkHeader(long size) throws IOException {
+        boolean matches = this.channel.size() >= size
+                && this.buffer.getInt(0) == MAGIC
+                && this.buffer.getInt(4) == VERSION
+                && this.buffer.getInt(8) == this.machineCount
+                && this.buffer.getInt(12) == this.slotIds.length
+                && this.buffer.getInt(16) == this.denominationIds.length;
+
+        int position = 20;
+        for (int i = 0; matches && i < this.slotIds.length + this.denominationIds.length; i++) {
+            final String id = i < this.slotIds.length ? this.slotIds[i] : this.denominationIds[i - this.slotIds.length];
+            matches = getString(position).equals(id);
+            position += 2 + id.length() * 2;
+        }
+
+        if (!matches) {
+            this.channel.close();
+            throw new SystemException("Inventory store layout does not match.");
+        }
+    }
+
+    private int putString(int position, String value) {
+        this.buffer.putShort(position, (short) value.length());
+        for (int i = 0; i < value.length(); i++) {
+            this.buffer.putChar(position + 2 + i * 2, value.charAt(i));
+        }
+        return position + 2 + value.length() * 2;
+    }
+
+    private String getString(int position) {
+        final char[] value = new char[this.buffer.getShort(position)];
+        for (int i = 0; i < value.length; i++) {
+            value[i] = this.buffer.getChar(position + 2 + i * 2);
+        }
+        return new String(value);
+    }
+
+    //true when the file did not exist before, so that the caller knows to load the fleet's configs into it.
+    public boolean isCreated() {
+        return this.created;
+    }
+
+    public int getMachineCount() {
+        return this.machineCount;
+    }
+
+    public int getSlotCount() {
+        return this.slotIds.length;
+    }
+
+    public int getDenominationCount() {
+        return this.denominationIds.length;
+    }
+
+    public String getSlotId(int slot) {
+        return this.slotIds[slot];
+    }
+
+    public String getDenominationId(int denomination) {
+        return this.denominationIds[denomination];
+    }
+
+    //returns -1 when the store has no column for the slot.
+    public int getSlotOrdinal(String slotId) {
+        final Integer slot = this.slotOrdinals.get(slotId);
+        return slot == null ? -1 : slot;
+    }
+
+    //returns -1 when the store has no column for the denomination.
+    public int getDenominationOrdinal(String denominationId) {
+        final Integer denomination = this.denominationOrdinals.get(denominationId);
+        return denomination == null ? -1 : denomination;
+    }
+
+    private Object lock(int machine) {
+        return this.locks[machine & (LOCK_STRIPES - 1)];
+    }
+
+    private int itemCell(int machine, int slot) {
+        if (machine < 0 || machine >= this.machineCount || slot < 0 || slot >= this.slotIds.length) {
+            throw new SystemException("Slot not in inventory store.");
+        }
+        return (machine * this.slotIds.length + slot) * 4;
+    }
+
+    private int coinCell(int machine, int denomination) {
+        if (machine < 0 || machine >= this.machineCount || denomination < 0 || denomination >= this.denominationIds.length) {
+            throw new SystemException("Denomination not in inventory store.");
+        }
+        return (machine * this.denominationIds.length + denomination) * 4;
+    }
+
+    //figures are read without locking. A change that depends on one is made again under the lock, so a reader that is a
+    //moment behind can only be told no.
+    public int getItemPrice(int machine, int slot) {
+        return this.buffer.getInt(this.itemPrices + itemCell(machine, slot));
+    }
+
+    public int getItemCapacity(int machine, int slot) {
+        return this.buffer.getInt(this.itemCapacities + itemCell(machine, slot));
+    }
+
+    public int getItemQuantity(int machine, int slot) {
+        return this.buffer.getInt(this.itemQuantities + itemCell(machine, slot));
+    }
+
+    public int getCoinCapacity(int machine, int denomination) {
+        return this.buffer.getInt(this.coinCapacities + coinCell(machine, denomination));
+    }
+
+    public int getCoinQuantity(int machine, int denomination) {
+        return this.buffer.getInt(this.coinQuantities + coinCell(machine, denomination));
+    }
+
+    public void setItemPrice(int machine, int slot, int price) {
+        final int cell = itemCell(machine, slot);
+        synchronized (lock(machine)) {
+            this.buffer.putInt(this.itemPrices + cell, price);
+        }
+    }
+
+    public void setItemCapacity(int machine, int slot, int capacity) {
+        final int cell = itemCell(machine, slot);
+        synchronized (lock(machine)) {
+            this.buffer.putInt(this.itemCapacities + cell, capacity);
+        }
+    }
+
+    public void setItemQuantity(int machine, int slot, int quantity) {
+        final int cell = itemCell(machine, slot);
+        synchronized (lock(machine)) {
+            this.buffer.putInt(this.itemQuantities + cell, quantity);
+        }
+    }
+
+    public boolean tryRemoveItems(int machine, int slot, int count) {
+        final int cell = itemCell(machine, slot);
+        synchronized (lock(machine)) {
+            final int current = this.buffer.getInt(this.itemQuantities + cell);
+
+            if (current < count) {
+                return false;
+            }
+            this.buffer.putInt(this.itemQuantities + cell, current - count);
+            return true;
+        }
+    }
+
+    public void addItems(int machine, int slot, int count) {
+        final int cell = itemCell(machine, slot);
+        synchronized (lock(machine)) {
+            this.buffer.putInt(this.itemQuantities + cell, this.buffer.getInt(this.itemQuantities + cell) + count);
+        }
+    }
+
+    //raises the quantity to the target, as far as the capacity allows, and never lowers it.
+    public void topUpItems(int machine, int slot, int target) {
+        final int cell = itemCell(machine, slot);
+        synchronized (lock(machine)) {
+            final int quantity = Math.min(target, this.buffer.getInt(this.itemCapacities + cell));
+
+            if (quantity > this.buffer.getInt(this.itemQuantities + cell)) {
+                this.buffer.putInt(this.itemQuantities + cell, quantity);
+            }
+        }
+    }
+
+    public void setCoinCapacity(int machine, int denomination, int capacity) {
+        final int cell = coinCell(machine, denomination);
+        synchronized (lock(machine)) {
+            this.buffer.putInt(this.coinCapacities + cell, capacity);
+        }
+    }
+
+    public void setCoinQuantity(int machine, int denomination, int quantity) {
+        final int cell = coinCell(machine, denomination);
+        synchronized (lock(machine)) {
+            this.buffer.putInt(this.coinQuantities + cell, quantity);
+        }
+    }
+
+    public boolean tryRemoveCoins(int machine, int denomination, int count) {
+        final int cell = coinCell(machine, denomination);
+        synchronized (lock(machine)) {
+            final int current = this.buffer.getInt(this.coinQuantities + cell);
+
+            if (current < count) {
+                return false;
+            }
+            this.buffer.putInt(this.coinQuantities + cell, current - count);
+            return true;
+        }
+    }
+
+    public void addCoins(int machine, int denomination, int count) {
+        final int cell = coinCell(machine, denomination);
+        synchronized (lock(machine)) {
+            this.buffer.putInt(this.coinQuantities + cell, this.buffer.getInt(this.coinQuantities + cell) + count);
+        }
+    }
+
+    //adds as many of the coins as there is room for, and returns how many that was.
+    public int tryAddCoins(int machine, int denomination, int count) {
+        final int cell = coinCell(machine, denomination);
+        synchronized (lock(machine)) {
+            final int current = this.buffer.getInt(this.coinQuantities + cell);
+            final int added = Math.max(0, Math.min(count, this.buffer.getInt(this.coinCapacities + cell) - current));
+            this.buffer.putInt(this.coinQuantities + cell, current + added);
+            return added;
+        }
+    }
+
+    //raises the quantity to the target, as far as the capacity allows, and never lowers it.
+    public void topUpCoins(int machine, int denomination, int target) {
+        final int cell = coinCell(machine, denomination);
+        synchronized (lock(machine)) {
+            final int quantity = Math.min(target, this.buffer.getInt(this.coinCapacities + cell));
+
+            if (quantity > this.buffer.getInt(this.coinQuantities + cell)) {
+                this.buffer.putInt(this.coinQuantities + cell, quantity);
+            }
+        }
+    }
+
+    //takes up to the count out, and never below empty.
+    public void unloadCoins(int machine, int denomination, int count) {
+        final int cell = coinCell(machine, denomination);
+        synchronized (lock(machine)) {
+            final int current = this.buffer.getInt(this.coinQuantities + cell);
+            this.buffer.putInt(this.coinQuantities + cell, current - Math.min(count, current));
+        }
+    }
+
+    //fills a machine's rows from its config. Slots and cassettes are matched by id, and any that the store has no column for are refused.
+    public void load(int machine, MachineConfig config) {
+        for (ItemBucket item : config.getItems()) {
+            final int cell = itemCell(machine, getSlotOrdinal(item.getId()));
+            this.buffer.putInt(this.itemPrices + cell, item.getPrice());
+            this.buffer.putInt(this.itemCapacities + cell, item.getCapacity());
+            this.buffer.putInt(this.itemQuantities + cell, item.getQuantity());
+        }
+
+        for (CoinCassette cassette : config.getCassettes()) {
+            final int cell = coinCell(machine, getDenominationOrdinal(cassette.getId()));
+            this.buffer.putInt(this.coinCapacities + cell, cassette.getCapacity());
+            this.buffer.putInt(this.coinQuantities + cell, cassette.getQuantity());
+        }
+    }
+
+    //these hold only the machine's row number, so they can be made whenever they are needed rather than kept.
+    public ItemBuckets createItemBuckets(int machine) {
+        checkMachine(machine);
+        return new MappedItemBuckets(machine);
+    }
+
+    public Cassettes createCassettes(int machine) {
+        checkMachine(machine);
+        return new MappedCassettes(machine);
+    }
+
+    private void checkMachine(int machine) {
+        if (machine < 0 || machine >= this.machineCount) {
+            throw new SystemException("Machine not in inventory store.");
+        }
+    }
+
+    public void force() {
+        this.buffer.force();
+    }
+
+    @Override
+    public void close() throws IOException {
+        this.buffer.force();
+        this.channel.close();
+    }
+
+    private class MappedItemBuckets implements ItemBuckets {
+
+        private final int machine;
+
+        MappedItemBuckets(int machine) {
+            this.machine = machine;
+        }
+
+        private int getSlot(String itemId) {
+            final Integer slot = slotOrdinals.get(itemId);
+
+            if (slot == null) {
+                throw new SystemException("ItemId not found.");
+            }
+            return slot;
+        }
+
+        //a store has a column for every slot, so a bucket that is added only sets its slot's figures.
+        @Override
+        public void add(ItemBucket itemBucket) {
+            final int slot = getSlot(itemBucket.getId());
+            setItemPrice(this.machine, slot, itemBucket.getPrice());
+            setItemCapacity(this.machine, slot, itemBucket.getCapacity());
+            setItemQuantity(this.machine, slot, itemBucket.getQuantity());
+        }
+
+        //the buckets are views made for the caller, so keeping hold of them costs nothing when they are not asked for.
+        @Override
+        public List<ItemBucket> getBuckets() {
+            final List<ItemBucket> buckets = new ArrayList<>(slotIds.length);
+            for (int slot = 0; slot < slotIds.length; slot++) {
+                buckets.add(new MappedItemBucket(this.machine, slot));
+            }
+            return Collections.unmodifiableList(buckets);
+        }
+
+        @Override
+        public boolean isValidItemId(String id) {
+            return slotOrdinals.containsKey(id);
+        }
+
+        @Override
+        public String findItemId(CharSequence line, int start, int end) {
+            return slotTable.find(line, start, end);
+        }
+
+        @Override
+        public void reset() {
+            for (int slot = 0; slot < slotIds.length; slot++) {
+                setItemQuantity(this.machine, slot, getItemCapacity(this.machine, slot));
+            }
+        }
+
+        //the slots are fixed by the store, so only the prices and capacities of the listed ones change.
+        @Override
+        public void configure(List<ItemBucket> definitions) {
+            for (ItemBucket definition : definitions) {
+                final int slot = getSlotOrdinal(definition.getId());
+                itemCell(this.machine, slot);
+                setItemPrice(this.machine, slot, definition.getPrice());
+                setItemCapacity(this.machine, slot, definition.getCapacity());
+            }
+        }
+
+        @Override
+        public void refill(Map<String, Integer> quantities) {
+            quantities.forEach((itemId, quantity) -> topUpItems(this.machine, getSlot(itemId), quantity));
+        }
+
+        @Override
+        public int getPriceForItem(String itemId) {
+            return getItemPrice(this.machine, getSlot(itemId));
+        }
+
+        @Override
+        public void ejectItem(String itemId) {
+            if (!tryRemoveItems(this.machine, getSlot(itemId), 1)) {
+                throw new SystemException("Item out of stock.");
+            }
+        }
+
+        @Override
+        public boolean reserveItem(String itemId) {
+            return tryRemoveItems(this.machine, getSlot(itemId), 1);
+        }
+
+        @Override
+        public void releaseItem(String itemId) {
+            addItems(this.machine, getSlot(itemId), 1);
+        }
+
+        @Override
+        public boolean hasItem(String itemId) {
+            return getItemQuantity(this.machine, getSlot(itemId)) > 0;
+        }
+    }
+
+    private class MappedCassettes extends Cassettes {
+
+        private final int machine;
+
+        MappedCassettes(int machine) {
+            this.machine = machine;
+        }
+
+        private int getDenomination(String denomination) {
+            final Integer ordinal = denominationOrdinals.get(denomination);
+
+            if (ordinal == null) {
+                throw new SystemException("Coin denomination not found.");
+            }
+            return ordinal;
+        }
+
+        @Override
+        public void add(CoinCassette coinCassette) {
+            final int denomination = getDenomination(coinCassette.getId());
+            setCoinCapacity(this.machine, denomination, coinCassette.getCapacity());
+            setCoinQuantity(this.machine, denomination, coinCassette.getQuantity());
+            incrementVersion();
+        }
+
+        @Override
+        public List<CoinCassette> getCassettes() {
+            final List<CoinCassette> cassettes = new ArrayList<>(denominationIds.length);
+            for (int denomination = 0; denomination < denominationIds.length; denomination++) {
+                cassettes.add(new MappedCoinCassette(this.machine, denomination));
+            }
+            return Collections.unmodifiableList(cassettes);
+        }
+
+        @Override
+        public void reset() {
+            for (int denomination = 0; denomination < denominationIds.length; denomination++) {
+                setCoinQuantity(this.machine, denomination, getCoinCapacity(this.machine, denomination));
+            }
+            incrementVersion();
+        }
+
+        @Override
+        public void configure(List<CoinCassette> definitions) {
+            for (CoinCassette definition : definitions) {
+                setCoinCapacity(this.machine, getDenomination(definition.getId()), definition.getCapacity());
+            }
+        }
+
+        @Override
+        public void refill(Map<String, Integer> quantities) {
+            quantities.forEach((denomination, quantity) -> topUpCoins(this.machine, getDenomination(denomination), quantity));
+            incrementVersion();
+        }
+
+        @Override
+        public void unload(Map<String, Integer> counts) {
+            counts.forEach((denomination, count) -> unloadCoins(this.machine, getDenomination(denomination), count));
+        }
+
+        @Override
+        public void restore(Map<String, Integer> quantities) {
+            quantities.forEach((denomination, quantity) -> {
+                final int ordinal = getDenominationOrdinal(denomination);
+
+                if (ordinal >= 0) {
+                    setCoinQuantity(this.machine, ordinal, quantity);
+                }
+            });
+            incrementVersion();
+        }
+
+        @Override
+        public int creditCoins(String denomination, int count) {
+            final int ordinal = getDenominationOrdinal(denomination);
+
+            if (ordinal < 0) {
+                return 0;
+            }
+
+            final int credited = tryAddCoins(this.machine, ordinal, count);
+            if (credited > 0) {
+                incrementVersion();
+            }
+            return credited;
+        }
+
+        @Override
+        public void ejectCoin(String denomination) {
+            if (!tryRemoveCoins(this.machine, getDenomination(denomination), 1)) {
+                throw new SystemException("Coin cassette empty.");
+            }
+        }
+
+        @Override
+        public boolean ejectCoins(List<String> coins) {
+            for (int i = 0; i < coins.size(); i++) {
+                if (!tryRemoveCoins(this.machine, getDenomination(coins.get(i)), 1)) {
+                    returnCoins(coins.subList(0, i));
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        @Override
+        public void returnCoins(List<String> coins) {
+            for (int i = 0; i < coins.size(); i++) {
+                addCoins(this.machine, getDenomination(coins.get(i)), 1);
+            }
+            incrementVersion();
+        }
+
+        @Override
+        public int getCoinCount(String id) {
+            final int ordinal = getDenominationOrdinal(id);
+            return ordinal < 0 ? 0 : getCoinQuantity(this.machine, ordinal);
+        }
+    }
+
+    //a view of one slot of one machine, for code that reads or sets buckets one at a time. It keeps nothing of its own.
+    private class MappedItemBucket extends ItemBucket {
+
+        private final int machine;
+
+        private final int slot;
+
+        MappedItemBucket(int machine, int slot) {
+            super(slotIds[slot], 0, 0, 0);
+            this.machine = machine;
+            this.slot = slot;
+        }
+
+        @Override
+        public int getPrice() {
+            return getItemPrice(this.machine, this.slot);
+        }
+
+        @Override
+        public void setPrice(int price) {
+            setItemPrice(this.machine, this.slot, price);
+        }
+
+        @Override
+        public int getCapacity() {
+            return getItemCapacity(this.machine, this.slot);
+        }
+
+        @Override
+        public void setCapacity(int capacity) {
+            setItemCapacity(this.machine, this.slot, capacity);
+        }
+
+        @Override
+        public int getQuantity() {
+            return getItemQuantity(this.machine, this.slot);
+        }
+
+        @Override
+        public void setQuantity(int quantity) {
+            setItemQuantity(this.machine, this.slot, quantity);
+        }
+
+        @Override
+        public boolean tryRemove(int count) {
+            return tryRemoveItems(this.machine, this.slot, count);
+        }
+
+        @Override
+        public void add(int count) {
+            addItems(this.machine, this.slot, count);
+        }
+    }
+
+    private class MappedCoinCassette extends CoinCassette {
+
+        private final int machine;
+
+        private final int denomination;
+
+        MappedCoinCassette(int machine, int denomination) {
+            super(denominationIds[denomination], 0, 0);
+            this.machine = machine;
+            this.denomination = denomination;
+        }
+
+        @Override
+        public int getCapacity() {
+            return getCoinCapacity(this.machine, this.denomination);
+        }
+
+        @Override
+        public void setCapacity(int capacity) {
+            setCoinCapacity(this.machine, this.denomination, capacity);
+        }
+
+        @Override
+        public int getQuantity() {
+            return getCoinQuantity(this.machine, this.denomination);
+        }
+
+        @Override
+        public void setQuantity(int quantity) {
+            setCoinQuantity(this.machine, this.denomination, quantity);
+        }
+
+        @Override
+        public boolean tryRemove(int count) {
+            return tryRemoveCoins(this.machine, this.denomination, count);
+        }
+
+        @Override
+        public void add(int count) {
+            addCoins(this.machine, this.denomination, count);
+        }
+
+        @Override
+        public int tryAdd(int count) {
+            return tryAddCoins(this.machine, this.denomination, count);
+        }
+    }
+}
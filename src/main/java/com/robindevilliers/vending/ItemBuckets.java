@@ -3,53 +3,37 @@ package com.robindevilliers.vending;
 import com.robindevilliers.vending.model.ItemBucket;
 
 import java.util.List;
+import java.util.Map;
 
-public class ItemBuckets {
+//The slots of one machine. HeapItemBuckets keeps them as objects on the heap, and an InventoryStore keeps them in the columns
+//of a mapped file, so a method added here has to be written for both.
+public interface ItemBuckets {
 
-    private final List<ItemBucket> buckets;
+    void add(ItemBucket itemBucket);
 
-    public ItemBuckets(List<ItemBucket> buckets) {
-        this.buckets = buckets;
-    }
+    List<ItemBucket> getBuckets();
 
-    public void add(ItemBucket itemBucket) {
-        this.buckets.add(itemBucket);
-    }
+    boolean isValidItemId(String id);
 
-    public boolean isValidItemId(String id){
-        return this.buckets.stream().anyMatch(item -> item.getId().equals(id));
-    }
+    String findItemId(CharSequence line, int start, int end);
 
-    //This is called by the service call.  It only resets the item quantities.  There is no way to specifying item definitions via the CLI.
-    public void reset() {
-        this.buckets.forEach(bucket-> bucket.setQuantity(20));
-    }
+    //This is called by the service call.  It only resets the item quantities.  Item definitions come from the catalog, through configure.
+    void reset();
 
-    public int getPriceForItem(String itemId) {
-        final ItemBucket itemBucket = this.buckets.stream()
-                .filter(item -> item.getId().equals(itemId))
-                .findAny()
-                .orElseThrow(() -> new SystemException("ItemId not found."));
+    //replaces the item definitions. A slot that is kept is changed in place, so its stock stays there until the next service.
+    void configure(List<ItemBucket> definitions);
 
-        return itemBucket.getPrice();
-    }
+    //tops each listed slot up to the quantity planned for it, as far as its capacity allows. Stock is never taken out here.
+    void refill(Map<String, Integer> quantities);
 
-    public void ejectItem(String itemId) {
-        final ItemBucket itemBucket = this.buckets.stream()
-                .filter(item -> item.getId().equals(itemId))
-                .findAny()
-                .orElseThrow(() -> new SystemException("ItemId not found."));
+    int getPriceForItem(String itemId);
 
-        itemBucket.setQuantity( itemBucket.getQuantity() - 1);
+    void ejectItem(String itemId);
 
-    }
+    //takes one item out of stock, unless another purchase has taken the last one first.
+    boolean reserveItem(String itemId);
 
-    public boolean hasItem(String itemId) {
-        final ItemBucket itemBucket = this.buckets.stream()
-                .filter(item -> item.getId().equals(itemId))
-                .findAny()
-                .orElseThrow(() -> new SystemException("ItemId not found."));
+    void releaseItem(String itemId);
 
-        return itemBucket.getQuantity() > 0;
-    }
+    boolean hasItem(String itemId);
 }
@@ -0,0 +1,255 @@
+package com.robindevilliers.vending;
+
+import static java.nio.file.StandardCopyOption.ATOMIC_MOVE;
+import static java.nio.file.StandardCopyOption.REPLACE_EXISTING;
+import static java.nio.file.StandardOpenOption.CREATE;
+import static java.nio.file.StandardOpenOption.READ;
+import static java.nio.file.StandardOpenOption.WRITE;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.zip.CRC32;
+
+//An append only journal of every change a VendingMachine makes, written through a memory mapped file.
+//
+//Each record is [length][generation][payload][crc], with the payload being a MachineState record.  The file starts with the generation of the snapshot that its records follow,
+//so that records left over from before the last snapshot are never replayed.  The journal assumes that the machine it listens to
+//is driven by one thread at a time, as it is in a Fleet, because a snapshot must not be taken half way through a command.
+public class Journal implements MachineListener, Closeable {
+
+    private static final int HEADER_SIZE = 8;
+
+    private static final int RECORD_OVERHEAD = 12;
+
+    private static final int SNAPSHOT_MAGIC = 0x56454e44;
+
+    private final Path snapshotFile;
+
+    private final int groupCommitSize;
+
+    private final MachineState state;
+
+    private final FileChannel channel;
+
+    private final MappedByteBuffer buffer;
+
+    private final ByteBuffer record = ByteBuffer.allocate(64 * 1024);
+
+    private final CRC32 crc = new CRC32();
+
+    private int generation;
+
+    private int uncommittedLines;
+
+    public Journal(Path directory, int segmentSize, int groupCommitSize, ItemBuckets itemBuckets, Cassettes cassettes, CoinPurse coinPurse, Sessions sessions) throws IOException {
+        this.snapshotFile = directory.resolve("snapshot.bin");
+        this.groupCommitSize = groupCommitSize;
+        this.state = new MachineState(itemBuckets, cassettes, coinPurse, sessions);
+
+        Files.createDirectories(directory);
+        this.channel = FileChannel.open(directory.resolve("journal.bin"), CREATE, READ, WRITE);
+        this.buffer = this.channel.map(FileChannel.MapMode.READ_WRITE, 0, Math.max(segmentSize, this.channel.size()));
+        this.generation = (int) this.buffer.getLong(0);
+        this.buffer.position(HEADER_SIZE);
+    }
+
+    //loads the last snapshot, replays the records written since, and then starts a fresh generation from the recovered state.
+    public synchronized int recover() {
+        final int snapshotGeneration = readSnapshot();
+
+        int replayed = 0;
+        if (snapshotGeneration == this.generation) {
+            while (replayRecord()) {
+                replayed++;
+            }
+        }
+
+        snapshot();
+        return replayed;
+    }
+
+    public synchronized void snapshot() {
+        final int nextGeneration = this.generation + 1;
+
+        writeSnapshot(nextGeneration);
+
+        this.generation = nextGeneration;
+        this.buffer.putLong(0, nextGeneration);
+        this.buffer.position(HEADER_SIZE);
+        this.buffer.force();
+        this.uncommittedLines = 0;
+    }
+
+    public synchronized void sync() {
+        this.buffer.force();
+        this.uncommittedLines = 0;
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        this.buffer.force();
+        this.channel.close();
+    }
+
+    @Override
+    public synchronized void coinAccepted(long sessionId, String denomination) {
+        startRecord();
+        MachineState.putCoinAccepted(this.record, sessionId, denomination);
+        append();
+    }
+
+    @Override
+    public synchronized void coinsRefunded(long sessionId, List<String> coins) {
+        startRecord();
+        MachineState.putCoinsRefunded(this.record, sessionId);
+        append();
+    }
+
+    @Override
+    public synchronized void itemVended(long sessionId, String itemId, List<String> change, List<String> credited) {
+        startRecord();
+        MachineState.putItemVended(this.record, sessionId, itemId, change, credited);
+        append();
+    }
+
+    @Override
+    public synchronized void serviced() {
+        startRecord();
+        MachineState.putServiced(this.record);
+        append();
+    }
+
+    @Override
+    public synchronized void sessionOpened(long sessionId) {
+        startRecord();
+        MachineState.putSessionOpened(this.record, sessionId);
+        append();
+    }
+
+    @Override
+    public synchronized void sessionClosed(long sessionId) {
+        startRecord();
+        MachineState.putSessionClosed(this.record, sessionId);
+        append();
+    }
+
+    //several lines share a single force of the mapped file, which is where the journal spends most of its time.
+    @Override
+    public synchronized void lineProcessed() {
+        if (++this.uncommittedLines >= this.groupCommitSize) {
+            sync();
+        }
+
+        if (this.buffer.position() > this.buffer.capacity() / 4 * 3) {
+            snapshot();
+        }
+    }
+
+    private void startRecord() {
+        this.record.clear();
+        this.record.putInt(this.generation);
+    }
+
+    private void append() {
+        final int length = this.record.position();
+
+        if (this.buffer.position() + length + RECORD_OVERHEAD > this.buffer.capacity()) {
+            //the change has already been made, so the snapshot includes it and the record is not needed.
+            snapshot();
+            return;
+        }
+
+        this.crc.reset();
+        this.crc.update(this.record.array(), 0, length);
+
+        this.buffer.putInt(length - 4);
+        this.buffer.put(this.record.array(), 0, length);
+        this.buffer.putInt((int) this.crc.getValue());
+    }
+
+    private boolean replayRecord() {
+        final int start = this.buffer.position();
+
+        if (start + RECORD_OVERHEAD > this.buffer.capacity()) {
+            return false;
+        }
+
+        final int length = this.buffer.getInt(start) + 4;
+
+        if (length <= 4 || start + length + RECORD_OVERHEAD > this.buffer.capacity() || this.buffer.getInt(start + 4) != this.generation) {
+            return false;
+        }
+
+        final ByteBuffer payload = this.buffer.duplicate();
+        payload.position(start + 4);
+        payload.limit(start + 4 + length);
+
+        this.crc.reset();
+        this.crc.update(payload);
+
+        if ((int) this.crc.getValue() != this.buffer.getInt(start + 4 + length)) {
+            return false;
+        }
+
+        this.buffer.position(start + 8);
+        this.state.apply(this.buffer);
+        this.buffer.position(start + 4 + length + 4);
+        return true;
+    }
+
+    private void writeSnapshot(int generation) {
+        final Path temporaryFile = this.snapshotFile.resolveSibling("snapshot.tmp");
+
+        try (FileChannel file = FileChannel.open(temporaryFile, CREATE, WRITE);
+             DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Channels.newOutputStream(file)))) {
+            file.truncate(0);
+
+            out.writeInt(SNAPSHOT_MAGIC);
+            out.writeInt(generation);
+
+            this.state.writeSnapshot(out);
+
+            out.flush();
+            file.force(true);
+        } catch (IOException e) {
+            throw new SystemException("Unable to write snapshot.", e);
+        }
+
+        try {
+            Files.move(temporaryFile, this.snapshotFile, ATOMIC_MOVE, REPLACE_EXISTING);
+        } catch (IOException e) {
+            throw new SystemException("Unable to write snapshot.", e);
+        }
+    }
+
+    //returns the generation of the snapshot, or 0 when there is no snapshot yet.
+    private int readSnapshot() {
+        if (!Files.exists(this.snapshotFile)) {
+            return 0;
+        }
+
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(this.snapshotFile)))) {
+            if (in.readInt() != SNAPSHOT_MAGIC) {
+                throw new SystemException("Invalid snapshot.");
+            }
+
+            final int generation = in.readInt();
+
+            this.state.readSnapshot(in);
+            return generation;
+        } catch (IOException e) {
+            throw new SystemException("Unable to read snapshot.", e);
+        }
+    }
+}
@@ -0,0 +1,118 @@
+package com.robindevilliers.vending;
+
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.stream.IntStream;
+
+//Keeps, for each slot of an inventory store, the set of machines whose stock of it is below a threshold, so that asking for
+//them costs no more than reading the answer.
+//
+//Each set is a bitmap with a bit per machine, and bits are set and cleared with compare and set, so machines can report
+//their own changes from any thread. The index is built with one parallel scan and then kept up to date by a listener on
+//each machine. Stock that is changed without the machine knowing, such as by a restock plan, is picked up by refresh.
+public class LowStockIndex {
+
+    private final InventoryStore store;
+
+    private final int threshold;
+
+    private final AtomicLongArray[] bitmaps;
+
+    public LowStockIndex(InventoryStore store, int threshold) {
+        this.store = store;
+        this.threshold = threshold;
+        this.bitmaps = new AtomicLongArray[store.getSlotCount()];
+
+        for (int slot = 0; slot < this.bitmaps.length; slot++) {
+            this.bitmaps[slot] = new AtomicLongArray((store.getMachineCount() + 63) / 64);
+        }
+
+        IntStream.range(0, store.getMachineCount()).parallel().forEach(this::refresh);
+    }
+
+    public int getThreshold() {
+        return this.threshold;
+    }
+
+    public void refresh(int machine) {
+        for (int slot = 0; slot < this.bitmaps.length; slot++) {
+            refresh(machine, slot);
+        }
+    }
+
+    private void refresh(int machine, int slot) {
+        final AtomicLongArray bitmap = this.bitmaps[slot];
+        final int word = machine >>> 6;
+        final long bit = 1L << machine;
+        final boolean low = this.store.getItemQuantity(machine, slot) < this.threshold;
+
+        while (true) {
+            final long current = bitmap.get(word);
+            final long next = low ? current | bit : current & ~bit;
+
+            if (current == next || bitmap.compareAndSet(word, current, next)) {
+                return;
+            }
+        }
+    }
+
+    public boolean isLow(int machine, String slotId) {
+        return (this.bitmaps[getSlot(slotId)].get(machine >>> 6) & (1L << machine)) != 0;
+    }
+
+    public int count(String slotId) {
+        final AtomicLongArray bitmap = this.bitmaps[getSlot(slotId)];
+
+        int count = 0;
+        for (int word = 0; word < bitmap.length(); word++) {
+            count += Long.bitCount(bitmap.get(word));
+        }
+        return count;
+    }
+
+    //returns the machines, in order, that were low on the slot when their word of the bitmap was read.
+    public int[] findMachines(String slotId) {
+        final AtomicLongArray bitmap = this.bitmaps[getSlot(slotId)];
+
+        return IntStream.range(0, bitmap.length())
+                .flatMap(word -> {
+                    long bits = bitmap.get(word);
+                    final int[] machines = new int[Long.bitCount(bits)];
+
+                    for (int i = 0; i < machines.length; i++) {
+                        machines[i] = word * 64 + Long.numberOfTrailingZeros(bits);
+                        bits &= bits - 1;
+                    }
+                    return IntStream.of(machines);
+                })
+                .toArray();
+    }
+
+    //a listener to add to the machine whose stock is held in the given row of the store.
+    public MachineListener listener(int machine) {
+        return new MachineListener() {
+            @Override
+            public void itemVended(long sessionId, String itemId, List<String> change, List<String> credited) {
+                final int slot = store.getSlotOrdinal(itemId);
+
+                if (slot >= 0) {
+                    refresh(machine, slot);
+                }
+            }
+
+            @Override
+            public void serviced() {
+                refresh(machine);
+            }
+        };
+    }
+
+    private int getSlot(String slotId) {
+        final int slot = this.store.getSlotOrdinal(slotId);
+
+        if (slot < 0) {
+            throw new SystemException("ItemId not found.");
+        }
+        return slot;
+    }
+}
@@ -0,0 +1,41 @@
+package com.robindevilliers.vending;
+
+import java.util.List;
+
+//Told about every change that a VendingMachine makes to its stock, cassettes and coin purses.  Session 0 is the machine's own purse.
+public interface MachineListener {
+
+    default void coinAccepted(long sessionId, String denomination) {
+    }
+
+    //the denomination is null when the coin was not recognised.
+    default void coinRejected(long sessionId, String denomination) {
+    }
+
+    //the coins are those handed back, largest first, whether asked for or because the session was closed or expired.
+    default void coinsRefunded(long sessionId, List<String> coins) {
+    }
+
+    //the item has left its bucket, the change has left the cassettes and the purse has been dropped into the safe, or the cassettes when recycling.
+    //The credited coins are those of the payment that went into the cassettes, and the rest of it went to the safe.
+    default void itemVended(long sessionId, String itemId, List<String> change, List<String> credited) {
+    }
+
+    default void serviced() {
+    }
+
+    default void sessionOpened(long sessionId) {
+    }
+
+    //called once the session's coins have been refunded, whether it was closed or expired.
+    default void sessionClosed(long sessionId) {
+    }
+
+    //the command is one of the command kinds named on VendingMachine, and the response is the first one it gave, if any.
+    default void commandProcessed(String command, String response, long elapsedNanos) {
+    }
+
+    //called once all the commands on a line have been processed.
+    default void lineProcessed() {
+    }
+}
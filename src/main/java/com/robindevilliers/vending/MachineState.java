@@ -0,0 +1,248 @@
+package com.robindevilliers.vending;
+
+import com.robindevilliers.vending.model.CoinCassette;
+import com.robindevilliers.vending.model.ItemBucket;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+//The stock, cassettes and purses of one machine, and the records that describe each change a VendingMachine makes to them.
+//
+//A record is [type][payload]. The journal writes records to disk and replication ships them to a standby, and both bring a
+//copy of the state up to date by applying them in order on top of a snapshot.
+public class MachineState {
+
+    private static final byte COIN_ACCEPTED = 1;
+    private static final byte COINS_REFUNDED = 2;
+    private static final byte ITEM_VENDED = 3;
+    private static final byte SERVICED = 4;
+    private static final byte SESSION_OPENED = 5;
+    private static final byte SESSION_CLOSED = 6;
+
+    private final ItemBuckets itemBuckets;
+
+    private final Cassettes cassettes;
+
+    private final CoinPurse coinPurse;
+
+    private final Sessions sessions;
+
+    public MachineState(ItemBuckets itemBuckets, Cassettes cassettes, CoinPurse coinPurse, Sessions sessions) {
+        this.itemBuckets = itemBuckets;
+        this.cassettes = cassettes;
+        this.coinPurse = coinPurse;
+        this.sessions = sessions;
+    }
+
+    public static void putCoinAccepted(ByteBuffer record, long sessionId, String denomination) {
+        record.put(COIN_ACCEPTED);
+        record.putLong(sessionId);
+        putString(record, denomination);
+    }
+
+    public static void putCoinsRefunded(ByteBuffer record, long sessionId) {
+        record.put(COINS_REFUNDED);
+        record.putLong(sessionId);
+    }
+
+    //the credited coins are kept in the record, so that replay puts the same coins in the cassettes whatever the recycling
+    //setting and capacities are by then.
+    public static void putItemVended(ByteBuffer record, long sessionId, String itemId, List<String> change, List<String> credited) {
+        record.put(ITEM_VENDED);
+        record.putLong(sessionId);
+        putString(record, itemId);
+        putStrings(record, change);
+        putStrings(record, credited);
+    }
+
+    public static void putServiced(ByteBuffer record) {
+        record.put(SERVICED);
+    }
+
+    public static void putSessionOpened(ByteBuffer record, long sessionId) {
+        record.put(SESSION_OPENED);
+        record.putLong(sessionId);
+    }
+
+    public static void putSessionClosed(ByteBuffer record, long sessionId) {
+        record.put(SESSION_CLOSED);
+        record.putLong(sessionId);
+    }
+
+    private static void putString(ByteBuffer record, String value) {
+        record.putShort((short) value.length());
+        for (int i = 0; i < value.length(); i++) {
+            record.putChar(value.charAt(i));
+        }
+    }
+
+    private static void putStrings(ByteBuffer record, List<String> values) {
+        record.putShort((short) values.size());
+        for (int i = 0; i < values.size(); i++) {
+            putString(record, values.get(i));
+        }
+    }
+
+    private static List<String> getStrings(ByteBuffer record) {
+        final int count = record.getShort();
+        final List<String> values = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            values.add(getString(record));
+        }
+        return values;
+    }
+
+    private static String getString(ByteBuffer record) {
+        final char[] value = new char[record.getShort()];
+        for (int i = 0; i < value.length; i++) {
+            value[i] = record.getChar();
+        }
+        return new String(value);
+    }
+
+    //reads one record from the buffer's position and makes the change it describes.
+    public void apply(ByteBuffer record) {
+        switch (record.get()) {
+            case COIN_ACCEPTED:
+                getCoinPurse(record.getLong()).addCoin(getString(record));
+                break;
+            case COINS_REFUNDED:
+                getCoinPurse(record.getLong()).refund(new ArrayList<>());
+                break;
+            case ITEM_VENDED: {
+                final CoinPurse sessionPurse = getCoinPurse(record.getLong());
+                this.itemBuckets.ejectItem(getString(record));
+                final int coins = record.getShort();
+                for (int i = 0; i < coins; i++) {
+                    this.cassettes.ejectCoin(getString(record));
+                }
+                this.cassettes.returnCoins(getStrings(record));
+                sessionPurse.dropPaymentIntoSafe();
+                break;
+            }
+            case SERVICED:
+                this.itemBuckets.reset();
+                this.cassettes.reset();
+                break;
+            case SESSION_OPENED:
+                this.sessions.restore(record.getLong());
+                break;
+            case SESSION_CLOSED:
+                this.sessions.close(record.getLong());
+                break;
+            default:
+                throw new SystemException("Unknown journal record.");
+        }
+    }
+
+    //sessions are only ever opened and closed by their own records, so one that is not open here means the records are out of order.
+    private CoinPurse getCoinPurse(long sessionId) {
+        return sessionId == 0 ? this.coinPurse : this.sessions.get(sessionId).getCoinPurse();
+    }
+
+    public void writeSnapshot(DataOutputStream out) throws IOException {
+        writeSnapshot(out, true);
+    }
+
+    //without sessions only the machine's own purse is written, for a copy that no customer's connection is going to use.
+    public void writeSnapshot(DataOutputStream out, boolean withSessions) throws IOException {
+        final List<ItemBucket> buckets = this.itemBuckets.getBuckets();
+        out.writeInt(buckets.size());
+        for (ItemBucket bucket : buckets) {
+            out.writeUTF(bucket.getId());
+            out.writeInt(bucket.getQuantity());
+        }
+
+        final List<CoinCassette> coinCassettes = this.cassettes.getCassettes();
+        out.writeInt(coinCassettes.size());
+        for (CoinCassette cassette : coinCassettes) {
+            out.writeUTF(cassette.getId());
+            out.writeInt(cassette.getQuantity());
+        }
+
+        final List<Session> purses = withSessions ? new ArrayList<>(this.sessions.getSessions()) : Collections.emptyList();
+        out.writeInt(purses.size() + 1);
+        writePurse(out, 0, this.coinPurse);
+        for (Session session : purses) {
+            writePurse(out, session.getId(), session.getCoinPurse());
+        }
+    }
+
+    private void writePurse(DataOutputStream out, long sessionId, CoinPurse coinPurse) throws IOException {
+        coinPurse.checkTotal();
+
+        final Map<String, Integer> counts = coinPurse.getCounts();
+
+        out.writeLong(sessionId);
+        out.writeInt(counts.size());
+        for (Map.Entry<String, Integer> entry : counts.entrySet()) {
+            out.writeUTF(entry.getKey());
+            out.writeInt(entry.getValue());
+        }
+    }
+
+    public long getNextSessionId() {
+        return this.sessions.getNextId();
+    }
+
+    public void skipSessionIds(long nextSessionId) {
+        this.sessions.skipTo(nextSessionId);
+    }
+
+    //sessions that are open here but not in the snapshot are closed, so that a copy which has fallen behind matches afterwards.
+    public void readSnapshot(DataInputStream in) throws IOException {
+        final Map<String, ItemBucket> buckets = new HashMap<>();
+        this.itemBuckets.getBuckets().forEach(bucket -> buckets.putIfAbsent(bucket.getId(), bucket));
+
+        final int bucketCount = in.readInt();
+        for (int i = 0; i < bucketCount; i++) {
+            final ItemBucket bucket = buckets.get(in.readUTF());
+            final int quantity = in.readInt();
+            if (bucket != null) {
+                bucket.setQuantity(quantity);
+            }
+        }
+
+        //the cassettes are restored through Cassettes, so that a change table built before the snapshot is not used afterwards.
+        final Map<String, Integer> coinCounts = new HashMap<>();
+        final int cassetteCount = in.readInt();
+        for (int i = 0; i < cassetteCount; i++) {
+            coinCounts.put(in.readUTF(), in.readInt());
+        }
+        this.cassettes.restore(coinCounts);
+
+        final Set<Long> restored = new HashSet<>();
+
+        final int purseCount = in.readInt();
+        for (int i = 0; i < purseCount; i++) {
+            final long sessionId = in.readLong();
+            final CoinPurse coinPurse = sessionId == 0 ? this.coinPurse : this.sessions.restore(sessionId).getCoinPurse();
+            coinPurse.dropPaymentIntoSafe();
+            restored.add(sessionId);
+
+            final int denominations = in.readInt();
+            for (int j = 0; j < denominations; j++) {
+                final String denomination = in.readUTF();
+                final int count = in.readInt();
+                for (int k = 0; k < count; k++) {
+                    coinPurse.addCoin(denomination);
+                }
+            }
+        }
+
+        for (Session session : new ArrayList<>(this.sessions.getSessions())) {
+            if (!restored.contains(session.getId())) {
+                this.sessions.close(session.getId());
+            }
+        }
+    }
+}
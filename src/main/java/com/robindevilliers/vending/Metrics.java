@@ -0,0 +1,242 @@
+package com.robindevilliers.vending;
+
+import com.robindevilliers.vending.model.CoinCassette;
+import com.robindevilliers.vending.model.ItemBucket;
+
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+//Counts what a VendingMachine does. Counters are LongAdders, so machines on many threads can share one Metrics without
+//contending, and the item and cassette levels are read when asked for rather than tracked.
+public class Metrics implements MachineListener, MetricsMXBean {
+
+    private static final List<String> COMMANDS = Arrays.asList(
+            VendingMachine.SERVICE, VendingMachine.PUT, VendingMachine.COIN_RETURN, VendingMachine.GET, VendingMachine.INVALID);
+
+    //every other response is a success, such as an item id or a coin being handed back.
+    private static final List<String> ERRORS = Arrays.asList(
+            "INSUFFICIENT-FUNDS", "OUT-OF-STOCK", "INSUFFICIENT-CHANGE", "INVALID-COIN", "INVALID-ITEM", "INVALID-COMMAND",
+            "EXACT-CHANGE-ONLY");
+
+    private static final String OK = "OK";
+
+    private final ItemBuckets itemBuckets;
+
+    private final Cassettes cassettes;
+
+    private final Map<String, LongAdder> commandCounts = new ConcurrentHashMap<>();
+
+    private final Map<String, LatencyHistogram> latencies = new ConcurrentHashMap<>();
+
+    private final LatencyHistogram latency = new LatencyHistogram();
+
+    private final Map<String, LongAdder> responseCounts = new ConcurrentHashMap<>();
+
+    private final Map<String, LongAdder> itemSales = new ConcurrentHashMap<>();
+
+    private final LongAdder coinsAccepted = new LongAdder();
+
+    private final LongAdder coinsRejected = new LongAdder();
+
+    //the subscriptions reading this machine's events, whose counts are read when asked for.
+    private final Map<String, EventSubscription> subscriptions = new ConcurrentHashMap<>();
+
+    public Metrics(ItemBuckets itemBuckets, Cassettes cassettes) {
+        this.itemBuckets = itemBuckets;
+        this.cassettes = cassettes;
+
+        for (String command : COMMANDS) {
+            this.commandCounts.put(command, new LongAdder());
+            this.latencies.put(command, new LatencyHistogram());
+        }
+        for (String error : ERRORS) {
+            this.responseCounts.put(error, new LongAdder());
+        }
+        this.responseCounts.put(OK, new LongAdder());
+    }
+
+    @Override
+    public void commandProcessed(String command, String response, long elapsedNanos) {
+        this.commandCounts.get(command).increment();
+        this.latencies.get(command).record(elapsedNanos);
+        this.latency.record(elapsedNanos);
+
+        final LongAdder responseCount = response == null ? null : this.responseCounts.get(response);
+        (responseCount == null ? this.responseCounts.get(OK) : responseCount).increment();
+    }
+
+    @Override
+    public void coinAccepted(long sessionId, String denomination) {
+        this.coinsAccepted.increment();
+    }
+
+    @Override
+    public void coinRejected(long sessionId, String denomination) {
+        this.coinsRejected.increment();
+    }
+
+    @Override
+    public void itemVended(long sessionId, String itemId, List<String> change, List<String> credited) {
+        this.itemSales.computeIfAbsent(itemId, id -> new LongAdder()).increment();
+    }
+
+    public void addSubscription(String name, EventSubscription subscription) {
+        this.subscriptions.put(name, subscription);
+    }
+
+    public LatencyHistogram getLatency(String command) {
+        return this.latencies.get(command);
+    }
+
+    @Override
+    public Map<String, Long> getCommandCounts() {
+        return sums(this.commandCounts);
+    }
+
+    @Override
+    public Map<String, Long> getResponseCounts() {
+        return sums(this.responseCounts);
+    }
+
+    @Override
+    public Map<String, Long> getItemSales() {
+        return sums(this.itemSales);
+    }
+
+    @Override
+    public Map<String, Integer> getItemQuantities() {
+        return levels(this.itemBuckets.getBuckets(), ItemBucket::getId, ItemBucket::getQuantity);
+    }
+
+    @Override
+    public Map<String, Integer> getCassetteQuantities() {
+        return levels(this.cassettes.getCassettes(), CoinCassette::getId, CoinCassette::getQuantity);
+    }
+
+    @Override
+    public long getCoinsAccepted() {
+        return this.coinsAccepted.sum();
+    }
+
+    @Override
+    public long getCoinsRejected() {
+        return this.coinsRejected.sum();
+    }
+
+    @Override
+    public double getLatencyP50Micros() {
+        return this.latency.getValueAtQuantile(0.5) / 1000.0;
+    }
+
+    @Override
+    public double getLatencyP99Micros() {
+        return this.latency.getValueAtQuantile(0.99) / 1000.0;
+    }
+
+    @Override
+    public double getLatencyMaxMicros() {
+        return this.latency.getMax() / 1000.0;
+    }
+
+    @Override
+    public Map<String, Long> getSubscriberEventsLost() {
+        return counts(this.subscriptions, EventSubscription::getLost);
+    }
+
+    @Override
+    public Map<String, Long> getSubscriberEventsFailed() {
+        return counts(this.subscriptions, EventSubscription::getFailed);
+    }
+
+    public ObjectName register(String machineId) {
+        return register(ManagementFactory.getPlatformMBeanServer(), machineId);
+    }
+
+    public ObjectName register(MBeanServer server, String machineId) {
+        try {
+            final ObjectName name = new ObjectName("com.robindevilliers.vending:type=Metrics,machine=" + ObjectName.quote(machineId));
+            server.registerMBean(this, name);
+            return name;
+        } catch (JMException e) {
+            throw new SystemException("Unable to register metrics.", e);
+        }
+    }
+
+    //writes every metric in the plain text format that scrapers such as Prometheus read.
+    public void writeText(String machineId, Appendable out) {
+        final String machine = "machine=\"" + machineId + "\"";
+
+        try {
+            for (Map.Entry<String, Long> entry : getCommandCounts().entrySet()) {
+                writeLine(out, "vending_commands_total", machine + ",command=\"" + entry.getKey() + "\"", entry.getValue());
+            }
+            for (Map.Entry<String, Long> entry : getResponseCounts().entrySet()) {
+                writeLine(out, "vending_responses_total", machine + ",response=\"" + entry.getKey() + "\"", entry.getValue());
+            }
+            for (String command : COMMANDS) {
+                final LatencyHistogram histogram = this.latencies.get(command);
+                final String labels = machine + ",command=\"" + command + "\"";
+
+                writeLine(out, "vending_command_latency_nanos", labels + ",quantile=\"0.5\"", histogram.getValueAtQuantile(0.5));
+                writeLine(out, "vending_command_latency_nanos", labels + ",quantile=\"0.99\"", histogram.getValueAtQuantile(0.99));
+                writeLine(out, "vending_command_latency_nanos", labels + ",quantile=\"1\"", histogram.getMax());
+            }
+            writeLine(out, "vending_coins_total", machine + ",result=\"accepted\"", getCoinsAccepted());
+            writeLine(out, "vending_coins_total", machine + ",result=\"rejected\"", getCoinsRejected());
+
+            for (Map.Entry<String, Long> entry : getItemSales().entrySet()) {
+                writeLine(out, "vending_item_sales_total", machine + ",item=\"" + entry.getKey() + "\"", entry.getValue());
+            }
+            for (Map.Entry<String, Integer> entry : getItemQuantities().entrySet()) {
+                writeLine(out, "vending_item_quantity", machine + ",item=\"" + entry.getKey() + "\"", entry.getValue());
+            }
+            for (Map.Entry<String, Integer> entry : getCassetteQuantities().entrySet()) {
+                writeLine(out, "vending_cassette_quantity", machine + ",denomination=\"" + entry.getKey() + "\"", entry.getValue());
+            }
+            for (Map.Entry<String, Long> entry : getSubscriberEventsLost().entrySet()) {
+                writeLine(out, "vending_subscriber_events_total", machine + ",subscriber=\"" + entry.getKey() + "\",result=\"lost\"", entry.getValue());
+            }
+            for (Map.Entry<String, Long> entry : getSubscriberEventsFailed().entrySet()) {
+                writeLine(out, "vending_subscriber_events_total", machine + ",subscriber=\"" + entry.getKey() + "\",result=\"failed\"", entry.getValue());
+            }
+        } catch (IOException e) {
+            throw new SystemException("Unable to write metrics.", e);
+        }
+    }
+
+    private static void writeLine(Appendable out, String name, String labels, long value) throws IOException {
+        out.append(name).append('{').append(labels).append("} ").append(Long.toString(value)).append('\n');
+    }
+
+    private static Map<String, Long> sums(Map<String, LongAdder> counters) {
+        final Map<String, Long> sums = new TreeMap<>();
+        counters.forEach((key, counter) -> sums.put(key, counter.sum()));
+        return Collections.unmodifiableMap(sums);
+    }
+
+    private static <T> Map<String, Long> counts(Map<String, T> values, Function<T, Long> count) {
+        final Map<String, Long> counts = new TreeMap<>();
+        values.forEach((key, value) -> counts.put(key, count.apply(value)));
+        return Collections.unmodifiableMap(counts);
+    }
+
+    private static <T> Map<String, Integer> levels(List<T> values, Function<T, String> id, Function<T, Integer> quantity) {
+        final Map<String, Integer> levels = new TreeMap<>();
+        for (T value : values) {
+            levels.put(id.apply(value), quantity.apply(value));
+        }
+        return Collections.unmodifiableMap(levels);
+    }
+}
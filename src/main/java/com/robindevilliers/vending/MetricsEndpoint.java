@@ -0,0 +1,69 @@
+package com.robindevilliers.vending;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.concurrent.ConcurrentSkipListMap;
+
+//Serves the metrics of every machine added to it as plain text on GET /metrics, for a local scraper to poll.
+public class MetricsEndpoint implements Closeable {
+
+    private final Map<String, Metrics> metrics = new ConcurrentSkipListMap<>();
+
+    private final HttpServer server;
+
+    public MetricsEndpoint(InetSocketAddress address) throws IOException {
+        this.server = HttpServer.create(address, 0);
+        this.server.createContext("/metrics", this::handle);
+    }
+
+    public void add(String machineId, Metrics metrics) {
+        if (this.metrics.putIfAbsent(machineId, metrics) != null) {
+            throw new SystemException("Machine already registered.");
+        }
+    }
+
+    public void start() {
+        this.server.start();
+    }
+
+    public int getPort() {
+        return this.server.getAddress().getPort();
+    }
+
+    @Override
+    public void close() {
+        this.server.stop(0);
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        try {
+            if (!exchange.getRequestMethod().equals("GET")) {
+                exchange.sendResponseHeaders(405, -1);
+                return;
+            }
+
+            final StringBuilder text = new StringBuilder();
+            for (Map.Entry<String, Metrics> entry : this.metrics.entrySet()) {
+                entry.getValue().writeText(entry.getKey(), text);
+            }
+
+            final byte[] body = text.toString().getBytes(StandardCharsets.UTF_8);
+
+            exchange.getResponseHeaders().set("Content-Type", "text/plain; version=0.0.4");
+            exchange.sendResponseHeaders(200, body.length);
+
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(body);
+            }
+        } finally {
+            exchange.close();
+        }
+    }
+}
@@ -0,0 +1,30 @@
+package com.robindevilliers.vending;
+
+import java.util.Map;
+
+public interface MetricsMXBean {
+
+    Map<String, Long> getCommandCounts();
+
+    Map<String, Long> getResponseCounts();
+
+    Map<String, Long> getItemSales();
+
+    Map<String, Integer> getItemQuantities();
+
+    Map<String, Integer> getCassetteQuantities();
+
+    long getCoinsAccepted();
+
+    long getCoinsRejected();
+
+    double getLatencyP50Micros();
+
+    double getLatencyP99Micros();
+
+    double getLatencyMaxMicros();
+
+    Map<String, Long> getSubscriberEventsLost();
+
+    Map<String, Long> getSubscriberEventsFailed();
+}
@@ -0,0 +1,222 @@
+package com.robindevilliers.vending;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.nio.channels.Channels;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayList;
+import java.util.List;
+
+//Lets a shard router list the machines in a fleet and move them between fleets on different nodes.
+//
+//Each connection carries one request: LIST answers the machine ids, EXPORT holds a machine and answers a copy of it as
+//Fleet.writeMachine writes it, IMPORT adds a held machine from the same bytes, RELEASE lets a held machine be used again and
+//REMOVE takes one out of the fleet. A machine is only ever removed from one fleet once it has been released in another, so a
+//move that fails at any step can be called off without losing or doubling it, and a machine is not exported while a customer's
+//session holds coins, as they could only be handed back to that customer's connection here. Moves are rare and small next to vending, so
+//requests are served one at a time on one thread, and the static methods below are the other end of each request.
+public class MigrationServer implements Runnable, Closeable {
+
+    private static final byte LIST = 1;
+
+    private static final byte EXPORT = 2;
+
+    private static final byte IMPORT = 3;
+
+    private static final byte RELEASE = 4;
+
+    private static final byte REMOVE = 5;
+
+    //the lengths EXPORT answers in place of a machine.
+    private static final int NOT_FOUND = -1;
+
+    private static final int IN_USE = -2;
+
+    private final Fleet fleet;
+
+    private final ServerSocketChannel serverChannel;
+
+    private volatile boolean running = true;
+
+    public MigrationServer(Fleet fleet, InetSocketAddress address) throws IOException {
+        this.fleet = fleet;
+        this.serverChannel = ServerSocketChannel.open();
+        this.serverChannel.bind(address);
+    }
+
+    public int getPort() throws IOException {
+        return ((InetSocketAddress) this.serverChannel.getLocalAddress()).getPort();
+    }
+
+    public void start() {
+        final Thread thread = new Thread(this, "migration-server");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    @Override
+    public void run() {
+        while (this.running) {
+            try (SocketChannel channel = this.serverChannel.accept()) {
+                serve(new DataInputStream(new BufferedInputStream(Channels.newInputStream(channel))),
+                        new DataOutputStream(new BufferedOutputStream(Channels.newOutputStream(channel))));
+            } catch (IOException e) {
+                //a router that has gone away is replaced by the next one to connect, unless the server has been closed.
+            }
+        }
+    }
+
+    private void serve(DataInputStream in, DataOutputStream out) throws IOException {
+        final byte request = in.readByte();
+
+        if (request == LIST) {
+            final List<String> machineIds = new ArrayList<>(this.fleet.getMachineIds());
+            out.writeInt(machineIds.size());
+            for (String machineId : machineIds) {
+                out.writeUTF(machineId);
+            }
+        } else if (request == EXPORT) {
+            final String machineId = in.readUTF();
+
+            //the machine is written out in full before any of it is sent, so it can only be lost once the router has it.
+            final ByteArrayOutputStream machine = new ByteArrayOutputStream();
+            try (DataOutputStream machineOut = new DataOutputStream(machine)) {
+                if (!this.fleet.writeMachine(machineId, machineOut)) {
+                    out.writeInt(IN_USE);
+                    out.flush();
+                    return;
+                }
+            } catch (SystemException e) {
+                out.writeInt(NOT_FOUND);
+                out.flush();
+                return;
+            }
+
+            out.writeInt(machine.size());
+            machine.writeTo(out);
+        } else if (request == IMPORT) {
+            final byte[] machine = new byte[in.readInt()];
+            in.readFully(machine);
+
+            try {
+                this.fleet.readMachine(new DataInputStream(new ByteArrayInputStream(machine)));
+                out.writeBoolean(true);
+            } catch (SystemException e) {
+                out.writeBoolean(false);
+            }
+        } else if (request == RELEASE) {
+            final String machineId = in.readUTF();
+
+            try {
+                this.fleet.releaseMachine(machineId);
+                out.writeBoolean(true);
+            } catch (SystemException e) {
+                out.writeBoolean(false);
+            }
+        } else if (request == REMOVE) {
+            final String machineId = in.readUTF();
+
+            try {
+                this.fleet.removeMachine(machineId);
+                out.writeBoolean(true);
+            } catch (SystemException e) {
+                out.writeBoolean(false);
+            }
+        }
+        out.flush();
+    }
+
+    @Override
+    public void close() {
+        this.running = false;
+
+        try {
+            this.serverChannel.close();
+        } catch (IOException e) {
+            throw new SystemException("Unable to stop migration server.", e);
+        }
+    }
+
+    public static List<String> list(InetSocketAddress address) throws IOException {
+        try (Socket socket = new Socket(address.getAddress(), address.getPort())) {
+            final DataOutputStream out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+            out.writeByte(LIST);
+            out.flush();
+
+            final DataInputStream in = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+            final List<String> machineIds = new ArrayList<>();
+            final int count = in.readInt();
+            for (int i = 0; i < count; i++) {
+                machineIds.add(in.readUTF());
+            }
+            return machineIds;
+        }
+    }
+
+    //returns null when the fleet does not have the machine. The machine is held, but stays in the fleet until it is removed.
+    //A machine with coins in a customer's session is left alone, and is reported as in use.
+    public static byte[] export(InetSocketAddress address, String machineId) throws IOException {
+        try (Socket socket = new Socket(address.getAddress(), address.getPort())) {
+            final DataOutputStream out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+            out.writeByte(EXPORT);
+            out.writeUTF(machineId);
+            out.flush();
+
+            final DataInputStream in = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+            final int length = in.readInt();
+            if (length == IN_USE) {
+                throw new SystemException("Machine is in use.");
+            }
+            if (length < 0) {
+                return null;
+            }
+
+            final byte[] machine = new byte[length];
+            in.readFully(machine);
+            return machine;
+        }
+    }
+
+    //returns false when the fleet already has a machine with the same id in use. The machine is held until it is released.
+    public static boolean adopt(InetSocketAddress address, byte[] machine) throws IOException {
+        try (Socket socket = new Socket(address.getAddress(), address.getPort())) {
+            final DataOutputStream out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+            out.writeByte(IMPORT);
+            out.writeInt(machine.length);
+            out.write(machine);
+            out.flush();
+
+            return new DataInputStream(socket.getInputStream()).readBoolean();
+        }
+    }
+
+    //returns false when the fleet does not have the machine.
+    public static boolean release(InetSocketAddress address, String machineId) throws IOException {
+        return send(address, RELEASE, machineId);
+    }
+
+    //returns false when the fleet does not have the machine.
+    public static boolean remove(InetSocketAddress address, String machineId) throws IOException {
+        return send(address, REMOVE, machineId);
+    }
+
+    private static boolean send(InetSocketAddress address, byte request, String machineId) throws IOException {
+        try (Socket socket = new Socket(address.getAddress(), address.getPort())) {
+            final DataOutputStream out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+            out.writeByte(request);
+            out.writeUTF(machineId);
+            out.flush();
+
+            return new DataInputStream(socket.getInputStream()).readBoolean();
+        }
+    }
+}
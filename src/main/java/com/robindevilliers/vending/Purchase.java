@@ -0,0 +1,83 @@
+package com.robindevilliers.vending;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+//Takes the item and the change for one purchase as a unit, so that a failure part way through leaves nothing behind.
+//Nothing is locked: the item and the coins are reserved with compare and set on their counts, and are only handed back
+//if the purchase cannot complete.
+public class Purchase {
+
+    private final ItemBuckets itemBuckets;
+
+    private final Cassettes cassettes;
+
+    private final CoinCalculator coinCalculator;
+
+    private final String itemId;
+
+    private boolean itemReserved;
+
+    private List<String> change = Collections.emptyList();
+
+    private List<String> credited = Collections.emptyList();
+
+    private boolean committed;
+
+    public Purchase(ItemBuckets itemBuckets, Cassettes cassettes, CoinCalculator coinCalculator, String itemId) {
+        this.itemBuckets = itemBuckets;
+        this.cassettes = cassettes;
+        this.coinCalculator = coinCalculator;
+        this.itemId = itemId;
+    }
+
+    public boolean reserveItem() {
+        this.itemReserved = this.itemBuckets.reserveItem(this.itemId);
+        return this.itemReserved;
+    }
+
+    public void reserveChange(int changeRequired) throws InsufficientChangeException {
+        this.change = this.coinCalculator.calculateChange(changeRequired, this.cassettes);
+    }
+
+    public List<String> getChange() {
+        return this.change;
+    }
+
+    //the coins of the payment that went into the cassettes rather than the safe.
+    public List<String> getCredited() {
+        return this.credited;
+    }
+
+    //the payment is the last thing to change, and dropping it cannot fail.
+    public void commit(CoinPurse coinPurse) {
+        if (this.committed) {
+            throw new SystemException("Purchase already committed.");
+        }
+
+        if (this.cassettes.isRecycling()) {
+            this.credited = new ArrayList<>();
+            coinPurse.dropPaymentIntoCassettes(this.cassettes, this.credited);
+        } else {
+            coinPurse.dropPaymentIntoSafe();
+        }
+        this.committed = true;
+    }
+
+    public void rollback() {
+        if (this.committed) {
+            throw new SystemException("Purchase already committed.");
+        }
+
+        if (!this.change.isEmpty()) {
+            this.cassettes.returnCoins(this.change);
+            this.change = Collections.emptyList();
+        }
+
+        if (this.itemReserved) {
+            this.itemBuckets.releaseItem(this.itemId);
+            this.itemReserved = false;
+        }
+    }
+}
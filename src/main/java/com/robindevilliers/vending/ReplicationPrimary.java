@@ -0,0 +1,345 @@
+package com.robindevilliers.vending;
+
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.util.List;
+
+//Ships every change a VendingMachine makes to a standby, which keeps a copy of the machine's state that can take over.
+//
+//The standby is sent a snapshot when it connects, and then a frame for each record, numbered in sequence. Frames are
+//gathered as commands run and written together at the end of each line, and the line does not finish until the standby has
+//acknowledged the last of them, so a customer is never answered for a change the standby does not have. A group commit size
+//above one lets several lines share a wait, at the cost of losing them if the primary fails before the acknowledgement.
+//
+//If the standby goes away, or does not take the frames or acknowledge them in time, the primary carries on alone and a new
+//standby has to be connected. The channel does not block, so a standby that stops reading cannot hold up a line for longer
+//than the timeout.
+//Like the journal, this expects the machine to be driven by one thread at a time, and connect to be called between commands.
+public class ReplicationPrimary implements MachineListener, Closeable {
+
+    static final byte SNAPSHOT = 1;
+
+    static final byte RECORD = 2;
+
+    //a frame is [length][sequence][kind][body], where the length counts everything after itself.
+    static final int FRAME_HEADER_SIZE = 13;
+
+    private final MachineState state;
+
+    private final int groupCommitSize;
+
+    private final long acknowledgeTimeoutMillis;
+
+    private final ByteBuffer record = ByteBuffer.allocate(64 * 1024);
+
+    private final ByteBuffer frames = ByteBuffer.allocate(1024 * 1024);
+
+    private final Object acknowledgements = new Object();
+
+    private volatile SocketChannel channel;
+
+    //one selector waits for room to write and the other for acknowledgements, as they are waited on by different threads.
+    private Selector writeSelector;
+
+    private Selector readSelector;
+
+    private long sequence;
+
+    private volatile long acknowledged;
+
+    private volatile boolean broken;
+
+    private int uncommittedLines;
+
+    public ReplicationPrimary(ItemBuckets itemBuckets, Cassettes cassettes, CoinPurse coinPurse, Sessions sessions, int groupCommitSize, long acknowledgeTimeoutMillis) {
+        this.state = new MachineState(itemBuckets, cassettes, coinPurse, sessions);
+        this.groupCommitSize = groupCommitSize;
+        this.acknowledgeTimeoutMillis = acknowledgeTimeoutMillis;
+    }
+
+    public synchronized void connect(InetSocketAddress standby) throws IOException {
+        disconnect();
+
+        final ByteArrayOutputStream snapshot = new ByteArrayOutputStream();
+        try (DataOutputStream out = new DataOutputStream(snapshot)) {
+            this.state.writeSnapshot(out);
+        }
+
+        final SocketChannel channel = SocketChannel.open(standby);
+        channel.setOption(StandardSocketOptions.TCP_NODELAY, true);
+        channel.configureBlocking(false);
+
+        this.channel = channel;
+        this.writeSelector = Selector.open();
+        this.readSelector = Selector.open();
+        channel.register(this.writeSelector, SelectionKey.OP_WRITE);
+        channel.register(this.readSelector, SelectionKey.OP_READ);
+
+        final ByteBuffer frame = ByteBuffer.allocate(FRAME_HEADER_SIZE + snapshot.size());
+        frame.putInt(FRAME_HEADER_SIZE - 4 + snapshot.size());
+        frame.putLong(this.sequence);
+        frame.put(SNAPSHOT);
+        frame.put(snapshot.toByteArray());
+        frame.flip();
+
+        try {
+            if (!write(frame)) {
+                throw new IOException("Standby did not take the snapshot in time.");
+            }
+        } catch (IOException e) {
+            //no reader has been started to close its selector.
+            this.readSelector.close();
+            disconnect();
+            throw e;
+        }
+
+        this.broken = false;
+        this.acknowledged = this.sequence;
+        this.uncommittedLines = 0;
+
+        final Selector readSelector = this.readSelector;
+        final Thread reader = new Thread(() -> readAcknowledgements(channel, readSelector), "replication-acknowledgements");
+        reader.setDaemon(true);
+        reader.start();
+    }
+
+    public synchronized boolean isConnected() {
+        return this.channel != null && !this.broken;
+    }
+
+    public synchronized long getSequence() {
+        return this.sequence;
+    }
+
+    public long getAcknowledged() {
+        return this.acknowledged;
+    }
+
+    @Override
+    public synchronized void coinAccepted(long sessionId, String denomination) {
+        if (startRecord()) {
+            MachineState.putCoinAccepted(this.record, sessionId, denomination);
+            append();
+        }
+    }
+
+    @Override
+    public synchronized void coinsRefunded(long sessionId, List<String> coins) {
+        if (startRecord()) {
+            MachineState.putCoinsRefunded(this.record, sessionId);
+            append();
+        }
+    }
+
+    @Override
+    public synchronized void itemVended(long sessionId, String itemId, List<String> change, List<String> credited) {
+        if (startRecord()) {
+            MachineState.putItemVended(this.record, sessionId, itemId, change, credited);
+            append();
+        }
+    }
+
+    @Override
+    public synchronized void serviced() {
+        if (startRecord()) {
+            MachineState.putServiced(this.record);
+            append();
+        }
+    }
+
+    @Override
+    public synchronized void sessionOpened(long sessionId) {
+        if (startRecord()) {
+            MachineState.putSessionOpened(this.record, sessionId);
+            append();
+        }
+    }
+
+    @Override
+    public synchronized void sessionClosed(long sessionId) {
+        if (startRecord()) {
+            MachineState.putSessionClosed(this.record, sessionId);
+            append();
+        }
+    }
+
+    @Override
+    public synchronized void lineProcessed() {
+        if (!isConnected()) {
+            disconnect();
+            return;
+        }
+
+        flush();
+
+        if (++this.uncommittedLines >= this.groupCommitSize) {
+            this.uncommittedLines = 0;
+            awaitAcknowledged(this.sequence);
+        }
+    }
+
+    @Override
+    public synchronized void close() {
+        if (this.channel != null) {
+            flush();
+        }
+        disconnect();
+    }
+
+    private boolean startRecord() {
+        if (!isConnected()) {
+            return false;
+        }
+
+        this.record.clear();
+        return true;
+    }
+
+    private void append() {
+        final int length = this.record.position();
+
+        if (this.frames.remaining() < FRAME_HEADER_SIZE + length) {
+            flush();
+        }
+
+        this.frames.putInt(FRAME_HEADER_SIZE - 4 + length);
+        this.frames.putLong(++this.sequence);
+        this.frames.put(RECORD);
+        this.frames.put(this.record.array(), 0, length);
+    }
+
+    private void flush() {
+        this.frames.flip();
+
+        try {
+            if (this.channel != null && !write(this.frames)) {
+                this.broken = true;
+            }
+        } catch (IOException e) {
+            this.broken = true;
+        } finally {
+            this.frames.clear();
+        }
+    }
+
+    //returns false when the standby has not made room for all of the buffer by the deadline.
+    private boolean write(ByteBuffer buffer) throws IOException {
+        final long deadline = System.currentTimeMillis() + this.acknowledgeTimeoutMillis;
+
+        while (buffer.hasRemaining()) {
+            if (this.channel.write(buffer) > 0) {
+                continue;
+            }
+
+            final long remaining = deadline - System.currentTimeMillis();
+            if (remaining <= 0) {
+                return false;
+            }
+            this.writeSelector.select(remaining);
+            this.writeSelector.selectedKeys().clear();
+        }
+        return true;
+    }
+
+    private void awaitAcknowledged(long sequence) {
+        final long deadline = System.currentTimeMillis() + this.acknowledgeTimeoutMillis;
+
+        synchronized (this.acknowledgements) {
+            while (this.acknowledged < sequence && !this.broken) {
+                final long remaining = deadline - System.currentTimeMillis();
+
+                if (remaining <= 0) {
+                    this.broken = true;
+                    break;
+                }
+
+                try {
+                    this.acknowledgements.wait(remaining);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    this.broken = true;
+                }
+            }
+        }
+
+        if (this.broken) {
+            disconnect();
+        }
+    }
+
+    //runs on its own thread, so that reading acknowledgements never waits for the machine.
+    private void readAcknowledgements(SocketChannel channel, Selector selector) {
+        final ByteBuffer acknowledgement = ByteBuffer.allocate(8);
+
+        try {
+            while (channel.isOpen()) {
+                final int read = channel.read(acknowledgement);
+
+                if (read < 0) {
+                    break;
+                }
+
+                if (read == 0) {
+                    selector.select();
+                    selector.selectedKeys().clear();
+                    continue;
+                }
+
+                if (!acknowledgement.hasRemaining()) {
+                    acknowledgement.flip();
+                    final long sequence = acknowledgement.getLong();
+                    acknowledgement.clear();
+
+                    synchronized (this.acknowledgements) {
+                        if (channel == this.channel) {
+                            this.acknowledged = sequence;
+                        }
+                        this.acknowledgements.notifyAll();
+                    }
+                }
+            }
+        } catch (IOException e) {
+            //the connection has gone, which is dealt with below.
+        } finally {
+            try {
+                selector.close();
+            } catch (IOException e) {
+                //nothing is waiting on it any more.
+            }
+        }
+
+        //a reader left over from an earlier standby must not break the connection to the current one.
+        synchronized (this.acknowledgements) {
+            if (channel == this.channel) {
+                this.broken = true;
+            }
+            this.acknowledgements.notifyAll();
+        }
+    }
+
+    private void disconnect() {
+        if (this.channel == null) {
+            return;
+        }
+
+        try {
+            this.channel.close();
+            this.writeSelector.close();
+        } catch (IOException e) {
+            //the standby is being dropped anyway.
+        }
+
+        //the reader closes its own selector once it sees the channel has gone.
+        this.readSelector.wakeup();
+        this.channel = null;
+        this.frames.clear();
+    }
+}
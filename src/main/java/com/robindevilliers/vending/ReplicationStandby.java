@@ -0,0 +1,179 @@
+package com.robindevilliers.vending;
+
+import java.io.ByteArrayInputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+
+//Keeps a copy of a machine's state up to date from the frames a ReplicationPrimary sends, so that it can take over.
+//
+//Frames are applied as they arrive, and everything that has been read is acknowledged together, once per read, so that a
+//primary sending a batch gets one acknowledgement for it. When the primary goes away the standby waits for the next one,
+//which starts again with a snapshot, unless it has been promoted to carry on in the primary's place.
+public class ReplicationStandby implements Runnable, Closeable {
+
+    private final MachineState state;
+
+    private final ServerSocketChannel serverChannel;
+
+    private volatile SocketChannel channel;
+
+    private volatile boolean running = true;
+
+    private volatile long applied;
+
+    private Thread thread;
+
+    private ByteBuffer frames = ByteBuffer.allocate(1024 * 1024);
+
+    private final ByteBuffer acknowledgement = ByteBuffer.allocate(8);
+
+    public ReplicationStandby(ItemBuckets itemBuckets, Cassettes cassettes, CoinPurse coinPurse, Sessions sessions, InetSocketAddress address) throws IOException {
+        this.state = new MachineState(itemBuckets, cassettes, coinPurse, sessions);
+        this.serverChannel = ServerSocketChannel.open();
+        this.serverChannel.bind(address);
+    }
+
+    public int getPort() throws IOException {
+        return ((InetSocketAddress) this.serverChannel.getLocalAddress()).getPort();
+    }
+
+    //the sequence of the last change applied, which is the primary's sequence at the point it was lost.
+    public long getApplied() {
+        return this.applied;
+    }
+
+    public synchronized void start() {
+        this.thread = new Thread(this, "replication-standby");
+        this.thread.setDaemon(true);
+        this.thread.start();
+    }
+
+    @Override
+    public void run() {
+        while (this.running) {
+            try {
+                followPrimary();
+            } catch (IOException e) {
+                //a primary that has gone away is replaced by the next one to connect.
+            }
+        }
+    }
+
+    //accepts one primary and applies what it sends until it goes away.
+    public void followPrimary() throws IOException {
+        try (SocketChannel channel = this.serverChannel.accept()) {
+            this.channel = channel;
+            this.frames.clear();
+
+            while (this.running && channel.read(this.frames) >= 0) {
+                this.frames.flip();
+                final long before = this.applied;
+
+                while (applyFrame()) {
+                    //every complete frame that has been read is applied before acknowledging.
+                }
+                this.frames.compact();
+
+                if (this.applied != before) {
+                    acknowledge(channel);
+                }
+            }
+        } finally {
+            this.channel = null;
+        }
+    }
+
+    private boolean applyFrame() {
+        if (this.frames.remaining() < 4) {
+            return false;
+        }
+
+        final int length = this.frames.getInt(this.frames.position());
+
+        if (this.frames.remaining() < 4 + length) {
+            if (4 + length > this.frames.capacity()) {
+                //a frame larger than the buffer, such as a big snapshot, needs a larger one.
+                final ByteBuffer larger = ByteBuffer.allocate(4 + length);
+                larger.put(this.frames);
+                larger.flip();
+                this.frames = larger;
+            }
+            return false;
+        }
+
+        final int end = this.frames.position() + 4 + length;
+        this.frames.getInt();
+        final long sequence = this.frames.getLong();
+        final byte kind = this.frames.get();
+
+        if (kind == ReplicationPrimary.SNAPSHOT) {
+            final byte[] snapshot = new byte[end - this.frames.position()];
+            this.frames.get(snapshot);
+
+            try (DataInputStream in = new DataInputStream(new ByteArrayInputStream(snapshot))) {
+                this.state.readSnapshot(in);
+            } catch (IOException e) {
+                throw new SystemException("Unable to read snapshot.", e);
+            }
+        } else if (kind == ReplicationPrimary.RECORD) {
+            this.state.apply(this.frames);
+        } else {
+            throw new SystemException("Unknown replication frame.");
+        }
+
+        this.frames.position(end);
+        this.applied = sequence;
+        return true;
+    }
+
+    private void acknowledge(SocketChannel channel) throws IOException {
+        this.acknowledgement.clear();
+        this.acknowledgement.putLong(this.applied);
+        this.acknowledgement.flip();
+
+        while (this.acknowledgement.hasRemaining()) {
+            channel.write(this.acknowledgement);
+        }
+    }
+
+    //stops following the primary, so that the state can be used by a machine of its own. Anything the primary sent but the
+    //standby had not acknowledged is dropped, as the primary's customers were not answered for it.
+    public long promote() {
+        close();
+
+        final Thread thread;
+        synchronized (this) {
+            thread = this.thread;
+        }
+
+        if (thread != null) {
+            try {
+                thread.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        return this.applied;
+    }
+
+    @Override
+    public void close() {
+        this.running = false;
+
+        try {
+            this.serverChannel.close();
+
+            final SocketChannel channel = this.channel;
+            if (channel != null) {
+                channel.close();
+            }
+        } catch (IOException e) {
+            throw new SystemException("Unable to stop standby.", e);
+        }
+    }
+}
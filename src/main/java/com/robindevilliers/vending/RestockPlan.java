@@ -0,0 +1,56 @@
+package com.robindevilliers.vending;
+
+import java.util.Collections;
+import java.util.Map;
+
+public class RestockPlan {
+
+    private final long nextVisitMillis;
+
+    private final long intervalMillis;
+
+    private final Map<String, Integer> itemQuantities;
+
+    private final Map<String, Integer> coinQuantities;
+
+    private final Map<String, Integer> coinRemovals;
+
+    public RestockPlan(long nextVisitMillis, long intervalMillis, Map<String, Integer> itemQuantities, Map<String, Integer> coinQuantities,
+                       Map<String, Integer> coinRemovals) {
+        this.nextVisitMillis = nextVisitMillis;
+        this.intervalMillis = intervalMillis;
+        this.itemQuantities = Collections.unmodifiableMap(itemQuantities);
+        this.coinQuantities = Collections.unmodifiableMap(coinQuantities);
+        this.coinRemovals = Collections.unmodifiableMap(coinRemovals);
+    }
+
+    //how long from now until the first slot or cassette is expected to run out.
+    public long getNextVisitMillis() {
+        return nextVisitMillis;
+    }
+
+    //how long the refill quantities are meant to last.
+    public long getIntervalMillis() {
+        return intervalMillis;
+    }
+
+    public Map<String, Integer> getItemQuantities() {
+        return itemQuantities;
+    }
+
+    public Map<String, Integer> getCoinQuantities() {
+        return coinQuantities;
+    }
+
+    //the coins over the planned float to take out of each cassette and send to the safe.
+    public Map<String, Integer> getCoinRemovals() {
+        return coinRemovals;
+    }
+
+    //quantities only ever top stock up. Coins come out only as listed in the removals.
+    public void apply(ItemBuckets itemBuckets, Cassettes cassettes) {
+        itemBuckets.refill(this.itemQuantities);
+        cassettes.unload(this.coinRemovals);
+        cassettes.refill(this.coinQuantities);
+    }
+}
@@ -0,0 +1,98 @@
+package com.robindevilliers.vending;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+//Works out, from the rate each slot sells at and each cassette pays out at, when a machine next needs a visit and how much
+//to load at that visit. Machines are planned independently, so a fleet is planned in parallel.
+public class RestockPlanner {
+
+    private final long maxIntervalMillis;
+
+    //the extra share loaded on top of the expected demand, to allow for demand being uneven.
+    private final double safetyMargin;
+
+    //the fewest coins of each denomination to leave in a cassette, so that change can always be made to start with.
+    private final int minimumFloat;
+
+    public RestockPlanner(long maxIntervalMillis, double safetyMargin, int minimumFloat) {
+        this.maxIntervalMillis = maxIntervalMillis;
+        this.safetyMargin = safetyMargin;
+        this.minimumFloat = minimumFloat;
+    }
+
+    public Map<String, RestockPlan> plan(Map<String, SalesHistory> histories) {
+        return histories.entrySet()
+                .parallelStream()
+                .collect(Collectors.toConcurrentMap(Map.Entry::getKey, entry -> plan(entry.getValue())));
+    }
+
+    public RestockPlan plan(SalesHistory history) {
+        final long elapsed = history.getElapsedMillis();
+        final Map<String, Integer> items = history.getItemQuantities();
+        final Map<String, Integer> coins = history.getCoinQuantities();
+        final Map<String, Integer> itemCapacities = history.getItemCapacities();
+        final Map<String, Integer> coinCapacities = history.getCoinCapacities();
+
+        //the refill is meant to last until the fastest selling slot, filled to capacity, would be empty.
+        long interval = this.maxIntervalMillis;
+        long nextVisit = this.maxIntervalMillis;
+
+        final Map<String, Double> saleRates = new HashMap<>();
+        for (Map.Entry<String, Integer> item : items.entrySet()) {
+            final double rate = rate(history.getSales(item.getKey()), elapsed);
+            saleRates.put(item.getKey(), rate);
+
+            if (rate > 0) {
+                interval = Math.min(interval, (long) (itemCapacities.get(item.getKey()) / rate));
+                nextVisit = Math.min(nextVisit, (long) (item.getValue() / rate));
+            }
+        }
+
+        final Map<String, Double> payoutRates = new HashMap<>();
+        for (Map.Entry<String, Integer> coin : coins.entrySet()) {
+            final double rate = rate(history.getPayouts(coin.getKey()), elapsed);
+            payoutRates.put(coin.getKey(), rate);
+
+            if (rate > 0) {
+                nextVisit = Math.min(nextVisit, (long) (coin.getValue() / rate));
+            }
+        }
+
+        final boolean noHistory = saleRates.values().stream().allMatch(rate -> rate == 0);
+
+        final Map<String, Integer> itemQuantities = new HashMap<>();
+        for (Map.Entry<String, Double> saleRate : saleRates.entrySet()) {
+            final int capacity = itemCapacities.get(saleRate.getKey());
+
+            //a slot that has not sold is still kept on offer, unless nothing has sold at all and so there is nothing to go on.
+            final int quantity = noHistory ? capacity : Math.max(1, expected(saleRate.getValue(), interval));
+            itemQuantities.put(saleRate.getKey(), Math.min(capacity, quantity));
+        }
+
+        final Map<String, Integer> coinQuantities = new HashMap<>();
+        final Map<String, Integer> coinRemovals = new HashMap<>();
+        for (Map.Entry<String, Double> payoutRate : payoutRates.entrySet()) {
+            final int capacity = coinCapacities.get(payoutRate.getKey());
+            final int quantity = Math.min(capacity, noHistory ? capacity : Math.max(this.minimumFloat, expected(payoutRate.getValue(), interval)));
+            coinQuantities.put(payoutRate.getKey(), quantity);
+
+            //coins over the float are only taken out when the plan says so, as a refill never lowers a cassette.
+            final int surplus = coins.get(payoutRate.getKey()) - quantity;
+            if (surplus > 0) {
+                coinRemovals.put(payoutRate.getKey(), surplus);
+            }
+        }
+
+        return new RestockPlan(Math.max(0, nextVisit), interval, itemQuantities, coinQuantities, coinRemovals);
+    }
+
+    private int expected(double rate, long interval) {
+        return (int) Math.min(Integer.MAX_VALUE, Math.ceil(rate * interval * (1 + this.safetyMargin)));
+    }
+
+    private static double rate(long count, long elapsedMillis) {
+        return elapsedMillis <= 0 ? 0 : (double) count / elapsedMillis;
+    }
+}
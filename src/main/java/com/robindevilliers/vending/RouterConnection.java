@@ -0,0 +1,67 @@
+package com.robindevilliers.vending;
+
+import java.nio.channels.SocketChannel;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.Map;
+
+//A connection held by a shard router, either from a client or to a node on behalf of one client. The responses of a
+//connection to a node hold the lines still to be forwarded to it.
+public class RouterConnection extends CommandConnection {
+
+    private final RouterConnection client;
+
+    //from a client, the replies in the order its lines came in. To a node, the replies it still owes, in the order sent.
+    private final Deque<Reply> replies = new ArrayDeque<>();
+
+    //each client gets its own connection to every node it talks to, so that a node sees it as a separate customer.
+    private final Map<String, RouterConnection> upstreams = new HashMap<>();
+
+    public RouterConnection(SocketChannel channel) {
+        this(channel, null);
+    }
+
+    public RouterConnection(SocketChannel channel, RouterConnection client) {
+        super(channel);
+        this.client = client;
+    }
+
+    //null when this is the client's own connection.
+    public RouterConnection getClient() {
+        return this.client;
+    }
+
+    public Deque<Reply> getReplies() {
+        return this.replies;
+    }
+
+    public Map<String, RouterConnection> getUpstreams() {
+        return this.upstreams;
+    }
+
+    //the response to one line, which is shared by the client's queue and the node's until the node answers it.
+    public static class Reply {
+
+        private String text;
+
+        public Reply() {
+        }
+
+        public Reply(String text) {
+            this.text = text;
+        }
+
+        public boolean isAnswered() {
+            return this.text != null;
+        }
+
+        public String getText() {
+            return this.text;
+        }
+
+        public void setText(String text) {
+            this.text = text;
+        }
+    }
+}
@@ -0,0 +1,90 @@
+package com.robindevilliers.vending;
+
+import com.robindevilliers.vending.model.CoinCassette;
+import com.robindevilliers.vending.model.ItemBucket;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongSupplier;
+
+//Keeps what a machine has sold and paid out in change since it started listening, so that rates can be worked out from it.
+public class SalesHistory implements MachineListener {
+
+    private final ItemBuckets itemBuckets;
+
+    private final Cassettes cassettes;
+
+    private final LongSupplier clock;
+
+    private final long started;
+
+    private final Map<String, LongAdder> sales = new ConcurrentHashMap<>();
+
+    private final Map<String, LongAdder> payouts = new ConcurrentHashMap<>();
+
+    public SalesHistory(ItemBuckets itemBuckets, Cassettes cassettes, LongSupplier clock) {
+        this.itemBuckets = itemBuckets;
+        this.cassettes = cassettes;
+        this.clock = clock;
+        this.started = clock.getAsLong();
+    }
+
+    @Override
+    public void itemVended(long sessionId, String itemId, List<String> change, List<String> credited) {
+        this.sales.computeIfAbsent(itemId, id -> new LongAdder()).increment();
+
+        for (int i = 0; i < change.size(); i++) {
+            this.payouts.computeIfAbsent(change.get(i), id -> new LongAdder()).increment();
+        }
+    }
+
+    public long getElapsedMillis() {
+        return this.clock.getAsLong() - this.started;
+    }
+
+    public long getSales(String itemId) {
+        final LongAdder sales = this.sales.get(itemId);
+        return sales == null ? 0 : sales.sum();
+    }
+
+    public long getPayouts(String denomination) {
+        final LongAdder payouts = this.payouts.get(denomination);
+        return payouts == null ? 0 : payouts.sum();
+    }
+
+    public Map<String, Integer> getItemQuantities() {
+        final Map<String, Integer> quantities = new HashMap<>();
+        for (ItemBucket bucket : this.itemBuckets.getBuckets()) {
+            quantities.put(bucket.getId(), bucket.getQuantity());
+        }
+        return Collections.unmodifiableMap(quantities);
+    }
+
+    public Map<String, Integer> getItemCapacities() {
+        final Map<String, Integer> capacities = new HashMap<>();
+        for (ItemBucket bucket : this.itemBuckets.getBuckets()) {
+            capacities.put(bucket.getId(), bucket.getCapacity());
+        }
+        return Collections.unmodifiableMap(capacities);
+    }
+
+    public Map<String, Integer> getCoinCapacities() {
+        final Map<String, Integer> capacities = new HashMap<>();
+        for (CoinCassette cassette : this.cassettes.getCassettes()) {
+            capacities.put(cassette.getId(), cassette.getCapacity());
+        }
+        return Collections.unmodifiableMap(capacities);
+    }
+
+    public Map<String, Integer> getCoinQuantities() {
+        final Map<String, Integer> quantities = new HashMap<>();
+        for (CoinCassette cassette : this.cassettes.getCassettes()) {
+            quantities.put(cassette.getId(), cassette.getQuantity());
+        }
+        return Collections.unmodifiableMap(quantities);
+    }
+}
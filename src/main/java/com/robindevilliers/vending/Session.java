@@ -0,0 +1,42 @@
+package com.robindevilliers.vending;
+
+import java.util.ArrayList;
+import java.util.List;
+
+public class Session {
+
+    private final long id;
+
+    private final CoinPurse coinPurse;
+
+    //reused by the CharSequence entry point so that a command line does not allocate a new response list.
+    private final List<String> responseBuffer = new ArrayList<>();
+
+    private volatile long lastAccessed;
+
+    public Session(long id, CoinPurse coinPurse, long lastAccessed) {
+        this.id = id;
+        this.coinPurse = coinPurse;
+        this.lastAccessed = lastAccessed;
+    }
+
+    public long getId() {
+        return this.id;
+    }
+
+    public CoinPurse getCoinPurse() {
+        return this.coinPurse;
+    }
+
+    public List<String> getResponseBuffer() {
+        return this.responseBuffer;
+    }
+
+    public long getLastAccessed() {
+        return this.lastAccessed;
+    }
+
+    public void setLastAccessed(long lastAccessed) {
+        this.lastAccessed = lastAccessed;
+    }
+}
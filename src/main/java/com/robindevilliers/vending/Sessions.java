@@ -0,0 +1,104 @@
+package com.robindevilliers.vending;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.LongSupplier;
+
+public class Sessions {
+
+    private final Map<Long, Session> sessions = new ConcurrentHashMap<>();
+
+    //session 0 is never handed out, so that it can stand for the machine's own coin purse.
+    private final AtomicLong nextId = new AtomicLong(1);
+
+    private final CoinCalculator coinCalculator;
+
+    private final LongSupplier clock;
+
+    private final long timeoutMillis;
+
+    public Sessions(CoinCalculator coinCalculator, LongSupplier clock, long timeoutMillis) {
+        this.coinCalculator = coinCalculator;
+        this.clock = clock;
+        this.timeoutMillis = timeoutMillis;
+    }
+
+    public Session open() {
+        final Session session = new Session(this.nextId.getAndIncrement(), new CoinPurse(this.coinCalculator), this.clock.getAsLong());
+
+        this.sessions.put(session.getId(), session);
+
+        return session;
+    }
+
+    //used when recovering, to bring back a session that was open before a restart.
+    public Session restore(long sessionId) {
+        this.nextId.accumulateAndGet(sessionId + 1, Math::max);
+
+        return this.sessions.computeIfAbsent(sessionId, id -> new Session(id, new CoinPurse(this.coinCalculator), this.clock.getAsLong()));
+    }
+
+    public long getNextId() {
+        return this.nextId.get();
+    }
+
+    //used when a machine is carried on elsewhere, so that it never hands out an id that was given out before it moved.
+    public void skipTo(long nextId) {
+        this.nextId.accumulateAndGet(nextId, Math::max);
+    }
+
+    public Collection<Session> getSessions() {
+        return Collections.unmodifiableCollection(this.sessions.values());
+    }
+
+    public boolean isOpen(long sessionId) {
+        return this.sessions.containsKey(sessionId);
+    }
+
+    public Session get(long sessionId) {
+        final Session session = this.sessions.get(sessionId);
+
+        if (session == null) {
+            throw new SystemException("Session not found.");
+        }
+
+        session.setLastAccessed(this.clock.getAsLong());
+        return session;
+    }
+
+    public Session close(long sessionId) {
+        final Session session = this.sessions.remove(sessionId);
+
+        if (session == null) {
+            throw new SystemException("Session not found.");
+        }
+        return session;
+    }
+
+    //this is a sweep over every open session, so it is meant to be called periodically rather than per command.
+    public List<Session> expire() {
+        final long cutOff = this.clock.getAsLong() - this.timeoutMillis;
+        final List<Session> expired = new ArrayList<>();
+
+        final Iterator<Session> iterator = this.sessions.values().iterator();
+        while (iterator.hasNext()) {
+            final Session session = iterator.next();
+
+            if (session.getLastAccessed() < cutOff) {
+                iterator.remove();
+                expired.add(session);
+            }
+        }
+        return expired;
+    }
+
+    public int size() {
+        return this.sessions.size();
+    }
+}
@@ -0,0 +1,507 @@
+package com.robindevilliers.vending;
+
+import com.robindevilliers.vending.RouterConnection.Reply;
+import com.robindevilliers.vending.model.ShardNode;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+//Spreads a fleet across nodes, each running a CommandServer and a MigrationServer over part of it, and takes the same line
+//protocol as a CommandServer so that clients cannot tell the difference.
+//
+//Each line goes to the node that a HashRing assigns its machine to. Lines are forwarded as they are, on one connection per
+//client per node, so a node keeps a separate session for each client just as it would without the router. A single selector
+//thread does all of the forwarding without blocking: the lines a client pipelines to a node go out together, and replies go
+//back to the client in the order its lines came in, whichever node answers first.
+//
+//When a node joins or leaves, each machine whose owner changes is copied to its new node, with its stock, coins and own purse,
+//before the new ring is used, and only removed from its old node afterwards. Lines for a machine that is on its way to another
+//node are answered INVALID-MACHINE until it gets there. If any machine cannot be moved, none are, and the old ring is kept;
+//that includes a machine where a customer has coins part way through a purchase, so the move is tried again once they finish.
+public class ShardRouter implements Runnable, Closeable {
+
+    private static final int MAX_LINE_LENGTH = 64 * 1024;
+
+    //once this much output is waiting for a slow client, its requests are no longer read until it catches up.
+    private static final int HIGH_WATER_MARK = 256 * 1024;
+
+    private final Selector selector;
+
+    private final ServerSocketChannel serverChannel;
+
+    private volatile boolean running = true;
+
+    //both are replaced rather than changed, with the nodes published before a ring that uses them.
+    private volatile HashRing ring = new HashRing();
+
+    private volatile Map<String, ShardNode> nodes = Collections.emptyMap();
+
+    private int migrations;
+
+    public ShardRouter(InetSocketAddress address) throws IOException {
+        this.selector = Selector.open();
+        this.serverChannel = ServerSocketChannel.open();
+        this.serverChannel.configureBlocking(false);
+        this.serverChannel.bind(address, 1024);
+        this.serverChannel.register(this.selector, SelectionKey.OP_ACCEPT);
+    }
+
+    public int getPort() throws IOException {
+        return ((InetSocketAddress) this.serverChannel.getLocalAddress()).getPort();
+    }
+
+    //returns null when there are no nodes.
+    public String getNode(String machineId) {
+        return this.ring.getNode(machineId);
+    }
+
+    public synchronized int getMigrations() {
+        return this.migrations;
+    }
+
+    //moves the machines the new node takes over, from wherever they are, and then starts sending their lines to it.
+    public synchronized void addNode(ShardNode node) throws IOException {
+        final HashRing ring = this.ring.withNode(node.getId());
+
+        final Map<String, ShardNode> nodes = new HashMap<>(this.nodes);
+        nodes.put(node.getId(), node);
+
+        final List<Move> moves = rebalance(ring, nodes, nodes.values());
+
+        this.nodes = nodes;
+        this.ring = ring;
+
+        finish(moves);
+    }
+
+    //moves every machine off the node, so that it can be shut down without losing anything.
+    public synchronized void removeNode(String nodeId) throws IOException {
+        final ShardNode node = this.nodes.get(nodeId);
+
+        if (node == null) {
+            throw new SystemException("Node not found.");
+        }
+
+        final HashRing ring = this.ring.withoutNode(nodeId);
+
+        if (ring.isEmpty()) {
+            throw new SystemException("The last node cannot be removed.");
+        }
+
+        final List<Move> moves = rebalance(ring, this.nodes, Collections.singletonList(node));
+
+        final Map<String, ShardNode> nodes = new HashMap<>(this.nodes);
+        nodes.remove(nodeId);
+
+        this.ring = ring;
+        this.nodes = nodes;
+
+        finish(moves);
+    }
+
+    //copies every machine whose owner changes to its new node, and then releases them all there. If any step fails, every copy
+    //is taken back out and every machine released where it was, so that the old ring is still right.
+    private List<Move> rebalance(HashRing ring, Map<String, ShardNode> nodes, Collection<ShardNode> sources) throws IOException {
+        final List<Move> moves = new ArrayList<>();
+
+        for (ShardNode source : sources) {
+            for (String machineId : MigrationServer.list(source.getMigrationAddress())) {
+                final String owner = ring.getNode(machineId);
+
+                if (!owner.equals(source.getId())) {
+                    moves.add(new Move(machineId, source, nodes.get(owner)));
+                }
+            }
+        }
+
+        boolean moved = false;
+        try {
+            for (Move move : moves) {
+                if (!copy(move)) {
+                    throw new SystemException("Unable to migrate machine.");
+                }
+            }
+
+            for (Move move : moves) {
+                if (move.exported && !MigrationServer.release(move.target.getMigrationAddress(), move.machineId)) {
+                    throw new SystemException("Unable to migrate machine.");
+                }
+            }
+            moved = true;
+        } catch (IOException e) {
+            throw new SystemException("Unable to migrate machine.", e);
+        } finally {
+            if (!moved) {
+                moves.forEach(this::abort);
+            }
+        }
+        return moves;
+    }
+
+    //returns false when the target will not take the machine.
+    private boolean copy(Move move) throws IOException {
+        final byte[] machine = MigrationServer.export(move.source.getMigrationAddress(), move.machineId);
+
+        if (machine == null) {
+            //the machine has gone since the node was listed.
+            return true;
+        }
+        move.exported = true;
+
+        //until the target answers it may have taken the machine or not, so if no answer comes the copy is taken back out.
+        move.imported = true;
+        move.imported = MigrationServer.adopt(move.target.getMigrationAddress(), machine);
+        return move.imported;
+    }
+
+    //a node that cannot be reached here is left holding its copy, which is never used and is replaced if the machine comes back.
+    private void abort(Move move) {
+        if (move.imported) {
+            try {
+                MigrationServer.remove(move.target.getMigrationAddress(), move.machineId);
+            } catch (IOException e) {
+                //the machine is still released where it was, below.
+            }
+        }
+
+        if (move.exported) {
+            try {
+                MigrationServer.release(move.source.getMigrationAddress(), move.machineId);
+            } catch (IOException e) {
+                //the machine stays held where it was, so it is out of use until it is released there, but nothing in it is lost.
+            }
+        }
+    }
+
+    private void finish(List<Move> moves) {
+        for (Move move : moves) {
+            if (move.exported) {
+                try {
+                    MigrationServer.remove(move.source.getMigrationAddress(), move.machineId);
+                } catch (IOException e) {
+                    //the old copy stays held, so it is never used, and is replaced if the machine comes back.
+                }
+                this.migrations++;
+            }
+        }
+    }
+
+    @Override
+    public void run() {
+        try {
+            while (this.running) {
+                this.selector.select();
+
+                final Iterator<SelectionKey> keys = this.selector.selectedKeys().iterator();
+                while (keys.hasNext()) {
+                    final SelectionKey key = keys.next();
+                    keys.remove();
+
+                    try {
+                        if (key.isValid() && key.isAcceptable()) {
+                            accept();
+                        }
+                        if (key.isValid() && key.isConnectable()) {
+                            finishConnect(key);
+                        }
+                        if (key.isValid() && key.isReadable()) {
+                            read(key);
+                        }
+                        if (key.isValid() && key.isWritable()) {
+                            flush((RouterConnection) key.attachment());
+                        }
+                    } catch (IOException | RuntimeException e) {
+                        //whatever goes wrong with one connection only drops that connection, and the loop carries on for the rest.
+                        disconnect((RouterConnection) key.attachment());
+                    }
+                }
+            }
+        } catch (IOException e) {
+            throw new SystemException("Shard router failed.", e);
+        } finally {
+            shutdown();
+        }
+    }
+
+    @Override
+    public void close() {
+        this.running = false;
+        this.selector.wakeup();
+    }
+
+    private void accept() throws IOException {
+        final SocketChannel channel = this.serverChannel.accept();
+
+        if (channel != null) {
+            channel.configureBlocking(false);
+            channel.setOption(StandardSocketOptions.TCP_NODELAY, true);
+            channel.register(this.selector, SelectionKey.OP_READ, new RouterConnection(channel));
+        }
+    }
+
+    private void finishConnect(SelectionKey key) throws IOException {
+        final RouterConnection upstream = (RouterConnection) key.attachment();
+
+        if (upstream.getChannel().finishConnect()) {
+            flush(upstream);
+        }
+    }
+
+    private void read(SelectionKey key) throws IOException {
+        final RouterConnection connection = (RouterConnection) key.attachment();
+        final ByteBuffer readBuffer = connection.getReadBuffer();
+
+        if (connection.getChannel().read(readBuffer) == -1) {
+            disconnect(connection);
+            return;
+        }
+
+        readBuffer.flip();
+        final StringBuilder line = connection.getLine();
+
+        while (readBuffer.hasRemaining()) {
+            final char c = (char) (readBuffer.get() & 0xff);
+
+            if (c == '\n') {
+                if (connection.getClient() == null) {
+                    forwardLine(connection);
+                } else {
+                    answerLine(connection);
+                }
+                line.setLength(0);
+            } else if (c != '\r') {
+                line.append(c);
+            }
+
+            if (line.length() > MAX_LINE_LENGTH) {
+                disconnect(connection);
+                return;
+            }
+        }
+        readBuffer.clear();
+
+        if (connection.getClient() == null) {
+            //the lines a client pipelined to each node go out together.
+            for (RouterConnection upstream : connection.getUpstreams().values()) {
+                if (upstream.getResponses().length() > 0) {
+                    flush(upstream);
+                }
+            }
+            sendReplies(connection);
+        } else {
+            sendReplies(connection.getClient());
+        }
+    }
+
+    private void forwardLine(RouterConnection client) {
+        final StringBuilder line = client.getLine();
+
+        final int separator = line.indexOf(" ");
+
+        if (separator < 0) {
+            client.getReplies().add(new Reply("INVALID-COMMAND"));
+            return;
+        }
+
+        final String nodeId = this.ring.getNode(line.substring(0, separator));
+        final ShardNode node = nodeId == null ? null : this.nodes.get(nodeId);
+
+        if (node == null) {
+            client.getReplies().add(new Reply("INVALID-MACHINE"));
+            return;
+        }
+
+        RouterConnection upstream = client.getUpstreams().get(nodeId);
+
+        if (upstream == null) {
+            try {
+                upstream = connect(client, node);
+            } catch (IOException e) {
+                client.getReplies().add(new Reply("SYSTEM-ERROR"));
+                return;
+            }
+        }
+
+        final Reply reply = new Reply();
+        client.getReplies().add(reply);
+        upstream.getReplies().add(reply);
+        upstream.getResponses().append(line).append('\n');
+    }
+
+    private RouterConnection connect(RouterConnection client, ShardNode node) throws IOException {
+        final SocketChannel channel = SocketChannel.open();
+        final RouterConnection upstream = new RouterConnection(channel, client);
+
+        try {
+            channel.configureBlocking(false);
+            channel.setOption(StandardSocketOptions.TCP_NODELAY, true);
+
+            if (channel.connect(node.getCommandAddress())) {
+                channel.register(this.selector, SelectionKey.OP_READ, upstream);
+            } else {
+                channel.register(this.selector, SelectionKey.OP_CONNECT, upstream);
+            }
+        } catch (IOException e) {
+            channel.close();
+            throw e;
+        }
+
+        client.getUpstreams().put(node.getId(), upstream);
+        return upstream;
+    }
+
+    private void answerLine(RouterConnection upstream) {
+        final Reply reply = upstream.getReplies().poll();
+
+        if (reply != null) {
+            reply.setText(upstream.getLine().toString());
+        }
+    }
+
+    //sends the client every reply that is ready, up to the first that a node still owes.
+    private void sendReplies(RouterConnection client) throws IOException {
+        final StringBuilder responses = client.getResponses();
+
+        while (!client.getReplies().isEmpty() && client.getReplies().peek().isAnswered()) {
+            responses.append(client.getReplies().poll().getText()).append('\n');
+        }
+
+        if (responses.length() > 0 || client.getWriteBuffer(0).position() > 0) {
+            flush(client);
+        }
+    }
+
+    private void flush(RouterConnection connection) throws IOException {
+        final SelectionKey key = connection.getChannel().keyFor(this.selector);
+
+        if (key == null || !key.isValid() || !connection.getChannel().isConnected()) {
+            //lines for a node that is still being connected to go out once it is.
+            return;
+        }
+
+        final StringBuilder responses = connection.getResponses();
+        final ByteBuffer writeBuffer = connection.getWriteBuffer(responses.length());
+
+        for (int i = 0; i < responses.length(); i++) {
+            writeBuffer.put((byte) responses.charAt(i));
+        }
+        responses.setLength(0);
+
+        writeBuffer.flip();
+        connection.getChannel().write(writeBuffer);
+        final int pending = writeBuffer.remaining();
+        writeBuffer.compact();
+
+        if (pending == 0) {
+            key.interestOps(SelectionKey.OP_READ);
+        } else if (pending > HIGH_WATER_MARK && connection.getClient() == null) {
+            key.interestOps(SelectionKey.OP_WRITE);
+        } else {
+            key.interestOps(SelectionKey.OP_READ | SelectionKey.OP_WRITE);
+        }
+    }
+
+    private void disconnect(RouterConnection connection) {
+        if (connection == null) {
+            return;
+        }
+
+        close(connection);
+
+        if (connection.getClient() == null) {
+            //a node refunds a client's purses when the router's connection for that client goes away.
+            for (RouterConnection upstream : connection.getUpstreams().values()) {
+                close(upstream);
+            }
+            connection.getUpstreams().clear();
+            return;
+        }
+
+        final RouterConnection client = connection.getClient();
+        client.getUpstreams().values().remove(connection);
+
+        //the lines the node had not answered may or may not have run, which the client is told in the usual way.
+        for (Reply reply : connection.getReplies()) {
+            reply.setText("SYSTEM-ERROR");
+        }
+        connection.getReplies().clear();
+
+        try {
+            sendReplies(client);
+        } catch (IOException e) {
+            disconnect(client);
+        }
+    }
+
+    private void close(RouterConnection connection) {
+        try {
+            connection.getChannel().close();
+        } catch (IOException e) {
+            //the connection is being dropped anyway.
+        }
+    }
+
+    private void shutdown() {
+        for (SelectionKey key : this.selector.keys()) {
+            if (key.attachment() instanceof RouterConnection) {
+                close((RouterConnection) key.attachment());
+            }
+        }
+
+        try {
+            this.serverChannel.close();
+            this.selector.close();
+        } catch (IOException e) {
+            throw new SystemException("Unable to stop shard router.", e);
+        }
+    }
+
+    //takes the port to listen on and then a node as id=host:commandPort:migrationPort for each node of the fleet.
+    public static void main(String[] args) throws IOException {
+        final ShardRouter router = new ShardRouter(new InetSocketAddress(InetAddress.getLoopbackAddress(), Integer.parseInt(args[0])));
+
+        for (int i = 1; i < args.length; i++) {
+            final String[] node = args[i].split("[=:]");
+
+            router.addNode(new ShardNode(node[0],
+                    new InetSocketAddress(node[1], Integer.parseInt(node[2])),
+                    new InetSocketAddress(node[1], Integer.parseInt(node[3]))));
+        }
+
+        router.run();
+    }
+
+    private static class Move {
+
+        private final String machineId;
+
+        private final ShardNode source;
+
+        private final ShardNode target;
+
+        private boolean exported;
+
+        private boolean imported;
+
+        private Move(String machineId, ShardNode source, ShardNode target) {
+            this.machineId = machineId;
+            this.source = source;
+            this.target = target;
+        }
+    }
+}
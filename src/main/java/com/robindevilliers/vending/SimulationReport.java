@@ -0,0 +1,77 @@
+package com.robindevilliers.vending;
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.TreeMap;
+
+public class SimulationReport {
+
+    private final long customers;
+
+    private final long elapsedNanos;
+
+    private final Map<String, Long> commandCounts;
+
+    private final Map<String, Long> responseCounts;
+
+    public SimulationReport(long customers, long elapsedNanos, Map<String, Long> commandCounts, Map<String, Long> responseCounts) {
+        this.customers = customers;
+        this.elapsedNanos = elapsedNanos;
+        this.commandCounts = Collections.unmodifiableMap(new TreeMap<>(commandCounts));
+        this.responseCounts = Collections.unmodifiableMap(new TreeMap<>(responseCounts));
+    }
+
+    public long getCustomers() {
+        return this.customers;
+    }
+
+    public long getElapsedNanos() {
+        return this.elapsedNanos;
+    }
+
+    public Map<String, Long> getCommandCounts() {
+        return this.commandCounts;
+    }
+
+    public Map<String, Long> getResponseCounts() {
+        return this.responseCounts;
+    }
+
+    public long getCommands() {
+        return this.commandCounts.values().stream().mapToLong(Long::longValue).sum();
+    }
+
+    public double getCommandsPerSecond() {
+        return this.elapsedNanos == 0 ? 0 : getCommands() * 1e9 / this.elapsedNanos;
+    }
+
+    //the share of purchase attempts that found the slot empty.
+    public double getStockoutRate() {
+        return rateOfPurchases("OUT-OF-STOCK");
+    }
+
+    //the share of purchase attempts that could not be given change.
+    public double getChangeFailureRate() {
+        return rateOfPurchases("INSUFFICIENT-CHANGE");
+    }
+
+    private double rateOfPurchases(String response) {
+        final long purchases = this.commandCounts.getOrDefault(VendingMachine.GET, 0L);
+        return purchases == 0 ? 0 : (double) this.responseCounts.getOrDefault(response, 0L) / purchases;
+    }
+
+    @Override
+    public String toString() {
+        final StringBuilder text = new StringBuilder();
+
+        text.append(String.format("customers: %d%n", this.customers));
+        text.append(String.format("commands: %d in %.3f s (%.0f per second)%n", getCommands(), this.elapsedNanos / 1e9, getCommandsPerSecond()));
+        text.append(String.format("stockout rate: %.4f%n", getStockoutRate()));
+        text.append(String.format("change failure rate: %.4f%n", getChangeFailureRate()));
+
+        for (Map.Entry<String, Long> entry : this.responseCounts.entrySet()) {
+            text.append(String.format("  %s: %d%n", entry.getKey(), entry.getValue()));
+        }
+        return text.toString();
+    }
+}
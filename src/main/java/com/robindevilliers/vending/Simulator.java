@@ -0,0 +1,181 @@
+package com.robindevilliers.vending;
+
+import static java.util.Arrays.asList;
+
+import com.robindevilliers.vending.model.CoinCassette;
+import com.robindevilliers.vending.model.Denomination;
+import com.robindevilliers.vending.model.ItemBucket;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+//Drives a fleet of machines with customers as fast as they will go. Each machine has its own random numbers, seeded from
+//the simulation seed and its index, and is driven by one thread at a time, so a run gives the same results for the same
+//seed however many threads it is spread across.
+public class Simulator {
+
+    private static final String[] COINS = {"DOLLAR", "QUARTER", "DIME", "NICKEL"};
+
+    private final long seed;
+
+    private final int machineCount;
+
+    private final int slotCount;
+
+    //how skewed demand is towards the first slots, where 0 means every slot is equally popular.
+    private final double popularity;
+
+    //how many customers a machine serves between visits from the service engineer.
+    private final int serviceInterval;
+
+    //the share of customers who put in too little and ask for their coins back.
+    private final double walkAwayRate;
+
+    //whether payments are credited into the cassettes, to be given out again as change.
+    private final boolean recycling;
+
+    private final double[] demand;
+
+    public Simulator(long seed, int machineCount, int slotCount, double popularity, int serviceInterval, double walkAwayRate) {
+        this(seed, machineCount, slotCount, popularity, serviceInterval, walkAwayRate, false);
+    }
+
+    public Simulator(long seed, int machineCount, int slotCount, double popularity, int serviceInterval, double walkAwayRate, boolean recycling) {
+        this.seed = seed;
+        this.machineCount = machineCount;
+        this.slotCount = slotCount;
+        this.popularity = popularity;
+        this.serviceInterval = serviceInterval;
+        this.walkAwayRate = walkAwayRate;
+        this.recycling = recycling;
+
+        //a Zipf distribution, held as cumulative weights so that a slot can be picked with a binary search.
+        this.demand = new double[slotCount];
+        double total = 0;
+        for (int i = 0; i < slotCount; i++) {
+            total += 1 / Math.pow(i + 1, popularity);
+            this.demand[i] = total;
+        }
+    }
+
+    public SimulationReport run(int customersPerMachine, int threadCount) {
+        final ExecutorService executor = Executors.newFixedThreadPool(threadCount);
+
+        try {
+            final List<Future<Metrics>> results = new ArrayList<>();
+            final long started = System.nanoTime();
+
+            for (int i = 0; i < this.machineCount; i++) {
+                final int machineIndex = i;
+                results.add(executor.submit(() -> runMachine(machineIndex, customersPerMachine)));
+            }
+
+            final Map<String, Long> commandCounts = new HashMap<>();
+            final Map<String, Long> responseCounts = new HashMap<>();
+
+            for (Future<Metrics> result : results) {
+                final Metrics metrics = result.get();
+
+                metrics.getCommandCounts().forEach((command, count) -> commandCounts.merge(command, count, Long::sum));
+                metrics.getResponseCounts().forEach((response, count) -> responseCounts.merge(response, count, Long::sum));
+            }
+
+            return new SimulationReport((long) customersPerMachine * this.machineCount, System.nanoTime() - started,
+                    commandCounts, responseCounts);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new SystemException("Simulation interrupted.", e);
+        } catch (ExecutionException e) {
+            throw new SystemException("Simulation failed.", e.getCause());
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    private Metrics runMachine(int machineIndex, int customers) throws IOException {
+        final Random random = new Random(this.seed * 31 + machineIndex);
+
+        final CoinCalculator coinCalculator = new CoinCalculator(new ArrayList<>(asList(
+                new Denomination("DOLLAR", 100),
+                new Denomination("QUARTER", 25),
+                new Denomination("DIME", 10),
+                new Denomination("NICKEL", 5)
+        )));
+
+        final ItemBuckets itemBuckets = new HeapItemBuckets(new ArrayList<>());
+        final int[] prices = new int[this.slotCount];
+        for (int i = 0; i < this.slotCount; i++) {
+            prices[i] = 50 + 5 * random.nextInt(21);
+            itemBuckets.add(new ItemBucket(slotId(i), prices[i], 20));
+        }
+
+        final Cassettes cassettes = new HeapCassettes(new ArrayList<>());
+        for (String coin : COINS) {
+            cassettes.add(new CoinCassette(coin, 100));
+        }
+        cassettes.setRecycling(this.recycling);
+
+        final VendingMachine vendingMachine = new VendingMachine(coinCalculator, itemBuckets, cassettes, new CoinPurse(coinCalculator));
+        final Metrics metrics = new Metrics(itemBuckets, cassettes);
+        vendingMachine.addListener(metrics);
+
+        final StringBuilder line = new StringBuilder();
+        final StringBuilder out = new StringBuilder();
+
+        for (int customer = 0; customer < customers; customer++) {
+            if (this.serviceInterval > 0 && customer % this.serviceInterval == 0) {
+                line.append("SERVICE, ");
+            }
+
+            final int slot = pickSlot(random);
+            final int funds = random.nextDouble() < this.walkAwayRate ? random.nextInt(prices[slot]) : prices[slot];
+
+            int total = 0;
+            while (total < funds) {
+                final int coin = random.nextInt(COINS.length);
+                line.append("PUT-").append(COINS[coin]).append(", ");
+                total += coinCalculator.getAmount(coinCalculator.getOrdinal(COINS[coin]));
+            }
+            line.append("GET-").append(slotId(slot)).append(", COIN-RETURN");
+
+            vendingMachine.process(line, out);
+
+            line.setLength(0);
+            out.setLength(0);
+        }
+        return metrics;
+    }
+
+    private int pickSlot(Random random) {
+        final double pick = random.nextDouble() * this.demand[this.demand.length - 1];
+        final int slot = Arrays.binarySearch(this.demand, pick);
+
+        return slot >= 0 ? slot : -slot - 1;
+    }
+
+    private static String slotId(int slot) {
+        return "S" + slot;
+    }
+
+    //arguments are the seed, machines, customers per machine, threads and whether payments are recycled as change.
+    public static void main(String[] args) {
+        final long seed = args.length > 0 ? Long.parseLong(args[0]) : 1;
+        final int machines = args.length > 1 ? Integer.parseInt(args[1]) : 100;
+        final int customers = args.length > 2 ? Integer.parseInt(args[2]) : 10000;
+        final int threads = args.length > 3 ? Integer.parseInt(args[3]) : Runtime.getRuntime().availableProcessors();
+        final boolean recycling = args.length > 4 && Boolean.parseBoolean(args[4]);
+
+        final Simulator simulator = new Simulator(seed, machines, 10, 1.0, 150, 0.05, recycling);
+
+        System.out.print(simulator.run(customers, threads));
+    }
+}
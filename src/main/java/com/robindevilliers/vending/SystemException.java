@@ -5,4 +5,8 @@ public class SystemException extends RuntimeException {
     public SystemException(String message){
         super(message);
     }
+
+    public SystemException(String message, Throwable cause){
+        super(message, cause);
+    }
 }
@@ -1,13 +1,35 @@
 package com.robindevilliers.vending;
 
+import com.robindevilliers.vending.model.Denomination;
+import com.robindevilliers.vending.model.MachineConfig;
+
+import java.io.Flushable;
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.ByteBuffer;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.stream.Collectors;
 import java.util.stream.Stream;
 
 
 public class VendingMachine {
 
+    private static final long DEFAULT_SESSION_TIMEOUT = 5 * 60 * 1000;
+
+    public static final String SERVICE = "SERVICE";
+
+    public static final String PUT = "PUT";
+
+    public static final String COIN_RETURN = "COIN-RETURN";
+
+    public static final String GET = "GET";
+
+    public static final String INVALID = "INVALID";
+
     private final CoinCalculator coinCalculator;
 
     private final ItemBuckets itemBuckets;
@@ -16,14 +38,208 @@ public class VendingMachine {
 
     private final CoinPurse coinPurse;
 
+    //the machine's own purse is treated as session 0, which Sessions never hands out.
+    private final Session machineSession;
+
+    private final Sessions sessions;
+
+    private volatile MachineListener[] listeners = new MachineListener[0];
+
     public VendingMachine(CoinCalculator coinCalculator, ItemBuckets itemBuckets, Cassettes cassettes, CoinPurse coinPurse) {
+        this(coinCalculator, itemBuckets, cassettes, coinPurse, new Sessions(coinCalculator, System::currentTimeMillis, DEFAULT_SESSION_TIMEOUT));
+    }
+
+    public VendingMachine(CoinCalculator coinCalculator, ItemBuckets itemBuckets, Cassettes cassettes, CoinPurse coinPurse, Sessions sessions) {
         this.coinCalculator = coinCalculator;
         this.itemBuckets = itemBuckets;
         this.cassettes = cassettes;
         this.coinPurse = coinPurse;
+        this.machineSession = new Session(0, coinPurse, 0);
+        this.sessions = sessions;
+    }
+
+    public synchronized void addListener(MachineListener listener) {
+        final MachineListener[] listeners = Arrays.copyOf(this.listeners, this.listeners.length + 1);
+        listeners[listeners.length - 1] = listener;
+        this.listeners = listeners;
+    }
+
+    public long openSession() {
+        final long sessionId = this.sessions.open().getId();
+
+        final MachineListener[] listeners = this.listeners;
+        for (int i = 0; i < listeners.length; i++) {
+            listeners[i].sessionOpened(sessionId);
+        }
+        return sessionId;
+    }
+
+    //closing a session hands back any coins that are still in its purse.
+    public String closeSession(long sessionId) {
+        final List<String> responses = new ArrayList<>();
+
+        final Session session = this.sessions.close(sessionId);
+        coinReturn(responses, session);
+        sessionClosed(session);
+
+        return String.join(", ", responses);
+    }
+
+    //slots, prices and capacities can change while the machine runs, but the coins it takes cannot, as purses count coins by denomination.
+    public void configure(MachineConfig config) {
+        final List<Denomination> denominations = config.getDenominations();
+
+        if (denominations.size() != this.coinCalculator.getDenominationCount()) {
+            throw new SystemException("Denominations cannot be changed while running.");
+        }
+        for (Denomination denomination : denominations) {
+            final int ordinal = this.coinCalculator.getOrdinal(denomination.getId());
+
+            if (ordinal < 0 || this.coinCalculator.getAmount(ordinal) != denomination.getAmount()) {
+                throw new SystemException("Denominations cannot be changed while running.");
+            }
+        }
+
+        this.itemBuckets.configure(config.getItems());
+        this.cassettes.configure(config.getCassettes());
+    }
+
+    //the machine's definition as it stands, such as for moving it to another node.
+    public MachineConfig getConfig(String machineId) {
+        final List<Denomination> denominations = new ArrayList<>();
+        for (int ordinal = 0; ordinal < this.coinCalculator.getDenominationCount(); ordinal++) {
+            denominations.add(new Denomination(this.coinCalculator.getId(ordinal), this.coinCalculator.getAmount(ordinal)));
+        }
+
+        return new MachineConfig(machineId, denominations, this.itemBuckets.getBuckets(), this.cassettes.getCassettes());
+    }
+
+    public MachineState getState() {
+        return new MachineState(this.itemBuckets, this.cassettes, this.coinPurse, this.sessions);
+    }
+
+    public boolean isRecycling() {
+        return this.cassettes.isRecycling();
+    }
+
+    public void setRecycling(boolean recycling) {
+        this.cassettes.setRecycling(recycling);
+    }
+
+    public boolean isExactChangeOnly(String itemId) {
+        return this.coinCalculator.isExactChangeOnly(this.itemBuckets.getPriceForItem(itemId), this.cassettes);
+    }
+
+    //closes the sessions that have not been used within the timeout, and returns the coins handed back from each of them.
+    public Map<Long, List<String>> expireSessions() {
+        final Map<Long, List<String>> refunds = new LinkedHashMap<>();
+
+        for (Session session : this.sessions.expire()) {
+            final List<String> coins = new ArrayList<>();
+            coinReturn(coins, session);
+            sessionClosed(session);
+            refunds.put(session.getId(), coins);
+        }
+        return refunds;
+    }
+
+    //true when a customer's session holds coins, which only that customer's connection can ask for back.
+    public boolean hasSessionCoins() {
+        for (Session session : this.sessions.getSessions()) {
+            if (session.getCoinPurse().getTotal() > 0) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    //closes every customer's session, handing back its coins, as when the machine is taken away from its customers.
+    public Map<Long, List<String>> closeSessions() {
+        final Map<Long, List<String>> refunds = new LinkedHashMap<>();
+
+        for (Session session : new ArrayList<>(this.sessions.getSessions())) {
+            this.sessions.close(session.getId());
+
+            final List<String> coins = new ArrayList<>();
+            coinReturn(coins, session);
+            sessionClosed(session);
+            refunds.put(session.getId(), coins);
+        }
+        return refunds;
+    }
+
+    public String process(long sessionId, String line) {
+        return process(this.sessions.get(sessionId), line);
+    }
+
+    public void process(long sessionId, CharSequence line, Appendable out) throws IOException {
+        process(this.sessions.get(sessionId), line, out);
     }
 
     public String process(String line) {
+        return process(this.machineSession, line);
+    }
+
+    public void process(CharSequence line, Appendable out) throws IOException {
+        process(this.machineSession, line, out);
+    }
+
+    //processes every line that can be read, writing one line of responses per command line and flushing once at the end.
+    //The buffers belong to the batch rather than the session, as most sessions never run one.
+    //The machine is locked for each chunk rather than the whole batch, so that a reload is not held up while waiting on input.
+    public void processAll(Reader in, Appendable out) throws IOException {
+        final Session session = this.machineSession;
+        final char[] chunk = new char[8192];
+        final StringBuilder line = new StringBuilder();
+
+        int read;
+        while ((read = in.read(chunk)) != -1) {
+            synchronized (this) {
+                for (int i = 0; i < read; i++) {
+                    appendToLine(session, line, chunk[i], out);
+                }
+            }
+        }
+
+        synchronized (this) {
+            finishBatch(session, line, out);
+        }
+    }
+
+    //the protocol is plain ASCII, so each byte is taken as a character.
+    public void processAll(ByteBuffer in, Appendable out) throws IOException {
+        final Session session = this.machineSession;
+        final StringBuilder line = new StringBuilder();
+
+        while (in.hasRemaining()) {
+            appendToLine(session, line, (char) (in.get() & 0xff), out);
+        }
+        finishBatch(session, line, out);
+    }
+
+    private void appendToLine(Session session, StringBuilder line, char c, Appendable out) throws IOException {
+        if (c == '\n') {
+            process(session, line, out);
+            out.append('\n');
+            line.setLength(0);
+        } else if (c != '\r') {
+            line.append(c);
+        }
+    }
+
+    private void finishBatch(Session session, StringBuilder line, Appendable out) throws IOException {
+        if (line.length() > 0) {
+            process(session, line, out);
+            out.append('\n');
+            line.setLength(0);
+        }
+
+        if (out instanceof Flushable) {
+            ((Flushable) out).flush();
+        }
+    }
+
+    private String process(Session session, String line) {
         final List<String> responses = new ArrayList<>();
         final List<String> commands = Stream.of(line.split(","))
                 .map(String::trim)
@@ -31,36 +247,169 @@ public class VendingMachine {
                 .collect(Collectors.toList());
 
         for (String command : commands) {
-            if (command.equals("SERVICE")) {
-                serviceMachine(responses);
-            } else if (command.startsWith("PUT-")) {
-                enterCoin(responses, command);
-            } else if (command.equals("COIN-RETURN")) {
-                coinReturn(responses);
-            } else if (command.startsWith("GET-")) {
-                purchaseItem(responses, command.substring(4));
-            } else {
-                responses.add("INVALID-COMMAND");
-            }
+            final long started = System.nanoTime();
+            final int responded = responses.size();
+
+            commandProcessed(processCommand(responses, session, command), responses, responded, started);
         }
+        lineProcessed();
         return responses.stream().collect(Collectors.joining(", "));
     }
 
-    private void coinReturn(List<String> responses) {
-        this.coinPurse.refund(responses);
+    //returns the kind of command that was processed, which is what listeners are told.
+    private String processCommand(List<String> responses, Session session, String command) {
+        if (command.equals("SERVICE")) {
+            serviceMachine(responses);
+            return SERVICE;
+        } else if (command.startsWith("PUT-")) {
+            final String denomination = command.substring(4);
+            enterCoin(responses, session, this.coinCalculator.hasDenomination(denomination) ? denomination : null);
+            return PUT;
+        } else if (command.equals("COIN-RETURN")) {
+            coinReturn(responses, session);
+            return COIN_RETURN;
+        } else if (command.startsWith("GET-")) {
+            purchaseItem(responses, session, command.substring(4));
+            return GET;
+        } else {
+            responses.add("INVALID-COMMAND");
+            return INVALID;
+        }
+    }
+
+    private void process(Session session, CharSequence line, Appendable out) throws IOException {
+        final List<String> responses = session.getResponseBuffer();
+        responses.clear();
+
+        //trailing empty commands are dropped, in the same way that String.split drops them.
+        int end = line.length();
+        while (end > 0 && line.charAt(end - 1) == ',') {
+            end--;
+        }
+
+        int start = 0;
+        while (start < end || (start == 0 && line.length() == 0)) {
+            int commandEnd = start;
+            while (commandEnd < end && line.charAt(commandEnd) != ',') {
+                commandEnd++;
+            }
+
+            final long started = System.nanoTime();
+            final int responded = responses.size();
+
+            commandProcessed(processCommand(responses, session, line, start, commandEnd), responses, responded, started);
+
+            start = commandEnd + 1;
+        }
+        lineProcessed();
+
+        for (int i = 0; i < responses.size(); i++) {
+            if (i > 0) {
+                out.append(", ");
+            }
+            out.append(responses.get(i));
+        }
+        responses.clear();
     }
 
-    private void enterCoin(List<String> responses, String command) {
-        final String denomination = command.substring(4);
+    private String processCommand(List<String> responses, Session session, CharSequence line, int start, int end) {
+        while (start < end && Character.isWhitespace(line.charAt(start))) {
+            start++;
+        }
+        while (end > start && Character.isWhitespace(line.charAt(end - 1))) {
+            end--;
+        }
+
+        if (IdTable.matches(line, start, end, "SERVICE")) {
+            serviceMachine(responses);
+            return SERVICE;
+        } else if (IdTable.startsWith(line, start, end, "PUT-")) {
+            enterCoin(responses, session, this.coinCalculator.findDenomination(line, start + 4, end));
+            return PUT;
+        } else if (IdTable.matches(line, start, end, "COIN-RETURN")) {
+            coinReturn(responses, session);
+            return COIN_RETURN;
+        } else if (IdTable.startsWith(line, start, end, "GET-")) {
+            final String itemId = this.itemBuckets.findItemId(line, start + 4, end);
 
-        if (this.coinCalculator.hasDenomination(denomination)) {
-            this.coinPurse.addCoin(denomination);
+            if (itemId == null) {
+                responses.add("INVALID-ITEM");
+            } else {
+                purchaseItem(responses, session, itemId);
+            }
+            return GET;
         } else {
+            responses.add("INVALID-COMMAND");
+            return INVALID;
+        }
+    }
+
+    //listeners are given the first response to the command, or null when it gave none.
+    private void commandProcessed(String command, List<String> responses, int responded, long started) {
+        final MachineListener[] listeners = this.listeners;
+        if (listeners.length == 0) {
+            return;
+        }
+
+        final long elapsedNanos = System.nanoTime() - started;
+        final String response = responses.size() > responded ? responses.get(responded) : null;
+
+        for (int i = 0; i < listeners.length; i++) {
+            listeners[i].commandProcessed(command, response, elapsedNanos);
+        }
+    }
+
+    private void coinReturn(List<String> responses, Session session) {
+        final int responded = responses.size();
+        session.getCoinPurse().refund(responses);
+
+        final MachineListener[] listeners = this.listeners;
+        if (listeners.length == 0) {
+            return;
+        }
+
+        final List<String> coins = new ArrayList<>(responses.subList(responded, responses.size()));
+        for (int i = 0; i < listeners.length; i++) {
+            listeners[i].coinsRefunded(session.getId(), coins);
+        }
+    }
+
+    private void sessionClosed(Session session) {
+        final MachineListener[] listeners = this.listeners;
+        for (int i = 0; i < listeners.length; i++) {
+            listeners[i].sessionClosed(session.getId());
+        }
+    }
+
+    //the denomination is null when the coin is not recognised.
+    private void enterCoin(List<String> responses, Session session, String denomination) {
+        if (denomination == null) {
             responses.add("INVALID-COIN");
+            coinRejected(session, null);
+        } else if (this.coinCalculator.wouldStrandFunds(session.getCoinPurse(), denomination, this.itemBuckets, this.cassettes)) {
+            //the coin is handed back, as no purchase could be made with it in the purse.
+            responses.add("EXACT-CHANGE-ONLY");
+            coinRejected(session, denomination);
+        } else {
+            session.getCoinPurse().addCoin(denomination);
+
+            final MachineListener[] listeners = this.listeners;
+            for (int i = 0; i < listeners.length; i++) {
+                listeners[i].coinAccepted(session.getId(), denomination);
+            }
+        }
+    }
+
+    private void coinRejected(Session session, String denomination) {
+        final MachineListener[] listeners = this.listeners;
+        for (int i = 0; i < listeners.length; i++) {
+            listeners[i].coinRejected(session.getId(), denomination);
         }
     }
 
-    private void purchaseItem(List<String> responses, String itemId) {
+    private void purchaseItem(List<String> responses, Session session, String itemId) {
+        final CoinPurse coinPurse = session.getCoinPurse();
+
         if (!this.itemBuckets.isValidItemId(itemId)) {
             responses.add("INVALID-ITEM");
             return;
@@ -71,7 +420,7 @@ public class VendingMachine {
             return;
         }
 
-        final int currentFunds = this.coinCalculator.calculateTotal(this.coinPurse);
+        final int currentFunds = coinPurse.getTotal();
 
         final int fundsRequired = this.itemBuckets.getPriceForItem(itemId);
 
@@ -82,17 +431,39 @@ public class VendingMachine {
 
         final int changeRequired = currentFunds - fundsRequired;
 
-        List<String> coins;
+        if (!this.coinCalculator.canMakeChange(changeRequired, this.cassettes)) {
+            responses.add("INSUFFICIENT-CHANGE");
+            return;
+        }
+
+        final Purchase purchase = new Purchase(this.itemBuckets, this.cassettes, this.coinCalculator, itemId);
+
+        //the item is taken before any change, so that two buyers can never both be sold the last one.
+        if (!purchase.reserveItem()) {
+            responses.add("OUT-OF-STOCK");
+            return;
+        }
+
         try {
-            coins = this.coinCalculator.calculateChange(changeRequired, this.cassettes);
+            purchase.reserveChange(changeRequired);
         } catch (InsufficientChangeException e) {
+            purchase.rollback();
             responses.add("INSUFFICIENT-CHANGE");
             return;
+        } catch (RuntimeException e) {
+            purchase.rollback();
+            throw e;
         }
 
-        this.coinPurse.dropPaymentIntoSafe();
+        purchase.commit(coinPurse);
+
+        final List<String> coins = purchase.getChange();
+
+        final MachineListener[] listeners = this.listeners;
+        for (int i = 0; i < listeners.length; i++) {
+            listeners[i].itemVended(session.getId(), itemId, coins, purchase.getCredited());
+        }
 
-        itemBuckets.ejectItem(itemId);
         responses.add(itemId);
 
         responses.addAll(coins);
@@ -104,6 +475,18 @@ public class VendingMachine {
 
         this.cassettes.reset();
 
+        final MachineListener[] listeners = this.listeners;
+        for (int i = 0; i < listeners.length; i++) {
+            listeners[i].serviced();
+        }
+
         responses.add("SERVICE-OK");
     }
+
+    private void lineProcessed() {
+        final MachineListener[] listeners = this.listeners;
+        for (int i = 0; i < listeners.length; i++) {
+            listeners[i].lineProcessed();
+        }
+    }
 }
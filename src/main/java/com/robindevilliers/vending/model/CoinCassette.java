@@ -1,19 +1,39 @@
 package com.robindevilliers.vending.model;
 
+import java.util.concurrent.atomic.AtomicIntegerFieldUpdater;
+
 public class CoinCassette {
 
+    private static final AtomicIntegerFieldUpdater<CoinCassette> QUANTITY = AtomicIntegerFieldUpdater.newUpdater(CoinCassette.class, "quantity");
+
+    public static final int DEFAULT_CAPACITY = 100;
+
     private final String id;
-    private int quantity;
+    private volatile int capacity;
+    private volatile int quantity;
 
     public CoinCassette(String id, int quantity) {
+        this(id, quantity, DEFAULT_CAPACITY);
+    }
+
+    public CoinCassette(String id, int quantity, int capacity) {
         this.id = id;
         this.quantity = quantity;
+        this.capacity = capacity;
     }
 
     public String getId() {
         return this.id;
     }
 
+    public int getCapacity() {
+        return this.capacity;
+    }
+
+    public void setCapacity(int capacity) {
+        this.capacity = capacity;
+    }
+
     public int getQuantity() {
         return this.quantity;
     }
@@ -22,4 +42,34 @@ public class CoinCassette {
         this.quantity = quantity;
     }
 
+    public boolean tryRemove(int count) {
+        while (true) {
+            final int current = this.quantity;
+
+            if (current < count) {
+                return false;
+            }
+
+            if (QUANTITY.compareAndSet(this, current, current - count)) {
+                return true;
+            }
+        }
+    }
+
+    public void add(int count) {
+        QUANTITY.addAndGet(this, count);
+    }
+
+    //adds as many of the coins as there is room for, and returns how many that was.
+    public int tryAdd(int count) {
+        while (true) {
+            final int current = this.quantity;
+            final int added = Math.max(0, Math.min(count, this.capacity - current));
+
+            if (added == 0 || QUANTITY.compareAndSet(this, current, current + added)) {
+                return added;
+            }
+        }
+    }
+
 }
@@ -1,15 +1,27 @@
 package com.robindevilliers.vending.model;
 
+import java.util.concurrent.atomic.AtomicIntegerFieldUpdater;
+
 public class ItemBucket {
+
+    private static final AtomicIntegerFieldUpdater<ItemBucket> QUANTITY = AtomicIntegerFieldUpdater.newUpdater(ItemBucket.class, "quantity");
+
+    public static final int DEFAULT_CAPACITY = 20;
+
     private final String id;
-    private final int price;
-    private int quantity;
+    private volatile int price;
+    private volatile int capacity;
+    private volatile int quantity;
 
     public ItemBucket(String id, int price, int quantity) {
+        this(id, price, quantity, DEFAULT_CAPACITY);
+    }
+
+    public ItemBucket(String id, int price, int quantity, int capacity) {
         this.id = id;
         this.price = price;
         this.quantity = quantity;
-
+        this.capacity = capacity;
     }
 
     public String getId() {
@@ -20,6 +32,18 @@ public class ItemBucket {
         return price;
     }
 
+    public void setPrice(int price) {
+        this.price = price;
+    }
+
+    public int getCapacity() {
+        return capacity;
+    }
+
+    public void setCapacity(int capacity) {
+        this.capacity = capacity;
+    }
+
     public void setQuantity(int quantity) {
         this.quantity = quantity;
     }
@@ -27,4 +51,22 @@ public class ItemBucket {
     public int getQuantity(){
         return this.quantity;
     }
+
+    public boolean tryRemove(int count) {
+        while (true) {
+            final int current = this.quantity;
+
+            if (current < count) {
+                return false;
+            }
+
+            if (QUANTITY.compareAndSet(this, current, current - count)) {
+                return true;
+            }
+        }
+    }
+
+    public void add(int count) {
+        QUANTITY.addAndGet(this, count);
+    }
 }
@@ -0,0 +1,48 @@
+package com.robindevilliers.vending.model;
+
+import java.util.ArrayList;
+import java.util.List;
+
+//The definition of one machine in a catalog. Each getter hands out new objects filled to capacity, so that a config can be
+//shared by every machine built from it.
+public class MachineConfig {
+
+    private final String machineId;
+
+    private final List<Denomination> denominations;
+
+    private final List<ItemBucket> items;
+
+    private final List<CoinCassette> cassettes;
+
+    public MachineConfig(String machineId, List<Denomination> denominations, List<ItemBucket> items, List<CoinCassette> cassettes) {
+        this.machineId = machineId;
+        this.denominations = new ArrayList<>(denominations);
+        this.items = new ArrayList<>(items);
+        this.cassettes = new ArrayList<>(cassettes);
+    }
+
+    public String getMachineId() {
+        return machineId;
+    }
+
+    public List<Denomination> getDenominations() {
+        return new ArrayList<>(denominations);
+    }
+
+    public List<ItemBucket> getItems() {
+        final List<ItemBucket> buckets = new ArrayList<>(items.size());
+        for (ItemBucket item : items) {
+            buckets.add(new ItemBucket(item.getId(), item.getPrice(), item.getCapacity(), item.getCapacity()));
+        }
+        return buckets;
+    }
+
+    public List<CoinCassette> getCassettes() {
+        final List<CoinCassette> coinCassettes = new ArrayList<>(cassettes.size());
+        for (CoinCassette cassette : cassettes) {
+            coinCassettes.add(new CoinCassette(cassette.getId(), cassette.getCapacity(), cassette.getCapacity()));
+        }
+        return coinCassettes;
+    }
+}
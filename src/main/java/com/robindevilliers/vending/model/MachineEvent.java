@@ -0,0 +1,56 @@
+package com.robindevilliers.vending.model;
+
+import java.util.List;
+
+public class MachineEvent {
+
+    public enum Type {
+        COIN_ACCEPTED, COIN_REJECTED, ITEM_VENDED, CHANGE_PAID, COINS_REFUNDED, SERVICED
+    }
+
+    private final long sequence;
+    private final long timestamp;
+    private final Type type;
+    private final long sessionId;
+    private final String denomination;
+    private final String itemId;
+    private final List<String> coins;
+
+    public MachineEvent(long sequence, long timestamp, Type type, long sessionId, String denomination, String itemId, List<String> coins) {
+        this.sequence = sequence;
+        this.timestamp = timestamp;
+        this.type = type;
+        this.sessionId = sessionId;
+        this.denomination = denomination;
+        this.itemId = itemId;
+        this.coins = coins;
+    }
+
+    public long getSequence() {
+        return sequence;
+    }
+
+    public long getTimestamp() {
+        return timestamp;
+    }
+
+    public Type getType() {
+        return type;
+    }
+
+    public long getSessionId() {
+        return sessionId;
+    }
+
+    public String getDenomination() {
+        return denomination;
+    }
+
+    public String getItemId() {
+        return itemId;
+    }
+
+    public List<String> getCoins() {
+        return coins;
+    }
+}
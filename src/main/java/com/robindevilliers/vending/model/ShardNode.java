@@ -0,0 +1,31 @@
+package com.robindevilliers.vending.model;
+
+import java.net.InetSocketAddress;
+
+//A node that runs part of a fleet, with the address its command server takes lines on and the address of its migration server.
+public class ShardNode {
+
+    private final String id;
+
+    private final InetSocketAddress commandAddress;
+
+    private final InetSocketAddress migrationAddress;
+
+    public ShardNode(String id, InetSocketAddress commandAddress, InetSocketAddress migrationAddress) {
+        this.id = id;
+        this.commandAddress = commandAddress;
+        this.migrationAddress = migrationAddress;
+    }
+
+    public String getId() {
+        return id;
+    }
+
+    public InetSocketAddress getCommandAddress() {
+        return commandAddress;
+    }
+
+    public InetSocketAddress getMigrationAddress() {
+        return migrationAddress;
+    }
+}
@@ -0,0 +1,28 @@
+package com.robindevilliers.vending;
+
+import static java.util.Arrays.asList;
+import static org.hamcrest.core.Is.is;
+import static org.junit.Assert.assertThat;
+
+import com.robindevilliers.vending.model.MachineEvent;
+import org.junit.Test;
+
+import java.io.StringWriter;
+import java.util.Collections;
+
+public class AuditLogTest {
+
+    @Test
+    public void testAccept() {
+        StringWriter writer = new StringWriter();
+        AuditLog auditLog = new AuditLog(writer);
+
+        auditLog.accept(new MachineEvent(0, 1000, MachineEvent.Type.COIN_ACCEPTED, 3, "DOLLAR", null, Collections.emptyList()));
+        auditLog.accept(new MachineEvent(1, 1001, MachineEvent.Type.CHANGE_PAID, 3, null, "A", asList("QUARTER", "DIME")));
+        auditLog.accept(new MachineEvent(2, 1002, MachineEvent.Type.SERVICED, 0, null, null, Collections.emptyList()));
+
+        assertThat(writer.toString(), is("0 1000 COIN_ACCEPTED 3 DOLLAR\n"
+                + "1 1001 CHANGE_PAID 3 A QUARTER DIME\n"
+                + "2 1002 SERVICED 0\n"));
+    }
+}
@@ -1,5 +1,6 @@
 package com.robindevilliers.vending;
 
+import static java.util.Arrays.asList;
 import static java.util.Collections.emptyList;
 import static java.util.Collections.singletonList;
 import static org.hamcrest.core.Is.is;
@@ -10,7 +11,10 @@ import com.robindevilliers.vending.model.CoinCassette;
 import org.junit.Test;
 
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
 
 public class CassettesTest {
@@ -18,7 +22,7 @@ public class CassettesTest {
     @Test
     public void testAdd() {
         List<CoinCassette> cassetteList = new ArrayList<>();
-        Cassettes cassettes = new Cassettes(cassetteList);
+        Cassettes cassettes = new HeapCassettes(cassetteList);
 
         cassettes.add(new CoinCassette("NICKEL", 5));
 
@@ -27,10 +31,20 @@ public class CassettesTest {
         assertThat(cassetteList.get(0).getQuantity(), is(5));
     }
 
+    @Test
+    public void testAdd_indexesNewCassette() {
+        Cassettes cassettes = new HeapCassettes(new ArrayList<>());
+
+        cassettes.add(new CoinCassette("NICKEL", 5));
+        cassettes.ejectCoin("NICKEL");
+
+        assertThat(cassettes.getCoinCount("NICKEL"), is(4));
+    }
+
     @Test
     public void testReset() {
         List<CoinCassette> cassetteList = new ArrayList<>();
-        Cassettes cassettes = new Cassettes(cassetteList);
+        Cassettes cassettes = new HeapCassettes(cassetteList);
 
         cassettes.add(new CoinCassette("NICKEL", 5));
 
@@ -45,7 +59,7 @@ public class CassettesTest {
     public void testEjectCoin() {
 
         CoinCassette coinCassette = new CoinCassette("NICKEL", 5);
-        Cassettes cassettes = new Cassettes(singletonList(coinCassette));
+        Cassettes cassettes = new HeapCassettes(singletonList(coinCassette));
 
         cassettes.ejectCoin("NICKEL");
 
@@ -54,7 +68,7 @@ public class CassettesTest {
 
     @Test
     public void testEjectCoin_forInvalidDenomination() {
-        Cassettes cassettes = new Cassettes(emptyList());
+        Cassettes cassettes = new HeapCassettes(emptyList());
 
         try {
             cassettes.ejectCoin("NICKEL");
@@ -66,7 +80,7 @@ public class CassettesTest {
 
     @Test
     public void testGetCoinCount() {
-        Cassettes cassettes = new Cassettes(singletonList(new CoinCassette("NICKEL", 5)));
+        Cassettes cassettes = new HeapCassettes(singletonList(new CoinCassette("NICKEL", 5)));
 
         int response = cassettes.getCoinCount("NICKEL");
 
@@ -75,10 +89,140 @@ public class CassettesTest {
 
     @Test
     public void testGetCoinCount_withInvalidId() {
-        Cassettes cassettes = new Cassettes(emptyList());
+        Cassettes cassettes = new HeapCassettes(emptyList());
 
         int count = cassettes.getCoinCount("NICKEL");
 
         assertThat(count, is(0));
     }
+
+    @Test
+    public void testEjectCoins_givenSufficientCoins() {
+        CoinCassette quarters = new CoinCassette("QUARTER", 1);
+        CoinCassette dimes = new CoinCassette("DIME", 2);
+        Cassettes cassettes = new HeapCassettes(asList(quarters, dimes));
+
+        boolean response = cassettes.ejectCoins(asList("QUARTER", "DIME"));
+
+        assertThat(response, is(true));
+        assertThat(quarters.getQuantity(), is(0));
+        assertThat(dimes.getQuantity(), is(1));
+    }
+
+    @Test
+    public void testEjectCoins_givenInsufficientCoins_takesNone() {
+        CoinCassette quarters = new CoinCassette("QUARTER", 1);
+        CoinCassette dimes = new CoinCassette("DIME", 1);
+        Cassettes cassettes = new HeapCassettes(asList(quarters, dimes));
+
+        boolean response = cassettes.ejectCoins(asList("QUARTER", "DIME", "DIME"));
+
+        assertThat(response, is(false));
+        assertThat(quarters.getQuantity(), is(1));
+        assertThat(dimes.getQuantity(), is(1));
+    }
+
+
+    @Test
+    public void testReturnCoins() {
+        Cassettes cassettes = new HeapCassettes(asList(new CoinCassette("QUARTER", 2), new CoinCassette("DIME", 1)));
+        long version = cassettes.getVersion();
+
+        assertThat(cassettes.ejectCoins(asList("QUARTER", "DIME")), is(true));
+        assertThat(cassettes.getVersion(), is(version));
+
+        cassettes.returnCoins(asList("QUARTER", "DIME"));
+
+        assertThat(cassettes.getCoinCount("QUARTER"), is(2));
+        assertThat(cassettes.getCoinCount("DIME"), is(1));
+        assertThat(cassettes.getVersion() > version, is(true));
+    }
+
+    @Test
+    public void testRefill() {
+        Cassettes cassettes = new HeapCassettes(asList(new CoinCassette("QUARTER", 2), new CoinCassette("DIME", 1)));
+        long version = cassettes.getVersion();
+
+        cassettes.refill(Collections.singletonMap("DIME", 30));
+
+        assertThat(cassettes.getCoinCount("QUARTER"), is(2));
+        assertThat(cassettes.getCoinCount("DIME"), is(30));
+        assertThat(cassettes.getVersion() > version, is(true));
+
+        //a refill only tops up, and never past capacity.
+        cassettes.refill(Collections.singletonMap("DIME", 10));
+        assertThat(cassettes.getCoinCount("DIME"), is(30));
+
+        cassettes.refill(Collections.singletonMap("QUARTER", 1000));
+        assertThat(cassettes.getCoinCount("QUARTER"), is(100));
+    }
+
+    @Test
+    public void testUnload() {
+        Cassettes cassettes = new HeapCassettes(asList(new CoinCassette("QUARTER", 20), new CoinCassette("DIME", 1)));
+
+        Map<String, Integer> counts = new HashMap<>();
+        counts.put("QUARTER", 15);
+        counts.put("DIME", 5);
+        cassettes.unload(counts);
+
+        assertThat(cassettes.getCoinCount("QUARTER"), is(5));
+        assertThat(cassettes.getCoinCount("DIME"), is(0));
+    }
+
+    @Test
+    public void testConfigure() {
+        Cassettes cassettes = new HeapCassettes(asList(new CoinCassette("QUARTER", 2), new CoinCassette("DIME", 1)));
+
+        cassettes.configure(asList(new CoinCassette("DIME", 0, 30)));
+
+        assertThat(cassettes.getCoinCount("DIME"), is(1));
+
+        cassettes.reset();
+
+        assertThat(cassettes.getCoinCount("QUARTER"), is(100));
+        assertThat(cassettes.getCoinCount("DIME"), is(30));
+    }
+
+    @Test
+    public void testCreditCoins() {
+        Cassettes cassettes = new HeapCassettes(asList(new CoinCassette("QUARTER", 8, 10)));
+        long version = cassettes.getVersion();
+
+        assertThat(cassettes.creditCoins("QUARTER", 5), is(2));
+        assertThat(cassettes.getCoinCount("QUARTER"), is(10));
+        assertThat(cassettes.getVersion() > version, is(true));
+
+        version = cassettes.getVersion();
+
+        assertThat(cassettes.creditCoins("QUARTER", 1), is(0));
+        assertThat(cassettes.creditCoins("DIME", 1), is(0));
+        assertThat(cassettes.getVersion(), is(version));
+    }
+
+    @Test
+    public void testEjectCoins_givenEmptyCassette_bumpsVersion() {
+        Cassettes cassettes = new HeapCassettes(asList(new CoinCassette("QUARTER", 1), new CoinCassette("DIME", 0)));
+        long version = cassettes.getVersion();
+
+        assertThat(cassettes.ejectCoins(asList("QUARTER", "DIME")), is(false));
+
+        assertThat(cassettes.getCoinCount("QUARTER"), is(1));
+        assertThat(cassettes.getVersion() > version, is(true));
+    }
+
+    @Test
+    public void testRestore() {
+        Cassettes cassettes = new HeapCassettes(asList(new CoinCassette("QUARTER", 1), new CoinCassette("DIME", 5)));
+        long version = cassettes.getVersion();
+
+        Map<String, Integer> quantities = new HashMap<>();
+        quantities.put("QUARTER", 7);
+        quantities.put("PENNY", 3);
+        cassettes.restore(quantities);
+
+        assertThat(cassettes.getCoinCount("QUARTER"), is(7));
+        assertThat(cassettes.getCoinCount("DIME"), is(5));
+        assertThat(cassettes.getVersion() > version, is(true));
+    }
 }
@@ -0,0 +1,162 @@
+package com.robindevilliers.vending;
+
+import static java.util.Arrays.asList;
+import static org.hamcrest.core.Is.is;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.fail;
+
+import com.robindevilliers.vending.model.CoinCassette;
+import com.robindevilliers.vending.model.Denomination;
+import com.robindevilliers.vending.model.ItemBucket;
+import com.robindevilliers.vending.model.MachineConfig;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+public class CatalogTest {
+
+    private static final String TEXT = "# two machines\n" +
+            "machine M1\n" +
+            "denomination DOLLAR 100\n" +
+            "denomination quarter 25\n" +
+            "item A 65 10\n" +
+            "item B 100 5\n" +
+            "cassette DOLLAR 50\n" +
+            "cassette QUARTER 200\n" +
+            "\n" +
+            "machine M2\n" +
+            "denomination DOLLAR 100\n" +
+            "item C 150 8\n";
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private static MachineConfig createConfig(String machineId, int price) {
+        return new MachineConfig(machineId,
+                asList(new Denomination("DOLLAR", 100), new Denomination("DIME", 10)),
+                asList(new ItemBucket("A", price, 0, 12)),
+                asList(new CoinCassette("DOLLAR", 0, 40), new CoinCassette("DIME", 0, 60)));
+    }
+
+    @Test
+    public void testParse() throws IOException {
+        List<MachineConfig> configs = Catalog.parse(new StringReader(TEXT));
+
+        assertThat(configs.size(), is(2));
+        assertThat(configs.get(0).getMachineId(), is("M1"));
+        assertThat(configs.get(0).getDenominations().get(1).getId(), is("QUARTER"));
+        assertThat(configs.get(0).getItems().get(1).getPrice(), is(100));
+        assertThat(configs.get(0).getItems().get(1).getCapacity(), is(5));
+        assertThat(configs.get(0).getItems().get(1).getQuantity(), is(5));
+        assertThat(configs.get(0).getCassettes().get(1).getCapacity(), is(200));
+        assertThat(configs.get(1).getItems().get(0).getId(), is("C"));
+        assertThat(configs.get(1).getCassettes().size(), is(0));
+    }
+
+    @Test
+    public void testParse_givenInvalidLine() throws IOException {
+        try {
+            Catalog.parse(new StringReader("machine M1\nitem A 65\n"));
+            fail("expected exception to be thrown");
+        } catch (SystemException e) {
+            assertThat(e.getMessage(), is("Invalid catalog entry on line 2."));
+        }
+    }
+
+    @Test
+    public void testParse_givenInvalidNumber() throws IOException {
+        try {
+            Catalog.parse(new StringReader("machine M1\ndenomination DOLLAR 0\n"));
+            fail("expected exception to be thrown");
+        } catch (SystemException e) {
+            assertThat(e.getMessage(), is("Invalid number on line 2."));
+        }
+    }
+
+    @Test
+    public void testParse_givenCassetteForUnknownDenomination() throws IOException {
+        try {
+            Catalog.parse(new StringReader("machine M1\ndenomination DOLLAR 100\ncassette DIME 100\n"));
+            fail("expected exception to be thrown");
+        } catch (SystemException e) {
+            assertThat(e.getMessage(), is("Cassette for an unknown denomination on line 3."));
+        }
+    }
+
+    @Test
+    public void testParse_givenEntryBeforeMachine() throws IOException {
+        try {
+            Catalog.parse(new StringReader("item A 65 10\n"));
+            fail("expected exception to be thrown");
+        } catch (SystemException e) {
+            assertThat(e.getMessage(), is("Catalog entry before the first machine on line 1."));
+        }
+    }
+
+    @Test
+    public void testOpen_givenText() throws IOException {
+        Path file = folder.getRoot().toPath().resolve("catalog.txt");
+        Files.write(file, TEXT.getBytes(StandardCharsets.UTF_8));
+
+        Catalog catalog = Catalog.open(file);
+
+        assertThat(catalog.size(), is(2));
+        assertThat(catalog.contains("M2"), is(true));
+        assertThat(catalog.get("M1").getItems().get(0).getPrice(), is(65));
+        assertThat(catalog.get("M1").getCassettes().get(0).getCapacity(), is(50));
+    }
+
+    @Test
+    public void testWriteAndOpen_givenBinary() throws IOException {
+        Path file = folder.getRoot().toPath().resolve("catalog.bin");
+        List<MachineConfig> configs = new ArrayList<>();
+
+        for (int i = 0; i < 100000; i++) {
+            configs.add(createConfig("M" + i, 50 + i % 100));
+        }
+        Catalog.write(configs, file);
+
+        Catalog catalog = Catalog.open(file);
+
+        assertThat(catalog.size(), is(100000));
+        assertThat(catalog.getMachineIds().iterator().next(), is("M0"));
+
+        MachineConfig config = catalog.get("M99999");
+        assertThat(config.getMachineId(), is("M99999"));
+        assertThat(config.getDenominations().get(1).getAmount(), is(10));
+        assertThat(config.getItems().get(0).getPrice(), is(149));
+        assertThat(config.getItems().get(0).getCapacity(), is(12));
+        assertThat(config.getCassettes().get(1).getId(), is("DIME"));
+        assertThat(config.getCassettes().get(1).getCapacity(), is(60));
+    }
+
+    @Test
+    public void testGet_givenUnknownMachine() {
+        Catalog catalog = Catalog.of(asList(createConfig("M1", 65)));
+
+        try {
+            catalog.get("M2");
+            fail("expected exception to be thrown");
+        } catch (SystemException e) {
+            assertThat(e.getMessage(), is("Machine not found."));
+        }
+    }
+
+    @Test
+    public void testOf_givenDuplicateMachineId() {
+        try {
+            Catalog.of(asList(createConfig("M1", 65), createConfig("M1", 70)));
+            fail("expected exception to be thrown");
+        } catch (SystemException e) {
+            assertThat(e.getMessage(), is("Machine already registered."));
+        }
+    }
+}
@@ -0,0 +1,50 @@
+package com.robindevilliers.vending;
+
+import static java.util.Arrays.asList;
+import static org.hamcrest.core.Is.is;
+import static org.junit.Assert.assertThat;
+
+import com.robindevilliers.vending.model.CoinCassette;
+import com.robindevilliers.vending.model.Denomination;
+import com.robindevilliers.vending.model.ItemBucket;
+import com.robindevilliers.vending.model.MachineConfig;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+public class CatalogWatcherTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private static MachineConfig createConfig(int price) {
+        return new MachineConfig("M1",
+                asList(new Denomination("DOLLAR", 100)),
+                asList(new ItemBucket("A", price, 0, 10)),
+                asList(new CoinCassette("DOLLAR", 0, 100)));
+    }
+
+    @Test
+    public void testRun_reloadsReplacedCatalog() throws IOException, InterruptedException {
+        Path file = folder.getRoot().toPath().resolve("catalog.bin");
+        Catalog.write(asList(createConfig(65)), file);
+
+        BlockingQueue<Catalog> catalogs = new LinkedBlockingQueue<>();
+
+        try (CatalogWatcher catalogWatcher = new CatalogWatcher(file, catalogs::add)) {
+            catalogWatcher.start();
+
+            Catalog.write(asList(createConfig(80)), file);
+
+            Catalog catalog = catalogs.poll(10, TimeUnit.SECONDS);
+            assertThat(catalog.get("M1").getItems().get(0).getPrice(), is(80));
+            assertThat(catalogWatcher.getFailures(), is(0));
+        }
+    }
+}
@@ -0,0 +1,71 @@
+package com.robindevilliers.vending;
+
+import static org.hamcrest.core.Is.is;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.fail;
+
+import org.junit.Test;
+
+public class ChangeTableTest {
+
+    private static final int[] AMOUNTS = {100, 25, 10, 5};
+
+    @Test
+    public void testCanPay_givenUnlimitedCoins() {
+        ChangeTable changeTable = new ChangeTable(AMOUNTS, new int[]{100, 100, 100, 100}, 200);
+
+        assertThat(changeTable.canPay(0), is(true));
+        assertThat(changeTable.canPay(35), is(true));
+        assertThat(changeTable.canPay(200), is(true));
+        assertThat(changeTable.canPay(3), is(false));
+        assertThat(changeTable.canPay(205), is(false));
+    }
+
+    @Test
+    public void testGetPayout_prefersLargerCoins() {
+        ChangeTable changeTable = new ChangeTable(AMOUNTS, new int[]{10, 10, 10, 10}, 440);
+
+        int[] payout = changeTable.getPayout(440);
+
+        assertThat(payout[0], is(4));
+        assertThat(payout[1], is(1));
+        assertThat(payout[2], is(1));
+        assertThat(payout[3], is(1));
+        assertThat(changeTable.getCoinCount(440), is(7));
+    }
+
+    @Test
+    public void testGetPayout_givenNonCanonicalCoins() {
+        ChangeTable changeTable = new ChangeTable(new int[]{4, 3, 1}, new int[]{10, 10, 10}, 6);
+
+        int[] payout = changeTable.getPayout(6);
+
+        assertThat(payout[0], is(0));
+        assertThat(payout[1], is(2));
+        assertThat(payout[2], is(0));
+    }
+
+    @Test
+    public void testGetPayout_respectsCassetteLimits() {
+        ChangeTable changeTable = new ChangeTable(AMOUNTS, new int[]{0, 1, 3, 0}, 60);
+
+        int[] payout = changeTable.getPayout(30);
+
+        assertThat(payout[1], is(0));
+        assertThat(payout[2], is(3));
+        assertThat(changeTable.canPay(60), is(false));
+        assertThat(changeTable.canPay(55), is(true));
+    }
+
+    @Test
+    public void testGetPayout_givenUnpayableAmount() {
+        ChangeTable changeTable = new ChangeTable(AMOUNTS, new int[]{0, 1, 0, 0}, 30);
+
+        try {
+            changeTable.getPayout(30);
+            fail("expected exception to be thrown");
+        } catch (SystemException e) {
+            assertThat(e.getMessage(), is("Amount cannot be paid."));
+        }
+    }
+}
@@ -1,15 +1,20 @@
 package com.robindevilliers.vending;
 
+import static java.util.Arrays.asList;
 import static java.util.Collections.singletonList;
 import static org.hamcrest.core.Is.is;
 import static org.junit.Assert.assertThat;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyListOf;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.verifyNoMoreInteractions;
 import static org.mockito.Mockito.when;
 
+import com.robindevilliers.vending.model.CoinCassette;
 import com.robindevilliers.vending.model.Denomination;
+import com.robindevilliers.vending.model.ItemBucket;
 import org.junit.Test;
 
 import java.util.ArrayList;
@@ -42,10 +47,12 @@ public class CoinCalculatorTest {
     @Test
     public void testCalculateTotal_givenOneDollar() {
 
-        CoinPurse coinPurse = new CoinPurse();
+        CoinCalculator coinCalculator = new CoinCalculator(singletonList(new Denomination("DOLLAR", 100)));
+
+        CoinPurse coinPurse = new CoinPurse(coinCalculator);
         coinPurse.addCoin("DOLLAR");
 
-        int total = new CoinCalculator(singletonList(new Denomination("DOLLAR", 100))).calculateTotal(coinPurse);
+        int total = coinCalculator.calculateTotal(coinPurse);
 
         assertThat(total, is(100));
     }
@@ -53,15 +60,34 @@ public class CoinCalculatorTest {
     @Test
     public void testCalculateTotal_givenTwoDollars() {
 
-        CoinPurse coinPurse = new CoinPurse();
+        CoinCalculator coinCalculator = new CoinCalculator(singletonList(new Denomination("DOLLAR", 100)));
+
+        CoinPurse coinPurse = new CoinPurse(coinCalculator);
         coinPurse.addCoin("DOLLAR");
         coinPurse.addCoin("DOLLAR");
 
-        int total = new CoinCalculator(singletonList(new Denomination("DOLLAR", 100))).calculateTotal(coinPurse);
+        int total = coinCalculator.calculateTotal(coinPurse);
 
         assertThat(total, is(200));
     }
 
+    @Test
+    public void testGetOrdinal_givenDenominations() {
+        CoinCalculator coinCalculator = new CoinCalculator(asList(
+                new Denomination("DIME", 10),
+                new Denomination("DOLLAR", 100),
+                new Denomination("QUARTER", 25)
+        ));
+
+        assertThat(coinCalculator.getDenominationCount(), is(3));
+        assertThat(coinCalculator.getOrdinal("DOLLAR"), is(0));
+        assertThat(coinCalculator.getOrdinal("QUARTER"), is(1));
+        assertThat(coinCalculator.getOrdinal("DIME"), is(2));
+        assertThat(coinCalculator.getOrdinal("PENNY"), is(-1));
+        assertThat(coinCalculator.getId(1), is("QUARTER"));
+        assertThat(coinCalculator.getAmount(1), is(25));
+    }
+
     @Test
     public void testCalculateChange_happyScenario440() throws InsufficientChangeException {
         List<Denomination> denominations = new ArrayList<>();
@@ -77,6 +103,7 @@ public class CoinCalculatorTest {
         when(cassettes.getCoinCount("QUARTER")).thenReturn(10);
         when(cassettes.getCoinCount("NICKEL")).thenReturn(10);
         when(cassettes.getCoinCount("DIME")).thenReturn(10);
+        when(cassettes.ejectCoins(anyListOf(String.class))).thenReturn(true);
 
         List<String> coins = new CoinCalculator(denominations).calculateChange(440, cassettes);
 
@@ -94,10 +121,11 @@ public class CoinCalculatorTest {
         verify(cassettes).getCoinCount("NICKEL");
         verify(cassettes).getCoinCount("DIME");
 
-        verify(cassettes, times(4)).ejectCoin("DOLLAR");
-        verify(cassettes).ejectCoin("QUARTER");
-        verify(cassettes).ejectCoin("DIME");
-        verify(cassettes).ejectCoin("NICKEL");
+        verify(cassettes).ejectCoins(asList("DOLLAR", "DOLLAR", "DOLLAR", "DOLLAR", "QUARTER", "DIME", "NICKEL"));
+
+        verify(cassettes).getVersion();
+        verify(cassettes).getChangeTable();
+        verify(cassettes).setChangeTable(any(ChangeTable.class));
 
         verifyNoMoreInteractions(cassettes);
     }
@@ -117,6 +145,7 @@ public class CoinCalculatorTest {
         when(cassettes.getCoinCount("QUARTER")).thenReturn(10);
         when(cassettes.getCoinCount("NICKEL")).thenReturn(10);
         when(cassettes.getCoinCount("DIME")).thenReturn(10);
+        when(cassettes.ejectCoins(anyListOf(String.class))).thenReturn(true);
 
         List<String> coins = new CoinCalculator(denominations).calculateChange(165, cassettes);
 
@@ -143,6 +172,7 @@ public class CoinCalculatorTest {
         when(cassettes.getCoinCount("QUARTER")).thenReturn(10);
         when(cassettes.getCoinCount("NICKEL")).thenReturn(10);
         when(cassettes.getCoinCount("DIME")).thenReturn(10);
+        when(cassettes.ejectCoins(anyListOf(String.class))).thenReturn(true);
 
         List<String> coins = new CoinCalculator(denominations).calculateChange(165, cassettes);
 
@@ -171,4 +201,245 @@ public class CoinCalculatorTest {
         new CoinCalculator(denominations).calculateChange(101, cassettes);
     }
 
+    @Test
+    public void testCalculateChange_whereGreedySelectionWouldFail() throws InsufficientChangeException {
+        List<Denomination> denominations = new ArrayList<>();
+
+        denominations.add(new Denomination("DIME", 10));
+        denominations.add(new Denomination("QUARTER", 25));
+        denominations.add(new Denomination("NICKEL", 5));
+        denominations.add(new Denomination("DOLLAR", 100));
+
+        Cassettes cassettes = mock(Cassettes.class);
+
+        when(cassettes.getCoinCount("DOLLAR")).thenReturn(0);
+        when(cassettes.getCoinCount("QUARTER")).thenReturn(1);
+        when(cassettes.getCoinCount("NICKEL")).thenReturn(0);
+        when(cassettes.getCoinCount("DIME")).thenReturn(3);
+        when(cassettes.ejectCoins(anyListOf(String.class))).thenReturn(true);
+
+        List<String> coins = new CoinCalculator(denominations).calculateChange(30, cassettes);
+
+        assertThat(coins.size(), is(3));
+        assertThat(coins.get(0), is("DIME"));
+        assertThat(coins.get(1), is("DIME"));
+        assertThat(coins.get(2), is("DIME"));
+
+        verify(cassettes).ejectCoins(asList("DIME", "DIME", "DIME"));
+    }
+
+    @Test
+    public void testCalculateChange_givenNoChangeRequired() throws InsufficientChangeException {
+        Cassettes cassettes = mock(Cassettes.class);
+
+        List<String> coins = new CoinCalculator(new ArrayList<>()).calculateChange(0, cassettes);
+
+        assertThat(coins.size(), is(0));
+
+        verifyNoMoreInteractions(cassettes);
+    }
+
+    @Test
+    public void testCalculateChange_givenCoinsTakenByAnotherPurchase() throws InsufficientChangeException {
+        List<Denomination> denominations = new ArrayList<>();
+
+        denominations.add(new Denomination("QUARTER", 25));
+        denominations.add(new Denomination("DIME", 10));
+        denominations.add(new Denomination("NICKEL", 5));
+
+        Cassettes cassettes = mock(Cassettes.class);
+
+        when(cassettes.getCoinCount("QUARTER")).thenReturn(1, 0);
+        when(cassettes.getCoinCount("DIME")).thenReturn(10);
+        when(cassettes.getCoinCount("NICKEL")).thenReturn(10);
+        when(cassettes.ejectCoins(asList("QUARTER", "DIME"))).thenReturn(false);
+        when(cassettes.ejectCoins(asList("DIME", "DIME", "DIME", "NICKEL"))).thenReturn(true);
+
+        List<String> coins = new CoinCalculator(denominations).calculateChange(35, cassettes);
+
+        assertThat(coins, is(asList("DIME", "DIME", "DIME", "NICKEL")));
+
+        verify(cassettes, times(2)).getCoinCount("QUARTER");
+        verify(cassettes).ejectCoins(asList("QUARTER", "DIME"));
+        verify(cassettes).ejectCoins(asList("DIME", "DIME", "DIME", "NICKEL"));
+    }
+
+    private CoinCalculator createCoinCalculator() {
+        return new CoinCalculator(asList(
+                new Denomination("QUARTER", 25),
+                new Denomination("DIME", 10),
+                new Denomination("NICKEL", 5)
+        ));
+    }
+
+    @Test
+    public void testCalculateChange_reusesChangeTableWhileCoinsAreOnlyEjected() throws InsufficientChangeException {
+        CoinCalculator coinCalculator = createCoinCalculator();
+        Cassettes cassettes = new HeapCassettes(new ArrayList<>(asList(
+                new CoinCassette("QUARTER", 2),
+                new CoinCassette("DIME", 10),
+                new CoinCassette("NICKEL", 10)
+        )));
+
+        assertThat(coinCalculator.calculateChange(35, cassettes), is(asList("QUARTER", "DIME")));
+        ChangeTable changeTable = cassettes.getChangeTable();
+
+        assertThat(coinCalculator.calculateChange(35, cassettes), is(asList("QUARTER", "DIME")));
+        assertThat(cassettes.getChangeTable() == changeTable, is(true));
+
+        //the quarters have run out, so the table is built again from what is left.
+        assertThat(coinCalculator.calculateChange(35, cassettes), is(asList("DIME", "DIME", "DIME", "NICKEL")));
+        assertThat(cassettes.getChangeTable() == changeTable, is(false));
+    }
+
+    @Test
+    public void testCanMakeChange_givenLargeAmountBeforeRefill_rebuildsSmall() {
+        CoinCalculator coinCalculator = createCoinCalculator();
+        Cassettes cassettes = new HeapCassettes(new ArrayList<>(asList(
+                new CoinCassette("QUARTER", 100),
+                new CoinCassette("DIME", 100),
+                new CoinCassette("NICKEL", 100)
+        )));
+
+        assertThat(coinCalculator.canMakeChange(4000, cassettes), is(true));
+        assertThat(cassettes.getChangeTable().getMaxAmount(), is(4000));
+
+        //a new version of the cassettes is only counted as far as is asked for, or at least the largest coin.
+        cassettes.reset();
+
+        assertThat(coinCalculator.canMakeChange(15, cassettes), is(true));
+        assertThat(cassettes.getChangeTable().getMaxAmount(), is(25));
+    }
+
+    @Test
+    public void testCalculateChange_givenCassettesReset() throws InsufficientChangeException {
+        CoinCalculator coinCalculator = createCoinCalculator();
+        Cassettes cassettes = new HeapCassettes(new ArrayList<>(asList(
+                new CoinCassette("QUARTER", 0),
+                new CoinCassette("DIME", 0),
+                new CoinCassette("NICKEL", 0)
+        )));
+
+        assertThat(coinCalculator.canMakeChange(35, cassettes), is(false));
+
+        long version = cassettes.getVersion();
+        cassettes.reset();
+
+        assertThat(cassettes.getVersion() == version, is(false));
+        assertThat(coinCalculator.canMakeChange(35, cassettes), is(true));
+        assertThat(coinCalculator.calculateChange(35, cassettes), is(asList("QUARTER", "DIME")));
+    }
+
+    @Test
+    public void testCanMakeChange_givenCoinsEjectedSinceTableWasBuilt() {
+        CoinCalculator coinCalculator = createCoinCalculator();
+        Cassettes cassettes = new HeapCassettes(new ArrayList<>(asList(
+                new CoinCassette("QUARTER", 1),
+                new CoinCassette("DIME", 1),
+                new CoinCassette("NICKEL", 0)
+        )));
+
+        assertThat(coinCalculator.canMakeChange(0, cassettes), is(true));
+        assertThat(coinCalculator.canMakeChange(35, cassettes), is(true));
+        assertThat(coinCalculator.canMakeChange(5, cassettes), is(false));
+
+        cassettes.ejectCoin("DIME");
+
+        assertThat(coinCalculator.canMakeChange(35, cassettes), is(false));
+        assertThat(coinCalculator.canMakeChange(25, cassettes), is(true));
+    }
+
+    @Test
+    public void testIsExactChangeOnly_givenPrices() {
+        CoinCalculator coinCalculator = createCoinCalculator();
+        Cassettes cassettes = new HeapCassettes(new ArrayList<>(asList(
+                new CoinCassette("QUARTER", 0),
+                new CoinCassette("DIME", 10),
+                new CoinCassette("NICKEL", 0)
+        )));
+
+        //a customer paying 30 with a dime and a quarter is owed a nickel, which cannot be paid.
+        assertThat(coinCalculator.isExactChangeOnly(30, cassettes), is(true));
+
+        //a customer paying 10 with a quarter is owed 15, which dimes alone cannot pay.
+        assertThat(coinCalculator.isExactChangeOnly(10, cassettes), is(true));
+
+        cassettes.reset();
+
+        assertThat(coinCalculator.isExactChangeOnly(30, cassettes), is(false));
+        assertThat(coinCalculator.isExactChangeOnly(10, cassettes), is(false));
+    }
+
+    @Test
+    public void testWouldStrandFunds() {
+        CoinCalculator coinCalculator = createCoinCalculator();
+        Cassettes cassettes = new HeapCassettes(new ArrayList<>(asList(
+                new CoinCassette("QUARTER", 0),
+                new CoinCassette("DIME", 1),
+                new CoinCassette("NICKEL", 0)
+        )));
+        CoinPurse coinPurse = new CoinPurse(coinCalculator);
+        coinPurse.addCoin("QUARTER");
+
+        ItemBuckets itemBuckets = new HeapItemBuckets(new ArrayList<>(asList(new ItemBucket("A", 40, 1))));
+
+        assertThat(coinCalculator.wouldStrandFunds(coinPurse, "NICKEL", itemBuckets, cassettes), is(false));
+        assertThat(coinCalculator.wouldStrandFunds(coinPurse, "DIME", itemBuckets, cassettes), is(false));
+        assertThat(coinCalculator.wouldStrandFunds(coinPurse, "QUARTER", itemBuckets, cassettes), is(false));
+
+        coinPurse.addCoin("DIME");
+
+        //45 leaves 5 owed, which cannot be paid, but a further nickel makes it 10, which the dime can pay.
+        assertThat(coinCalculator.wouldStrandFunds(coinPurse, "DIME", itemBuckets, cassettes), is(false));
+
+        //with the cassettes empty, no balance over the price can be paid out.
+        cassettes.ejectCoin("DIME");
+
+        assertThat(coinCalculator.wouldStrandFunds(coinPurse, "DIME", itemBuckets, cassettes), is(true));
+
+        //with nothing left to buy, the coin is not the reason a purchase would fail.
+        itemBuckets.ejectItem("A");
+
+        assertThat(coinCalculator.wouldStrandFunds(coinPurse, "DIME", itemBuckets, cassettes), is(false));
+    }
+
+    @Test
+    public void testWouldStrandFunds_givenFullCassettes_searchesOneCycle() {
+        CoinCalculator coinCalculator = new CoinCalculator(new ArrayList<>(asList(
+                new Denomination("DOLLAR", 100),
+                new Denomination("QUARTER", 25),
+                new Denomination("DIME", 10),
+                new Denomination("NICKEL", 5)
+        )));
+        Cassettes cassettes = new HeapCassettes(new ArrayList<>(asList(
+                new CoinCassette("DOLLAR", 5000, Integer.MAX_VALUE),
+                new CoinCassette("QUARTER", Integer.MAX_VALUE, Integer.MAX_VALUE)
+        )));
+        CoinPurse coinPurse = new CoinPurse(coinCalculator);
+
+        ItemBuckets itemBuckets = new HeapItemBuckets(new ArrayList<>(asList(new ItemBucket("A", 65, 1))));
+
+        //35 is owed, which cannot be paid, but a further dime and nickel make it 50, which two quarters can pay.
+        assertThat(coinCalculator.wouldStrandFunds(coinPurse, "DOLLAR", itemBuckets, cassettes), is(false));
+        assertThat(cassettes.getChangeTable().getMaxAmount() <= 35 + 100, is(true));
+    }
+
+    @Test
+    public void testWouldStrandFunds_givenFullCassettesAndNoBalancePayable() {
+        CoinCalculator coinCalculator = new CoinCalculator(new ArrayList<>(asList(
+                new Denomination("DOLLAR", 100),
+                new Denomination("QUARTER", 25)
+        )));
+        Cassettes cassettes = new HeapCassettes(new ArrayList<>(asList(
+                new CoinCassette("DOLLAR", 5000, 5000),
+                new CoinCassette("QUARTER", 5000, 5000)
+        )));
+        CoinPurse coinPurse = new CoinPurse(coinCalculator);
+
+        ItemBuckets itemBuckets = new HeapItemBuckets(new ArrayList<>(asList(new ItemBucket("A", 60, 1))));
+
+        //40 is owed, and adding quarters or dollars only ever leaves 15 over a multiple of 25.
+        assertThat(coinCalculator.wouldStrandFunds(coinPurse, "DOLLAR", itemBuckets, cassettes), is(true));
+        assertThat(cassettes.getChangeTable().getMaxAmount() <= 40 + 100, is(true));
+    }
 }
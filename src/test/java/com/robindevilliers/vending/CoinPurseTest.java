@@ -1,21 +1,31 @@
 package com.robindevilliers.vending;
 
+import static java.util.Arrays.asList;
 import static org.hamcrest.core.Is.is;
 import static org.junit.Assert.assertThat;
+import static org.junit.Assert.fail;
 
+import com.robindevilliers.vending.model.CoinCassette;
+import com.robindevilliers.vending.model.Denomination;
 import org.junit.Test;
 
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
+import java.util.Random;
 
 
 public class CoinPurseTest {
 
+    private final CoinCalculator coinCalculator = new CoinCalculator(asList(
+            new Denomination("DIME", 10),
+            new Denomination("DOLLAR", 100)
+    ));
+
     @Test
     public void testAddCoin_givenOneCoin() {
 
-        CoinPurse coinPurse = new CoinPurse();
+        CoinPurse coinPurse = new CoinPurse(coinCalculator);
 
         coinPurse.addCoin("DOLLAR");
 
@@ -26,7 +36,7 @@ public class CoinPurseTest {
     @Test
     public void testAddCoin_givenTwoCoins() {
 
-        CoinPurse coinPurse = new CoinPurse();
+        CoinPurse coinPurse = new CoinPurse(coinCalculator);
 
         coinPurse.addCoin("DOLLAR");
         coinPurse.addCoin("DOLLAR");
@@ -38,7 +48,7 @@ public class CoinPurseTest {
     @Test
     public void testAddCoin_givenSomeCoins() {
 
-        CoinPurse coinPurse = new CoinPurse();
+        CoinPurse coinPurse = new CoinPurse(coinCalculator);
 
         coinPurse.addCoin("DOLLAR");
         coinPurse.addCoin("DOLLAR");
@@ -52,7 +62,7 @@ public class CoinPurseTest {
     @Test
     public void testRefund_givenOneCoin() {
 
-        CoinPurse coinPurse = new CoinPurse();
+        CoinPurse coinPurse = new CoinPurse(coinCalculator);
 
         coinPurse.addCoin("DOLLAR");
 
@@ -66,7 +76,7 @@ public class CoinPurseTest {
     @Test
     public void testRefund_givenTwoCoins() {
 
-        CoinPurse coinPurse = new CoinPurse();
+        CoinPurse coinPurse = new CoinPurse(coinCalculator);
 
         coinPurse.addCoin("DOLLAR");
         coinPurse.addCoin("DIME");
@@ -79,10 +89,25 @@ public class CoinPurseTest {
         assertThat(responses.get(1), is("DIME"));
     }
 
+    @Test
+    public void testRefund_emptiesPurse() {
+
+        CoinPurse coinPurse = new CoinPurse(coinCalculator);
+
+        coinPurse.addCoin("DOLLAR");
+        coinPurse.refund(new ArrayList<>());
+
+        List<String> responses = new ArrayList<>();
+        coinPurse.refund(responses);
+
+        assertThat(responses.size(), is(0));
+        assertThat(coinPurse.getCounts().isEmpty(), is(true));
+    }
+
     @Test
     public void testGetCounts_givenOneCoin() {
 
-        CoinPurse coinPurse = new CoinPurse();
+        CoinPurse coinPurse = new CoinPurse(coinCalculator);
 
         coinPurse.addCoin("DOLLAR");
 
@@ -95,7 +120,7 @@ public class CoinPurseTest {
     @Test
     public void testGetCounts_givenTwoOfTheSameCoins() {
 
-        CoinPurse coinPurse = new CoinPurse();
+        CoinPurse coinPurse = new CoinPurse(coinCalculator);
 
         coinPurse.addCoin("DOLLAR");
         coinPurse.addCoin("DOLLAR");
@@ -109,7 +134,7 @@ public class CoinPurseTest {
     @Test
     public void testGetCounts_givenTwoDifferentCoins() {
 
-        CoinPurse coinPurse = new CoinPurse();
+        CoinPurse coinPurse = new CoinPurse(coinCalculator);
 
         coinPurse.addCoin("DOLLAR");
         coinPurse.addCoin("DIME");
@@ -125,7 +150,7 @@ public class CoinPurseTest {
 
     @Test
     public void testDropCoinsIntoSafe() {
-        CoinPurse coinPurse = new CoinPurse();
+        CoinPurse coinPurse = new CoinPurse(coinCalculator);
 
         coinPurse.addCoin("DOLLAR");
         coinPurse.addCoin("DIME");
@@ -137,4 +162,89 @@ public class CoinPurseTest {
         assertThat(counts.containsKey("DOLLAR"), is(false));
         assertThat(counts.containsKey("DIME"), is(false));
     }
+
+    @Test
+    public void testDropCoinsIntoCassettes() {
+        CoinPurse coinPurse = new CoinPurse(coinCalculator);
+        Cassettes cassettes = new HeapCassettes(new ArrayList<>(asList(new CoinCassette("DIME", 0, 1))));
+
+        coinPurse.addCoin("DOLLAR");
+        coinPurse.addCoin("DIME");
+        coinPurse.addCoin("DIME");
+
+        //there is no cassette for dollars and room for only one dime, so the rest go to the safe.
+        List<String> credited = new ArrayList<>();
+        assertThat(coinPurse.dropPaymentIntoCassettes(cassettes, credited), is(1));
+
+        assertThat(credited, is(asList("DIME")));
+
+        assertThat(cassettes.getCoinCount("DIME"), is(1));
+        assertThat(coinPurse.getTotal(), is(0));
+    }
+
+    @Test
+    public void testGetTotal_givenSomeCoins() {
+        CoinPurse coinPurse = new CoinPurse(coinCalculator);
+
+        assertThat(coinPurse.getTotal(), is(0));
+
+        coinPurse.addCoin("DOLLAR");
+        coinPurse.addCoin("DIME");
+        coinPurse.addCoin("DIME");
+
+        assertThat(coinPurse.getTotal(), is(120));
+        assertThat(coinPurse.getCount(coinCalculator.getOrdinal("DIME")), is(2));
+
+        coinPurse.dropPaymentIntoSafe();
+
+        assertThat(coinPurse.getTotal(), is(0));
+        assertThat(coinPurse.getCount(coinCalculator.getOrdinal("DIME")), is(0));
+    }
+
+    @Test
+    public void testAddCoin_givenInvalidDenomination() {
+        CoinPurse coinPurse = new CoinPurse(coinCalculator);
+
+        try {
+            coinPurse.addCoin("PENNY");
+            fail("expected exception to be thrown");
+        } catch (SystemException e) {
+            assertThat(e.getMessage(), is("Invalid denomination in coin purse."));
+        }
+
+        assertThat(coinPurse.getTotal(), is(0));
+    }
+
+    @Test
+    public void testGetCount_givenDenomination() {
+        CoinPurse coinPurse = new CoinPurse(coinCalculator);
+
+        coinPurse.addCoin("DIME");
+
+        assertThat(coinPurse.getCount("DIME"), is(1));
+        assertThat(coinPurse.getCount("DOLLAR"), is(0));
+        assertThat(coinPurse.getCount("PENNY"), is(0));
+    }
+
+    @Test
+    public void testGetTotal_matchesFullRecount() {
+        CoinPurse coinPurse = new CoinPurse(coinCalculator);
+        Random random = new Random(42);
+
+        for (int i = 0; i < 10000; i++) {
+            int operation = random.nextInt(10);
+
+            if (operation == 0) {
+                coinPurse.refund(new ArrayList<>());
+            } else if (operation == 1) {
+                coinPurse.dropPaymentIntoSafe();
+            } else {
+                coinPurse.addCoin(random.nextBoolean() ? "DIME" : "DOLLAR");
+            }
+
+            assertThat(coinPurse.getTotal(), is(coinCalculator.calculateTotal(coinPurse)));
+        }
+
+        coinPurse.checkTotal();
+    }
 }
@@ -0,0 +1,232 @@
+package com.robindevilliers.vending;
+
+import static java.util.Arrays.asList;
+import static org.hamcrest.core.Is.is;
+import static org.junit.Assert.assertThat;
+
+import com.robindevilliers.vending.model.CoinCassette;
+import com.robindevilliers.vending.model.Denomination;
+import com.robindevilliers.vending.model.ItemBucket;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+public class CommandServerTest {
+
+    private final CoinCalculator coinCalculator = new CoinCalculator(asList(
+            new Denomination("DOLLAR", 100),
+            new Denomination("NICKEL", 5),
+            new Denomination("QUARTER", 25),
+            new Denomination("DIME", 10)
+    ));
+
+    private final AtomicInteger checks = new AtomicInteger();
+
+    private final AtomicLong clock = new AtomicLong();
+
+    //while set, a sweep for expired sessions waits on it, as a sweep over a large fleet takes a while.
+    private volatile CountDownLatch slowExpiry;
+
+    private final CountDownLatch expiring = new CountDownLatch(1);
+
+    //M9 passes the first check and is then found missing, as it is when a machine moves away between the two.
+    private final Fleet fleet = new Fleet() {
+        @Override
+        public boolean isValidMachineId(String machineId) {
+            return machineId.equals("M9") ? checks.getAndIncrement() == 0 : super.isValidMachineId(machineId);
+        }
+
+        @Override
+        public long openSession(String machineId) {
+            if (machineId.equals("M8")) {
+                throw new IllegalStateException();
+            }
+            return super.openSession(machineId);
+        }
+
+        @Override
+        public int expireSessions() {
+            CountDownLatch slowExpiry = CommandServerTest.this.slowExpiry;
+
+            if (slowExpiry != null) {
+                expiring.countDown();
+                try {
+                    slowExpiry.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+            return super.expireSessions();
+        }
+    };
+
+    private CommandServer commandServer;
+
+    private Thread serverThread;
+
+    private VendingMachine createMachine(int stock) {
+        return new VendingMachine(coinCalculator,
+                new HeapItemBuckets(asList(new ItemBucket("A", 65, stock))),
+                new HeapCassettes(asList(
+                        new CoinCassette("DOLLAR", 1000),
+                        new CoinCassette("QUARTER", 1000),
+                        new CoinCassette("DIME", 1000),
+                        new CoinCassette("NICKEL", 1000)
+                )),
+                new CoinPurse(coinCalculator));
+    }
+
+    @Before
+    public void before() throws IOException {
+        fleet.add("M1", createMachine(1000));
+        fleet.add("M2", createMachine(0));
+        fleet.add("M8", createMachine(1));
+        fleet.add("M7", new VendingMachine(coinCalculator,
+                new HeapItemBuckets(asList(new ItemBucket("A", 65, 1))),
+                new HeapCassettes(asList(
+                        new CoinCassette("QUARTER", 1000),
+                        new CoinCassette("DIME", 1000)
+                )),
+                new CoinPurse(coinCalculator),
+                new Sessions(coinCalculator, clock::get, 1000)));
+
+        commandServer = new CommandServer(fleet, new InetSocketAddress(InetAddress.getLoopbackAddress(), 0));
+        serverThread = new Thread(commandServer);
+        serverThread.start();
+    }
+
+    @After
+    public void after() throws InterruptedException {
+        commandServer.close();
+        serverThread.join(5000);
+    }
+
+    private Socket connect() throws IOException {
+        return new Socket(InetAddress.getLoopbackAddress(), commandServer.getPort());
+    }
+
+    @Test
+    public void testPipelinedRequests() throws IOException {
+        try (Socket socket = connect()) {
+            OutputStream out = socket.getOutputStream();
+            BufferedReader in = new BufferedReader(new InputStreamReader(socket.getInputStream(), StandardCharsets.US_ASCII));
+
+            out.write("M1 PUT-DOLLAR, GET-A\r\nM2 PUT-DOLLAR, GET-A\nM2 COIN-RETURN\nM3 GET-A\nHELLO\n".getBytes(StandardCharsets.US_ASCII));
+            out.flush();
+
+            assertThat(in.readLine(), is("A, QUARTER, DIME"));
+            assertThat(in.readLine(), is("OUT-OF-STOCK"));
+            assertThat(in.readLine(), is("DOLLAR"));
+            assertThat(in.readLine(), is("INVALID-MACHINE"));
+            assertThat(in.readLine(), is("INVALID-COMMAND"));
+        }
+    }
+
+    @Test
+    public void testEachConnectionHasItsOwnSession() throws IOException {
+        try (Socket first = connect(); Socket second = connect()) {
+            BufferedReader firstIn = new BufferedReader(new InputStreamReader(first.getInputStream(), StandardCharsets.US_ASCII));
+            BufferedReader secondIn = new BufferedReader(new InputStreamReader(second.getInputStream(), StandardCharsets.US_ASCII));
+
+            first.getOutputStream().write("M1 PUT-QUARTER\n".getBytes(StandardCharsets.US_ASCII));
+            assertThat(firstIn.readLine(), is(""));
+
+            second.getOutputStream().write("M1 COIN-RETURN\n".getBytes(StandardCharsets.US_ASCII));
+            assertThat(secondIn.readLine(), is(""));
+
+            first.getOutputStream().write("M1 COIN-RETURN\n".getBytes(StandardCharsets.US_ASCII));
+            assertThat(firstIn.readLine(), is("QUARTER"));
+        }
+    }
+
+    @Test
+    public void testProcessLine_givenMachineGoneAfterCheck() throws IOException {
+        try (Socket socket = connect()) {
+            OutputStream out = socket.getOutputStream();
+            BufferedReader in = new BufferedReader(new InputStreamReader(socket.getInputStream(), StandardCharsets.US_ASCII));
+
+            out.write("M9 PUT-DOLLAR\nM1 PUT-DOLLAR, GET-A\n".getBytes(StandardCharsets.US_ASCII));
+
+            assertThat(in.readLine(), is("INVALID-MACHINE"));
+            assertThat(in.readLine(), is("A, QUARTER, DIME"));
+        }
+    }
+
+    @Test
+    public void testRun_givenUnexpectedException_dropsOnlyThatConnection() throws IOException {
+        try (Socket failing = connect(); Socket other = connect()) {
+            failing.getOutputStream().write("M8 PUT-DOLLAR\n".getBytes(StandardCharsets.US_ASCII));
+            assertThat(new BufferedReader(new InputStreamReader(failing.getInputStream(), StandardCharsets.US_ASCII)).readLine(), is((String) null));
+
+            other.getOutputStream().write("M1 PUT-DOLLAR, GET-A\n".getBytes(StandardCharsets.US_ASCII));
+            assertThat(new BufferedReader(new InputStreamReader(other.getInputStream(), StandardCharsets.US_ASCII)).readLine(), is("A, QUARTER, DIME"));
+        }
+    }
+
+    @Test
+    public void testProcessLine_givenSessionExpired_retriesOnANewSession() throws IOException {
+        try (Socket socket = connect()) {
+            OutputStream out = socket.getOutputStream();
+            BufferedReader in = new BufferedReader(new InputStreamReader(socket.getInputStream(), StandardCharsets.US_ASCII));
+
+            out.write("M7 PUT-QUARTER\n".getBytes(StandardCharsets.US_ASCII));
+            assertThat(in.readLine(), is(""));
+
+            clock.addAndGet(10000);
+            assertThat(fleet.expireSessions(), is(1));
+
+            out.write("M7 PUT-DOLLAR, GET-A\n".getBytes(StandardCharsets.US_ASCII));
+            assertThat(in.readLine(), is("A, QUARTER, DIME"));
+        }
+    }
+
+    @Test(timeout = 10000)
+    public void testRun_givenSlowExpiry_keepsServingLines() throws IOException, InterruptedException {
+        CountDownLatch slowExpiry = new CountDownLatch(1);
+        this.slowExpiry = slowExpiry;
+
+        try (Socket socket = connect()) {
+            expiring.await();
+
+            socket.getOutputStream().write("M1 PUT-DOLLAR, GET-A\n".getBytes(StandardCharsets.US_ASCII));
+            assertThat(new BufferedReader(new InputStreamReader(socket.getInputStream(), StandardCharsets.US_ASCII)).readLine(), is("A, QUARTER, DIME"));
+        } finally {
+            slowExpiry.countDown();
+        }
+    }
+
+    @Test
+    public void testManyConcurrentConnections() throws IOException {
+        List<Socket> sockets = new ArrayList<>();
+        try {
+            for (int i = 0; i < 500; i++) {
+                Socket socket = connect();
+                sockets.add(socket);
+                socket.getOutputStream().write("M1 PUT-DOLLAR, GET-A\n".getBytes(StandardCharsets.US_ASCII));
+            }
+
+            for (Socket socket : sockets) {
+                BufferedReader in = new BufferedReader(new InputStreamReader(socket.getInputStream(), StandardCharsets.US_ASCII));
+                assertThat(in.readLine(), is("A, QUARTER, DIME"));
+            }
+        } finally {
+            for (Socket socket : sockets) {
+                socket.close();
+            }
+        }
+    }
+}
@@ -0,0 +1,142 @@
+package com.robindevilliers.vending;
+
+import static java.util.Arrays.asList;
+import static org.hamcrest.core.Is.is;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.fail;
+
+import com.robindevilliers.vending.model.MachineEvent;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+public class EventStreamTest {
+
+    @Test
+    public void testConstructor_givenCapacityNotPowerOfTwo() {
+        try {
+            new EventStream(100);
+            fail("expected exception to be thrown");
+        } catch (SystemException e) {
+            assertThat(e.getMessage(), is("Event stream capacity must be a power of two."));
+        }
+    }
+
+    @Test
+    public void testPoll_deliversEventsInOrder() {
+        EventStream eventStream = new EventStream(16);
+        List<MachineEvent> events = new ArrayList<>();
+        EventSubscription subscription = new EventSubscription(eventStream, events::add, 0);
+
+        assertThat(subscription.poll(), is(false));
+
+        eventStream.coinAccepted(1, "DOLLAR");
+        eventStream.coinRejected(1, null);
+        eventStream.itemVended(1, "A", asList("QUARTER", "DIME"), Collections.emptyList());
+        eventStream.itemVended(2, "B", Collections.emptyList(), Collections.emptyList());
+        eventStream.coinsRefunded(1, asList("DOLLAR"));
+        eventStream.serviced();
+
+        while (subscription.poll()) {
+        }
+
+        assertThat(events.size(), is(7));
+        assertThat(events.get(0).getType(), is(MachineEvent.Type.COIN_ACCEPTED));
+        assertThat(events.get(0).getDenomination(), is("DOLLAR"));
+        assertThat(events.get(1).getType(), is(MachineEvent.Type.COIN_REJECTED));
+        assertThat(events.get(2).getType(), is(MachineEvent.Type.ITEM_VENDED));
+        assertThat(events.get(2).getItemId(), is("A"));
+        assertThat(events.get(3).getType(), is(MachineEvent.Type.CHANGE_PAID));
+        assertThat(events.get(3).getCoins(), is(asList("QUARTER", "DIME")));
+        assertThat(events.get(4).getType(), is(MachineEvent.Type.ITEM_VENDED));
+        assertThat(events.get(5).getType(), is(MachineEvent.Type.COINS_REFUNDED));
+        assertThat(events.get(5).getCoins(), is(asList("DOLLAR")));
+        assertThat(events.get(6).getType(), is(MachineEvent.Type.SERVICED));
+
+        for (int i = 0; i < events.size(); i++) {
+            assertThat(events.get(i).getSequence(), is((long) i));
+        }
+        assertThat(subscription.getLost(), is(0L));
+    }
+
+    @Test
+    public void testPoll_givenSubscriberLappedSkipsAhead() {
+        EventStream eventStream = new EventStream(16);
+        List<MachineEvent> events = new ArrayList<>();
+        EventSubscription subscription = new EventSubscription(eventStream, events::add, 0);
+
+        for (int i = 0; i < 40; i++) {
+            eventStream.coinAccepted(i, "DIME");
+        }
+
+        while (subscription.poll()) {
+        }
+
+        assertThat(subscription.getLost(), is(24L));
+        assertThat(events.size(), is(16));
+        assertThat(events.get(0).getSessionId(), is(24L));
+        assertThat(events.get(15).getSessionId(), is(39L));
+    }
+
+    @Test
+    public void testPoll_givenSubscriberThrows_countsFailures() {
+        EventStream eventStream = new EventStream(16);
+        List<MachineEvent> events = new ArrayList<>();
+        EventSubscription subscription = new EventSubscription(eventStream, event -> {
+            if (event.getSessionId() % 2 == 0) {
+                throw new SystemException("Disk full.");
+            }
+            events.add(event);
+        }, 0);
+
+        for (int i = 0; i < 4; i++) {
+            eventStream.coinAccepted(i, "DIME");
+        }
+
+        while (subscription.poll()) {
+        }
+
+        assertThat(subscription.getFailed(), is(2L));
+        assertThat(subscription.getLost(), is(0L));
+        assertThat(events.size(), is(2));
+    }
+
+    @Test
+    public void testSubscribe_slowSubscriberDoesNotBlockPublisher() throws InterruptedException {
+        EventStream eventStream = new EventStream(1024);
+        CountDownLatch blocked = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+
+        EventSubscription subscription = eventStream.subscribe("slow", event -> {
+            blocked.countDown();
+            try {
+                release.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        });
+
+        eventStream.serviced();
+        assertThat(blocked.await(10, TimeUnit.SECONDS), is(true));
+
+        //the subscriber is stuck on the first event, so everything past a ring is lost rather than waited for.
+        for (int i = 0; i < 100000; i++) {
+            eventStream.coinAccepted(1, "DIME");
+        }
+
+        release.countDown();
+
+        long deadline = System.currentTimeMillis() + 10000;
+        while (subscription.getCursor() < eventStream.getPublished() && System.currentTimeMillis() < deadline) {
+            Thread.sleep(1);
+        }
+        subscription.close();
+
+        assertThat(subscription.getCursor(), is(100001L));
+        assertThat(subscription.getLost() >= 100001 - 1 - 1024, is(true));
+    }
+}
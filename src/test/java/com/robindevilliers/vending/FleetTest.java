@@ -0,0 +1,242 @@
+package com.robindevilliers.vending;
+
+import static java.util.Arrays.asList;
+import static org.hamcrest.core.Is.is;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.fail;
+
+import com.robindevilliers.vending.model.CoinCassette;
+import com.robindevilliers.vending.model.Denomination;
+import com.robindevilliers.vending.model.ItemBucket;
+import com.robindevilliers.vending.model.MachineConfig;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Map;
+
+public class FleetTest {
+
+    private final CoinCalculator coinCalculator = new CoinCalculator(asList(
+            new Denomination("DOLLAR", 100),
+            new Denomination("NICKEL", 5),
+            new Denomination("QUARTER", 25),
+            new Denomination("DIME", 10)
+    ));
+
+    private VendingMachine createMachine(int stock) {
+        return new VendingMachine(coinCalculator,
+                new HeapItemBuckets(asList(new ItemBucket("A", 65, stock))),
+                new HeapCassettes(asList(
+                        new CoinCassette("DOLLAR", 100),
+                        new CoinCassette("QUARTER", 100),
+                        new CoinCassette("DIME", 100),
+                        new CoinCassette("NICKEL", 100)
+                )),
+                new CoinPurse(coinCalculator));
+    }
+
+    @Test
+    public void testProcess_routesToMachine() {
+        Fleet fleet = new Fleet();
+        fleet.add("M1", createMachine(1));
+        fleet.add("M2", createMachine(0));
+
+        assertThat(fleet.process("M1", "PUT-DOLLAR, GET-A"), is("A, QUARTER, DIME"));
+        assertThat(fleet.process("M2", "PUT-DOLLAR, GET-A"), is("OUT-OF-STOCK"));
+    }
+
+    @Test
+    public void testProcess_givenInvalidMachineId() {
+        Fleet fleet = new Fleet();
+
+        try {
+            fleet.process("M1", "SERVICE");
+            fail("expected exception to be thrown");
+        } catch (SystemException e) {
+            assertThat(e.getMessage(), is("Machine not found."));
+        }
+    }
+
+    @Test
+    public void testAdd_givenDuplicateMachineId() {
+        Fleet fleet = new Fleet();
+        fleet.add("M1", createMachine(1));
+
+        try {
+            fleet.add("M1", createMachine(1));
+            fail("expected exception to be thrown");
+        } catch (SystemException e) {
+            assertThat(e.getMessage(), is("Machine already registered."));
+        }
+
+        assertThat(fleet.size(), is(1));
+        assertThat(fleet.isValidMachineId("M1"), is(true));
+        assertThat(fleet.isValidMachineId("M2"), is(false));
+    }
+
+    @Test
+    public void testProcessAll() {
+        Fleet fleet = new Fleet(1000);
+        Map<String, String> lines = new HashMap<>();
+
+        for (int i = 0; i < 1000; i++) {
+            fleet.add("M" + i, createMachine(i % 2));
+            lines.put("M" + i, "PUT-DOLLAR, GET-A");
+        }
+
+        Map<String, String> responses = fleet.processAll(lines);
+
+        assertThat(responses.size(), is(1000));
+        assertThat(responses.get("M0"), is("OUT-OF-STOCK"));
+        assertThat(responses.get("M1"), is("A, QUARTER, DIME"));
+        assertThat(responses.get("M998"), is("OUT-OF-STOCK"));
+        assertThat(responses.get("M999"), is("A, QUARTER, DIME"));
+    }
+
+    private static MachineConfig createConfig(String machineId, int price, int capacity) {
+        return new MachineConfig(machineId,
+                new ArrayList<>(asList(new Denomination("DOLLAR", 100), new Denomination("QUARTER", 25), new Denomination("DIME", 10))),
+                asList(new ItemBucket("A", price, 0, capacity)),
+                asList(new CoinCassette("QUARTER", 0, 10), new CoinCassette("DIME", 0, 10)));
+    }
+
+    @Test
+    public void testLoad_addsMachines() {
+        Fleet fleet = new Fleet();
+
+        fleet.load(Catalog.of(asList(createConfig("M1", 65, 1), createConfig("M2", 100, 1))));
+
+        assertThat(fleet.size(), is(2));
+        assertThat(fleet.process("M1", "PUT-DOLLAR, GET-A"), is("A, QUARTER, DIME"));
+        assertThat(fleet.process("M2", "PUT-DOLLAR, GET-A"), is("A"));
+    }
+
+    @Test
+    public void testLoad_configuresRunningMachines() {
+        Fleet fleet = new Fleet();
+        fleet.load(Catalog.of(asList(createConfig("M1", 65, 1))));
+
+        fleet.load(Catalog.of(asList(createConfig("M1", 100, 5))));
+
+        assertThat(fleet.size(), is(1));
+        assertThat(fleet.process("M1", "PUT-DOLLAR, GET-A"), is("A"));
+        assertThat(fleet.process("M1", "PUT-DOLLAR, GET-A"), is("OUT-OF-STOCK"));
+        assertThat(fleet.process("M1", "COIN-RETURN, SERVICE, PUT-DOLLAR, GET-A"), is("DOLLAR, SERVICE-OK, A"));
+    }
+
+    @Test
+    public void testLoad_givenChangedDenominations() {
+        Fleet fleet = new Fleet();
+        fleet.load(Catalog.of(asList(createConfig("M1", 65, 1))));
+
+        try {
+            fleet.load(Catalog.of(asList(new MachineConfig("M1",
+                    asList(new Denomination("DOLLAR", 100)),
+                    asList(new ItemBucket("A", 100, 0, 1)),
+                    asList(new CoinCassette("DOLLAR", 0, 10))))));
+            fail("expected exception to be thrown");
+        } catch (SystemException e) {
+            assertThat(e.getMessage(), is("Denominations cannot be changed while running."));
+        }
+    }
+
+    @Test
+    public void testWriteMachine_givenReadByAnotherFleet() throws IOException {
+        Fleet fleet = new Fleet();
+        fleet.add("M1", createMachine(5));
+
+        fleet.process("M1", "PUT-DOLLAR, GET-A, PUT-QUARTER");
+        long session = fleet.openSession("M1");
+        StringBuilder out = new StringBuilder();
+        fleet.process("M1", session, "PUT-DIME", out);
+
+        //the customer's dime could only be handed back to their own connection, so the machine is not written out yet.
+        ByteArrayOutputStream machine = new ByteArrayOutputStream();
+        assertThat(fleet.writeMachine("M1", new DataOutputStream(machine)), is(false));
+        assertThat(machine.size(), is(0));
+        assertThat(fleet.isValidMachineId("M1"), is(true));
+
+        assertThat(fleet.closeSession("M1", session), is("DIME"));
+        session = fleet.openSession("M1");
+        assertThat(fleet.writeMachine("M1", new DataOutputStream(machine)), is(true));
+
+        assertThat(fleet.isValidMachineId("M1"), is(false));
+        assertThat(fleet.size(), is(0));
+
+        Fleet other = new Fleet();
+        assertThat(other.readMachine(new DataInputStream(new ByteArrayInputStream(machine.toByteArray()))), is("M1"));
+        assertThat(other.isValidMachineId("M1"), is(false));
+
+        other.releaseMachine("M1");
+        assertThat(other.getMachineIds().contains("M1"), is(true));
+
+        fleet.removeMachine("M1");
+        assertThat(fleet.getMachineIds().isEmpty(), is(true));
+        assertThat(other.openSession("M1") > session, is(true));
+
+        assertThat(other.process("M1", "PUT-QUARTER, PUT-QUARTER, GET-A"), is("A, DIME"));
+        for (int i = 0; i < 3; i++) {
+            assertThat(other.process("M1", "PUT-DOLLAR, GET-A"), is("A, QUARTER, DIME"));
+        }
+        assertThat(other.process("M1", "GET-A"), is("OUT-OF-STOCK"));
+    }
+
+    @Test
+    public void testWriteMachine_givenMoveCalledOff() throws IOException {
+        Fleet fleet = new Fleet();
+        fleet.add("M1", createMachine(5));
+        long session = fleet.openSession("M1");
+
+        fleet.writeMachine("M1", new DataOutputStream(new ByteArrayOutputStream()));
+
+        try {
+            fleet.process("M1", "PUT-DOLLAR");
+            fail("expected exception to be thrown");
+        } catch (SystemException e) {
+            assertThat(e.getMessage(), is("Machine not found."));
+        }
+
+        fleet.releaseMachine("M1");
+        assertThat(fleet.process("M1", "PUT-DOLLAR, GET-A"), is("A, QUARTER, DIME"));
+        assertThat(fleet.closeSession("M1", session), is(""));
+    }
+
+    @Test
+    public void testReadMachine_givenMachineInUse() throws IOException {
+        Fleet fleet = new Fleet();
+        fleet.add("M1", createMachine(5));
+
+        ByteArrayOutputStream machine = new ByteArrayOutputStream();
+        fleet.writeMachine("M1", new DataOutputStream(machine));
+
+        //a held copy is replaced by a later one.
+        assertThat(fleet.readMachine(new DataInputStream(new ByteArrayInputStream(machine.toByteArray()))), is("M1"));
+        fleet.releaseMachine("M1");
+
+        try {
+            fleet.readMachine(new DataInputStream(new ByteArrayInputStream(machine.toByteArray())));
+            fail("expected exception to be thrown");
+        } catch (SystemException e) {
+            assertThat(e.getMessage(), is("Machine already registered."));
+        }
+        assertThat(fleet.process("M1", "PUT-DOLLAR, GET-A"), is("A, QUARTER, DIME"));
+    }
+
+    @Test
+    public void testWriteMachine_givenInvalidMachineId() throws IOException {
+        Fleet fleet = new Fleet();
+
+        try {
+            fleet.writeMachine("M1", new DataOutputStream(new ByteArrayOutputStream()));
+            fail("expected exception to be thrown");
+        } catch (SystemException e) {
+            assertThat(e.getMessage(), is("Machine not found."));
+        }
+    }
+}
@@ -0,0 +1,109 @@
+package com.robindevilliers.vending;
+
+import static java.util.Arrays.asList;
+import static org.hamcrest.core.Is.is;
+import static org.hamcrest.core.IsNull.nullValue;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import org.junit.Test;
+
+import java.util.HashMap;
+import java.util.Map;
+
+public class HashRingTest {
+
+    @Test
+    public void testGetNode_givenNoNodes() {
+        assertThat(new HashRing().getNode("M1"), is(nullValue()));
+        assertThat(new HashRing().isEmpty(), is(true));
+    }
+
+    @Test
+    public void testGetNode_givenOneNode() {
+        HashRing ring = new HashRing().withNode("N1");
+
+        for (int i = 0; i < 1000; i++) {
+            assertThat(ring.getNode("M" + i), is("N1"));
+        }
+    }
+
+    @Test
+    public void testGetNode_givenSameNodesInAnotherOrder() {
+        HashRing ring = new HashRing().withNode("N1").withNode("N2").withNode("N3");
+        HashRing other = new HashRing().withNode("N3").withNode("N1").withNode("N2");
+
+        for (int i = 0; i < 10000; i++) {
+            assertThat(other.getNode("M" + i), is(ring.getNode("M" + i)));
+        }
+    }
+
+    @Test
+    public void testGetNode_spreadsMachinesEvenly() {
+        HashRing ring = new HashRing().withNode("N1").withNode("N2").withNode("N3").withNode("N4");
+
+        Map<String, Integer> counts = new HashMap<>();
+        for (int i = 0; i < 100000; i++) {
+            counts.merge(ring.getNode("M" + i), 1, Integer::sum);
+        }
+
+        assertThat(counts.size(), is(4));
+        for (int count : counts.values()) {
+            assertTrue("uneven share " + counts, count > 20000 && count < 30000);
+        }
+    }
+
+    @Test
+    public void testWithNode_onlyMovesMachinesToTheNewNode() {
+        HashRing ring = new HashRing().withNode("N1").withNode("N2").withNode("N3");
+        HashRing grown = ring.withNode("N4");
+
+        int moved = 0;
+        for (int i = 0; i < 100000; i++) {
+            String before = ring.getNode("M" + i);
+            String after = grown.getNode("M" + i);
+
+            if (!before.equals(after)) {
+                assertThat(after, is("N4"));
+                moved++;
+            }
+        }
+        assertTrue("moved " + moved, moved > 20000 && moved < 30000);
+    }
+
+    @Test
+    public void testWithoutNode_onlyMovesMachinesFromTheOldNode() {
+        HashRing ring = new HashRing().withNode("N1").withNode("N2").withNode("N3");
+        HashRing shrunk = ring.withoutNode("N2");
+
+        for (int i = 0; i < 100000; i++) {
+            String before = ring.getNode("M" + i);
+
+            if (!before.equals("N2")) {
+                assertThat(shrunk.getNode("M" + i), is(before));
+            }
+        }
+        assertThat(shrunk.getNodes(), is(asList("N1", "N3")));
+    }
+
+    @Test
+    public void testWithNode_givenDuplicateNode() {
+        try {
+            new HashRing().withNode("N1").withNode("N1");
+            fail("expected exception to be thrown");
+        } catch (SystemException e) {
+            assertThat(e.getMessage(), is("Node already registered."));
+        }
+    }
+
+    @Test
+    public void testWithoutNode_givenUnknownNode() {
+        try {
+            new HashRing().withNode("N1").withoutNode("N2");
+            fail("expected exception to be thrown");
+        } catch (SystemException e) {
+            assertThat(e.getMessage(), is("Node not found."));
+        }
+    }
+}
@@ -0,0 +1,51 @@
+package com.robindevilliers.vending;
+
+import static org.hamcrest.core.Is.is;
+import static org.hamcrest.core.IsNull.nullValue;
+import static org.junit.Assert.assertThat;
+
+import org.junit.Test;
+
+public class IdTableTest {
+
+    @Test
+    public void testFind_givenKnownId() {
+        IdTable idTable = new IdTable();
+        idTable.add("NICKEL");
+        idTable.add("DIME");
+
+        assertThat(idTable.find("PUT-dime", 4, 8), is("DIME"));
+        assertThat(idTable.find("NICKEL", 0, 6), is("NICKEL"));
+    }
+
+    @Test
+    public void testFind_givenUnknownId() {
+        IdTable idTable = new IdTable();
+        idTable.add("NICKEL");
+
+        assertThat(idTable.find("NICK", 0, 4), is(nullValue()));
+        assertThat(idTable.find("", 0, 0), is(nullValue()));
+    }
+
+    @Test
+    public void testFind_afterResize() {
+        IdTable idTable = new IdTable();
+
+        for (int i = 0; i < 1000; i++) {
+            idTable.add("SLOT" + i);
+        }
+
+        for (int i = 0; i < 1000; i++) {
+            String line = "GET-SLOT" + i;
+            assertThat(idTable.find(line, 4, line.length()), is("SLOT" + i));
+        }
+    }
+
+    @Test
+    public void testMatches() {
+        assertThat(IdTable.matches("coin-return", 0, 11, "COIN-RETURN"), is(true));
+        assertThat(IdTable.matches("coin-return", 0, 10, "COIN-RETURN"), is(false));
+        assertThat(IdTable.startsWith("get-a", 0, 5, "GET-"), is(true));
+        assertThat(IdTable.startsWith("get", 0, 3, "GET-"), is(false));
+    }
+}
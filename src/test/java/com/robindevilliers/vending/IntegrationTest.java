@@ -9,9 +9,23 @@ import com.robindevilliers.vending.model.Denomination;
 import com.robindevilliers.vending.model.ItemBucket;
 import org.junit.Test;
 
+import java.io.IOException;
+import java.io.PipedReader;
+import java.io.PipedWriter;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.CharBuffer;
 import java.util.ArrayList;
 import java.util.Collections;
+import java.util.concurrent.Callable;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.function.Function;
 import java.util.stream.Collectors;
 import java.util.stream.Stream;
@@ -21,18 +35,20 @@ public class IntegrationTest {
     @Test
     public void testScenario_exactChange() {
 
-        VendingMachine vendingMachine = new VendingMachine(new CoinCalculator(asList(
+        CoinCalculator coinCalculator = new CoinCalculator(asList(
                 new Denomination("DOLLAR", 100),
                 new Denomination("NICKEL", 5),
                 new Denomination("QUARTER", 25),
                 new Denomination("DIME", 10)
-        )), new ItemBuckets(asList(
+        ));
+
+        VendingMachine vendingMachine = new VendingMachine(coinCalculator, new HeapItemBuckets(asList(
                 new ItemBucket("A", 65, 10),
                 new ItemBucket("B", 100, 10),
                 new ItemBucket("C", 150, 10)
         )),
-                new Cassettes(new ArrayList<>()),
-                new CoinPurse()
+                new HeapCassettes(new ArrayList<>()),
+                new CoinPurse(coinCalculator)
         );
 
         String response = vendingMachine.process("PUT-QUARTER, PUT-QUARTER, PUT-QUARTER, PUT-QUARTER, GET-B");
@@ -43,18 +59,20 @@ public class IntegrationTest {
     @Test
     public void testScenario_insufficientFunds() {
 
-        VendingMachine vendingMachine = new VendingMachine(new CoinCalculator(asList(
+        CoinCalculator coinCalculator = new CoinCalculator(asList(
                 new Denomination("DOLLAR", 100),
                 new Denomination("NICKEL", 5),
                 new Denomination("QUARTER", 25),
                 new Denomination("DIME", 10)
-        )), new ItemBuckets(asList(
+        ));
+
+        VendingMachine vendingMachine = new VendingMachine(coinCalculator, new HeapItemBuckets(asList(
                 new ItemBucket("A", 65, 10),
                 new ItemBucket("B", 100, 10),
                 new ItemBucket("C", 150, 10)
         )),
-                new Cassettes(new ArrayList<>()),
-                new CoinPurse()
+                new HeapCassettes(new ArrayList<>()),
+                new CoinPurse(coinCalculator)
         );
 
         String response = vendingMachine.process("PUT-QUARTER, GET-B");
@@ -65,18 +83,20 @@ public class IntegrationTest {
     @Test
     public void testScenario_invalidItem() {
 
-        VendingMachine vendingMachine = new VendingMachine(new CoinCalculator(asList(
+        CoinCalculator coinCalculator = new CoinCalculator(asList(
                 new Denomination("DOLLAR", 100),
                 new Denomination("NICKEL", 5),
                 new Denomination("QUARTER", 25),
                 new Denomination("DIME", 10)
-        )), new ItemBuckets(asList(
+        ));
+
+        VendingMachine vendingMachine = new VendingMachine(coinCalculator, new HeapItemBuckets(asList(
                 new ItemBucket("A", 65, 10),
                 new ItemBucket("B", 100, 10),
                 new ItemBucket("C", 150, 10)
         )),
-                new Cassettes(new ArrayList<>()),
-                new CoinPurse()
+                new HeapCassettes(new ArrayList<>()),
+                new CoinPurse(coinCalculator)
         );
 
         String response = vendingMachine.process("GET-D");
@@ -87,18 +107,20 @@ public class IntegrationTest {
     @Test
     public void testScenario_invalidCoin() {
 
-        VendingMachine vendingMachine = new VendingMachine(new CoinCalculator(asList(
+        CoinCalculator coinCalculator = new CoinCalculator(asList(
                 new Denomination("DOLLAR", 100),
                 new Denomination("NICKEL", 5),
                 new Denomination("QUARTER", 25),
                 new Denomination("DIME", 10)
-        )), new ItemBuckets(asList(
+        ));
+
+        VendingMachine vendingMachine = new VendingMachine(coinCalculator, new HeapItemBuckets(asList(
                 new ItemBucket("A", 65, 10),
                 new ItemBucket("B", 100, 10),
                 new ItemBucket("C", 150, 10)
         )),
-                new Cassettes(new ArrayList<>()),
-                new CoinPurse()
+                new HeapCassettes(new ArrayList<>()),
+                new CoinPurse(coinCalculator)
         );
 
         String response = vendingMachine.process("PUT-Q");
@@ -109,18 +131,20 @@ public class IntegrationTest {
     @Test
     public void testScenario_coinReturn() {
 
-        VendingMachine vendingMachine = new VendingMachine(new CoinCalculator(asList(
+        CoinCalculator coinCalculator = new CoinCalculator(asList(
                 new Denomination("DOLLAR", 100),
                 new Denomination("NICKEL", 5),
                 new Denomination("QUARTER", 25),
                 new Denomination("DIME", 10)
-        )), new ItemBuckets(asList(
+        ));
+
+        VendingMachine vendingMachine = new VendingMachine(coinCalculator, new HeapItemBuckets(asList(
                 new ItemBucket("A", 65, 10),
                 new ItemBucket("B", 100, 10),
                 new ItemBucket("C", 150, 10)
         )),
-                new Cassettes(new ArrayList<>()),
-                new CoinPurse()
+                new HeapCassettes(new ArrayList<>()),
+                new CoinPurse(coinCalculator)
         );
 
         String response = vendingMachine.process("PUT-QUARTER, PUT-QUARTER, COIN-RETURN");
@@ -131,19 +155,21 @@ public class IntegrationTest {
     @Test
     public void testScenario_buyWithChange() {
 
-        VendingMachine vendingMachine = new VendingMachine(new CoinCalculator(asList(
+        CoinCalculator coinCalculator = new CoinCalculator(asList(
                 new Denomination("DOLLAR", 100),
                 new Denomination("NICKEL", 5),
                 new Denomination("QUARTER", 25),
                 new Denomination("DIME", 10)
-        )), new ItemBuckets(Collections.singletonList(new ItemBucket("A", 65, 10))),
-                new Cassettes(asList(
+        ));
+
+        VendingMachine vendingMachine = new VendingMachine(coinCalculator, new HeapItemBuckets(Collections.singletonList(new ItemBucket("A", 65, 10))),
+                new HeapCassettes(asList(
                         new CoinCassette("DOLLAR", 100),
                         new CoinCassette("QUARTER", 100),
                         new CoinCassette("DIME", 100),
                         new CoinCassette("NICKEL", 100)
                 )),
-                new CoinPurse()
+                new CoinPurse(coinCalculator)
         );
 
         String response = vendingMachine.process("PUT-DOLLAR, GET-A");
@@ -154,19 +180,21 @@ public class IntegrationTest {
     @Test
     public void testScenario_outOfStock() {
 
-        VendingMachine vendingMachine = new VendingMachine(new CoinCalculator(asList(
+        CoinCalculator coinCalculator = new CoinCalculator(asList(
                 new Denomination("DOLLAR", 100),
                 new Denomination("NICKEL", 5),
                 new Denomination("QUARTER", 25),
                 new Denomination("DIME", 10)
-        )), new ItemBuckets(Collections.singletonList(new ItemBucket("A", 65, 0))),
-                new Cassettes(asList(
+        ));
+
+        VendingMachine vendingMachine = new VendingMachine(coinCalculator, new HeapItemBuckets(Collections.singletonList(new ItemBucket("A", 65, 0))),
+                new HeapCassettes(asList(
                         new CoinCassette("DOLLAR", 100),
                         new CoinCassette("QUARTER", 100),
                         new CoinCassette("DIME", 100),
                         new CoinCassette("NICKEL", 100)
                 )),
-                new CoinPurse()
+                new CoinPurse(coinCalculator)
         );
 
         String response = vendingMachine.process("PUT-DOLLAR, GET-A");
@@ -184,14 +212,17 @@ public class IntegrationTest {
                 new CoinCassette("NICKEL", 0)
         ).collect(Collectors.toMap(CoinCassette::getId, Function.identity()));
 
-        VendingMachine vendingMachine = new VendingMachine(new CoinCalculator(asList(
+        CoinCalculator coinCalculator = new CoinCalculator(asList(
                 new Denomination("DOLLAR", 100),
                 new Denomination("NICKEL", 5),
                 new Denomination("QUARTER", 25),
                 new Denomination("DIME", 10)
-        )), new ItemBuckets(Collections.singletonList(new ItemBucket("A", 65, 10))),
-                new Cassettes(new ArrayList<>(coinReserve.values())),
-                new CoinPurse()
+        ));
+
+        //the dearer item means that the dollar could still buy something, so it is accepted.
+        VendingMachine vendingMachine = new VendingMachine(coinCalculator, new HeapItemBuckets(asList(new ItemBucket("A", 65, 10), new ItemBucket("B", 150, 10))),
+                new HeapCassettes(new ArrayList<>(coinReserve.values())),
+                new CoinPurse(coinCalculator)
         );
 
         String response = vendingMachine.process("PUT-DOLLAR, GET-A, COIN-RETURN");
@@ -204,6 +235,41 @@ public class IntegrationTest {
         assertThat(coinReserve.get("NICKEL").getQuantity(), is(0));
     }
 
+    @Test
+    public void testScenario_recyclingGivesPaymentsBackAsChange() {
+
+        Map<String, CoinCassette> coinReserve = Stream.of(
+                new CoinCassette("DOLLAR", 0),
+                new CoinCassette("QUARTER", 0, 1),
+                new CoinCassette("DIME", 0),
+                new CoinCassette("NICKEL", 0)
+        ).collect(Collectors.toMap(CoinCassette::getId, Function.identity()));
+
+        CoinCalculator coinCalculator = new CoinCalculator(asList(
+                new Denomination("DOLLAR", 100),
+                new Denomination("NICKEL", 5),
+                new Denomination("QUARTER", 25),
+                new Denomination("DIME", 10)
+        ));
+
+        Cassettes cassettes = new HeapCassettes(new ArrayList<>(coinReserve.values()));
+        cassettes.setRecycling(true);
+
+        VendingMachine vendingMachine = new VendingMachine(coinCalculator, new HeapItemBuckets(asList(new ItemBucket("A", 75, 10))),
+                cassettes,
+                new CoinPurse(coinCalculator)
+        );
+
+        //only one of the three quarters fits in its cassette, and the others overflow into the safe.
+        assertThat(vendingMachine.process("PUT-QUARTER, PUT-QUARTER, PUT-QUARTER, GET-A"), is("A"));
+        assertThat(coinReserve.get("QUARTER").getQuantity(), is(1));
+
+        assertThat(vendingMachine.process("PUT-DOLLAR, GET-A"), is("A, QUARTER"));
+
+        assertThat(coinReserve.get("DOLLAR").getQuantity(), is(1));
+        assertThat(coinReserve.get("QUARTER").getQuantity(), is(0));
+    }
+
     @Test
     public void testScenario_service() {
 
@@ -220,14 +286,16 @@ public class IntegrationTest {
                 new CoinCassette("NICKEL", 0)
         ).collect(Collectors.toMap(CoinCassette::getId, Function.identity()));
 
-        VendingMachine vendingMachine = new VendingMachine(new CoinCalculator(asList(
+        CoinCalculator coinCalculator = new CoinCalculator(asList(
                 new Denomination("DOLLAR", 100),
                 new Denomination("NICKEL", 5),
                 new Denomination("QUARTER", 25),
                 new Denomination("DIME", 10)
-        )), new ItemBuckets(new ArrayList<>(itemStock.values())),
-                new Cassettes(new ArrayList<>(coinReserve.values())),
-                new CoinPurse()
+        ));
+
+        VendingMachine vendingMachine = new VendingMachine(coinCalculator, new HeapItemBuckets(new ArrayList<>(itemStock.values())),
+                new HeapCassettes(new ArrayList<>(coinReserve.values())),
+                new CoinPurse(coinCalculator)
         );
 
         String response = vendingMachine.process("SERVICE");
@@ -243,4 +311,290 @@ public class IntegrationTest {
         assertThat(itemStock.get("B").getQuantity(), is(20));
         assertThat(itemStock.get("C").getQuantity(), is(20));
     }
+
+    @Test
+    public void testScenario_buyWithChange_writingToAppendable() throws IOException {
+
+        CoinCalculator coinCalculator = new CoinCalculator(asList(
+                new Denomination("DOLLAR", 100),
+                new Denomination("NICKEL", 5),
+                new Denomination("QUARTER", 25),
+                new Denomination("DIME", 10)
+        ));
+
+        VendingMachine vendingMachine = new VendingMachine(coinCalculator, new HeapItemBuckets(Collections.singletonList(new ItemBucket("A", 65, 10))),
+                new HeapCassettes(asList(
+                        new CoinCassette("DOLLAR", 100),
+                        new CoinCassette("QUARTER", 100),
+                        new CoinCassette("DIME", 100),
+                        new CoinCassette("NICKEL", 100)
+                )),
+                new CoinPurse(coinCalculator)
+        );
+
+        StringBuilder out = new StringBuilder();
+        vendingMachine.process(CharBuffer.wrap("put-dollar, get-a, get-b, put-penny"), out);
+
+        assertThat(out.toString(), is("A, QUARTER, DIME, INVALID-ITEM, INVALID-COIN"));
+    }
+
+    @Test
+    public void testScenario_concurrentSessionsShareInventory() throws Exception {
+
+        CoinCalculator coinCalculator = new CoinCalculator(asList(
+                new Denomination("DOLLAR", 100),
+                new Denomination("NICKEL", 5),
+                new Denomination("QUARTER", 25),
+                new Denomination("DIME", 10)
+        ));
+        ItemBucket item = new ItemBucket("A", 65, 500);
+        ItemBuckets itemBuckets = new HeapItemBuckets(Collections.singletonList(item));
+        CoinCassette quarters = new CoinCassette("QUARTER", 300);
+        CoinCassette dimes = new CoinCassette("DIME", 1000);
+        Cassettes cassettes = new HeapCassettes(asList(quarters, dimes));
+
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        List<Callable<Integer>> sessions = new ArrayList<>();
+
+        for (int i = 0; i < 8; i++) {
+            sessions.add(() -> {
+                VendingMachine vendingMachine = new VendingMachine(coinCalculator, itemBuckets, cassettes, new CoinPurse(coinCalculator));
+                int sold = 0;
+                for (int j = 0; j < 200; j++) {
+                    if (vendingMachine.process("PUT-DOLLAR, GET-A, COIN-RETURN").startsWith("A")) {
+                        sold++;
+                    }
+                }
+                return sold;
+            });
+        }
+
+        int sold = 0;
+        for (Future<Integer> future : executor.invokeAll(sessions)) {
+            sold += future.get();
+        }
+        executor.shutdown();
+
+        //300 sales are paid with a quarter and a dime, the rest with three dimes and a nickel which is never available.
+        assertThat(sold, is(300));
+        assertThat(item.getQuantity(), is(200));
+        assertThat(quarters.getQuantity(), is(0));
+        assertThat(dimes.getQuantity(), is(700));
+    }
+
+    @Test
+    public void testScenario_sessionsHaveSeparatePurses() {
+
+        CoinCalculator coinCalculator = new CoinCalculator(asList(
+                new Denomination("DOLLAR", 100),
+                new Denomination("NICKEL", 5),
+                new Denomination("QUARTER", 25),
+                new Denomination("DIME", 10)
+        ));
+
+        VendingMachine vendingMachine = new VendingMachine(coinCalculator, new HeapItemBuckets(Collections.singletonList(new ItemBucket("A", 65, 10))),
+                new HeapCassettes(asList(
+                        new CoinCassette("DOLLAR", 100),
+                        new CoinCassette("QUARTER", 100),
+                        new CoinCassette("DIME", 100),
+                        new CoinCassette("NICKEL", 100)
+                )),
+                new CoinPurse(coinCalculator)
+        );
+
+        long first = vendingMachine.openSession();
+        long second = vendingMachine.openSession();
+
+        assertThat(vendingMachine.process(first, "PUT-QUARTER, PUT-QUARTER"), is(""));
+        assertThat(vendingMachine.process(second, "PUT-DOLLAR, GET-A"), is("A, QUARTER, DIME"));
+        assertThat(vendingMachine.process(first, "GET-A"), is("INSUFFICIENT-FUNDS"));
+        assertThat(vendingMachine.process("COIN-RETURN"), is(""));
+
+        assertThat(vendingMachine.closeSession(first), is("QUARTER, QUARTER"));
+    }
+
+    @Test
+    public void testScenario_exactChangeOnly() {
+
+        CoinCalculator coinCalculator = new CoinCalculator(asList(
+                new Denomination("DOLLAR", 100),
+                new Denomination("NICKEL", 5),
+                new Denomination("QUARTER", 25),
+                new Denomination("DIME", 10)
+        ));
+
+        Cassettes cassettes = new HeapCassettes(new ArrayList<>(asList(
+                new CoinCassette("DOLLAR", 0),
+                new CoinCassette("QUARTER", 1),
+                new CoinCassette("DIME", 1),
+                new CoinCassette("NICKEL", 0)
+        )));
+
+        VendingMachine vendingMachine = new VendingMachine(coinCalculator, new HeapItemBuckets(asList(new ItemBucket("A", 65, 10))),
+                cassettes,
+                new CoinPurse(coinCalculator)
+        );
+
+        assertThat(vendingMachine.isExactChangeOnly("A"), is(true));
+
+        //5 or 30 cents owed cannot be paid, but coins are still taken while a balance that can be paid is within reach.
+        assertThat(vendingMachine.process("PUT-QUARTER, PUT-QUARTER, PUT-DIME, PUT-DIME, PUT-QUARTER, PUT-NICKEL, GET-A"), is("A, QUARTER, DIME"));
+
+        //with the cassettes empty, a dollar could never be given change, so it is handed back.
+        assertThat(vendingMachine.process("PUT-DOLLAR"), is("EXACT-CHANGE-ONLY"));
+        assertThat(vendingMachine.process("PUT-QUARTER, PUT-QUARTER, PUT-DIME, PUT-NICKEL, GET-A"), is("A"));
+
+        cassettes.reset();
+
+        assertThat(vendingMachine.isExactChangeOnly("A"), is(false));
+        assertThat(vendingMachine.process("PUT-DOLLAR, GET-A"), is("A, QUARTER, DIME"));
+    }
+
+    private VendingMachine createStockedMachine() {
+        CoinCalculator coinCalculator = new CoinCalculator(asList(
+                new Denomination("DOLLAR", 100),
+                new Denomination("NICKEL", 5),
+                new Denomination("QUARTER", 25),
+                new Denomination("DIME", 10)
+        ));
+
+        return new VendingMachine(coinCalculator, new HeapItemBuckets(Collections.singletonList(new ItemBucket("A", 65, 10))),
+                new HeapCassettes(asList(
+                        new CoinCassette("DOLLAR", 100),
+                        new CoinCassette("QUARTER", 100),
+                        new CoinCassette("DIME", 100),
+                        new CoinCassette("NICKEL", 100)
+                )),
+                new CoinPurse(coinCalculator)
+        );
+    }
+
+    @Test
+    public void testScenario_batchFromReader() throws IOException {
+
+        VendingMachine vendingMachine = createStockedMachine();
+
+        StringWriter out = new StringWriter();
+        vendingMachine.processAll(new StringReader("PUT-DOLLAR, GET-A\r\nPUT-QUARTER\n\nCOIN-RETURN"), out);
+
+        assertThat(out.toString(), is("A, QUARTER, DIME\n\nINVALID-COMMAND\nQUARTER\n"));
+    }
+
+    @Test(timeout = 10000)
+    public void testScenario_batchFromReader_releasesLockBetweenChunks() throws Exception {
+
+        VendingMachine vendingMachine = createStockedMachine();
+
+        PipedWriter in = new PipedWriter();
+        PipedReader reader = new PipedReader(in);
+        StringBuffer out = new StringBuffer();
+
+        Thread batch = new Thread(() -> {
+            try {
+                vendingMachine.processAll(reader, out);
+            } catch (IOException e) {
+                throw new SystemException("Batch failed.", e);
+            }
+        });
+        batch.start();
+
+        in.write("PUT-DOLLAR, GET-A\n");
+        in.flush();
+        while (out.length() == 0) {
+            Thread.sleep(10);
+        }
+
+        //the batch is waiting on more input, which must not keep others out of the machine.
+        synchronized (vendingMachine) {
+            long sessionId = vendingMachine.openSession();
+            assertThat(vendingMachine.process(sessionId, "PUT-QUARTER, COIN-RETURN"), is("QUARTER"));
+            vendingMachine.closeSession(sessionId);
+        }
+
+        in.write("GET-B\n");
+        in.close();
+        batch.join();
+
+        assertThat(out.toString(), is("A, QUARTER, DIME\nINVALID-ITEM\n"));
+    }
+
+    @Test
+    public void testScenario_batchFromByteBuffer() throws IOException {
+
+        VendingMachine vendingMachine = createStockedMachine();
+
+        StringBuilder out = new StringBuilder();
+        vendingMachine.processAll(ByteBuffer.wrap("PUT-DOLLAR, GET-A\nGET-B\n".getBytes(StandardCharsets.US_ASCII)), out);
+
+        assertThat(out.toString(), is("A, QUARTER, DIME\nINVALID-ITEM\n"));
+    }
+
+    @Test
+    public void testScenario_expiredSessionsHandBackCoins() {
+
+        CoinCalculator coinCalculator = new CoinCalculator(asList(
+                new Denomination("DOLLAR", 100),
+                new Denomination("NICKEL", 5),
+                new Denomination("QUARTER", 25),
+                new Denomination("DIME", 10)
+        ));
+
+        AtomicLong clock = new AtomicLong();
+
+        VendingMachine vendingMachine = new VendingMachine(coinCalculator, new HeapItemBuckets(Collections.singletonList(new ItemBucket("A", 65, 10))),
+                new HeapCassettes(new ArrayList<>()),
+                new CoinPurse(coinCalculator),
+                new Sessions(coinCalculator, clock::get, 1000)
+        );
+
+        List<String> refunded = new ArrayList<>();
+        vendingMachine.addListener(new MachineListener() {
+            @Override
+            public void coinsRefunded(long sessionId, List<String> coins) {
+                refunded.addAll(coins);
+            }
+        });
+
+        long first = vendingMachine.openSession();
+        long second = vendingMachine.openSession();
+        vendingMachine.process(first, "PUT-QUARTER, PUT-DIME");
+
+        clock.set(500);
+        vendingMachine.process(second, "PUT-QUARTER");
+
+        clock.set(1200);
+        Map<Long, List<String>> refunds = vendingMachine.expireSessions();
+
+        assertThat(refunds.size(), is(1));
+        assertThat(refunds.get(first), is(asList("QUARTER", "DIME")));
+        assertThat(refunded, is(asList("QUARTER", "DIME")));
+
+        clock.set(2000);
+        assertThat(vendingMachine.expireSessions().get(second), is(asList("QUARTER")));
+    }
+
+    @Test
+    public void testScenario_exactChangeOnly_givenCoinOrder() {
+
+        CoinCalculator coinCalculator = new CoinCalculator(asList(
+                new Denomination("DOLLAR", 100),
+                new Denomination("NICKEL", 5),
+                new Denomination("QUARTER", 25),
+                new Denomination("DIME", 10)
+        ));
+
+        Function<String, String> purchase = line -> new VendingMachine(coinCalculator, new HeapItemBuckets(asList(new ItemBucket("A", 65, 10))),
+                new HeapCassettes(new ArrayList<>(asList(
+                        new CoinCassette("DOLLAR", 0),
+                        new CoinCassette("QUARTER", 10),
+                        new CoinCassette("DIME", 0),
+                        new CoinCassette("NICKEL", 0)
+                ))),
+                new CoinPurse(coinCalculator)
+        ).process(line);
+
+        //a dollar on its own is owed 35, which quarters cannot pay, but a dime and a nickel more make it 50, which they can.
+        assertThat(purchase.apply("PUT-DOLLAR, PUT-DIME, PUT-NICKEL, GET-A"), is("A, QUARTER, QUARTER"));
+        assertThat(purchase.apply("PUT-DIME, PUT-NICKEL, PUT-DOLLAR, GET-A"), is("A, QUARTER, QUARTER"));
+    }
 }
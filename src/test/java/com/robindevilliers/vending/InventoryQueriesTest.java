@@ -0,0 +1,106 @@
+package com.robindevilliers.vending;
+
+import static java.util.Arrays.asList;
+import static org.hamcrest.core.Is.is;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.fail;
+
+import com.robindevilliers.vending.model.CoinCassette;
+import com.robindevilliers.vending.model.Denomination;
+import com.robindevilliers.vending.model.ItemBucket;
+import com.robindevilliers.vending.model.MachineConfig;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Map;
+
+public class InventoryQueriesTest {
+
+    private static final int MACHINES = 100000;
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private final CoinCalculator coinCalculator = new CoinCalculator(new ArrayList<>(asList(
+            new Denomination("DOLLAR", 100),
+            new Denomination("QUARTER", 25),
+            new Denomination("DIME", 10),
+            new Denomination("NICKEL", 5)
+    )));
+
+    private InventoryStore store;
+
+    private InventoryQueries queries;
+
+    //every tenth machine is short of slot A, and every thousandth has no quarters or nickels.
+    @Before
+    public void setup() throws IOException {
+        store = new InventoryStore(folder.getRoot().toPath().resolve("inventory.bin"), MACHINES,
+                asList("A", "B"), asList("NICKEL", "DIME", "QUARTER", "DOLLAR"));
+
+        for (int machine = 0; machine < MACHINES; machine++) {
+            int coins = machine % 1000 == 0 ? 0 : 10;
+
+            store.load(machine, new MachineConfig("M" + machine,
+                    asList(new Denomination("DOLLAR", 100)),
+                    asList(new ItemBucket("A", 65, 0, machine % 10 == 0 ? 2 : 20), new ItemBucket("B", 100, 0, 20)),
+                    asList(new CoinCassette("NICKEL", 0, coins), new CoinCassette("DIME", 0, 10),
+                            new CoinCassette("QUARTER", 0, coins), new CoinCassette("DOLLAR", 0, 10))));
+        }
+
+        queries = new InventoryQueries(store, coinCalculator);
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        store.close();
+    }
+
+    @Test
+    public void testFindMachinesBelow() {
+        int[] machines = queries.findMachinesBelow("A", 3);
+
+        assertThat(machines.length, is(MACHINES / 10));
+        assertThat(machines[0], is(0));
+        assertThat(machines[1], is(10));
+        assertThat(queries.findMachinesBelow("B", 3).length, is(0));
+    }
+
+    @Test
+    public void testGetTotalStock() {
+        assertThat(queries.getTotalStock("A"), is(MACHINES / 10 * 2L + MACHINES / 10 * 9 * 20L));
+    }
+
+    @Test
+    public void testGetTotalFloat() {
+        Map<String, Long> totals = queries.getTotalFloat();
+
+        assertThat(totals.get("DOLLAR"), is(MACHINES * 10L));
+        assertThat(totals.get("QUARTER"), is((MACHINES - MACHINES / 1000) * 10L));
+    }
+
+    @Test
+    public void testFindMachinesUnableToMakeChange() {
+        //35 needs a quarter or a nickel along with the dimes, while 20 can be paid in dimes alone.
+        int[] machines = queries.findMachinesUnableToMakeChange(35);
+
+        assertThat(machines.length, is(MACHINES / 1000));
+        assertThat(machines[1], is(1000));
+        assertThat(queries.findMachinesUnableToMakeChange(20).length, is(0));
+    }
+
+    @Test
+    public void testFindMachinesBelow_givenUnknownSlot() {
+        try {
+            queries.findMachinesBelow("Z", 3);
+            fail("expected exception to be thrown");
+        } catch (SystemException e) {
+            assertThat(e.getMessage(), is("ItemId not found."));
+        }
+    }
+}
@@ -0,0 +1,194 @@
+package com.robindevilliers.vending;
+
+import static java.util.Arrays.asList;
+import static org.hamcrest.core.Is.is;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.fail;
+
+import com.robindevilliers.vending.model.CoinCassette;
+import com.robindevilliers.vending.model.Denomination;
+import com.robindevilliers.vending.model.ItemBucket;
+import com.robindevilliers.vending.model.MachineConfig;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+public class InventoryStoreTest {
+
+    private static final List<String> SLOTS = asList("A", "B");
+
+    private static final List<String> COINS = asList("DOLLAR", "QUARTER", "DIME");
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private final CoinCalculator coinCalculator = new CoinCalculator(new ArrayList<>(asList(
+            new Denomination("DOLLAR", 100),
+            new Denomination("QUARTER", 25),
+            new Denomination("DIME", 10)
+    )));
+
+    private static MachineConfig createConfig(String machineId, int price) {
+        return new MachineConfig(machineId,
+                asList(new Denomination("DOLLAR", 100), new Denomination("QUARTER", 25), new Denomination("DIME", 10)),
+                asList(new ItemBucket("A", price, 0, 5), new ItemBucket("B", 100, 0, 5)),
+                asList(new CoinCassette("DOLLAR", 0, 10), new CoinCassette("QUARTER", 0, 10), new CoinCassette("DIME", 0, 10)));
+    }
+
+    private VendingMachine createMachine(InventoryStore store, int machine) {
+        return new VendingMachine(coinCalculator, store.createItemBuckets(machine), store.createCassettes(machine), new CoinPurse(coinCalculator));
+    }
+
+    @Test
+    public void testLoad() throws IOException {
+        try (InventoryStore store = new InventoryStore(folder.getRoot().toPath().resolve("inventory.bin"), 3, SLOTS, COINS)) {
+            assertThat(store.isCreated(), is(true));
+
+            store.load(1, createConfig("M1", 65));
+
+            assertThat(store.getItemPrice(1, 0), is(65));
+            assertThat(store.getItemCapacity(1, 1), is(5));
+            assertThat(store.getItemQuantity(1, 1), is(5));
+            assertThat(store.getCoinCapacity(1, 2), is(10));
+            assertThat(store.getCoinQuantity(1, 2), is(10));
+            assertThat(store.getItemQuantity(0, 0), is(0));
+            assertThat(store.getItemQuantity(2, 0), is(0));
+        }
+    }
+
+    @Test
+    public void testVend_survivesRestart() throws IOException {
+        Path file = folder.getRoot().toPath().resolve("inventory.bin");
+
+        try (InventoryStore store = new InventoryStore(file, 2, SLOTS, COINS)) {
+            store.load(0, createConfig("M0", 65));
+            store.load(1, createConfig("M1", 75));
+
+            assertThat(createMachine(store, 0).process("PUT-DOLLAR, GET-A"), is("A, QUARTER, DIME"));
+            assertThat(createMachine(store, 1).process("PUT-DOLLAR, GET-A"), is("A, QUARTER"));
+        }
+
+        try (InventoryStore store = new InventoryStore(file, 2, SLOTS, COINS)) {
+            assertThat(store.isCreated(), is(false));
+
+            ItemBuckets itemBuckets = store.createItemBuckets(0);
+            Cassettes cassettes = store.createCassettes(0);
+
+            assertThat(itemBuckets.getPriceForItem("A"), is(65));
+            assertThat(itemBuckets.getBuckets().get(0).getQuantity(), is(4));
+            assertThat(cassettes.getCoinCount("QUARTER"), is(9));
+            assertThat(cassettes.getCoinCount("DIME"), is(9));
+            assertThat(store.getItemQuantity(1, 0), is(4));
+            assertThat(store.getCoinQuantity(1, 2), is(10));
+
+            itemBuckets.reset();
+            assertThat(store.getItemQuantity(0, 0), is(5));
+        }
+    }
+
+    @Test
+    public void testConfigure_writesThroughToStore() throws IOException {
+        try (InventoryStore store = new InventoryStore(folder.getRoot().toPath().resolve("inventory.bin"), 1, SLOTS, COINS)) {
+            store.load(0, createConfig("M0", 65));
+            VendingMachine vendingMachine = createMachine(store, 0);
+
+            vendingMachine.configure(createConfig("M0", 90));
+
+            assertThat(store.getItemPrice(0, 0), is(90));
+            assertThat(vendingMachine.process("PUT-DOLLAR, GET-A"), is("A, DIME"));
+            assertThat(store.getItemQuantity(0, 0), is(4));
+        }
+    }
+
+    @Test
+    public void testRecycling_creditsUpToCapacity() throws IOException {
+        try (InventoryStore store = new InventoryStore(folder.getRoot().toPath().resolve("inventory.bin"), 1, SLOTS, COINS)) {
+            store.load(0, createConfig("M0", 65));
+            Cassettes cassettes = store.createCassettes(0);
+
+            cassettes.ejectCoins(asList("DIME", "DIME"));
+
+            assertThat(cassettes.creditCoins("DIME", 3), is(2));
+            assertThat(store.getCoinQuantity(0, 2), is(10));
+        }
+    }
+
+    @Test
+    public void testOrdinalOperations() throws IOException {
+        try (InventoryStore store = new InventoryStore(folder.getRoot().toPath().resolve("inventory.bin"), 2, SLOTS, COINS)) {
+            store.load(1, createConfig("M1", 65));
+
+            assertThat(store.tryRemoveItems(1, 0, 5), is(true));
+            assertThat(store.tryRemoveItems(1, 0, 1), is(false));
+            store.addItems(1, 0, 2);
+            store.topUpItems(1, 0, 1);
+            assertThat(store.getItemQuantity(1, 0), is(2));
+            store.topUpItems(1, 0, 50);
+            assertThat(store.getItemQuantity(1, 0), is(5));
+
+            assertThat(store.tryRemoveCoins(1, 1, 4), is(true));
+            assertThat(store.tryAddCoins(1, 1, 10), is(4));
+            store.unloadCoins(1, 1, 20);
+            assertThat(store.getCoinQuantity(1, 1), is(0));
+            assertThat(store.getCoinQuantity(0, 1), is(0));
+        }
+    }
+
+    @Test
+    public void testCreateItemBuckets_givenTwoForOneMachine_shareItsRow() throws IOException {
+        try (InventoryStore store = new InventoryStore(folder.getRoot().toPath().resolve("inventory.bin"), 1, SLOTS, COINS)) {
+            store.load(0, createConfig("M0", 65));
+
+            //nothing is kept per slot, so any number of these can be made and they all see the same stock.
+            ItemBuckets first = store.createItemBuckets(0);
+            ItemBuckets second = store.createItemBuckets(0);
+
+            assertThat(first.reserveItem("A"), is(true));
+            assertThat(second.getBuckets().get(0).getQuantity(), is(4));
+
+            second.getBuckets().get(0).setQuantity(1);
+            assertThat(first.reserveItem("A"), is(true));
+            assertThat(first.hasItem("A"), is(false));
+            assertThat(store.getItemQuantity(0, 0), is(0));
+        }
+    }
+
+    @Test
+    public void testOpen_givenDifferentLayout() throws IOException {
+        Path file = folder.getRoot().toPath().resolve("inventory.bin");
+        new InventoryStore(file, 2, SLOTS, COINS).close();
+
+        try {
+            new InventoryStore(file, 2, asList("A", "C"), COINS);
+            fail("expected exception to be thrown");
+        } catch (SystemException e) {
+            assertThat(e.getMessage(), is("Inventory store layout does not match."));
+        }
+    }
+
+    @Test
+    public void testLoad_givenUnknownSlot() throws IOException {
+        try (InventoryStore store = new InventoryStore(folder.getRoot().toPath().resolve("inventory.bin"), 1, asList("A"), COINS)) {
+            store.load(0, createConfig("M0", 65));
+            fail("expected exception to be thrown");
+        } catch (SystemException e) {
+            assertThat(e.getMessage(), is("Slot not in inventory store."));
+        }
+    }
+
+    @Test
+    public void testOpen_givenFleetTooLargeToMap() throws IOException {
+        //the item columns alone come to 2.4GB, which would wrap round if the offsets were worked out in int.
+        try {
+            new InventoryStore(folder.getRoot().toPath().resolve("inventory.bin"), 100000000, SLOTS, COINS);
+            fail("expected exception to be thrown");
+        } catch (SystemException e) {
+            assertThat(e.getMessage(), is("Inventory store too large."));
+        }
+    }
+}
@@ -1,5 +1,6 @@
 package com.robindevilliers.vending;
 
+import static java.util.Arrays.asList;
 import static org.hamcrest.core.Is.is;
 import static org.junit.Assert.assertThat;
 import static org.junit.Assert.fail;
@@ -16,7 +17,7 @@ public class ItemBucketsTest {
     @Test
     public void testGetPriceForItem_givenCorrectItemId() {
 
-        ItemBuckets bucket = new ItemBuckets(Collections.singletonList(new ItemBucket("A", 65, 1)));
+        ItemBuckets bucket = new HeapItemBuckets(Collections.singletonList(new ItemBucket("A", 65, 1)));
 
         int response = bucket.getPriceForItem("A");
 
@@ -25,7 +26,7 @@ public class ItemBucketsTest {
 
     @Test
     public void testGetPriceForItem_givenIncorrectItemId() {
-        ItemBuckets bucket = new ItemBuckets(Collections.emptyList());
+        ItemBuckets bucket = new HeapItemBuckets(Collections.emptyList());
 
         try {
             bucket.getPriceForItem("A");
@@ -39,7 +40,7 @@ public class ItemBucketsTest {
     @Test
     public void testAdd() {
         List<ItemBucket> list = new ArrayList<>();
-        ItemBuckets itemBuckets = new ItemBuckets(list);
+        ItemBuckets itemBuckets = new HeapItemBuckets(list);
 
         itemBuckets.add(new ItemBucket("A", 65, 1));
 
@@ -49,10 +50,30 @@ public class ItemBucketsTest {
         assertThat(item.getQuantity(), is(1));
     }
 
+    @Test
+    public void testAdd_indexesNewItem() {
+        ItemBuckets itemBuckets = new HeapItemBuckets(new ArrayList<>());
+
+        itemBuckets.add(new ItemBucket("A", 65, 1));
+
+        assertThat(itemBuckets.isValidItemId("A"), is(true));
+        assertThat(itemBuckets.getPriceForItem("A"), is(65));
+    }
+
+    @Test
+    public void testGetPriceForItem_givenDuplicateItemIds() {
+        ItemBuckets itemBuckets = new HeapItemBuckets(new ArrayList<>());
+
+        itemBuckets.add(new ItemBucket("A", 65, 1));
+        itemBuckets.add(new ItemBucket("A", 100, 1));
+
+        assertThat(itemBuckets.getPriceForItem("A"), is(65));
+    }
+
     @Test
     public void testIsValidItemId_givenCorrectItemId() {
 
-        ItemBuckets bucket = new ItemBuckets(Collections.singletonList(new ItemBucket("A", 65, 1)));
+        ItemBuckets bucket = new HeapItemBuckets(Collections.singletonList(new ItemBucket("A", 65, 1)));
 
         boolean response = bucket.isValidItemId("A");
 
@@ -62,7 +83,7 @@ public class ItemBucketsTest {
     @Test
     public void testIsValidItemId_givenIncorrectItemId() {
 
-        ItemBuckets bucket = new ItemBuckets(Collections.emptyList());
+        ItemBuckets bucket = new HeapItemBuckets(Collections.emptyList());
 
         boolean response = bucket.isValidItemId("A");
 
@@ -72,17 +93,63 @@ public class ItemBucketsTest {
     @Test
     public void testReset() {
         List<ItemBucket> list = Collections.singletonList(new ItemBucket("A", 65, 1));
-        ItemBuckets bucket = new ItemBuckets(list);
+        ItemBuckets bucket = new HeapItemBuckets(list);
 
         bucket.reset();
 
         assertThat(list.get(0).getQuantity(), is(20));
     }
 
+    @Test
+    public void testRefill() {
+        List<ItemBucket> list = new ArrayList<>(asList(new ItemBucket("A", 65, 1), new ItemBucket("B", 100, 1)));
+        ItemBuckets bucket = new HeapItemBuckets(list);
+
+        bucket.refill(Collections.singletonMap("B", 12));
+
+        assertThat(list.get(0).getQuantity(), is(1));
+        assertThat(list.get(1).getQuantity(), is(12));
+
+        //a refill only tops up, and never past capacity.
+        bucket.refill(Collections.singletonMap("B", 5));
+        assertThat(list.get(1).getQuantity(), is(12));
+
+        bucket.refill(Collections.singletonMap("A", 50));
+        assertThat(list.get(0).getQuantity(), is(20));
+    }
+
+    @Test
+    public void testReset_givenCapacity() {
+        List<ItemBucket> list = Collections.singletonList(new ItemBucket("A", 65, 1, 8));
+        ItemBuckets bucket = new HeapItemBuckets(list);
+
+        bucket.reset();
+
+        assertThat(list.get(0).getQuantity(), is(8));
+    }
+
+    @Test
+    public void testConfigure() {
+        ItemBuckets bucket = new HeapItemBuckets(new ArrayList<>(asList(new ItemBucket("A", 65, 3), new ItemBucket("B", 100, 4))));
+
+        bucket.configure(asList(new ItemBucket("A", 80, 0, 10), new ItemBucket("C", 150, 0, 5)));
+
+        assertThat(bucket.getPriceForItem("A"), is(80));
+        assertThat(bucket.getBuckets().get(0).getQuantity(), is(3));
+        assertThat(bucket.getBuckets().get(1).getQuantity(), is(0));
+        assertThat(bucket.isValidItemId("B"), is(false));
+        assertThat(bucket.findItemId("c", 0, 1), is("C"));
+
+        bucket.reset();
+
+        assertThat(bucket.getBuckets().get(0).getQuantity(), is(10));
+        assertThat(bucket.getBuckets().get(1).getQuantity(), is(5));
+    }
+
     @Test
     public void testEjectItem_givenSufficientStock() {
         List<ItemBucket> list = Collections.singletonList(new ItemBucket("A", 65, 2));
-        ItemBuckets bucket = new ItemBuckets(list);
+        ItemBuckets bucket = new HeapItemBuckets(list);
 
         bucket.ejectItem("A");
 
@@ -91,7 +158,7 @@ public class ItemBucketsTest {
 
     @Test
     public void testEjectItem_givenInvalidItemId() {
-        ItemBuckets bucket = new ItemBuckets(Collections.emptyList());
+        ItemBuckets bucket = new HeapItemBuckets(Collections.emptyList());
 
         try {
             bucket.ejectItem("A");
@@ -104,7 +171,7 @@ public class ItemBucketsTest {
     @Test
     public void testHasItem_givenValidItemId_AndSufficientStock() {
         List<ItemBucket> list = Collections.singletonList(new ItemBucket("A", 65, 2));
-        ItemBuckets bucket = new ItemBuckets(list);
+        ItemBuckets bucket = new HeapItemBuckets(list);
 
         boolean response = bucket.hasItem("A");
 
@@ -114,7 +181,7 @@ public class ItemBucketsTest {
     @Test
     public void testHasItem_givenValidItemId_AndInsufficientStock() {
         List<ItemBucket> list = Collections.singletonList(new ItemBucket("A", 65, 0));
-        ItemBuckets bucket = new ItemBuckets(list);
+        ItemBuckets bucket = new HeapItemBuckets(list);
 
         boolean response = bucket.hasItem("A");
 
@@ -123,7 +190,7 @@ public class ItemBucketsTest {
 
     @Test
     public void testHasItem_givenInvalidItemId() {
-        ItemBuckets bucket = new ItemBuckets(Collections.emptyList());
+        ItemBuckets bucket = new HeapItemBuckets(Collections.emptyList());
 
         try {
             bucket.hasItem("A");
@@ -133,4 +200,30 @@ public class ItemBucketsTest {
         }
     }
 
+    @Test
+    public void testEjectItem_givenNoStock() {
+        ItemBuckets bucket = new HeapItemBuckets(Collections.singletonList(new ItemBucket("A", 65, 0)));
+
+        try {
+            bucket.ejectItem("A");
+            fail("expected exception to be thrown");
+        } catch (SystemException e) {
+            assertThat(e.getMessage(), is("Item out of stock."));
+        }
+    }
+
+    @Test
+    public void testReserveItem_andReleaseItem() {
+        List<ItemBucket> list = Collections.singletonList(new ItemBucket("A", 65, 1));
+        ItemBuckets bucket = new HeapItemBuckets(list);
+
+        assertThat(bucket.reserveItem("A"), is(true));
+        assertThat(bucket.reserveItem("A"), is(false));
+        assertThat(list.get(0).getQuantity(), is(0));
+
+        bucket.releaseItem("A");
+
+        assertThat(list.get(0).getQuantity(), is(1));
+    }
+
 }
@@ -0,0 +1,205 @@
+package com.robindevilliers.vending;
+
+import static java.util.Arrays.asList;
+import static org.hamcrest.core.Is.is;
+import static org.junit.Assert.assertThat;
+
+import com.robindevilliers.vending.model.CoinCassette;
+import com.robindevilliers.vending.model.Denomination;
+import com.robindevilliers.vending.model.ItemBucket;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.file.Path;
+
+public class JournalTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private final CoinCalculator coinCalculator = new CoinCalculator(asList(
+            new Denomination("DOLLAR", 100),
+            new Denomination("NICKEL", 5),
+            new Denomination("QUARTER", 25),
+            new Denomination("DIME", 10)
+    ));
+
+    private ItemBuckets itemBuckets;
+    private Cassettes cassettes;
+    private CoinPurse coinPurse;
+    private Sessions sessions;
+    private VendingMachine vendingMachine;
+
+    private void createMachine() {
+        itemBuckets = new HeapItemBuckets(asList(new ItemBucket("A", 65, 10), new ItemBucket("B", 100, 10)));
+        cassettes = new HeapCassettes(asList(
+                new CoinCassette("DOLLAR", 10),
+                new CoinCassette("QUARTER", 10),
+                new CoinCassette("DIME", 10),
+                new CoinCassette("NICKEL", 10)
+        ));
+        coinPurse = new CoinPurse(coinCalculator);
+        sessions = new Sessions(coinCalculator, System::currentTimeMillis, 60000);
+        vendingMachine = new VendingMachine(coinCalculator, itemBuckets, cassettes, coinPurse, sessions);
+    }
+
+    private Journal start(Path directory, int segmentSize) throws IOException {
+        createMachine();
+
+        Journal journal = new Journal(directory, segmentSize, 1, itemBuckets, cassettes, coinPurse, sessions);
+        journal.recover();
+        vendingMachine.addListener(journal);
+        return journal;
+    }
+
+    @Test
+    public void testRecover_restoresStockCassettesAndPurses() throws IOException {
+        Path directory = folder.getRoot().toPath();
+
+        Journal journal = start(directory, 4096);
+        vendingMachine.process("PUT-DOLLAR, GET-A, PUT-QUARTER, PUT-DIME, PUT-DIME, COIN-RETURN, PUT-DOLLAR");
+        long session = vendingMachine.openSession();
+        vendingMachine.process(session, "PUT-QUARTER");
+        journal.close();
+
+        createMachine();
+        Journal recovered = new Journal(directory, 4096, 1, itemBuckets, cassettes, coinPurse, sessions);
+
+        assertThat(recovered.recover(), is(9));
+
+        assertThat(itemBuckets.getBuckets().get(0).getQuantity(), is(9));
+        assertThat(cassettes.getCoinCount("QUARTER"), is(9));
+        assertThat(cassettes.getCoinCount("DIME"), is(9));
+        assertThat(coinPurse.getCounts().get("DOLLAR"), is(1));
+        assertThat(sessions.get(session).getCoinPurse().getCounts().get("QUARTER"), is(1));
+        recovered.close();
+    }
+
+    @Test
+    public void testRecover_givenClosedSession() throws IOException {
+        Path directory = folder.getRoot().toPath();
+
+        Journal journal = start(directory, 4096);
+        long closed = vendingMachine.openSession();
+        vendingMachine.process(closed, "PUT-DOLLAR");
+        vendingMachine.closeSession(closed);
+        long open = vendingMachine.openSession();
+        journal.close();
+
+        createMachine();
+        Journal recovered = new Journal(directory, 4096, 1, itemBuckets, cassettes, coinPurse, sessions);
+
+        assertThat(recovered.recover(), is(5));
+
+        assertThat(sessions.isOpen(closed), is(false));
+        assertThat(sessions.isOpen(open), is(true));
+        assertThat(sessions.size(), is(1));
+        assertThat(vendingMachine.openSession() > open, is(true));
+        recovered.close();
+    }
+
+    @Test
+    public void testRecover_givenRecycling_creditsPaymentsToCassettes() throws IOException {
+        Path directory = folder.getRoot().toPath();
+
+        Journal journal = start(directory, 4096);
+        cassettes.setRecycling(true);
+        vendingMachine.process("PUT-DOLLAR, GET-A");
+        journal.close();
+
+        //the record says which coins were credited, so replay does not depend on the recycling setting at the time.
+        createMachine();
+        Journal recovered = new Journal(directory, 4096, 1, itemBuckets, cassettes, coinPurse, sessions);
+
+        assertThat(recovered.recover(), is(2));
+
+        assertThat(cassettes.getCoinCount("DOLLAR"), is(11));
+        assertThat(cassettes.getCoinCount("QUARTER"), is(9));
+        assertThat(cassettes.getCoinCount("DIME"), is(9));
+        assertThat(coinPurse.getTotal(), is(0));
+        recovered.close();
+    }
+
+    @Test
+    public void testRecover_givenRecyclingTurnedOnSince_dropsPaymentsIntoSafe() throws IOException {
+        Path directory = folder.getRoot().toPath();
+
+        Journal journal = start(directory, 4096);
+        vendingMachine.process("PUT-DOLLAR, GET-A");
+        journal.close();
+
+        createMachine();
+        cassettes.setRecycling(true);
+        Journal recovered = new Journal(directory, 4096, 1, itemBuckets, cassettes, coinPurse, sessions);
+
+        assertThat(recovered.recover(), is(2));
+
+        assertThat(cassettes.getCoinCount("DOLLAR"), is(10));
+        assertThat(coinPurse.getTotal(), is(0));
+        recovered.close();
+    }
+
+    @Test
+    public void testRecover_replaysOnlyRecordsAfterSnapshot() throws IOException {
+        Path directory = folder.getRoot().toPath();
+
+        Journal journal = start(directory, 4096);
+        vendingMachine.process("PUT-DOLLAR, GET-A");
+        journal.snapshot();
+        vendingMachine.process("PUT-DOLLAR, GET-B");
+        journal.close();
+
+        Journal recovered = start(directory, 4096);
+
+        assertThat(itemBuckets.getBuckets().get(0).getQuantity(), is(9));
+        assertThat(itemBuckets.getBuckets().get(1).getQuantity(), is(9));
+        assertThat(cassettes.getCoinCount("QUARTER"), is(9));
+        recovered.close();
+    }
+
+    @Test
+    public void testRecover_givenFullSegment_takesSnapshot() throws IOException {
+        Path directory = folder.getRoot().toPath();
+
+        Journal journal = start(directory, 256);
+        for (int i = 0; i < 20; i++) {
+            vendingMachine.process("PUT-QUARTER, PUT-DIME, COIN-RETURN");
+        }
+        vendingMachine.process("SERVICE, PUT-DOLLAR, GET-A, PUT-NICKEL");
+        journal.close();
+
+        Journal recovered = start(directory, 256);
+
+        assertThat(itemBuckets.getBuckets().get(0).getQuantity(), is(19));
+        assertThat(cassettes.getCoinCount("QUARTER"), is(99));
+        assertThat(coinPurse.getCounts().get("NICKEL"), is(1));
+        recovered.close();
+    }
+
+    @Test
+    public void testRecover_ignoresTornRecord() throws IOException {
+        Path directory = folder.getRoot().toPath();
+
+        Journal journal = start(directory, 4096);
+        vendingMachine.process("PUT-QUARTER");
+        vendingMachine.process("PUT-DIME");
+        journal.close();
+
+        //corrupt the last byte of the second record's payload.
+        try (RandomAccessFile file = new RandomAccessFile(directory.resolve("journal.bin").toFile(), "rw")) {
+            int firstRecord = 4 + 4 + 1 + 8 + 2 + 2 * "QUARTER".length() + 4;
+            int secondPayloadEnd = 8 + firstRecord + 4 + 4 + 1 + 8 + 2 + 2 * "DIME".length();
+            file.seek(secondPayloadEnd - 1);
+            file.write(0x7f);
+        }
+
+        Journal recovered = start(directory, 4096);
+
+        assertThat(coinPurse.getCounts().get("QUARTER"), is(1));
+        assertThat(coinPurse.getCounts().containsKey("DIME"), is(false));
+        recovered.close();
+    }
+}
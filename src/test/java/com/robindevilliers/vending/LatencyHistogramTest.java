@@ -0,0 +1,64 @@
+package com.robindevilliers.vending;
+
+import static org.hamcrest.core.Is.is;
+import static org.junit.Assert.assertThat;
+
+import org.junit.Test;
+
+public class LatencyHistogramTest {
+
+    @Test
+    public void testIndexOf_givenSmallValues() {
+        for (int i = 0; i < 16; i++) {
+            assertThat(LatencyHistogram.indexOf(i), is(i));
+            assertThat(LatencyHistogram.lowestValueOf(i), is((long) i));
+        }
+    }
+
+    @Test
+    public void testIndexOf_keepsValuesWithinTheirBucket() {
+        long[] values = {16, 17, 31, 32, 33, 1000, 65535, 1234567, Long.MAX_VALUE};
+
+        for (long value : values) {
+            int index = LatencyHistogram.indexOf(value);
+
+            assertThat(LatencyHistogram.lowestValueOf(index) <= value, is(true));
+            assertThat(LatencyHistogram.highestValueOf(index) >= value, is(true));
+
+            //each bucket is no wider than a sixteenth of its lowest value.
+            assertThat(LatencyHistogram.highestValueOf(index) - LatencyHistogram.lowestValueOf(index) <= LatencyHistogram.lowestValueOf(index) / 16, is(true));
+        }
+    }
+
+    @Test
+    public void testGetValueAtQuantile() {
+        LatencyHistogram histogram = new LatencyHistogram();
+
+        assertThat(histogram.getValueAtQuantile(0.5), is(0L));
+
+        for (int i = 1; i <= 100; i++) {
+            histogram.record(i * 1000);
+        }
+
+        assertThat(histogram.getCount(), is(100L));
+        assertThat(histogram.getMax(), is(100000L));
+
+        long median = histogram.getValueAtQuantile(0.5);
+        assertThat(median >= 50000 && median <= 50000 * 17 / 16, is(true));
+
+        long p99 = histogram.getValueAtQuantile(0.99);
+        assertThat(p99 >= 99000 && p99 <= 100000, is(true));
+
+        assertThat(histogram.getValueAtQuantile(1), is(100000L));
+    }
+
+    @Test
+    public void testRecord_givenNegativeValue() {
+        LatencyHistogram histogram = new LatencyHistogram();
+
+        histogram.record(-5);
+
+        assertThat(histogram.getCount(), is(1L));
+        assertThat(histogram.getValueAtQuantile(1), is(0L));
+    }
+}
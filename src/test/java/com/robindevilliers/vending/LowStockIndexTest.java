@@ -0,0 +1,82 @@
+package com.robindevilliers.vending;
+
+import static java.util.Arrays.asList;
+import static org.hamcrest.core.Is.is;
+import static org.junit.Assert.assertThat;
+
+import com.robindevilliers.vending.model.CoinCassette;
+import com.robindevilliers.vending.model.Denomination;
+import com.robindevilliers.vending.model.ItemBucket;
+import com.robindevilliers.vending.model.MachineConfig;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+import java.util.ArrayList;
+
+public class LowStockIndexTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private final CoinCalculator coinCalculator = new CoinCalculator(new ArrayList<>(asList(
+            new Denomination("DOLLAR", 100),
+            new Denomination("QUARTER", 25),
+            new Denomination("DIME", 10)
+    )));
+
+    private static MachineConfig createConfig(int stock) {
+        return new MachineConfig("M",
+                asList(new Denomination("DOLLAR", 100)),
+                asList(new ItemBucket("A", 65, 0, stock), new ItemBucket("B", 100, 0, 20)),
+                asList(new CoinCassette("DOLLAR", 0, 10), new CoinCassette("QUARTER", 0, 10), new CoinCassette("DIME", 0, 10)));
+    }
+
+    @Test
+    public void testIndex_followsVendingAndService() throws IOException {
+        try (InventoryStore store = new InventoryStore(folder.getRoot().toPath().resolve("inventory.bin"), 200,
+                asList("A", "B"), asList("DOLLAR", "QUARTER", "DIME"))) {
+
+            for (int machine = 0; machine < 200; machine++) {
+                store.load(machine, createConfig(machine == 70 || machine == 130 ? 2 : 3));
+            }
+
+            LowStockIndex index = new LowStockIndex(store, 3);
+
+            assertThat(index.findMachines("A"), is(new int[]{70, 130}));
+            assertThat(index.count("B"), is(0));
+
+            VendingMachine vendingMachine = new VendingMachine(coinCalculator, store.createItemBuckets(150), store.createCassettes(150),
+                    new CoinPurse(coinCalculator));
+            vendingMachine.addListener(index.listener(150));
+
+            vendingMachine.process("PUT-DOLLAR, GET-A");
+
+            assertThat(index.isLow(150, "A"), is(true));
+            assertThat(index.findMachines("A"), is(new int[]{70, 130, 150}));
+
+            vendingMachine.process("SERVICE");
+
+            assertThat(index.isLow(150, "A"), is(false));
+            assertThat(index.count("A"), is(2));
+        }
+    }
+
+    @Test
+    public void testRefresh() throws IOException {
+        try (InventoryStore store = new InventoryStore(folder.getRoot().toPath().resolve("inventory.bin"), 64,
+                asList("A", "B"), asList("DOLLAR", "QUARTER", "DIME"))) {
+
+            LowStockIndex index = new LowStockIndex(store, 1);
+
+            assertThat(index.count("A"), is(64));
+
+            store.load(63, createConfig(5));
+            index.refresh(63);
+
+            assertThat(index.isLow(63, "A"), is(false));
+            assertThat(index.count("A"), is(63));
+        }
+    }
+}
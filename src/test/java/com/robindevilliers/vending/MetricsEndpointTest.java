@@ -0,0 +1,73 @@
+package com.robindevilliers.vending;
+
+import static java.util.Arrays.asList;
+import static org.hamcrest.core.Is.is;
+import static org.hamcrest.core.StringContains.containsString;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.fail;
+
+import com.robindevilliers.vending.model.CoinCassette;
+import com.robindevilliers.vending.model.ItemBucket;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+
+public class MetricsEndpointTest {
+
+    private MetricsEndpoint metricsEndpoint;
+
+    @Before
+    public void before() throws IOException {
+        metricsEndpoint = new MetricsEndpoint(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0));
+        metricsEndpoint.add("M1", new Metrics(
+                new HeapItemBuckets(new ArrayList<>(asList(new ItemBucket("A", 65, 3)))),
+                new HeapCassettes(new ArrayList<>(asList(new CoinCassette("DIME", 7))))));
+        metricsEndpoint.start();
+    }
+
+    @After
+    public void after() {
+        metricsEndpoint.close();
+    }
+
+    @Test
+    public void testGet() throws IOException {
+        HttpURLConnection connection = (HttpURLConnection) new URL("http://127.0.0.1:" + metricsEndpoint.getPort() + "/metrics").openConnection();
+
+        assertThat(connection.getResponseCode(), is(200));
+        assertThat(connection.getContentType(), containsString("text/plain"));
+
+        ByteArrayOutputStream body = new ByteArrayOutputStream();
+        try (InputStream in = connection.getInputStream()) {
+            byte[] buffer = new byte[4096];
+            int read;
+            while ((read = in.read(buffer)) != -1) {
+                body.write(buffer, 0, read);
+            }
+        }
+
+        String text = new String(body.toByteArray(), StandardCharsets.UTF_8);
+        assertThat(text, containsString("vending_item_quantity{machine=\"M1\",item=\"A\"} 3\n"));
+        assertThat(text, containsString("vending_cassette_quantity{machine=\"M1\",denomination=\"DIME\"} 7\n"));
+    }
+
+    @Test
+    public void testAdd_givenDuplicateMachineId() {
+        try {
+            metricsEndpoint.add("M1", new Metrics(new HeapItemBuckets(new ArrayList<>()), new HeapCassettes(new ArrayList<>())));
+            fail("expected exception to be thrown");
+        } catch (SystemException e) {
+            assertThat(e.getMessage(), is("Machine already registered."));
+        }
+    }
+}
@@ -0,0 +1,127 @@
+package com.robindevilliers.vending;
+
+import static java.util.Arrays.asList;
+import static org.hamcrest.core.Is.is;
+import static org.hamcrest.core.StringContains.containsString;
+import static org.junit.Assert.assertThat;
+
+import com.robindevilliers.vending.model.CoinCassette;
+import com.robindevilliers.vending.model.Denomination;
+import com.robindevilliers.vending.model.ItemBucket;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+
+import javax.management.MBeanServer;
+import javax.management.MBeanServerFactory;
+import javax.management.ObjectName;
+import javax.management.openmbean.TabularData;
+
+public class MetricsTest {
+
+    private final CoinCalculator coinCalculator = new CoinCalculator(asList(
+            new Denomination("DOLLAR", 100),
+            new Denomination("NICKEL", 5),
+            new Denomination("QUARTER", 25),
+            new Denomination("DIME", 10)
+    ));
+
+    private ItemBuckets itemBuckets;
+
+    private Metrics metrics;
+
+    private VendingMachine vendingMachine;
+
+    @Before
+    public void before() {
+        itemBuckets = new HeapItemBuckets(new ArrayList<>(asList(new ItemBucket("A", 65, 2), new ItemBucket("B", 100, 0))));
+        Cassettes cassettes = new HeapCassettes(new ArrayList<>(asList(
+                new CoinCassette("DOLLAR", 10),
+                new CoinCassette("QUARTER", 10),
+                new CoinCassette("DIME", 10),
+                new CoinCassette("NICKEL", 10)
+        )));
+
+        metrics = new Metrics(itemBuckets, cassettes);
+        vendingMachine = new VendingMachine(coinCalculator, itemBuckets, cassettes, new CoinPurse(coinCalculator));
+        vendingMachine.addListener(metrics);
+    }
+
+    @Test
+    public void testCounts() {
+        vendingMachine.process("PUT-DOLLAR, GET-A, PUT-PENNY, GET-B, GET-A, PUT-QUARTER, COIN-RETURN, DANCE");
+
+        assertThat(metrics.getCommandCounts().get("PUT"), is(3L));
+        assertThat(metrics.getCommandCounts().get("GET"), is(3L));
+        assertThat(metrics.getCommandCounts().get("COIN-RETURN"), is(1L));
+        assertThat(metrics.getCommandCounts().get("INVALID"), is(1L));
+        assertThat(metrics.getCommandCounts().get("SERVICE"), is(0L));
+
+        assertThat(metrics.getResponseCounts().get("INVALID-COIN"), is(1L));
+        assertThat(metrics.getResponseCounts().get("OUT-OF-STOCK"), is(1L));
+        assertThat(metrics.getResponseCounts().get("INSUFFICIENT-FUNDS"), is(1L));
+        assertThat(metrics.getResponseCounts().get("INVALID-COMMAND"), is(1L));
+        assertThat(metrics.getResponseCounts().get("OK"), is(4L));
+
+        assertThat(metrics.getCoinsAccepted(), is(2L));
+        assertThat(metrics.getCoinsRejected(), is(1L));
+        assertThat(metrics.getItemSales().get("A"), is(1L));
+        assertThat(metrics.getItemQuantities().get("A"), is(1));
+        assertThat(metrics.getCassetteQuantities().get("QUARTER"), is(9));
+
+        assertThat(metrics.getLatency("GET").getCount(), is(3L));
+        assertThat(metrics.getLatencyMaxMicros() > 0, is(true));
+    }
+
+    @Test
+    public void testWriteText() {
+        vendingMachine.process("PUT-DOLLAR, GET-A");
+
+        StringBuilder text = new StringBuilder();
+        metrics.writeText("M1", text);
+
+        assertThat(text.toString(), containsString("vending_commands_total{machine=\"M1\",command=\"GET\"} 1\n"));
+        assertThat(text.toString(), containsString("vending_responses_total{machine=\"M1\",response=\"OK\"} 2\n"));
+        assertThat(text.toString(), containsString("vending_item_sales_total{machine=\"M1\",item=\"A\"} 1\n"));
+        assertThat(text.toString(), containsString("vending_item_quantity{machine=\"M1\",item=\"B\"} 0\n"));
+        assertThat(text.toString(), containsString("vending_cassette_quantity{machine=\"M1\",denomination=\"DIME\"} 9\n"));
+        assertThat(text.toString(), containsString("vending_command_latency_nanos{machine=\"M1\",command=\"GET\",quantile=\"0.99\"}"));
+    }
+
+    @Test
+    public void testWriteText_givenFailingSubscriber() {
+        EventStream eventStream = new EventStream(16);
+        EventSubscription subscription = new EventSubscription(eventStream, event -> {
+            throw new SystemException("Disk full.");
+        }, 0);
+        metrics.addSubscription("audit-log", subscription);
+        vendingMachine.addListener(eventStream);
+
+        vendingMachine.process("PUT-DOLLAR, GET-A");
+        while (subscription.poll()) {
+        }
+
+        assertThat(metrics.getSubscriberEventsFailed().get("audit-log"), is(subscription.getFailed()));
+        assertThat(subscription.getFailed() > 0, is(true));
+
+        StringBuilder text = new StringBuilder();
+        metrics.writeText("M1", text);
+
+        assertThat(text.toString(), containsString("vending_subscriber_events_total{machine=\"M1\",subscriber=\"audit-log\",result=\"failed\"} " + subscription.getFailed() + "\n"));
+        assertThat(text.toString(), containsString("vending_subscriber_events_total{machine=\"M1\",subscriber=\"audit-log\",result=\"lost\"} 0\n"));
+    }
+
+    @Test
+    public void testRegister_exposesMetricsOverJmx() throws Exception {
+        MBeanServer server = MBeanServerFactory.newMBeanServer();
+
+        ObjectName name = metrics.register(server, "M1");
+        vendingMachine.process("PUT-DOLLAR, GET-A");
+
+        assertThat(server.getAttribute(name, "CoinsAccepted"), is(1L));
+
+        TabularData itemSales = (TabularData) server.getAttribute(name, "ItemSales");
+        assertThat(itemSales.get(new Object[]{"A"}).get("value"), is(1L));
+    }
+}
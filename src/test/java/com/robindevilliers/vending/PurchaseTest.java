@@ -0,0 +1,118 @@
+package com.robindevilliers.vending;
+
+import static java.util.Arrays.asList;
+import static org.hamcrest.core.Is.is;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.fail;
+
+import com.robindevilliers.vending.model.CoinCassette;
+import com.robindevilliers.vending.model.Denomination;
+import com.robindevilliers.vending.model.ItemBucket;
+import org.junit.Test;
+
+import java.util.ArrayList;
+
+public class PurchaseTest {
+
+    private final CoinCalculator coinCalculator = new CoinCalculator(asList(
+            new Denomination("DOLLAR", 100),
+            new Denomination("QUARTER", 25),
+            new Denomination("DIME", 10)
+    ));
+
+    private final ItemBuckets itemBuckets = new HeapItemBuckets(new ArrayList<>(asList(new ItemBucket("A", 65, 1))));
+
+    private final Cassettes cassettes = new HeapCassettes(new ArrayList<>(asList(
+            new CoinCassette("DOLLAR", 0),
+            new CoinCassette("QUARTER", 1),
+            new CoinCassette("DIME", 1)
+    )));
+
+    private final CoinPurse coinPurse = new CoinPurse(coinCalculator);
+
+    @Test
+    public void testCommit_givenRecycling() throws InsufficientChangeException {
+        coinPurse.addCoin("DOLLAR");
+        cassettes.setRecycling(true);
+        long version = cassettes.getVersion();
+
+        Purchase purchase = new Purchase(itemBuckets, cassettes, coinCalculator, "A");
+
+        assertThat(purchase.reserveItem(), is(true));
+        purchase.reserveChange(35);
+        purchase.commit(coinPurse);
+
+        assertThat(cassettes.getCoinCount("DOLLAR"), is(1));
+        assertThat(cassettes.getVersion() > version, is(true));
+        assertThat(coinPurse.getTotal(), is(0));
+    }
+
+    @Test
+    public void testCommit() throws InsufficientChangeException {
+        coinPurse.addCoin("DOLLAR");
+
+        Purchase purchase = new Purchase(itemBuckets, cassettes, coinCalculator, "A");
+
+        assertThat(purchase.reserveItem(), is(true));
+        purchase.reserveChange(35);
+        purchase.commit(coinPurse);
+
+        assertThat(purchase.getChange(), is(asList("QUARTER", "DIME")));
+        assertThat(itemBuckets.hasItem("A"), is(false));
+        assertThat(cassettes.getCoinCount("QUARTER"), is(0));
+        assertThat(cassettes.getCoinCount("DIME"), is(0));
+        assertThat(coinPurse.getTotal(), is(0));
+    }
+
+    @Test
+    public void testRollback_handsBackItemAndChange() throws InsufficientChangeException {
+        coinPurse.addCoin("DOLLAR");
+
+        Purchase purchase = new Purchase(itemBuckets, cassettes, coinCalculator, "A");
+
+        assertThat(purchase.reserveItem(), is(true));
+        purchase.reserveChange(35);
+        purchase.rollback();
+
+        assertThat(purchase.getChange().isEmpty(), is(true));
+        assertThat(itemBuckets.hasItem("A"), is(true));
+        assertThat(cassettes.getCoinCount("QUARTER"), is(1));
+        assertThat(cassettes.getCoinCount("DIME"), is(1));
+        assertThat(coinPurse.getTotal(), is(100));
+
+        //rolling back twice hands nothing back twice.
+        purchase.rollback();
+
+        assertThat(cassettes.getCoinCount("QUARTER"), is(1));
+    }
+
+    @Test
+    public void testRollback_givenItemNotReserved() {
+        itemBuckets.ejectItem("A");
+
+        Purchase purchase = new Purchase(itemBuckets, cassettes, coinCalculator, "A");
+
+        assertThat(purchase.reserveItem(), is(false));
+        purchase.rollback();
+
+        assertThat(itemBuckets.hasItem("A"), is(false));
+    }
+
+    @Test
+    public void testRollback_givenCommitted() throws InsufficientChangeException {
+        Purchase purchase = new Purchase(itemBuckets, cassettes, coinCalculator, "A");
+
+        purchase.reserveItem();
+        purchase.reserveChange(0);
+        purchase.commit(coinPurse);
+
+        try {
+            purchase.rollback();
+            fail("expected exception to be thrown");
+        } catch (SystemException e) {
+            assertThat(e.getMessage(), is("Purchase already committed."));
+        }
+
+        assertThat(itemBuckets.hasItem("A"), is(false));
+    }
+}
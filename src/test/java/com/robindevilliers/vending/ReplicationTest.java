@@ -0,0 +1,205 @@
+package com.robindevilliers.vending;
+
+import static java.util.Arrays.asList;
+import static org.hamcrest.core.Is.is;
+import static org.junit.Assert.assertThat;
+
+import com.robindevilliers.vending.model.CoinCassette;
+import com.robindevilliers.vending.model.Denomination;
+import com.robindevilliers.vending.model.ItemBucket;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+
+public class ReplicationTest {
+
+    private final CoinCalculator coinCalculator = new CoinCalculator(asList(
+            new Denomination("DOLLAR", 100),
+            new Denomination("NICKEL", 5),
+            new Denomination("QUARTER", 25),
+            new Denomination("DIME", 10)
+    ));
+
+    private ItemBuckets itemBuckets;
+    private Cassettes cassettes;
+    private CoinPurse coinPurse;
+    private Sessions sessions;
+    private VendingMachine vendingMachine;
+
+    private ItemBuckets standbyItemBuckets;
+    private Cassettes standbyCassettes;
+    private CoinPurse standbyCoinPurse;
+    private Sessions standbySessions;
+    private VendingMachine standbyMachine;
+
+    private ReplicationStandby standby;
+    private ReplicationPrimary primary;
+
+    private VendingMachine createMachine(boolean isStandby) {
+        final ItemBuckets itemBuckets = new HeapItemBuckets(asList(new ItemBucket("A", 65, 10), new ItemBucket("B", 100, 10)));
+        final Cassettes cassettes = new HeapCassettes(asList(
+                new CoinCassette("DOLLAR", 10),
+                new CoinCassette("QUARTER", 10),
+                new CoinCassette("DIME", 10),
+                new CoinCassette("NICKEL", 10)
+        ));
+        final CoinPurse coinPurse = new CoinPurse(coinCalculator);
+        final Sessions sessions = new Sessions(coinCalculator, System::currentTimeMillis, 60000);
+
+        if (isStandby) {
+            standbyItemBuckets = itemBuckets;
+            standbyCassettes = cassettes;
+            standbyCoinPurse = coinPurse;
+            standbySessions = sessions;
+        } else {
+            this.itemBuckets = itemBuckets;
+            this.cassettes = cassettes;
+            this.coinPurse = coinPurse;
+            this.sessions = sessions;
+        }
+        return new VendingMachine(coinCalculator, itemBuckets, cassettes, coinPurse, sessions);
+    }
+
+    @Before
+    public void setUp() throws IOException {
+        vendingMachine = createMachine(false);
+        standbyMachine = createMachine(true);
+
+        standby = new ReplicationStandby(standbyItemBuckets, standbyCassettes, standbyCoinPurse, standbySessions,
+                new InetSocketAddress(InetAddress.getLoopbackAddress(), 0));
+        standby.start();
+
+        primary = new ReplicationPrimary(itemBuckets, cassettes, coinPurse, sessions, 1, 5000);
+    }
+
+    @After
+    public void tearDown() {
+        primary.close();
+        standby.close();
+    }
+
+    private void connect() throws IOException {
+        primary.connect(new InetSocketAddress(InetAddress.getLoopbackAddress(), standby.getPort()));
+        vendingMachine.addListener(primary);
+    }
+
+    @Test
+    public void testLineProcessed_givenPurchases() throws IOException {
+        connect();
+
+        vendingMachine.process("PUT-DOLLAR, GET-A");
+        assertThat(standby.getApplied(), is(primary.getSequence()));
+        assertThat(primary.getAcknowledged(), is(primary.getSequence()));
+
+        vendingMachine.process("PUT-QUARTER, PUT-DIME, COIN-RETURN, PUT-DOLLAR");
+        long session = vendingMachine.openSession();
+        vendingMachine.process(session, "PUT-QUARTER");
+
+        assertThat(standby.getApplied(), is(primary.getSequence()));
+        assertThat(primary.getSequence(), is(8L));
+        assertThat(standbyItemBuckets.getBuckets().get(0).getQuantity(), is(9));
+        assertThat(standbyCassettes.getCoinCount("QUARTER"), is(9));
+        assertThat(standbyCassettes.getCoinCount("DIME"), is(9));
+        assertThat(standbyCoinPurse.getCounts().get("DOLLAR"), is(1));
+        assertThat(standbySessions.get(session).getCoinPurse().getCounts().get("QUARTER"), is(1));
+    }
+
+    @Test
+    public void testLineProcessed_givenClosedSession() throws IOException {
+        connect();
+
+        long session = vendingMachine.openSession();
+        vendingMachine.process(session, "PUT-DOLLAR");
+        vendingMachine.closeSession(session);
+        vendingMachine.process("PUT-DIME");
+
+        assertThat(standby.getApplied(), is(primary.getSequence()));
+        assertThat(standbySessions.isOpen(session), is(false));
+        assertThat(standbyCoinPurse.getCounts().get("DIME"), is(1));
+    }
+
+    @Test
+    public void testConnect_givenExistingState() throws IOException {
+        vendingMachine.process("PUT-DOLLAR, GET-B, SERVICE, PUT-DOLLAR, GET-A, PUT-DIME");
+
+        connect();
+        vendingMachine.process("PUT-NICKEL");
+
+        assertThat(standby.getApplied(), is(1L));
+        assertThat(standbyItemBuckets.getBuckets().get(0).getQuantity(), is(19));
+        assertThat(standbyItemBuckets.getBuckets().get(1).getQuantity(), is(20));
+        assertThat(standbyCassettes.getCoinCount("DIME"), is(cassettes.getCoinCount("DIME")));
+        assertThat(standbyCoinPurse.getCounts().get("DIME"), is(1));
+        assertThat(standbyCoinPurse.getCounts().get("NICKEL"), is(1));
+    }
+
+    @Test
+    public void testPromote_givenPrimaryLost() throws IOException {
+        connect();
+        vendingMachine.process("PUT-DOLLAR, GET-A, PUT-QUARTER");
+        long sequence = primary.getSequence();
+        primary.close();
+
+        assertThat(standby.promote(), is(sequence));
+        assertThat(standbyMachine.process("PUT-QUARTER, PUT-QUARTER, GET-A"), is("A, DIME"));
+        assertThat(standbyItemBuckets.getBuckets().get(0).getQuantity(), is(8));
+    }
+
+    @Test
+    public void testLineProcessed_givenStandbyLost() throws IOException {
+        connect();
+        vendingMachine.process("PUT-DOLLAR");
+        standby.close();
+
+        for (int i = 0; i < 10 && primary.isConnected(); i++) {
+            vendingMachine.process("GET-A, PUT-DOLLAR");
+        }
+
+        assertThat(primary.isConnected(), is(false));
+        assertThat(vendingMachine.process("GET-A"), is("A, QUARTER, DIME"));
+    }
+
+    @Test
+    public void testLineProcessed_givenGroupCommit() throws IOException {
+        primary = new ReplicationPrimary(itemBuckets, cassettes, coinPurse, sessions, 4, 5000);
+        connect();
+
+        for (int i = 0; i < 4; i++) {
+            vendingMachine.process("PUT-DOLLAR, GET-A");
+        }
+
+        assertThat(primary.getAcknowledged(), is(8L));
+        assertThat(standbyItemBuckets.getBuckets().get(0).getQuantity(), is(6));
+    }
+
+    @Test(timeout = 30000)
+    public void testLineProcessed_givenStandbyStopsReading() throws IOException {
+        //a standby that has connected but never reads, so that once its buffers are full no write can complete.
+        try (ServerSocket stalled = new ServerSocket()) {
+            stalled.setReceiveBufferSize(1024);
+            stalled.bind(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0));
+
+            primary = new ReplicationPrimary(itemBuckets, cassettes, coinPurse, sessions, Integer.MAX_VALUE, 200);
+            primary.connect(new InetSocketAddress(InetAddress.getLoopbackAddress(), stalled.getLocalPort()));
+            vendingMachine.addListener(primary);
+
+            StringBuilder line = new StringBuilder("PUT-NICKEL");
+            for (int i = 0; i < 1000; i++) {
+                line.append(", PUT-NICKEL");
+            }
+
+            for (int i = 0; i < 10000 && primary.isConnected(); i++) {
+                vendingMachine.process(line.toString());
+                vendingMachine.process("COIN-RETURN");
+            }
+
+            assertThat(primary.isConnected(), is(false));
+            assertThat(vendingMachine.process("PUT-DOLLAR, GET-A"), is("A, QUARTER, DIME"));
+        }
+    }
+}
@@ -0,0 +1,146 @@
+package com.robindevilliers.vending;
+
+import static java.util.Arrays.asList;
+import static org.hamcrest.core.Is.is;
+import static org.junit.Assert.assertThat;
+
+import com.robindevilliers.vending.model.CoinCassette;
+import com.robindevilliers.vending.model.ItemBucket;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+public class RestockPlannerTest {
+
+    private static final long HOUR = 60 * 60 * 1000;
+
+    private final RestockPlanner restockPlanner = new RestockPlanner(24 * HOUR, 0.0, 5);
+
+    private long now = 0;
+
+    private List<ItemBucket> buckets;
+
+    private ItemBuckets itemBuckets;
+
+    private Cassettes cassettes;
+
+    private SalesHistory createHistory() {
+        buckets = new ArrayList<>(asList(
+                new ItemBucket("A", 65, 20),
+                new ItemBucket("B", 100, 20),
+                new ItemBucket("C", 150, 20)
+        ));
+        itemBuckets = new HeapItemBuckets(buckets);
+        cassettes = new HeapCassettes(new ArrayList<>(asList(
+                new CoinCassette("QUARTER", 100),
+                new CoinCassette("DIME", 100)
+        )));
+        return new SalesHistory(itemBuckets, cassettes, () -> now);
+    }
+
+    @Test
+    public void testPlan_givenNoHistory() {
+        SalesHistory history = createHistory();
+
+        RestockPlan plan = restockPlanner.plan(history);
+
+        assertThat(plan.getNextVisitMillis(), is(24 * HOUR));
+        assertThat(plan.getIntervalMillis(), is(24 * HOUR));
+        assertThat(plan.getItemQuantities().get("A"), is(20));
+        assertThat(plan.getCoinQuantities().get("DIME"), is(100));
+    }
+
+    @Test
+    public void testPlan_givenSales() {
+        SalesHistory history = createHistory();
+
+        //A sells ten an hour, B one an hour and C not at all, and each sale of A pays out a quarter and a dime.
+        for (int i = 0; i < 10; i++) {
+            history.itemVended(0, "A", asList("QUARTER", "DIME"), Collections.emptyList());
+            itemBuckets.ejectItem("A");
+            cassettes.ejectCoins(asList("QUARTER", "DIME"));
+        }
+        history.itemVended(0, "B", Collections.emptyList(), Collections.emptyList());
+        itemBuckets.ejectItem("B");
+        now = HOUR;
+
+        RestockPlan plan = restockPlanner.plan(history);
+
+        //the ten items left in A last one hour, and a full slot of A lasts two.
+        assertThat(plan.getNextVisitMillis(), is(HOUR));
+        assertThat(plan.getIntervalMillis(), is(2 * HOUR));
+
+        assertThat(plan.getItemQuantities().get("A"), is(20));
+        assertThat(plan.getItemQuantities().get("B"), is(2));
+        assertThat(plan.getItemQuantities().get("C"), is(1));
+        assertThat(plan.getCoinQuantities().get("QUARTER"), is(20));
+        assertThat(plan.getCoinQuantities().get("DIME"), is(20));
+        assertThat(plan.getCoinRemovals().get("QUARTER"), is(70));
+        assertThat(plan.getCoinRemovals().get("DIME"), is(70));
+
+        plan.apply(itemBuckets, cassettes);
+
+        //slots are only topped up, so the ones planned below what they hold keep their stock.
+        assertThat(buckets.get(0).getQuantity(), is(20));
+        assertThat(buckets.get(1).getQuantity(), is(19));
+        assertThat(buckets.get(2).getQuantity(), is(20));
+        assertThat(cassettes.getCoinCount("QUARTER"), is(20));
+    }
+
+    @Test
+    public void testPlan_givenSmallSlot_capsAtItsCapacity() {
+        buckets = new ArrayList<>(asList(new ItemBucket("A", 65, 0, 8)));
+        itemBuckets = new HeapItemBuckets(buckets);
+        cassettes = new HeapCassettes(new ArrayList<>(asList(new CoinCassette("QUARTER", 0, 30))));
+        SalesHistory history = new SalesHistory(itemBuckets, cassettes, () -> now);
+
+        RestockPlan plan = restockPlanner.plan(history);
+
+        assertThat(plan.getItemQuantities().get("A"), is(8));
+        assertThat(plan.getCoinQuantities().get("QUARTER"), is(30));
+        assertThat(plan.getCoinRemovals().isEmpty(), is(true));
+
+        plan.apply(itemBuckets, cassettes);
+
+        assertThat(buckets.get(0).getQuantity(), is(8));
+        assertThat(cassettes.getCoinCount("QUARTER"), is(30));
+    }
+
+    @Test
+    public void testPlan_givenSlowPayouts_keepsMinimumFloat() {
+        SalesHistory history = createHistory();
+
+        history.itemVended(0, "A", asList("DIME"), Collections.emptyList());
+        now = HOUR;
+
+        RestockPlan plan = restockPlanner.plan(history);
+
+        assertThat(plan.getCoinQuantities().get("QUARTER"), is(5));
+        assertThat(plan.getCoinQuantities().get("DIME"), is(20));
+    }
+
+    @Test
+    public void testPlan_givenFleet() {
+        Map<String, SalesHistory> histories = new HashMap<>();
+
+        for (int i = 0; i < 10000; i++) {
+            SalesHistory history = createHistory();
+            for (int j = 0; j < i % 5; j++) {
+                history.itemVended(0, "A", Collections.emptyList(), Collections.emptyList());
+            }
+            histories.put("M" + i, history);
+        }
+        now = HOUR;
+
+        Map<String, RestockPlan> plans = restockPlanner.plan(histories);
+
+        assertThat(plans.size(), is(10000));
+        assertThat(plans.get("M0").getIntervalMillis(), is(24 * HOUR));
+        assertThat(plans.get("M4").getIntervalMillis(), is(5 * HOUR));
+        assertThat(plans.get("M4").getItemQuantities().get("A"), is(20));
+    }
+}
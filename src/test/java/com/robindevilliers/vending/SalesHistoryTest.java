@@ -0,0 +1,37 @@
+package com.robindevilliers.vending;
+
+import static java.util.Arrays.asList;
+import static org.hamcrest.core.Is.is;
+import static org.junit.Assert.assertThat;
+
+import com.robindevilliers.vending.model.CoinCassette;
+import com.robindevilliers.vending.model.ItemBucket;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+
+public class SalesHistoryTest {
+
+    private long now = 1000;
+
+    @Test
+    public void testItemVended() {
+        SalesHistory history = new SalesHistory(
+                new HeapItemBuckets(new ArrayList<>(asList(new ItemBucket("A", 65, 5)))),
+                new HeapCassettes(new ArrayList<>(asList(new CoinCassette("DIME", 40)))),
+                () -> now);
+
+        history.itemVended(1, "A", asList("QUARTER", "DIME"), Collections.emptyList());
+        history.itemVended(2, "A", Collections.emptyList(), Collections.emptyList());
+        now += 500;
+
+        assertThat(history.getElapsedMillis(), is(500L));
+        assertThat(history.getSales("A"), is(2L));
+        assertThat(history.getSales("B"), is(0L));
+        assertThat(history.getPayouts("DIME"), is(1L));
+        assertThat(history.getPayouts("NICKEL"), is(0L));
+        assertThat(history.getItemQuantities().get("A"), is(5));
+        assertThat(history.getCoinQuantities().get("DIME"), is(40));
+    }
+}
@@ -0,0 +1,74 @@
+package com.robindevilliers.vending;
+
+import static java.util.Collections.singletonList;
+import static org.hamcrest.core.Is.is;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.fail;
+
+import com.robindevilliers.vending.model.Denomination;
+import org.junit.Test;
+
+import java.util.List;
+
+public class SessionsTest {
+
+    private long now = 1000;
+
+    private final Sessions sessions = new Sessions(new CoinCalculator(singletonList(new Denomination("DOLLAR", 100))), () -> now, 100);
+
+    @Test
+    public void testOpen_givesEachSessionItsOwnPurse() {
+        Session first = sessions.open();
+        Session second = sessions.open();
+
+        assertThat(first.getId() == second.getId(), is(false));
+        assertThat(first.getCoinPurse() == second.getCoinPurse(), is(false));
+        assertThat(sessions.size(), is(2));
+        assertThat(sessions.isOpen(first.getId()), is(true));
+    }
+
+    @Test
+    public void testGet_updatesLastAccessed() {
+        Session session = sessions.open();
+
+        now = 1050;
+
+        assertThat(sessions.get(session.getId()).getLastAccessed(), is(1050L));
+    }
+
+    @Test
+    public void testGet_givenUnknownSession() {
+        try {
+            sessions.get(42);
+            fail("expected exception to be thrown");
+        } catch (SystemException e) {
+            assertThat(e.getMessage(), is("Session not found."));
+        }
+    }
+
+    @Test
+    public void testClose() {
+        Session session = sessions.open();
+
+        Session closed = sessions.close(session.getId());
+
+        assertThat(closed == session, is(true));
+        assertThat(sessions.isOpen(session.getId()), is(false));
+    }
+
+    @Test
+    public void testExpire_removesIdleSessions() {
+        Session idle = sessions.open();
+
+        now = 1080;
+        Session active = sessions.open();
+
+        now = 1150;
+        List<Session> expired = sessions.expire();
+
+        assertThat(expired.size(), is(1));
+        assertThat(expired.get(0) == idle, is(true));
+        assertThat(sessions.isOpen(idle.getId()), is(false));
+        assertThat(sessions.isOpen(active.getId()), is(true));
+    }
+}
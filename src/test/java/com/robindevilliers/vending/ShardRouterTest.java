@@ -0,0 +1,452 @@
+package com.robindevilliers.vending;
+
+import static java.util.Arrays.asList;
+import static org.hamcrest.core.Is.is;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.fail;
+
+import com.robindevilliers.vending.model.CoinCassette;
+import com.robindevilliers.vending.model.Denomination;
+import com.robindevilliers.vending.model.ItemBucket;
+import com.robindevilliers.vending.model.ShardNode;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.BufferedReader;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+public class ShardRouterTest {
+
+    private static final int MACHINES = 100;
+
+    private final CoinCalculator coinCalculator = new CoinCalculator(asList(
+            new Denomination("DOLLAR", 100),
+            new Denomination("NICKEL", 5),
+            new Denomination("QUARTER", 25),
+            new Denomination("DIME", 10)
+    ));
+
+    private final List<Fleet> fleets = new ArrayList<>();
+
+    private final List<ShardNode> nodes = new ArrayList<>();
+
+    private final List<CommandServer> commandServers = new ArrayList<>();
+
+    private final List<MigrationServer> migrationServers = new ArrayList<>();
+
+    private final List<Thread> threads = new ArrayList<>();
+
+    private ShardRouter router;
+
+    //a step of a move to make fail, as "<node> <request> <machine>", to see that a move that fails part way loses nothing.
+    private volatile String failure;
+
+    private VendingMachine createMachine(int stock) {
+        return new VendingMachine(coinCalculator,
+                new HeapItemBuckets(asList(new ItemBucket("A", 65, stock))),
+                new HeapCassettes(asList(
+                        new CoinCassette("DOLLAR", 1000),
+                        new CoinCassette("QUARTER", 1000),
+                        new CoinCassette("DIME", 1000),
+                        new CoinCassette("NICKEL", 1000)
+                )),
+                new CoinPurse(coinCalculator));
+    }
+
+    //each node is a fleet with its own servers, as it would be in its own JVM.
+    private void startNode(String nodeId) throws IOException {
+        Fleet fleet = new Fleet() {
+            @Override
+            public synchronized boolean writeMachine(String machineId, DataOutputStream out) throws IOException {
+                if ((nodeId + " EXPORT " + machineId).equals(failure)) {
+                    throw new IOException("Export failed.");
+                }
+                return super.writeMachine(machineId, out);
+            }
+
+            @Override
+            public synchronized String readMachine(DataInputStream in) throws IOException {
+                String machineId = super.readMachine(in);
+
+                //the machine has been taken, but the answer never gets back.
+                if ((nodeId + " IMPORT " + machineId).equals(failure)) {
+                    throw new IOException("Import failed.");
+                }
+                return machineId;
+            }
+
+            @Override
+            public synchronized void releaseMachine(String machineId) {
+                if ((nodeId + " RELEASE " + machineId).equals(failure)) {
+                    throw new SystemException("Release failed.");
+                }
+                super.releaseMachine(machineId);
+            }
+
+            @Override
+            public synchronized void removeMachine(String machineId) {
+                if ((nodeId + " REMOVE " + machineId).equals(failure)) {
+                    throw new SystemException("Remove failed.");
+                }
+                super.removeMachine(machineId);
+            }
+        };
+        CommandServer commandServer = new CommandServer(fleet, new InetSocketAddress(InetAddress.getLoopbackAddress(), 0));
+        MigrationServer migrationServer = new MigrationServer(fleet, new InetSocketAddress(InetAddress.getLoopbackAddress(), 0));
+
+        Thread thread = new Thread(commandServer);
+        thread.start();
+        migrationServer.start();
+
+        fleets.add(fleet);
+        commandServers.add(commandServer);
+        migrationServers.add(migrationServer);
+        threads.add(thread);
+        nodes.add(new ShardNode(nodeId,
+                new InetSocketAddress(InetAddress.getLoopbackAddress(), commandServer.getPort()),
+                new InetSocketAddress(InetAddress.getLoopbackAddress(), migrationServer.getPort())));
+    }
+
+    @Before
+    public void before() throws IOException {
+        startNode("N1");
+        startNode("N2");
+        startNode("N3");
+
+        for (int i = 0; i < MACHINES; i++) {
+            fleets.get(0).add("M" + i, createMachine(5));
+        }
+
+        router = new ShardRouter(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0));
+        router.addNode(nodes.get(0));
+
+        Thread thread = new Thread(router);
+        thread.start();
+        threads.add(thread);
+    }
+
+    @After
+    public void after() throws InterruptedException {
+        router.close();
+        for (CommandServer commandServer : commandServers) {
+            commandServer.close();
+        }
+        for (MigrationServer migrationServer : migrationServers) {
+            migrationServer.close();
+        }
+        for (Thread thread : threads) {
+            thread.join(5000);
+        }
+    }
+
+    private Socket connect() throws IOException {
+        return new Socket(InetAddress.getLoopbackAddress(), router.getPort());
+    }
+
+    private static BufferedReader reader(Socket socket) throws IOException {
+        return new BufferedReader(new InputStreamReader(socket.getInputStream(), StandardCharsets.US_ASCII));
+    }
+
+    private Fleet getOwner(String machineId) {
+        return fleets.get(Integer.parseInt(router.getNode(machineId).substring(1)) - 1);
+    }
+
+    //the first machine that moves to N2 when it joins N1.
+    private static int getMovingMachine() {
+        HashRing ring = new HashRing().withNode("N1").withNode("N2");
+
+        int i = 0;
+        while (!ring.getNode("M" + i).equals("N2")) {
+            i++;
+        }
+        return i;
+    }
+
+    private void assertEveryMachineVends() throws IOException {
+        try (Socket socket = connect()) {
+            OutputStream out = socket.getOutputStream();
+            BufferedReader in = reader(socket);
+
+            for (int i = 0; i < MACHINES; i++) {
+                out.write(("M" + i + " PUT-DOLLAR, GET-A\n").getBytes(StandardCharsets.US_ASCII));
+                assertThat(in.readLine(), is("A, QUARTER, DIME"));
+            }
+        }
+    }
+
+    //a failed move keeps the old ring, with every machine where it says, and can be tried again once the fault has cleared.
+    private void assertAddNodeFailsAndCanBeRetried() throws IOException {
+        try {
+            router.addNode(nodes.get(1));
+            fail("expected exception to be thrown");
+        } catch (SystemException e) {
+            assertThat(e.getMessage(), is("Unable to migrate machine."));
+        }
+
+        for (int i = 0; i < MACHINES; i++) {
+            assertThat(router.getNode("M" + i), is("N1"));
+        }
+        assertThat(fleets.get(0).size(), is(MACHINES));
+        assertThat(fleets.get(1).size(), is(0));
+        assertEveryMachineVends();
+
+        failure = null;
+        router.addNode(nodes.get(1));
+
+        assertThat(router.getMigrations(), is(fleets.get(1).size()));
+        assertThat(fleets.get(0).size() + fleets.get(1).size(), is(MACHINES));
+        assertEveryMachineVends();
+    }
+
+    @Test
+    public void testAddNode_movesMachinesToTheirOwners() throws IOException {
+        //a node that joins only takes machines over, so every move goes to it.
+        router.addNode(nodes.get(1));
+        int migrations = router.getMigrations();
+        assertThat(migrations, is(fleets.get(1).size()));
+
+        router.addNode(nodes.get(2));
+        assertThat(router.getMigrations() - migrations, is(fleets.get(2).size()));
+
+        for (int i = 0; i < MACHINES; i++) {
+            assertThat(getOwner("M" + i).isValidMachineId("M" + i), is(true));
+        }
+        assertThat(fleets.get(0).size() + fleets.get(1).size() + fleets.get(2).size(), is(MACHINES));
+    }
+
+    @Test
+    public void testPipelinedRequests_givenSeveralNodes() throws IOException {
+        router.addNode(nodes.get(1));
+        router.addNode(nodes.get(2));
+
+        try (Socket socket = connect()) {
+            OutputStream out = socket.getOutputStream();
+            BufferedReader in = reader(socket);
+
+            StringBuilder lines = new StringBuilder();
+            for (int i = 0; i < MACHINES; i++) {
+                lines.append("M").append(i).append(" PUT-DOLLAR, GET-A\r\n");
+            }
+            lines.append("M1000 GET-A\nHELLO\n");
+            out.write(lines.toString().getBytes(StandardCharsets.US_ASCII));
+            out.flush();
+
+            for (int i = 0; i < MACHINES; i++) {
+                assertThat(in.readLine(), is("A, QUARTER, DIME"));
+            }
+            assertThat(in.readLine(), is("INVALID-MACHINE"));
+            assertThat(in.readLine(), is("INVALID-COMMAND"));
+        }
+    }
+
+    @Test
+    public void testAddNode_keepsStockCoinsAndPurses() throws IOException {
+        try (Socket socket = connect()) {
+            OutputStream out = socket.getOutputStream();
+            BufferedReader in = reader(socket);
+
+            for (int i = 0; i < MACHINES; i++) {
+                out.write(("M" + i + " PUT-DOLLAR, GET-A\n").getBytes(StandardCharsets.US_ASCII));
+                assertThat(in.readLine(), is("A, QUARTER, DIME"));
+            }
+            out.write("M7 PUT-QUARTER, COIN-RETURN\n".getBytes(StandardCharsets.US_ASCII));
+            assertThat(in.readLine(), is("QUARTER"));
+        }
+
+        for (int i = 0; i < MACHINES; i++) {
+            fleets.get(0).process("M" + i, "PUT-DIME");
+        }
+
+        router.addNode(nodes.get(1));
+        router.addNode(nodes.get(2));
+
+        for (int i = 0; i < MACHINES; i++) {
+            Fleet owner = getOwner("M" + i);
+
+            assertThat(owner.process("M" + i, "COIN-RETURN"), is("DIME"));
+            for (int j = 0; j < 4; j++) {
+                assertThat(owner.process("M" + i, "PUT-DOLLAR, GET-A"), is("A, QUARTER, DIME"));
+            }
+            assertThat(owner.process("M" + i, "GET-A"), is("OUT-OF-STOCK"));
+        }
+    }
+
+    @Test
+    public void testRemoveNode_movesEveryMachineOff() throws IOException {
+        router.addNode(nodes.get(1));
+        router.addNode(nodes.get(2));
+        router.removeNode("N2");
+
+        assertThat(fleets.get(1).size(), is(0));
+        assertThat(fleets.get(0).size() + fleets.get(2).size(), is(MACHINES));
+
+        try (Socket socket = connect()) {
+            OutputStream out = socket.getOutputStream();
+            BufferedReader in = reader(socket);
+
+            for (int i = 0; i < MACHINES; i++) {
+                out.write(("M" + i + " PUT-DOLLAR, GET-A\n").getBytes(StandardCharsets.US_ASCII));
+                assertThat(in.readLine(), is("A, QUARTER, DIME"));
+            }
+        }
+    }
+
+    @Test
+    public void testRemoveNode_givenLastNode() throws IOException {
+        try {
+            router.removeNode("N1");
+            fail("expected exception to be thrown");
+        } catch (SystemException e) {
+            assertThat(e.getMessage(), is("The last node cannot be removed."));
+        }
+
+        assertThat(fleets.get(0).size(), is(MACHINES));
+    }
+
+    @Test
+    public void testEachConnectionHasItsOwnSession() throws IOException {
+        router.addNode(nodes.get(1));
+
+        try (Socket first = connect(); Socket second = connect()) {
+            BufferedReader firstIn = reader(first);
+            BufferedReader secondIn = reader(second);
+
+            first.getOutputStream().write("M1 PUT-QUARTER\n".getBytes(StandardCharsets.US_ASCII));
+            assertThat(firstIn.readLine(), is(""));
+
+            second.getOutputStream().write("M1 COIN-RETURN\n".getBytes(StandardCharsets.US_ASCII));
+            assertThat(secondIn.readLine(), is(""));
+
+            first.getOutputStream().write("M1 COIN-RETURN\n".getBytes(StandardCharsets.US_ASCII));
+            assertThat(firstIn.readLine(), is("QUARTER"));
+        }
+    }
+
+    @Test
+    public void testForward_givenNodeDown() throws IOException, InterruptedException {
+        router.addNode(nodes.get(1));
+
+        String machineId = null;
+        for (int i = 0; machineId == null; i++) {
+            if (router.getNode("M" + i).equals("N2")) {
+                machineId = "M" + i;
+            }
+        }
+
+        commandServers.get(1).close();
+        threads.get(1).join(5000);
+
+        try (Socket socket = connect()) {
+            OutputStream out = socket.getOutputStream();
+            BufferedReader in = reader(socket);
+
+            out.write((machineId + " PUT-DOLLAR, GET-A\nM0 PUT-DOLLAR\n").getBytes(StandardCharsets.US_ASCII));
+            assertThat(in.readLine(), is("SYSTEM-ERROR"));
+
+            String expected = router.getNode("M0").equals("N2") ? "SYSTEM-ERROR" : "";
+            assertThat(in.readLine(), is(expected));
+        }
+    }
+
+    @Test
+    public void testAddNode_givenExportFails() throws IOException {
+        failure = "N1 EXPORT M" + getMovingMachine();
+
+        assertAddNodeFailsAndCanBeRetried();
+    }
+
+    @Test
+    public void testAddNode_givenImportAnswerLost() throws IOException {
+        failure = "N2 IMPORT M" + getMovingMachine();
+
+        assertAddNodeFailsAndCanBeRetried();
+    }
+
+    @Test
+    public void testAddNode_givenReleaseFails() throws IOException {
+        failure = "N2 RELEASE M" + getMovingMachine();
+
+        assertAddNodeFailsAndCanBeRetried();
+    }
+
+    @Test
+    public void testAddNode_givenImportRefused() throws IOException {
+        String machineId = "M" + getMovingMachine();
+        fleets.get(1).add(machineId, createMachine(5));
+
+        try {
+            router.addNode(nodes.get(1));
+            fail("expected exception to be thrown");
+        } catch (SystemException e) {
+            assertThat(e.getMessage(), is("Unable to migrate machine."));
+        }
+
+        //the machine the target already had is left alone.
+        assertThat(router.getNode(machineId), is("N1"));
+        assertThat(fleets.get(0).size(), is(MACHINES));
+        assertThat(fleets.get(1).getMachineIds(), is(Collections.singleton(machineId)));
+        assertEveryMachineVends();
+    }
+
+    @Test
+    public void testAddNode_givenRemoveFails() throws IOException {
+        String machineId = "M" + getMovingMachine();
+        failure = "N1 REMOVE " + machineId;
+
+        router.addNode(nodes.get(1));
+
+        //the old copy is held, so it is never used again.
+        assertThat(router.getNode(machineId), is("N2"));
+        assertThat(fleets.get(0).isValidMachineId(machineId), is(false));
+        assertThat(fleets.get(1).isValidMachineId(machineId), is(true));
+        assertThat(fleets.get(0).size() + fleets.get(1).size(), is(MACHINES));
+        assertEveryMachineVends();
+    }
+
+    @Test
+    public void testAddNode_givenCoinsInASession_waitsForThePurchase() throws IOException {
+        String machineId = "M" + getMovingMachine();
+
+        try (Socket socket = connect()) {
+            OutputStream out = socket.getOutputStream();
+            BufferedReader in = reader(socket);
+
+            out.write((machineId + " PUT-DOLLAR\n").getBytes(StandardCharsets.US_ASCII));
+            assertThat(in.readLine(), is(""));
+
+            try {
+                router.addNode(nodes.get(1));
+                fail("expected exception to be thrown");
+            } catch (SystemException e) {
+                assertThat(e.getMessage(), is("Machine is in use."));
+            }
+            assertThat(router.getNode(machineId), is("N1"));
+            assertThat(fleets.get(0).size(), is(MACHINES));
+            assertThat(fleets.get(1).size(), is(0));
+
+            //the customer's dollar is still there for the purchase.
+            out.write((machineId + " GET-A\n").getBytes(StandardCharsets.US_ASCII));
+            assertThat(in.readLine(), is("A, QUARTER, DIME"));
+
+            router.addNode(nodes.get(1));
+            assertThat(router.getNode(machineId), is("N2"));
+
+            //the same connection carries on with a new session on the new node.
+            out.write((machineId + " PUT-DOLLAR, GET-A\n").getBytes(StandardCharsets.US_ASCII));
+            assertThat(in.readLine(), is("A, QUARTER, DIME"));
+        }
+        assertThat(fleets.get(0).size() + fleets.get(1).size(), is(MACHINES));
+    }
+}
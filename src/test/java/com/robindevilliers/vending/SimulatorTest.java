@@ -0,0 +1,43 @@
+package com.robindevilliers.vending;
+
+import static org.hamcrest.core.Is.is;
+import static org.junit.Assert.assertThat;
+
+import org.junit.Test;
+
+public class SimulatorTest {
+
+    @Test
+    public void testRun_givenSameSeedGivesSameResults() {
+        SimulationReport first = new Simulator(7, 8, 10, 1.0, 200, 0.05).run(2000, 1);
+        SimulationReport second = new Simulator(7, 8, 10, 1.0, 200, 0.05).run(2000, 4);
+
+        assertThat(first.getCustomers(), is(16000L));
+        assertThat(first.getCommandCounts(), is(second.getCommandCounts()));
+        assertThat(first.getResponseCounts(), is(second.getResponseCounts()));
+    }
+
+    @Test
+    public void testRun_reportsRates() {
+        SimulationReport report = new Simulator(1, 4, 10, 1.5, 0, 0.1).run(2000, 2);
+
+        //every customer makes one purchase attempt and asks for any coins back.
+        assertThat(report.getCommandCounts().get(VendingMachine.GET), is(8000L));
+        assertThat(report.getCommandCounts().get(VendingMachine.COIN_RETURN), is(8000L));
+        assertThat(report.getCommandCounts().get(VendingMachine.SERVICE), is(0L));
+
+        //without a service visit the popular slots run dry, and walking away leaves some purchases short of funds.
+        assertThat(report.getStockoutRate() > 0, is(true));
+        assertThat(report.getResponseCounts().get("INSUFFICIENT-FUNDS") > 0, is(true));
+        assertThat(report.getChangeFailureRate() >= 0 && report.getChangeFailureRate() < 1, is(true));
+        assertThat(report.getCommandsPerSecond() > 0, is(true));
+    }
+
+    @Test
+    public void testRun_givenRecycling_reducesChangeFailures() {
+        SimulationReport draining = new Simulator(3, 4, 10, 1.0, 0, 0.05).run(3000, 2);
+        SimulationReport recycling = new Simulator(3, 4, 10, 1.0, 0, 0.05, true).run(3000, 2);
+
+        assertThat(recycling.getChangeFailureRate() < draining.getChangeFailureRate(), is(true));
+    }
+}
@@ -4,11 +4,18 @@ import static java.util.Arrays.asList;
 import static java.util.Collections.emptyList;
 import static org.hamcrest.Matchers.is;
 import static org.junit.Assert.assertThat;
+import static org.junit.Assert.fail;
 import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyLong;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Matchers.isNull;
+import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.verifyNoMoreInteractions;
 import static org.mockito.Mockito.when;
 
+import java.io.IOException;
+
 import org.junit.After;
 import org.junit.Test;
 import org.junit.runner.RunWith;
@@ -62,9 +69,46 @@ public class VendingMachineTest {
         assertThat(response, is(""));
 
         verify(coinCalculator).hasDenomination("NICKEL");
+        verify(coinCalculator).wouldStrandFunds(coinPurse, "NICKEL", itemBuckets, cassettes);
         verify(coinPurse).addCoin("NICKEL");
     }
 
+    @Test
+    public void testPutCommand_givenCoinThatWouldStrandFunds() {
+
+        when(coinCalculator.hasDenomination("DOLLAR")).thenReturn(true);
+        when(coinCalculator.wouldStrandFunds(coinPurse, "DOLLAR", itemBuckets, cassettes)).thenReturn(true);
+
+        String response = vendingMachine.process("PUT-DOLLAR");
+
+        assertThat(response, is("EXACT-CHANGE-ONLY"));
+
+        verify(coinCalculator).hasDenomination("DOLLAR");
+        verify(coinCalculator).wouldStrandFunds(coinPurse, "DOLLAR", itemBuckets, cassettes);
+    }
+
+    @Test
+    public void testListener_isToldAboutRejectedCoins() {
+        MachineListener listener = mock(MachineListener.class);
+        vendingMachine.addListener(listener);
+
+        when(coinCalculator.hasDenomination("DOLLAR")).thenReturn(true);
+        when(coinCalculator.wouldStrandFunds(coinPurse, "DOLLAR", itemBuckets, cassettes)).thenReturn(true);
+
+        assertThat(vendingMachine.process("PUT-DOLLAR, PUT-PENNY"), is("EXACT-CHANGE-ONLY, INVALID-COIN"));
+
+        verify(listener).coinRejected(0, "DOLLAR");
+        verify(listener).coinRejected(0, null);
+        verify(listener).commandProcessed(eq("PUT"), eq("EXACT-CHANGE-ONLY"), anyLong());
+        verify(listener).commandProcessed(eq("PUT"), eq("INVALID-COIN"), anyLong());
+        verify(listener).lineProcessed();
+        verifyNoMoreInteractions(listener);
+
+        verify(coinCalculator).hasDenomination("DOLLAR");
+        verify(coinCalculator).hasDenomination("PENNY");
+        verify(coinCalculator).wouldStrandFunds(coinPurse, "DOLLAR", itemBuckets, cassettes);
+    }
+
     @Test
     public void testPutCommand_givenInvalidCoin() {
 
@@ -120,7 +164,7 @@ public class VendingMachineTest {
         when(itemBuckets.isValidItemId("A")).thenReturn(true);
         when(itemBuckets.hasItem("A")).thenReturn(true);
         when(itemBuckets.getPriceForItem("A")).thenReturn(65);
-        when(coinCalculator.calculateTotal(this.coinPurse)).thenReturn(55);
+        when(coinPurse.getTotal()).thenReturn(55);
 
         String response = vendingMachine.process("GET-A");
 
@@ -129,7 +173,27 @@ public class VendingMachineTest {
         verify(itemBuckets).isValidItemId("A");
         verify(itemBuckets).hasItem("A");
         verify(itemBuckets).getPriceForItem("A");
-        verify(coinCalculator).calculateTotal(this.coinPurse);
+        verify(coinPurse).getTotal();
+    }
+
+    @Test
+    public void testGetItemCommand_givenChangeCannotBeMade() {
+
+        when(itemBuckets.isValidItemId("A")).thenReturn(true);
+        when(itemBuckets.hasItem("A")).thenReturn(true);
+        when(itemBuckets.getPriceForItem("A")).thenReturn(65);
+        when(coinPurse.getTotal()).thenReturn(100);
+        when(coinCalculator.canMakeChange(35, this.cassettes)).thenReturn(false);
+
+        String response = vendingMachine.process("GET-A");
+
+        assertThat(response, is("INSUFFICIENT-CHANGE"));
+
+        verify(itemBuckets).isValidItemId("A");
+        verify(itemBuckets).hasItem("A");
+        verify(itemBuckets).getPriceForItem("A");
+        verify(coinPurse).getTotal();
+        verify(coinCalculator).canMakeChange(35, this.cassettes);
     }
 
     @Test
@@ -138,7 +202,9 @@ public class VendingMachineTest {
         when(itemBuckets.isValidItemId("A")).thenReturn(true);
         when(itemBuckets.hasItem("A")).thenReturn(true);
         when(itemBuckets.getPriceForItem("A")).thenReturn(65);
-        when(coinCalculator.calculateTotal(this.coinPurse)).thenReturn(100);
+        when(coinPurse.getTotal()).thenReturn(100);
+        when(coinCalculator.canMakeChange(35, this.cassettes)).thenReturn(true);
+        when(itemBuckets.reserveItem("A")).thenReturn(true);
         when(coinCalculator.calculateChange(35, this.cassettes)).thenThrow(InsufficientChangeException.class);
 
         String response = vendingMachine.process("GET-A");
@@ -148,8 +214,39 @@ public class VendingMachineTest {
         verify(itemBuckets).isValidItemId("A");
         verify(itemBuckets).hasItem("A");
         verify(itemBuckets).getPriceForItem("A");
-        verify(coinCalculator).calculateTotal(this.coinPurse);
+        verify(coinPurse).getTotal();
+        verify(coinCalculator).canMakeChange(35, this.cassettes);
+        verify(itemBuckets).reserveItem("A");
         verify(coinCalculator).calculateChange(35, this.cassettes);
+        verify(itemBuckets).releaseItem("A");
+    }
+
+    @Test
+    public void testGetItemCommand_givenFailureWhileTakingChange_releasesItem() throws InsufficientChangeException {
+
+        when(itemBuckets.isValidItemId("A")).thenReturn(true);
+        when(itemBuckets.hasItem("A")).thenReturn(true);
+        when(itemBuckets.getPriceForItem("A")).thenReturn(65);
+        when(coinPurse.getTotal()).thenReturn(100);
+        when(coinCalculator.canMakeChange(35, this.cassettes)).thenReturn(true);
+        when(itemBuckets.reserveItem("A")).thenReturn(true);
+        when(coinCalculator.calculateChange(35, this.cassettes)).thenThrow(new SystemException("Coin denomination not found."));
+
+        try {
+            vendingMachine.process("GET-A");
+            fail("expected exception to be thrown");
+        } catch (SystemException e) {
+            assertThat(e.getMessage(), is("Coin denomination not found."));
+        }
+
+        verify(itemBuckets).isValidItemId("A");
+        verify(itemBuckets).hasItem("A");
+        verify(itemBuckets).getPriceForItem("A");
+        verify(coinPurse).getTotal();
+        verify(coinCalculator).canMakeChange(35, this.cassettes);
+        verify(itemBuckets).reserveItem("A");
+        verify(coinCalculator).calculateChange(35, this.cassettes);
+        verify(itemBuckets).releaseItem("A");
     }
 
     @Test
@@ -158,7 +255,9 @@ public class VendingMachineTest {
         when(itemBuckets.isValidItemId("A")).thenReturn(true);
         when(itemBuckets.hasItem("A")).thenReturn(true);
         when(itemBuckets.getPriceForItem("A")).thenReturn(65);
-        when(coinCalculator.calculateTotal(this.coinPurse)).thenReturn(65);
+        when(coinPurse.getTotal()).thenReturn(65);
+        when(coinCalculator.canMakeChange(0, this.cassettes)).thenReturn(true);
+        when(itemBuckets.reserveItem("A")).thenReturn(true);
         when(coinCalculator.calculateChange(0, this.cassettes)).thenReturn(emptyList());
 
         String response = vendingMachine.process("GET-A");
@@ -168,11 +267,13 @@ public class VendingMachineTest {
         verify(itemBuckets).isValidItemId("A");
         verify(itemBuckets).hasItem("A");
         verify(itemBuckets).getPriceForItem("A");
-        verify(coinCalculator).calculateTotal(any());
+        verify(coinPurse).getTotal();
         verify(coinCalculator).calculateChange(0, this.cassettes);
 
+        verify(coinCalculator).canMakeChange(0, this.cassettes);
+        verify(itemBuckets).reserveItem("A");
+        verify(cassettes).isRecycling();
         verify(coinPurse).dropPaymentIntoSafe();
-        verify(itemBuckets).ejectItem("A");
     }
 
     @Test
@@ -181,7 +282,9 @@ public class VendingMachineTest {
         when(itemBuckets.isValidItemId("A")).thenReturn(true);
         when(itemBuckets.hasItem("A")).thenReturn(true);
         when(itemBuckets.getPriceForItem("A")).thenReturn(65);
-        when(coinCalculator.calculateTotal(this.coinPurse)).thenReturn(100);
+        when(coinPurse.getTotal()).thenReturn(100);
+        when(coinCalculator.canMakeChange(35, this.cassettes)).thenReturn(true);
+        when(itemBuckets.reserveItem("A")).thenReturn(true);
         when(coinCalculator.calculateChange(35, this.cassettes)).thenReturn(asList("QUARTER","DIME"));
 
         String response = vendingMachine.process("GET-A");
@@ -191,11 +294,107 @@ public class VendingMachineTest {
         verify(itemBuckets).isValidItemId("A");
         verify(itemBuckets).hasItem("A");
         verify(itemBuckets).getPriceForItem("A");
-        verify(coinCalculator).calculateTotal(any());
+        verify(coinPurse).getTotal();
         verify(coinCalculator).calculateChange(35, this.cassettes);
 
+        verify(coinCalculator).canMakeChange(35, this.cassettes);
+        verify(itemBuckets).reserveItem("A");
+        verify(cassettes).isRecycling();
+        verify(coinPurse).dropPaymentIntoSafe();
+    }
+
+    @Test
+    public void testGetItemCommand_givenRecycling() throws InsufficientChangeException {
+
+        when(itemBuckets.isValidItemId("A")).thenReturn(true);
+        when(itemBuckets.hasItem("A")).thenReturn(true);
+        when(itemBuckets.getPriceForItem("A")).thenReturn(65);
+        when(coinPurse.getTotal()).thenReturn(65);
+        when(coinCalculator.canMakeChange(0, this.cassettes)).thenReturn(true);
+        when(itemBuckets.reserveItem("A")).thenReturn(true);
+        when(coinCalculator.calculateChange(0, this.cassettes)).thenReturn(emptyList());
+        when(cassettes.isRecycling()).thenReturn(true);
+
+        String response = vendingMachine.process("GET-A");
+
+        assertThat(response, is("A"));
+
+        verify(itemBuckets).isValidItemId("A");
+        verify(itemBuckets).hasItem("A");
+        verify(itemBuckets).getPriceForItem("A");
+        verify(coinPurse).getTotal();
+        verify(coinCalculator).calculateChange(0, this.cassettes);
+
+        verify(coinCalculator).canMakeChange(0, this.cassettes);
+        verify(itemBuckets).reserveItem("A");
+        verify(cassettes).isRecycling();
+        verify(coinPurse).dropPaymentIntoCassettes(this.cassettes, emptyList());
+    }
+
+    @Test
+    public void testGetItemCommand_givenLastItemTakenByAnotherPurchase() {
+
+        when(itemBuckets.isValidItemId("A")).thenReturn(true);
+        when(itemBuckets.hasItem("A")).thenReturn(true);
+        when(itemBuckets.getPriceForItem("A")).thenReturn(65);
+        when(coinPurse.getTotal()).thenReturn(65);
+        when(coinCalculator.canMakeChange(0, this.cassettes)).thenReturn(true);
+        when(itemBuckets.reserveItem("A")).thenReturn(false);
+
+        String response = vendingMachine.process("GET-A");
+
+        assertThat(response, is("OUT-OF-STOCK"));
+
+        verify(itemBuckets).isValidItemId("A");
+        verify(itemBuckets).hasItem("A");
+        verify(itemBuckets).getPriceForItem("A");
+        verify(coinPurse).getTotal();
+        verify(coinCalculator).canMakeChange(0, this.cassettes);
+        verify(itemBuckets).reserveItem("A");
+    }
+
+    @Test
+    public void testListener_isToldAboutChanges() throws InsufficientChangeException {
+        MachineListener listener = mock(MachineListener.class);
+        vendingMachine.addListener(listener);
+
+        when(coinCalculator.hasDenomination("DOLLAR")).thenReturn(true);
+        when(itemBuckets.isValidItemId("A")).thenReturn(true);
+        when(itemBuckets.hasItem("A")).thenReturn(true);
+        when(itemBuckets.getPriceForItem("A")).thenReturn(65);
+        when(coinPurse.getTotal()).thenReturn(100);
+        when(coinCalculator.canMakeChange(35, this.cassettes)).thenReturn(true);
+        when(itemBuckets.reserveItem("A")).thenReturn(true);
+        when(coinCalculator.calculateChange(35, this.cassettes)).thenReturn(asList("QUARTER","DIME"));
+
+        vendingMachine.process("PUT-DOLLAR, GET-A, COIN-RETURN, SERVICE");
+
+        verify(listener).coinAccepted(0, "DOLLAR");
+        verify(listener).itemVended(0, "A", asList("QUARTER", "DIME"), emptyList());
+        verify(listener).coinsRefunded(0, emptyList());
+        verify(listener).serviced();
+        verify(listener).commandProcessed(eq("PUT"), isNull(String.class), anyLong());
+        verify(listener).commandProcessed(eq("GET"), eq("A"), anyLong());
+        verify(listener).commandProcessed(eq("COIN-RETURN"), isNull(String.class), anyLong());
+        verify(listener).commandProcessed(eq("SERVICE"), eq("SERVICE-OK"), anyLong());
+        verify(listener).lineProcessed();
+        verifyNoMoreInteractions(listener);
+
+        verify(coinCalculator).hasDenomination("DOLLAR");
+        verify(coinCalculator).wouldStrandFunds(coinPurse, "DOLLAR", itemBuckets, cassettes);
+        verify(coinPurse).addCoin("DOLLAR");
+        verify(itemBuckets).isValidItemId("A");
+        verify(itemBuckets).hasItem("A");
+        verify(itemBuckets).getPriceForItem("A");
+        verify(coinPurse).getTotal();
+        verify(coinCalculator).canMakeChange(35, this.cassettes);
+        verify(itemBuckets).reserveItem("A");
+        verify(coinCalculator).calculateChange(35, this.cassettes);
+        verify(cassettes).isRecycling();
         verify(coinPurse).dropPaymentIntoSafe();
-        verify(itemBuckets).ejectItem("A");
+        verify(coinPurse).refund(any());
+        verify(itemBuckets).reset();
+        verify(cassettes).reset();
     }
 
     @Test
@@ -205,5 +404,64 @@ public class VendingMachineTest {
         assertThat(response, is("INVALID-COMMAND"));
     }
 
+    @Test
+    public void testProcessToAppendable_givenValidCoin() throws IOException {
+        String line = "put-nickel ";
+
+        when(coinCalculator.findDenomination(line, 4, 10)).thenReturn("NICKEL");
+
+        StringBuilder out = new StringBuilder();
+        vendingMachine.process(line, out);
+
+        assertThat(out.toString(), is(""));
+
+        verify(coinCalculator).findDenomination(line, 4, 10);
+        verify(coinCalculator).wouldStrandFunds(coinPurse, "NICKEL", itemBuckets, cassettes);
+        verify(coinPurse).addCoin("NICKEL");
+    }
+
+    @Test
+    public void testProcessToAppendable_givenInvalidCoin() throws IOException {
+        String line = "PUT-Q";
+
+        StringBuilder out = new StringBuilder();
+        vendingMachine.process(line, out);
+
+        assertThat(out.toString(), is("INVALID-COIN"));
+
+        verify(coinCalculator).findDenomination(line, 4, 5);
+    }
+
+    @Test
+    public void testProcessToAppendable_givenInvalidItemCode() throws IOException {
+        String line = "GET-D";
+
+        StringBuilder out = new StringBuilder();
+        vendingMachine.process(line, out);
+
+        assertThat(out.toString(), is("INVALID-ITEM"));
+
+        verify(itemBuckets).findItemId(line, 4, 5);
+    }
+
+    @Test
+    public void testProcessToAppendable_givenSeveralCommands() throws IOException {
+        StringBuilder out = new StringBuilder();
+        vendingMachine.process(" service ,coin-return,A,,", out);
+
+        assertThat(out.toString(), is("SERVICE-OK, INVALID-COMMAND"));
+
+        verify(itemBuckets).reset();
+        verify(cassettes).reset();
+        verify(coinPurse).refund(emptyList());
+    }
+
+    @Test
+    public void testProcessToAppendable_givenEmptyLine() throws IOException {
+        StringBuilder out = new StringBuilder();
+        vendingMachine.process("", out);
+
+        assertThat(out.toString(), is(vendingMachine.process("")));
+    }
 
 }